@@ -0,0 +1,586 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.activities;
+
+import android.app.ActionBar;
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.text.Html;
+import android.util.Log;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.AdapterView.OnItemLongClickListener;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.adapters.DuplicatesAdapter;
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.preferences.AccessMode;
+import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
+import com.cyanogenmod.filemanager.ui.ThemeManager;
+import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
+import com.cyanogenmod.filemanager.ui.dialogs.ActionsDialog;
+import com.cyanogenmod.filemanager.ui.dialogs.MessageProgressDialog;
+import com.cyanogenmod.filemanager.ui.policy.IntentsActionPolicy;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.ExceptionUtil;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.StorageHelper;
+
+import java.io.FileNotFoundException;
+
+/**
+ * An activity for find the files with the same content in a folder.<br/>
+ * <br/>
+ * The groups of duplicates are displayed as soon as they are confirmed, while the
+ * rest of the files are still being compared.
+ */
+public class DuplicatesActivity extends Activity
+    implements AsyncResultListener, OnItemClickListener,
+               OnItemLongClickListener, OnRequestRefreshListener {
+
+    private static final String TAG = "DuplicatesActivity"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    /**
+     * Intent extra parameter for the directory where to find the duplicates.
+     */
+    public static final String EXTRA_DUPLICATES_DIRECTORY =
+            "extra_duplicates_directory";  //$NON-NLS-1$
+
+    private final BroadcastReceiver mNotificationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent != null) {
+                if (intent.getAction().compareTo(
+                        FileManagerSettings.INTENT_THEME_CHANGED) == 0) {
+                    applyTheme();
+                }
+            }
+        }
+    };
+
+    /**
+     * @hide
+     */
+    ListView mListView;
+    private View mEmptyListMsg;
+    private TextView mFoundGroups;
+    private TextView mWastedSpace;
+    /**
+     * @hide
+     */
+    MessageProgressDialog mDialog = null;
+    /**
+     * @hide
+     */
+    AsyncResultExecutable mExecutable = null;
+    /**
+     * @hide
+     */
+    String mDirectory;
+    /**
+     * @hide
+     */
+    boolean mChRooted;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onCreate(Bundle state) {
+        if (DEBUG) {
+            Log.d(TAG, "DuplicatesActivity.onCreate"); //$NON-NLS-1$
+        }
+
+        // Check if app is running in chrooted mode
+        this.mChRooted = FileManagerApplication.getAccessMode().compareTo(AccessMode.SAFE) == 0;
+
+        // Register the broadcast receiver
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(FileManagerSettings.INTENT_THEME_CHANGED);
+        registerReceiver(this.mNotificationReceiver, filter);
+
+        //Set in transition
+        overridePendingTransition(R.anim.translate_to_right_in, R.anim.hold_out);
+
+        //Set the main layout of the activity
+        setContentView(R.layout.duplicates);
+
+        //Initialize action bars and components
+        initTitleActionBar();
+        initComponents();
+
+        // Apply current theme
+        applyTheme();
+
+        //Find the duplicates
+        this.mDirectory = getIntent().getStringExtra(EXTRA_DUPLICATES_DIRECTORY);
+        if (this.mDirectory != null) {
+            findDuplicates();
+        }
+
+        //Save state
+        super.onCreate(state);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDestroy() {
+        if (DEBUG) {
+            Log.d(TAG, "DuplicatesActivity.onDestroy"); //$NON-NLS-1$
+        }
+
+        // Stop the comparison
+        try {
+            if (this.mExecutable != null && !this.mExecutable.isCancelled()) {
+                this.mExecutable.cancel();
+            }
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+
+        // Unregister the receiver
+        try {
+            unregisterReceiver(this.mNotificationReceiver);
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+
+        //Release the adapter
+        if (this.mListView != null && this.mListView.getAdapter() != null) {
+            ((DuplicatesAdapter)this.mListView.getAdapter()).dispose();
+        }
+
+        //All destroy. Continue
+        super.onDestroy();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onPause() {
+        //Set out transition
+        overridePendingTransition(R.anim.hold_in, R.anim.translate_to_left_out);
+        super.onPause();
+    }
+
+    /**
+     * Method that initializes the titlebar of the activity.
+     */
+    private void initTitleActionBar() {
+        //Configure the action bar options
+        getActionBar().setBackgroundDrawable(
+                getResources().getDrawable(R.drawable.bg_holo_titlebar));
+        getActionBar().setDisplayOptions(
+                ActionBar.DISPLAY_SHOW_CUSTOM | ActionBar.DISPLAY_SHOW_HOME);
+        getActionBar().setDisplayHomeAsUpEnabled(true);
+        View customTitle = getLayoutInflater().inflate(R.layout.simple_customtitle, null, false);
+
+        TextView title = (TextView)customTitle.findViewById(R.id.customtitle_title);
+        title.setText(R.string.duplicates);
+        title.setContentDescription(getString(R.string.duplicates));
+
+        getActionBar().setCustomView(customTitle);
+    }
+
+    /**
+     * Method that initializes the component of the activity.
+     */
+    private void initComponents() {
+        //Empty list view
+        this.mEmptyListMsg = findViewById(R.id.duplicates_empty_msg);
+        //The list view
+        this.mListView = (ListView)findViewById(R.id.duplicates_listview);
+        this.mListView.setOnItemClickListener(this);
+        this.mListView.setOnItemLongClickListener(this);
+        this.mListView.setAdapter(new DuplicatesAdapter(this));
+
+        //Other components
+        this.mFoundGroups = (TextView)findViewById(R.id.duplicates_status_found_groups);
+        this.mWastedSpace = (TextView)findViewById(R.id.duplicates_status_wasted_space);
+        updateStatus();
+    }
+
+    /**
+     * Method that starts the comparison of the files of the directory.
+     */
+    private void findDuplicates() {
+        this.mListView.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //Show a dialog for the progress
+                    DuplicatesActivity.this.mDialog =
+                            new MessageProgressDialog(
+                                    DuplicatesActivity.this,
+                                    0,
+                                    R.string.searching,
+                                    R.string.duplicates_action_label,
+                                    true);
+                    setProgressMsg(0);
+
+                    // Set the cancel listener
+                    DuplicatesActivity.this.mDialog.setOnCancelListener(
+                            new MessageProgressDialog.OnCancelListener() {
+                                @Override
+                                public boolean onCancel() {
+                                    //User has requested the cancellation of the comparison
+                                    AsyncResultExecutable executable =
+                                            DuplicatesActivity.this.mExecutable;
+                                    if (executable != null && !executable.isCancelled()) {
+                                        if (executable.cancel()) {
+                                            toggleResults(true);
+                                            return true;
+                                        }
+                                        return false;
+                                    }
+                                    return true;
+                                }
+                            });
+                    DuplicatesActivity.this.mDialog.show();
+
+                    //Compare the files in background
+                    DuplicatesActivity.this.mExecutable =
+                            CommandHelper.findDuplicates(
+                                    DuplicatesActivity.this,
+                                    DuplicatesActivity.this.mDirectory,
+                                    DuplicatesActivity.this,
+                                    null);
+
+                } catch (Throwable ex) {
+                    try {
+                        if (DuplicatesActivity.this.mDialog != null) {
+                            DuplicatesActivity.this.mDialog.dismiss();
+                        }
+                    } catch (Throwable ex2) {
+                        /**NON BLOCK**/
+                    }
+
+                    //Capture the exception
+                    Log.e(TAG, "Find duplicates failed", ex); //$NON-NLS-1$
+                    DialogHelper.showToast(
+                            DuplicatesActivity.this,
+                            R.string.duplicates_error_msg, Toast.LENGTH_SHORT);
+                    toggleResults(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+       switch (item.getItemId()) {
+          case android.R.id.home:
+              finish();
+              return true;
+          default:
+             return super.onOptionsItemSelected(item);
+       }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        Object item = parent.getAdapter().getItem(position);
+        if (item instanceof FileSystemObject) {
+            // Open the file with the preferred registered app
+            IntentsActionPolicy.openFileSystemObject(
+                    this, (FileSystemObject)item, false, null, null);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+        Object item = parent.getAdapter().getItem(position);
+        if (item instanceof FileSystemObject) {
+            // Open the actions menu
+            onRequestMenu((FileSystemObject)item);
+        }
+        return true; //Always consume the event
+    }
+
+    /**
+     * Method invoked when a request to show the menu associated
+     * with an item is started.
+     *
+     * @param item The item for which the request was started
+     */
+    public void onRequestMenu(FileSystemObject item) {
+        // Prior to show the dialog, refresh the item reference
+        FileSystemObject fso = null;
+        try {
+            fso = CommandHelper.getFileInfo(this, item.getFullPath(), false, null);
+            if (fso == null) {
+                throw new NoSuchFileOrDirectory(item.getFullPath());
+            }
+
+        } catch (Exception e) {
+            // Notify the user
+            ExceptionUtil.translateException(this, e);
+
+            // Remove the object
+            if (e instanceof FileNotFoundException || e instanceof NoSuchFileOrDirectory) {
+                removeItem(item);
+            }
+            return;
+        }
+
+        ActionsDialog dialog = new ActionsDialog(this, fso, false, true);
+        dialog.setOnRequestRefreshListener(this);
+        dialog.show();
+    }
+
+    /**
+     * Method that removes a file from the duplicates.
+     *
+     * @param fso The file system object
+     */
+    private void removeItem(FileSystemObject fso) {
+        DuplicatesAdapter adapter = (DuplicatesAdapter)this.mListView.getAdapter();
+        if (adapter.removeFile(fso)) {
+            toggleResults(true);
+            updateStatus();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRequestRefresh(Object o, boolean clearSelection) {
+        // The duplicates don't change with the properties of a file
+        ((DuplicatesAdapter)this.mListView.getAdapter()).notifyDataSetChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRequestRemove(Object o, boolean clearSelection) {
+        if (o instanceof FileSystemObject) {
+            removeItem((FileSystemObject)o);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onNavigateTo(Object o) {
+        if (o instanceof FileSystemObject) {
+            // Forward to the NavigationActivity
+            Intent intent = new Intent(this, NavigationActivity.class);
+            intent.putExtra(
+                    NavigationActivity.EXTRA_NAVIGATE_TO, ((FileSystemObject)o).getFullPath());
+            intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+            startActivity(intent);
+            finish();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncStart() {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                toggleResults(false);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncEnd(final boolean cancelled) {
+        this.mListView.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //Dismiss the dialog
+                    if (DuplicatesActivity.this.mDialog != null) {
+                        DuplicatesActivity.this.mDialog.dismiss();
+                    }
+                    toggleResults(true);
+                    updateStatus();
+
+                } catch (Throwable ex) {
+                    Log.e(TAG, "onAsyncEnd method fails", ex); //$NON-NLS-1$
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPartialResult(final Object partialResults) {
+        if (!(partialResults instanceof DuplicateGroup)) {
+            return;
+        }
+        final DuplicateGroup group = (DuplicateGroup)partialResults;
+        this.mListView.post(new Runnable() {
+            @Override
+            public void run() {
+                DuplicatesAdapter adapter =
+                        (DuplicatesAdapter)DuplicatesActivity.this.mListView.getAdapter();
+                adapter.addGroup(group);
+                toggleResults(false);
+                if (DuplicatesActivity.this.mDialog != null) {
+                    setProgressMsg(adapter.getGroups().size());
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onException(Exception cause) {
+        //Capture the exception
+        ExceptionUtil.translateException(this, cause);
+    }
+
+    /**
+     * Method that toggle the views when there are results.
+     *
+     * @param showEmpty Show the empty list message if there are no results
+     * @hide
+     */
+    void toggleResults(boolean showEmpty) {
+        boolean hasResults = this.mListView.getAdapter().getCount() > 0;
+        this.mListView.setVisibility(hasResults ? View.VISIBLE : View.INVISIBLE);
+        this.mEmptyListMsg.setVisibility(!hasResults && showEmpty ? View.VISIBLE : View.INVISIBLE);
+    }
+
+    /**
+     * Method that displays the number of groups found and the space they waste.
+     *
+     * @hide
+     */
+    void updateStatus() {
+        DuplicatesAdapter adapter = (DuplicatesAdapter)this.mListView.getAdapter();
+        int groups = adapter.getGroups().size();
+        String directory = this.mDirectory == null ? "" : this.mDirectory; //$NON-NLS-1$
+        if (this.mChRooted && directory.length() > 0) {
+            directory = StorageHelper.getChrootedPath(directory);
+        }
+        String foundGroups =
+                getResources().getQuantityString(
+                        R.plurals.duplicates_found_groups, groups, Integer.valueOf(groups));
+        this.mFoundGroups.setText(
+                getString(R.string.search_found_items_in_directory, foundGroups, directory));
+        this.mWastedSpace.setText(
+                Html.fromHtml(getString(
+                        R.string.duplicates_wasted_space,
+                        FileHelper.getHumanReadableSize(adapter.getWastedSpace()))));
+    }
+
+    /**
+     * Method that set the progress of the comparison.
+     *
+     * @param groups The number of groups found
+     * @hide
+     */
+    void setProgressMsg(int groups) {
+        String msg =
+                getResources().getQuantityString(
+                        R.plurals.duplicates_found_groups,
+                        groups,
+                        Integer.valueOf(groups));
+        this.mDialog.setProgress(Html.fromHtml(msg));
+    }
+
+    /**
+     * Method that applies the current theme to the activity
+     * @hide
+     */
+    void applyTheme() {
+        Theme theme = ThemeManager.getCurrentTheme(this);
+        theme.setBaseTheme(this, false);
+
+        //- ActionBar
+        theme.setTitlebarDrawable(this, getActionBar(), "titlebar_drawable"); //$NON-NLS-1$
+        View v = getActionBar().getCustomView().findViewById(R.id.customtitle_title);
+        theme.setTextColor(this, (TextView)v, "text_color"); //$NON-NLS-1$
+        // ContentView
+        theme.setBackgroundDrawable(
+                this, getWindow().getDecorView(), "background_drawable"); //$NON-NLS-1$
+        //- StatusBar
+        v = findViewById(R.id.duplicates_status);
+        theme.setBackgroundDrawable(this, v, "statusbar_drawable"); //$NON-NLS-1$
+        v = findViewById(R.id.duplicates_status_found_groups);
+        theme.setTextColor(this, (TextView)v, "text_color"); //$NON-NLS-1$
+        v = findViewById(R.id.duplicates_status_wasted_space);
+        theme.setTextColor(this, (TextView)v, "text_color"); //$NON-NLS-1$
+        //ListView
+        if (this.mListView.getAdapter() != null) {
+            ((DuplicatesAdapter)this.mListView.getAdapter()).notifyDataSetChanged();
+        }
+        this.mListView.setDivider(
+                theme.getDrawable(this, "horizontal_divider_drawable")); //$NON-NLS-1$
+        this.mListView.invalidate();
+    }
+}
@@ -72,11 +72,13 @@ import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.NavigationLayoutMode;
 import com.cyanogenmod.filemanager.preferences.ObjectIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
+import com.cyanogenmod.filemanager.services.FileOperationService;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.ui.dialogs.ActionsDialog;
 import com.cyanogenmod.filemanager.ui.dialogs.FilesystemInfoDialog;
 import com.cyanogenmod.filemanager.ui.dialogs.FilesystemInfoDialog.OnMountListener;
+import com.cyanogenmod.filemanager.ui.policy.CopyMoveActionPolicy;
 import com.cyanogenmod.filemanager.ui.widgets.Breadcrumb;
 import com.cyanogenmod.filemanager.ui.widgets.ButtonItem;
 import com.cyanogenmod.filemanager.ui.widgets.NavigationCustomTitleView;
@@ -251,6 +253,10 @@ public class NavigationActivity extends Activity
                 } else if (intent.getAction().compareTo(
                         FileManagerSettings.INTENT_THEME_CHANGED) == 0) {
                     applyTheme();
+                } else if (intent.getAction().compareTo(
+                        FileManagerSettings.INTENT_FILE_OPERATION_ENDED) == 0) {
+                    // A background operation has ended. Refresh the navigation view
+                    onRequestRefresh(null, false);
                 }
             }
         }
@@ -299,6 +305,7 @@ public class NavigationActivity extends Activity
         filter.addAction(FileManagerSettings.INTENT_SETTING_CHANGED);
         filter.addAction(FileManagerSettings.INTENT_FILE_CHANGED);
         filter.addAction(FileManagerSettings.INTENT_THEME_CHANGED);
+        filter.addAction(FileManagerSettings.INTENT_FILE_OPERATION_ENDED);
         registerReceiver(this.mNotificationReceiver, filter);
 
         //Set the main layout of the activity
@@ -365,6 +372,11 @@ public class NavigationActivity extends Activity
 
                 //Check the intent action
                 checkIntent(getIntent());
+
+                //Resume the background operations and the copy or move operations
+                //interrupted
+                FileOperationService.resume(NavigationActivity.this);
+                CopyMoveActionPolicy.resumeInterruptedTransfers(NavigationActivity.this);
             }
         });
 
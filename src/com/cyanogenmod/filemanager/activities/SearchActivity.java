@@ -26,6 +26,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Configuration;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.preference.PreferenceActivity;
@@ -56,6 +57,8 @@ import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.RelaunchableException;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
+import com.cyanogenmod.filemanager.model.CompiledQuery;
+import com.cyanogenmod.filemanager.model.ContentMatch;
 import com.cyanogenmod.filemanager.model.Directory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
@@ -64,6 +67,7 @@ import com.cyanogenmod.filemanager.model.SearchResult;
 import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.parcelables.SearchInfoParcelable;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
+import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.providers.RecentSearchesContentProvider;
@@ -83,11 +87,17 @@ import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.SearchHelper;
+import com.cyanogenmod.filemanager.util.SearchResultCache;
 import com.cyanogenmod.filemanager.util.StorageHelper;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An activity for search files and folders.
@@ -238,7 +248,10 @@ public class SearchActivity extends Activity
     TextView mSearchTerms;
     private View mEmptyListMsg;
 
-    private String mSearchDirectory;
+    /**
+     * @hide
+     */
+    String mSearchDirectory;
     /**
      * @hide
      */
@@ -247,6 +260,17 @@ public class SearchActivity extends Activity
      * @hide
      */
     Query mQuery;
+    /**
+     * The matches inside the content of the files (by full path), if the search
+     * is a content search; otherwise null
+     * @hide
+     */
+    Map<String, List<ContentMatch>> mContentMatches;
+
+    // The state used to rank the partial results of the running search
+    private CompiledQuery mCompiledQuery;
+    private Comparator<SearchResult> mResultComparator;
+    private Map<DisplayRestrictions, Object> mRestrictions;
 
     /**
      * @hide
@@ -330,6 +354,10 @@ public class SearchActivity extends Activity
             /**NON BLOCK**/
         }
 
+        // The cached searches are only reused inside the same search session. Changes
+        // done by other applications can't be fully detected
+        SearchResultCache.clear();
+
         //All destroy. Continue
         super.onDestroy();
     }
@@ -528,7 +556,7 @@ public class SearchActivity extends Activity
                 (voiceQuery) ? filterQuery(userQueries) : userQueries;
 
         //Create the queries
-        this.mQuery = new Query().fillSlots(filteredUserQueries);
+        this.mQuery = SearchHelper.createQuery(filteredUserQueries);
         List<String> queries = this.mQuery.getQueries();
 
         //Check if some queries has lower than allowed, in this case
@@ -610,6 +638,21 @@ public class SearchActivity extends Activity
             }
         }
 
+        //Prepare the ranking of the partial results
+        this.mCompiledQuery = new CompiledQuery(query);
+        this.mResultComparator =
+                SearchHelper.getResultComparator(SearchHelper.getSortResultMode());
+        this.mRestrictions = SearchHelper.createDisplayRestrictions(query);
+
+        //Search inside the files?
+        boolean searchContent = Preferences.getSharedPreferences().getBoolean(
+                FileManagerSettings.SETTINGS_SEARCH_CONTENT.getId(),
+                ((Boolean)FileManagerSettings.SETTINGS_SEARCH_CONTENT.
+                        getDefaultValue()).booleanValue());
+        this.mContentMatches = searchContent
+                ? Collections.synchronizedMap(new HashMap<String, List<ContentMatch>>())
+                : null;
+
         //Set the listview
         this.mResultList = new ArrayList<FileSystemObject>();
         SearchResultAdapter adapter =
@@ -621,6 +664,44 @@ public class SearchActivity extends Activity
         this.mSearchTerms.setText(
                 Html.fromHtml(getString(R.string.search_terms, query.getTerms())));
 
+        //Can the search be answered filtering the results of a previous search?
+        //The cache checks the folders of the results, so look up it in background
+        if (this.mContentMatches == null) {
+            AsyncTask<Void, Void, List<FileSystemObject>> task =
+                    new AsyncTask<Void, Void, List<FileSystemObject>>() {
+                @Override
+                protected List<FileSystemObject> doInBackground(Void... params) {
+                    return SearchResultCache.get(
+                            searchDirectory, query, FileManagerApplication.getAccessMode());
+                }
+
+                @Override
+                protected void onPostExecute(List<FileSystemObject> cached) {
+                    if (SearchActivity.this.mQuery != query) {
+                        // Other search was requested meanwhile
+                        return;
+                    }
+                    if (cached != null) {
+                        SearchActivity.this.mResultList = cached;
+                        drawResults();
+                    } else {
+                        executeSearch(searchDirectory);
+                    }
+                }
+            };
+            task.execute();
+            return;
+        }
+        executeSearch(searchDirectory);
+    }
+
+    /**
+     * Method that executes the search command in background.
+     *
+     * @param searchDirectory The directory of the search
+     * @hide
+     */
+    void executeSearch(final String searchDirectory) {
         //Now, do the search in background
         this.mSearchListView.post(new Runnable() {
             @Override
@@ -664,13 +745,23 @@ public class SearchActivity extends Activity
                     SearchActivity.this.mDialog.show();
 
                     //Execute the query (search are process in background)
-                    SearchActivity.this.mExecutable =
-                            CommandHelper.findFiles(
-                                    SearchActivity.this,
-                                    searchDirectory,
-                                    SearchActivity.this.mQuery,
-                                    SearchActivity.this,
-                                    null);
+                    if (SearchActivity.this.mContentMatches != null) {
+                        SearchActivity.this.mExecutable =
+                                CommandHelper.findContent(
+                                        SearchActivity.this,
+                                        searchDirectory,
+                                        SearchActivity.this.mQuery,
+                                        SearchActivity.this,
+                                        null);
+                    } else {
+                        SearchActivity.this.mExecutable =
+                                CommandHelper.findFiles(
+                                        SearchActivity.this,
+                                        searchDirectory,
+                                        SearchActivity.this.mQuery,
+                                        SearchActivity.this,
+                                        null);
+                    }
 
                 } catch (Throwable ex) {
                     //Remove all elements
@@ -1123,7 +1214,15 @@ public class SearchActivity extends Activity
      * {@inheritDoc}
      */
     @Override
-    public void onAsyncEnd(boolean cancelled) {
+    public void onAsyncEnd(final boolean cancelled) {
+        // Cache the results of a completed name search. The cache reads the
+        // modification time of the folders of the results, so do it here, in background
+        if (!cancelled && this.mContentMatches == null) {
+            SearchResultCache.put(
+                    this.mSearchDirectory, this.mQuery,
+                    FileManagerApplication.getAccessMode(), this.mResultList);
+        }
+
         this.mSearchListView.post(new Runnable() {
             @Override
             public void run() {
@@ -1137,8 +1236,21 @@ public class SearchActivity extends Activity
                     FileHelper.resolveSymlinks(
                                 SearchActivity.this, SearchActivity.this.mResultList);
 
-                    // Draw the results
-                    drawResults();
+                    // The relevance of the content matches depends on all the matches
+                    // of every file, so rank the whole result set again
+                    if (SearchActivity.this.mContentMatches != null) {
+                        drawResults();
+                        return;
+                    }
+
+                    // The results were ranked and drawn while the search was running.
+                    // Only refresh the items (symlinks could have changed)
+                    SearchResultAdapter adapter =
+                            (SearchResultAdapter)SearchActivity.this.
+                                mSearchListView.getAdapter();
+                    SearchActivity.this.toggleResults(adapter.getCount() > 0, true);
+                    setFoundItems(adapter.getCount(), SearchActivity.this.mSearchDirectory);
+                    adapter.notifyDataSetChanged();
 
                 } catch (Throwable ex) {
                     Log.e(TAG, "onAsyncEnd method fails", ex); //$NON-NLS-1$
@@ -1154,16 +1266,42 @@ public class SearchActivity extends Activity
     @SuppressWarnings("unchecked")
     public void onPartialResult(final Object partialResults) {
         //Saved in the global result list, for save at the end
+        final List<FileSystemObject> partial;
         if (partialResults instanceof FileSystemObject) {
-            SearchActivity.this.mResultList.add((FileSystemObject)partialResults);
+            partial = new ArrayList<FileSystemObject>(1);
+            partial.add((FileSystemObject)partialResults);
+        } else if (this.mContentMatches != null) {
+            partial = addContentMatches((List<ContentMatch>)partialResults);
         } else {
-            SearchActivity.this.mResultList.addAll((List<FileSystemObject>)partialResults);
+            partial = new ArrayList<FileSystemObject>((List<FileSystemObject>)partialResults);
+        }
+        SearchActivity.this.mResultList.addAll(partial);
+
+        //Rank the batch once (in background) and merge it with the displayed results
+        final Comparator<SearchResult> comparator = this.mResultComparator;
+        final List<SearchResult> results =
+                SearchHelper.convertToResults(
+                        FileHelper.applyUserPreferences(
+                                partial, this.mRestrictions, true, this.mChRooted),
+                        this.mCompiledQuery);
+        SearchHelper.applyContentMatches(results, this.mContentMatches);
+        if (comparator != null) {
+            Collections.sort(results, comparator);
         }
 
         //Notify progress
         this.mSearchListView.post(new Runnable() {
             @Override
             public void run() {
+                if (results.size() > 0) {
+                    SearchResultAdapter adapter =
+                            (SearchResultAdapter)SearchActivity.this.
+                                mSearchListView.getAdapter();
+                    if (adapter != null) {
+                        adapter.addResults(results, comparator);
+                        SearchActivity.this.toggleResults(adapter.getCount() > 0, false);
+                    }
+                }
                 if (SearchActivity.this.mDialog != null) {
                     int progress = SearchActivity.this.mResultList.size();
                     setProgressMsg(progress);
@@ -1172,6 +1310,30 @@ public class SearchActivity extends Activity
         });
     }
 
+    /**
+     * Method that records a batch of content matches. A file can be reported in
+     * several batches, but is only returned the first time.
+     *
+     * @param matches The content matches
+     * @return List<FileSystemObject> The files not reported before
+     */
+    private List<FileSystemObject> addContentMatches(List<ContentMatch> matches) {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        int cc = matches.size();
+        for (int i = 0; i < cc; i++) {
+            ContentMatch match = matches.get(i);
+            String path = match.getFso().getFullPath();
+            List<ContentMatch> fileMatches = this.mContentMatches.get(path);
+            if (fileMatches == null) {
+                fileMatches = new ArrayList<ContentMatch>();
+                this.mContentMatches.put(path, fileMatches);
+                files.add(match.getFso());
+            }
+            fileMatches.add(match);
+        }
+        return files;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1202,7 +1364,8 @@ public class SearchActivity extends Activity
                                         this.mSearchListView,
                                         this.mSearchWaiting,
                                         this.mResultList,
-                                        this.mQuery);
+                                        this.mQuery,
+                                        this.mContentMatches);
         this.mDrawingSearchResultTask.execute();
     }
 
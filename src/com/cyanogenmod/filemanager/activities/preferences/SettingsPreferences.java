@@ -174,6 +174,7 @@ public class SettingsPreferences extends PreferenceActivity {
         private CheckBoxPreference mCaseSensitiveSort;
         private ListPreference mFreeDiskSpaceWarningLevel;
         private CheckBoxPreference mComputeFolderStatistics;
+        private ListPreference mFileOperationsConcurrency;
 //        private CheckBoxPreference mUseFlinger;
         private ListPreference mAccessMode;
         private CheckBoxPreference mDebugTraces;
@@ -206,6 +207,15 @@ public class SettingsPreferences extends PreferenceActivity {
                                     R.string.pref_disk_usage_warning_level_summary, value));
                 }
 
+                // File operations concurrency
+                else if (FileManagerSettings.SETTINGS_FILE_OPERATIONS_CONCURRENCY.
+                        getId().compareTo(key) == 0) {
+                    int value = Integer.valueOf((String)newValue).intValue();
+                    String[] summary = getResources().getStringArray(
+                            R.array.file_operations_concurrency_labels);
+                    preference.setSummary(summary[value]);
+                }
+
                 // Access mode
                 else if (FileManagerSettings.SETTINGS_ACCESS_MODE.getId().compareTo(key) == 0) {
                     Activity activity = GeneralPreferenceFragment.this.getActivity();
@@ -287,6 +297,18 @@ public class SettingsPreferences extends PreferenceActivity {
                             FileManagerSettings.SETTINGS_COMPUTE_FOLDER_STATISTICS.getId());
             this.mComputeFolderStatistics.setOnPreferenceChangeListener(this.mOnChangeListener);
 
+            // File operations concurrency
+            this.mFileOperationsConcurrency =
+                    (ListPreference)findPreference(
+                            FileManagerSettings.SETTINGS_FILE_OPERATIONS_CONCURRENCY.getId());
+            this.mFileOperationsConcurrency.setOnPreferenceChangeListener(this.mOnChangeListener);
+            defaultValue = ((ObjectStringIdentifier)FileManagerSettings.
+                                SETTINGS_FILE_OPERATIONS_CONCURRENCY.getDefaultValue()).getId();
+            value = Preferences.getSharedPreferences().getString(
+                                FileManagerSettings.SETTINGS_FILE_OPERATIONS_CONCURRENCY.getId(),
+                                defaultValue);
+            this.mOnChangeListener.onPreferenceChange(this.mFileOperationsConcurrency, value);
+
             // Use flinger
 //            this.mUseFlinger =
 //                    (CheckBoxPreference)findPreference(
@@ -327,6 +349,7 @@ public class SettingsPreferences extends PreferenceActivity {
         private static final String REMOVE_SEARCH_TERMS_KEY =
                                             "cm_filemanager_remove_saved_search_terms"; //$NON-NLS-1$
 
+        private CheckBoxPreference mSearchContent;
         private CheckBoxPreference mHighlightTerms;
         private CheckBoxPreference mShowRelevanceWidget;
         private ListPreference mSortSearchResultMode;
@@ -414,6 +437,12 @@ public class SettingsPreferences extends PreferenceActivity {
             // Add the preferences
             addPreferencesFromResource(R.xml.preferences_search);
 
+            // Search inside files
+            this.mSearchContent =
+                    (CheckBoxPreference)findPreference(
+                            FileManagerSettings.SETTINGS_SEARCH_CONTENT.getId());
+            this.mSearchContent.setOnPreferenceChangeListener(this.mOnChangeListener);
+
             // Highlight terms
             this.mHighlightTerms =
                     (CheckBoxPreference)findPreference(
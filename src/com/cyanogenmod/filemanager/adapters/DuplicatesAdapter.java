@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.adapters;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.ui.IconHolder;
+import com.cyanogenmod.filemanager.ui.ThemeManager;
+import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An adapter for display groups of duplicate files. Every group is displayed as a
+ * header followed by its files, and the groups that waste more space are displayed
+ * first.
+ */
+public class DuplicatesAdapter extends BaseAdapter {
+
+    /**
+     * A class that conforms with the ViewHolder pattern to performance
+     * the list view rendering.
+     */
+    private static class ViewHolder {
+        /**
+         * @hide
+         */
+        public ViewHolder() {
+            super();
+        }
+        ImageView mIvIcon;
+        TextView mTvName;
+        TextView mTvParentDir;
+        View mWgRelevance;
+    }
+
+    private static final int VIEW_TYPE_GROUP = 0;
+    private static final int VIEW_TYPE_FILE = 1;
+
+    //The resource of the group title
+    private static final int RESOURCE_GROUP_TITLE = R.id.duplicates_group_item_title;
+    //The resource of the item icon
+    private static final int RESOURCE_ITEM_ICON = R.id.search_item_icon;
+    //The resource of the item name
+    private static final int RESOURCE_ITEM_NAME = R.id.search_item_name;
+    //The resource of the item path
+    private static final int RESOURCE_ITEM_PARENT_DIR = R.id.search_item_parent_dir;
+    //The resource of the item relevance
+    private static final int RESOURCE_ITEM_RELEVANCE = R.id.search_item_relevance;
+
+    private final Context mContext;
+    private IconHolder mIconHolder;
+    // The groups, the ones that waste more space first
+    private final List<DuplicateGroup> mGroups;
+    // The rows: the groups and their files
+    private final List<Object> mRows;
+
+    /**
+     * Constructor of <code>DuplicatesAdapter</code>.
+     *
+     * @param context The current context
+     */
+    public DuplicatesAdapter(Context context) {
+        super();
+        this.mContext = context;
+        this.mIconHolder = new IconHolder();
+        this.mGroups = new ArrayList<DuplicateGroup>();
+        this.mRows = new ArrayList<Object>();
+    }
+
+    /**
+     * Method that adds a group of duplicates, or replaces the group with the same
+     * identifier (a group that grew).
+     *
+     * @param group The group
+     */
+    public void addGroup(DuplicateGroup group) {
+        removeGroup(group.getId());
+        if (group.hasDuplicates()) {
+            // Binary search of the upper bound of the wasted space
+            long wasted = group.getWastedSpace();
+            int low = 0;
+            int high = this.mGroups.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.mGroups.get(mid).getWastedSpace() >= wasted) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            this.mGroups.add(low, group);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Method that removes a file from its group. A group without duplicates
+     * is removed.
+     *
+     * @param fso The file
+     * @return boolean If the file was removed
+     */
+    public boolean removeFile(FileSystemObject fso) {
+        int cc = this.mGroups.size();
+        for (int i = 0; i < cc; i++) {
+            DuplicateGroup group = this.mGroups.get(i);
+            if (group.removeFile(fso.getFullPath())) {
+                // Reposition the group (it wastes less space now)
+                this.mGroups.remove(i);
+                addGroup(group);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that returns the groups of duplicates.
+     *
+     * @return List<DuplicateGroup> The groups of duplicates
+     */
+    public List<DuplicateGroup> getGroups() {
+        return new ArrayList<DuplicateGroup>(this.mGroups);
+    }
+
+    /**
+     * Method that returns the space wasted by all the groups.
+     *
+     * @return long The wasted space
+     */
+    public long getWastedSpace() {
+        long wasted = 0;
+        int cc = this.mGroups.size();
+        for (int i = 0; i < cc; i++) {
+            wasted += this.mGroups.get(i).getWastedSpace();
+        }
+        return wasted;
+    }
+
+    /**
+     * Method that dispose the elements of the adapter.
+     */
+    public void dispose() {
+        this.mGroups.clear();
+        this.mRows.clear();
+        this.mIconHolder = null;
+    }
+
+    /**
+     * Method that removes a group.
+     *
+     * @param id The identifier of the group
+     */
+    private void removeGroup(String id) {
+        int cc = this.mGroups.size();
+        for (int i = 0; i < cc; i++) {
+            if (this.mGroups.get(i).getId().compareTo(id) == 0) {
+                this.mGroups.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        this.mRows.clear();
+        int cc = this.mGroups.size();
+        for (int i = 0; i < cc; i++) {
+            DuplicateGroup group = this.mGroups.get(i);
+            this.mRows.add(group);
+            this.mRows.addAll(group.getFiles());
+        }
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCount() {
+        return this.mRows.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getItem(int position) {
+        return this.mRows.get(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getViewTypeCount() {
+        return 2;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getItemViewType(int position) {
+        return this.mRows.get(position) instanceof DuplicateGroup
+                ? VIEW_TYPE_GROUP
+                : VIEW_TYPE_FILE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean areAllItemsEnabled() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEnabled(int position) {
+        return getItemViewType(position) == VIEW_TYPE_FILE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        Theme theme = ThemeManager.getCurrentTheme(this.mContext);
+        LayoutInflater li =
+                (LayoutInflater)this.mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        Object item = this.mRows.get(position);
+
+        // The header of a group
+        if (item instanceof DuplicateGroup) {
+            DuplicateGroup group = (DuplicateGroup)item;
+            TextView v = (TextView)convertView;
+            if (v == null) {
+                v = (TextView)li.inflate(R.layout.duplicates_group_item, parent, false);
+                theme.setTextColor(this.mContext, v, "text_color"); //$NON-NLS-1$
+            }
+            v.setText(this.mContext.getString(
+                    R.string.duplicates_group,
+                    Integer.valueOf(group.getFiles().size()),
+                    FileHelper.getHumanReadableSize(group.getSize())));
+            return v;
+        }
+
+        //Check to reuse view
+        View v = convertView;
+        if (v == null) {
+            //Create the view holder
+            v = li.inflate(R.layout.search_item, parent, false);
+            ViewHolder viewHolder = new DuplicatesAdapter.ViewHolder();
+            viewHolder.mIvIcon = (ImageView)v.findViewById(RESOURCE_ITEM_ICON);
+            viewHolder.mTvName = (TextView)v.findViewById(RESOURCE_ITEM_NAME);
+            viewHolder.mTvParentDir = (TextView)v.findViewById(RESOURCE_ITEM_PARENT_DIR);
+            viewHolder.mWgRelevance = v.findViewById(RESOURCE_ITEM_RELEVANCE);
+            viewHolder.mWgRelevance.setVisibility(View.GONE);
+            v.setTag(viewHolder);
+
+            // Apply the current theme
+            theme.setBackgroundDrawable(
+                    this.mContext, v, "selectors_deselected_drawable"); //$NON-NLS-1$
+            theme.setTextColor(
+                    this.mContext, viewHolder.mTvName, "text_color"); //$NON-NLS-1$
+            theme.setTextColor(
+                    this.mContext, viewHolder.mTvParentDir, "text_color"); //$NON-NLS-1$
+        }
+
+        //Set the data
+        FileSystemObject fso = (FileSystemObject)item;
+        ViewHolder viewHolder = (ViewHolder)v.getTag();
+        viewHolder.mIvIcon.setImageDrawable(
+                this.mIconHolder.getDrawable(
+                        this.mContext, MimeTypeHelper.getIcon(this.mContext, fso)));
+        viewHolder.mTvName.setText(fso.getName());
+        viewHolder.mTvParentDir.setText(fso.getParent());
+
+        //Return the view
+        return v;
+    }
+}
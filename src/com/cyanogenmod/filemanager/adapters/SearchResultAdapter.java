@@ -26,6 +26,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.CompiledQuery;
+import com.cyanogenmod.filemanager.model.ContentMatch;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
@@ -40,6 +42,7 @@ import com.cyanogenmod.filemanager.util.SearchHelper;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -81,14 +84,16 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
     }
 
 
-    private DataHolder[] mData;
+    // Lazily built data holders (in the same position that the items of the adapter)
+    private List<DataHolder> mData;
+    private int mHighlightedColor;
     private IconHolder mIconHolder;
     private final int mItemViewResourceId;
 
     private final boolean mHighlightTerms;
     private final boolean mShowRelevanceWidget;
 
-    private final List<String> mQueries;
+    private final CompiledQuery mQuery;
 
     //The resource of the item icon
     private static final int RESOURCE_ITEM_ICON = R.id.search_item_icon;
@@ -113,7 +118,7 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
         super(context, RESOURCE_ITEM_NAME, files);
         this.mIconHolder = new IconHolder();
         this.mItemViewResourceId = itemViewResourceId;
-        this.mQueries = queries.getQueries();
+        this.mQuery = new CompiledQuery(queries);
 
         // Load settings
         this.mHighlightTerms = Preferences.getSharedPreferences().getBoolean(
@@ -127,7 +132,7 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
 
         //Do cache of the data for better performance
         loadDefaultIcons();
-        processData(files);
+        processData();
     }
 
     /**
@@ -143,7 +148,46 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
      */
     @Override
     public void notifyDataSetChanged() {
-        processData(null);
+        processData();
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Method that merges a batch of new results into the adapter. If a comparator is
+     * passed, the adapter data is expected to be sorted with it, and every result
+     * is inserted in its sorted position (after the equal results), so the adapter
+     * remains sorted while new results arrive. Otherwise, results are appended.<br/>
+     * <br/>
+     * Only the new items are inserted; the data of the existing items is not rebuilt.
+     *
+     * @param results The new results
+     * @param comparator The comparator of the sort mode, or null if unsorted
+     */
+    public void addResults(List<SearchResult> results, Comparator<SearchResult> comparator) {
+        setNotifyOnChange(false);
+        int cc = results.size();
+        for (int i = 0; i < cc; i++) {
+            SearchResult result = results.get(i);
+            int pos = getCount();
+            if (comparator != null) {
+                // Binary search of the upper bound of the result
+                int low = 0;
+                int high = pos;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (comparator.compare(getItem(mid), result) <= 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                pos = low;
+            }
+            insert(result, pos);
+            this.mData.add(pos, null);
+        }
+
+        // Notify the changes without invalidating the data of the existing items
         super.notifyDataSetChanged();
     }
 
@@ -157,41 +201,64 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
     }
 
     /**
-     * Method that process the data before use {@link #getView} method.
-     *
-     * @param files The list of files (to better performance) or null.
+     * Method that invalidates the data of the items. Data is built again
+     * when an item is displayed by {@link #getView} method.
      */
-    private void processData(List<SearchResult> files) {
+    private void processData() {
         Theme theme = ThemeManager.getCurrentTheme(getContext());
-        int highlightedColor =
+        this.mHighlightedColor =
                 theme.getColor(getContext(), "search_highlight_color"); //$NON-NLS-1$
 
-        this.mData = new DataHolder[getCount()];
-        int cc = (files == null) ? getCount() : files.size();
+        int cc = getCount();
+        this.mData = new ArrayList<DataHolder>(cc);
         for (int i = 0; i < cc; i++) {
+            this.mData.add(null);
+        }
+    }
+
+    /**
+     * Method that returns the data of an item, building it the first time.
+     *
+     * @param position The position of the item
+     * @return DataHolder The data of the item
+     */
+    private DataHolder getDataHolder(int position) {
+        DataHolder dataHolder = this.mData.get(position);
+        if (dataHolder == null) {
             //File system object info
-            SearchResult result = (files == null) ? getItem(i) : files.get(i);
+            SearchResult result = getItem(position);
 
             //Build the data holder
-            this.mData[i] = new SearchResultAdapter.DataHolder();
-            this.mData[i].mDwIcon =
+            dataHolder = new SearchResultAdapter.DataHolder();
+            dataHolder.mDwIcon =
                     this.mIconHolder.getDrawable(
                             getContext(), MimeTypeHelper.getIcon(getContext(), result.getFso()));
             if (this.mHighlightTerms) {
-                this.mData[i].mName =
-                        SearchHelper.getHighlightedName(result, this.mQueries, highlightedColor);
+                dataHolder.mName =
+                        SearchHelper.getHighlightedName(
+                                result, this.mQuery, this.mHighlightedColor);
+            } else {
+                dataHolder.mName = SearchHelper.getNonHighlightedName(result);
+            }
+            ContentMatch match = result.getContentMatch();
+            if (match != null) {
+                // Show where the terms were found inside the file
+                dataHolder.mParentDir = getContext().getString(
+                        R.string.search_content_match,
+                        Integer.valueOf(match.getLineNumber()), match.getLine());
             } else {
-                this.mData[i].mName = SearchHelper.getNonHighlightedName(result);
+                dataHolder.mParentDir = new File(result.getFso().getFullPath()).getParent();
             }
-            this.mData[i].mParentDir = new File(result.getFso().getFullPath()).getParent();
             if (this.mShowRelevanceWidget) {
-                this.mData[i].mRelevance =
+                dataHolder.mRelevance =
                         Float.valueOf(
                                 (float)(result.getRelevance() * 100) / SearchResult.MAX_RELEVANCE);
             } else {
-                this.mData[i].mRelevance = null;
+                dataHolder.mRelevance = null;
             }
+            this.mData.set(position, dataHolder);
         }
+        return dataHolder;
     }
 
     /**
@@ -258,7 +325,7 @@ public class SearchResultAdapter extends ArrayAdapter<SearchResult> {
         }
 
         //Retrieve data holder
-        final DataHolder dataHolder = this.mData[position];
+        final DataHolder dataHolder = getDataHolder(position);
 
         //Retrieve the view holder
         ViewHolder viewHolder = (ViewHolder)v.getTag();
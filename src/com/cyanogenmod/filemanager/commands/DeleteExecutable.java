@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+import java.util.List;
+
+/**
+ * An interface that represents an executable for delete a batch of files and directories
+ * in background, reporting every deleted item.<br/>
+ * <br/>
+ * Every deleted item is returned as a partial result (the absolute path of the item).
+ */
+public interface DeleteExecutable extends AsyncResultExecutable {
+
+    /**
+     * Method that returns the result of the operation
+     *
+     * @return Boolean The result of the operation
+     */
+    Boolean getResult();
+
+    /**
+     * Method that returns the items that still exist after the operation.
+     *
+     * @return List<String> The absolute paths of the items not deleted
+     */
+    List<String> getFailed();
+}
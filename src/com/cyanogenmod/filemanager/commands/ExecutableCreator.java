@@ -26,6 +26,7 @@ import com.cyanogenmod.filemanager.model.Permissions;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.util.TransferJournal;
 
 /**
  * A interface that defines methods for create {@link Executable} objects.
@@ -77,6 +78,23 @@ public interface ExecutableCreator {
             String fso, Permissions newPermissions) throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for compute the checksums (MD5, SHA-1 and
+     * SHA-256) of a file.
+     *
+     * @param file The absolute path to the file
+     * @param asyncResultListener The listener where to return partial results
+     * @return ChecksumExecutable A {@link ChecksumExecutable} executable implementation
+     * reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    ChecksumExecutable createChecksumExecutable(
+            String file, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for copy a file system object to
      * other file system object.
@@ -91,6 +109,27 @@ public interface ExecutableCreator {
     CopyExecutable createCopyExecutable(String src, String dst) throws CommandNotFoundException,
     NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for copy a file system object to
+     * other file system object in background, reporting the progress of the copy.
+     *
+     * @param src The absolute path to the source file system object
+     * @param dst The absolute path to the destination file system object
+     * @param journal The journal where to record the copied files, or null to not resume
+     * the operation
+     * @param asyncResultListener The listener where to return the progress
+     * @return TransferExecutable A {@link TransferExecutable} executable implementation
+     * reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    TransferExecutable createCopyExecutable(
+            String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for create a new directory.
      *
@@ -156,6 +195,22 @@ public interface ExecutableCreator {
     DeleteFileExecutable createDeleteFileExecutable(String file) throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for delete a batch of files and directories
+     * in background.
+     *
+     * @param items The absolute paths to the files and directories to be deleted
+     * @param asyncResultListener The listener where to return partial results
+     * @return DeleteExecutable A {@link DeleteExecutable} executable implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    DeleteExecutable createDeleteExecutable(
+            String[] items, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for retrieve the disk usage.
      * for all filesystems
@@ -226,6 +281,24 @@ public interface ExecutableCreator {
             throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for make searches of text inside the files
+     * of the filesystem.
+     *
+     * @param directory The directory where to search
+     * @param query The term of the query
+     * @param asyncResultListener The listener where to return partial results
+     * @return FindContentExecutable A {@link FindContentExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    FindContentExecutable createFindContentExecutable(
+            String directory, Query query, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for compute the disk usage of a folder.
      *
@@ -242,6 +315,40 @@ public interface ExecutableCreator {
             throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for analyze the storage used by a folder.
+     *
+     * @param directory The directory to analyze
+     * @param top The number of largest files and folders to return
+     * @param asyncResultListener The listener where to return partial results
+     * @return StorageAnalysisExecutable A {@link StorageAnalysisExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    StorageAnalysisExecutable createStorageAnalysisExecutable(
+            String directory, int top, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
+    /**
+     * Method that creates an executable for find the files with the same content
+     * in a folder.
+     *
+     * @param directory The directory where to find the duplicates
+     * @param asyncResultListener The listener where to return partial results
+     * @return DuplicatesExecutable A {@link DuplicatesExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    DuplicatesExecutable createDuplicatesExecutable(
+            String directory, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for retrieve the groups of the current user.
      *
@@ -348,6 +455,27 @@ public interface ExecutableCreator {
     MoveExecutable createMoveExecutable(String src, String dst) throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for move a file system object to
+     * other file system object in background, reporting the progress of the move.
+     *
+     * @param src The absolute path to the source file system object
+     * @param dst The absolute path to the destination file system object
+     * @param journal The journal where to record the copied files, or null to not resume
+     * the operation
+     * @param asyncResultListener The listener where to return the progress
+     * @return TransferExecutable A {@link TransferExecutable} executable implementation
+     * reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    TransferExecutable createMoveExecutable(
+            String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for retrieve the parent directory
      * of a file system object.
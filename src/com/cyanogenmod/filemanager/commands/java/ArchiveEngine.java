@@ -0,0 +1,1079 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.preferences.UncompressionMode;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A class for create and extract archives and compressed files in the java
+ * console.<br/>
+ * <br/>
+ * The archives are tar archives (ustar, with the GNU extension for long names),
+ * plain or compressed with gzip ({@link ParallelGzipOutputStream} and
+ * {@link MultiMemberGzipInputStream}) or bzip2 ({@link BZip2OutputStream} and
+ * {@link BZip2InputStream}), and zip archives (only extracted). Everything is
+ * streamed, so an entry is never held in memory. The compressed files (a single
+ * file compressed with gzip or bzip2) replace its source, as <code>gzip</code> and
+ * <code>gunzip</code> do.<br/>
+ * <br/>
+ * The entries that would be extracted out of the destination folder are ignored.
+ * Symbolic links are archived as links, but aren't extracted, because the java
+ * console can't create them.
+ */
+public class ArchiveEngine {
+
+    private static final String TAG = "ArchiveEngine"; //$NON-NLS-1$
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The tar format
+    private static final int TAR_BLOCK = 512;
+    private static final int TAR_RECORD = 20 * TAR_BLOCK;
+    private static final int NAME_LEN = 100;
+    private static final int PREFIX_LEN = 155;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_OLD_FILE = 0;
+    private static final byte TYPE_HARDLINK = '1';
+    private static final byte TYPE_SYMLINK = '2';
+    private static final byte TYPE_DIRECTORY = '5';
+    private static final byte TYPE_CONTIGUOUS = '7';
+    private static final byte TYPE_PAX = 'x';
+    private static final byte TYPE_PAX_GLOBAL = 'g';
+    private static final byte TYPE_LONG_NAME = 'L';
+    private static final byte TYPE_LONG_LINK = 'K';
+    private static final String LONG_LINK = "././@LongLink"; //$NON-NLS-1$
+    private static final String UTF8 = "UTF-8"; //$NON-NLS-1$
+
+    private final byte[] mBuffer;
+    private long mTarLength;
+
+    /**
+     * Constructor of <code>ArchiveEngine</code>.
+     */
+    public ArchiveEngine() {
+        super();
+        this.mBuffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Method that returns the uncompression mode of a file, if the engine supports it.
+     *
+     * @param file The compressed file
+     * @return UncompressionMode The uncompression mode, or null if the file isn't
+     * supported
+     */
+    public static UncompressionMode getUncompressionMode(String file) {
+        String ext = FileHelper.getExtension(new File(file).getName());
+        if (ext == null) {
+            return null;
+        }
+        UncompressionMode[] modes = UncompressionMode.values();
+        for (int i = 0; i < modes.length; i++) {
+            if (modes[i].mExtension.compareToIgnoreCase(ext) != 0) {
+                continue;
+            }
+            switch (modes[i]) {
+                case A_UNTAR:
+                case A_UNZIP:
+                case AC_GUNZIP:
+                case AC_GUNZIP2:
+                case AC_BUNZIP:
+                case C_GUNZIP:
+                case C_BUNZIP:
+                    return modes[i];
+                default:
+                    // lzma, xz and compress aren't supported
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that creates an archive of files and folders. The names of the entries
+     * are relative to the folder of the archive.
+     *
+     * @param mode The compression mode (an archive mode)
+     * @param dst The archive
+     * @param src The files and folders to archive
+     * @return boolean If the operation wasn't aborted. The archived entries are
+     * notified through {@link #onEntry(String)}
+     * @throws IOException If the archive can't be created
+     */
+    public boolean archive(CompressionMode mode, File dst, File[] src) throws IOException {
+        File parent = dst.getAbsoluteFile().getParentFile();
+        String root = parent == null ? File.separator : parent.getAbsolutePath();
+        String archive = dst.getCanonicalPath();
+
+        boolean completed = false;
+        OutputStream out = null;
+        try {
+            out = openCompressor(mode,
+                    new BufferedOutputStream(new FileOutputStream(dst), BUFFER_SIZE));
+            this.mTarLength = 0;
+            for (int i = 0; i < src.length; i++) {
+                if (!writeEntry(out, src[i], getEntryName(src[i], root), archive)) {
+                    return false;
+                }
+            }
+
+            // The end of the archive: two empty blocks, and the rest of the record
+            byte[] zeros = new byte[TAR_BLOCK];
+            writeTar(out, zeros, 0, TAR_BLOCK);
+            writeTar(out, zeros, 0, TAR_BLOCK);
+            while (this.mTarLength % TAR_RECORD != 0) {
+                writeTar(out, zeros, 0, TAR_BLOCK);
+            }
+            out.close();
+            completed = true;
+        } finally {
+            if (!completed) {
+                closeQuietly(out);
+                if (!dst.delete()) {
+                    Log.w(TAG, String.format("Failed to delete %s", dst)); //$NON-NLS-1$
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that compresses a file. The compressed file replaces the source.
+     *
+     * @param mode The compression mode (a compressed file mode)
+     * @param src The file to compress
+     * @param dst The compressed file
+     * @return boolean If the operation wasn't aborted. The compressed file is
+     * notified through {@link #onEntry(String)}
+     * @throws IOException If the file can't be compressed
+     */
+    public boolean compress(CompressionMode mode, File src, File dst) throws IOException {
+        boolean completed = false;
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(src);
+            out = openCompressor(mode,
+                    new BufferedOutputStream(new FileOutputStream(dst), BUFFER_SIZE));
+            int read;
+            while ((read = in.read(this.mBuffer)) != -1) {
+                if (isAborted()) {
+                    return false;
+                }
+                out.write(this.mBuffer, 0, read);
+            }
+            out.close();
+            completed = true;
+        } finally {
+            closeQuietly(in);
+            if (!completed) {
+                closeQuietly(out);
+                if (!dst.delete()) {
+                    Log.w(TAG, String.format("Failed to delete %s", dst)); //$NON-NLS-1$
+                }
+            }
+        }
+
+        if (!dst.setLastModified(src.lastModified())) {
+            Log.w(TAG, String.format("Failed to set the time of %s", dst)); //$NON-NLS-1$
+        }
+        if (!src.delete()) {
+            Log.w(TAG, String.format("Failed to delete %s", src)); //$NON-NLS-1$
+        }
+        onEntry(src.getName());
+        return true;
+    }
+
+    /**
+     * Method that extracts an archive in a folder, or uncompresses a compressed file.
+     * The uncompressed file replaces the compressed file.
+     *
+     * @param mode The uncompression mode
+     * @param src The archive or the compressed file
+     * @param dst The folder where extract the archive, or the uncompressed file
+     * @return boolean If the operation wasn't aborted. The extracted entries are
+     * notified through {@link #onEntry(String)}
+     * @throws IOException If the file can't be uncompressed
+     */
+    public boolean uncompress(UncompressionMode mode, File src, File dst) throws IOException {
+        if (mode.mArchive) {
+            if (!dst.isDirectory() && !dst.mkdirs()) {
+                throw new IOException(String.format(
+                        "Failed to create %s", dst)); //$NON-NLS-1$
+            }
+        }
+
+        boolean completed = false;
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(src), BUFFER_SIZE);
+            if (mode.compareTo(UncompressionMode.A_UNZIP) == 0) {
+                completed = readZip(in, dst);
+                return completed;
+            }
+            in = openDecompressor(mode, in);
+            if (mode.mArchive) {
+                completed = readTar(in, dst);
+                return completed;
+            }
+
+            // A compressed file
+            completed = writeFile(in, dst, -1);
+            if (!completed) {
+                return false;
+            }
+        } finally {
+            closeQuietly(in);
+            if (!completed && !mode.mArchive && dst.exists() && !dst.delete()) {
+                Log.w(TAG, String.format("Failed to delete %s", dst)); //$NON-NLS-1$
+            }
+        }
+
+        if (!dst.setLastModified(src.lastModified())) {
+            Log.w(TAG, String.format("Failed to set the time of %s", dst)); //$NON-NLS-1$
+        }
+        if (!src.delete()) {
+            Log.w(TAG, String.format("Failed to delete %s", src)); //$NON-NLS-1$
+        }
+        onEntry(dst.getName());
+        return true;
+    }
+
+    /**
+     * Method invoked after every archived, compressed or extracted entry.
+     *
+     * @param name The name of the entry
+     */
+    protected void onEntry(String name) {
+        /**NON BLOCK**/
+    }
+
+    /**
+     * Method that returns if the operation must be aborted. Checked before every
+     * entry and every buffer.
+     *
+     * @return boolean If the operation must be aborted
+     */
+    protected boolean isAborted() {
+        return false;
+    }
+
+    /**
+     * Method that writes a file or a folder (recursively) to a tar archive.
+     *
+     * @param out The archive stream
+     * @param file The file or folder
+     * @param name The name of the entry
+     * @param archive The canonical path of the archive (that isn't archived)
+     * @return boolean If the operation wasn't aborted
+     * @throws IOException If the entry can't be written
+     */
+    private boolean writeEntry(OutputStream out, File file, String name, String archive)
+            throws IOException {
+        if (isAborted()) {
+            return false;
+        }
+        long time = Math.max(0, file.lastModified() / 1000L);
+        if (isSymlink(file)) {
+            writeHeader(out, name, TYPE_SYMLINK, 0777, 0, time, file.getCanonicalPath());
+            onEntry(name);
+            return true;
+        }
+        if (file.isDirectory()) {
+            String dir = name + File.separator;
+            writeHeader(out, dir, TYPE_DIRECTORY, 0755, 0, time, null);
+            onEntry(dir);
+            File[] files = file.listFiles();
+            if (files == null) {
+                Log.w(TAG, String.format("Can't list %s", file)); //$NON-NLS-1$
+                return true;
+            }
+            for (int i = 0; i < files.length; i++) {
+                if (!writeEntry(out, files[i], dir + files[i].getName(), archive)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!file.isFile()) {
+            Log.w(TAG, String.format("%s: not a regular file; not dumped", file)); //$NON-NLS-1$
+            return true;
+        }
+        if (file.getCanonicalPath().compareTo(archive) == 0) {
+            Log.w(TAG, String.format("%s: file is the archive; not dumped", file)); //$NON-NLS-1$
+            return true;
+        }
+
+        long size = file.length();
+        writeHeader(out, name, TYPE_FILE, file.canExecute() ? 0755 : 0644, size, time, null);
+        InputStream in = new FileInputStream(file);
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                if (isAborted()) {
+                    return false;
+                }
+                int read = in.read(this.mBuffer, 0, (int)Math.min(this.mBuffer.length, remaining));
+                if (read == -1) {
+                    // The file shrank. Pad it with zeros (as tar does)
+                    Log.w(TAG, String.format("%s: file shrank", file)); //$NON-NLS-1$
+                    byte[] zeros = new byte[TAR_BLOCK];
+                    while (remaining > 0) {
+                        int count = (int)Math.min(zeros.length, remaining);
+                        writeTar(out, zeros, 0, count);
+                        remaining -= count;
+                    }
+                    break;
+                }
+                writeTar(out, this.mBuffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            closeQuietly(in);
+        }
+        writePadding(out);
+        onEntry(name);
+        return true;
+    }
+
+    /**
+     * Method that writes the header of an entry of a tar archive. Names that don't fit
+     * in the ustar header are written in a GNU long name entry.
+     *
+     * @param out The archive stream
+     * @param name The name of the entry
+     * @param type The type of the entry
+     * @param mode The permissions of the entry
+     * @param size The size of the data of the entry
+     * @param time The modification time of the entry, in seconds
+     * @param link The target of a link entry (may be null)
+     * @throws IOException If the header can't be written
+     */
+    private void writeHeader(OutputStream out, String name, byte type, int mode,
+            long size, long time, String link) throws IOException {
+        byte[] n = name.getBytes(UTF8);
+        byte[] prefix = null;
+        if (n.length > NAME_LEN) {
+            // Split the name in the prefix, or write a long name entry
+            int split = -1;
+            for (int i = n.length - 2; i > 0; i--) {
+                if (n[i] == '/' && i <= PREFIX_LEN && n.length - i - 1 <= NAME_LEN) {
+                    split = i;
+                    break;
+                }
+                if (n.length - i - 1 > NAME_LEN) {
+                    break;
+                }
+            }
+            if (split > 0) {
+                prefix = new byte[split];
+                System.arraycopy(n, 0, prefix, 0, split);
+                byte[] tmp = new byte[n.length - split - 1];
+                System.arraycopy(n, split + 1, tmp, 0, tmp.length);
+                n = tmp;
+            } else {
+                writeLongName(out, TYPE_LONG_NAME, n);
+            }
+        }
+        byte[] l = link == null ? new byte[0] : link.getBytes(UTF8);
+        if (l.length > NAME_LEN) {
+            writeLongName(out, TYPE_LONG_LINK, l);
+        }
+
+        byte[] header = new byte[TAR_BLOCK];
+        System.arraycopy(n, 0, header, 0, Math.min(n.length, NAME_LEN));
+        putNumber(header, 100, 8, mode);
+        putNumber(header, 108, 8, 0);
+        putNumber(header, 116, 8, 0);
+        putNumber(header, 124, 12, size);
+        putNumber(header, 136, 12, time);
+        header[156] = type;
+        System.arraycopy(l, 0, header, 157, Math.min(l.length, NAME_LEN));
+        System.arraycopy("ustar\00000".getBytes(UTF8), 0, header, 257, 8); //$NON-NLS-1$
+        if (prefix != null) {
+            System.arraycopy(prefix, 0, header, 345, prefix.length);
+        }
+        putChecksum(header);
+        writeTar(out, header, 0, TAR_BLOCK);
+    }
+
+    /**
+     * Method that writes a GNU long name (or long link) entry.
+     *
+     * @param out The archive stream
+     * @param type The type of the entry
+     * @param name The long name
+     * @throws IOException If the entry can't be written
+     */
+    private void writeLongName(OutputStream out, byte type, byte[] name) throws IOException {
+        byte[] header = new byte[TAR_BLOCK];
+        byte[] n = LONG_LINK.getBytes(UTF8);
+        System.arraycopy(n, 0, header, 0, n.length);
+        putNumber(header, 100, 8, 0);
+        putNumber(header, 108, 8, 0);
+        putNumber(header, 116, 8, 0);
+        putNumber(header, 124, 12, name.length + 1);
+        putNumber(header, 136, 12, 0);
+        header[156] = type;
+        System.arraycopy("ustar\00000".getBytes(UTF8), 0, header, 257, 8); //$NON-NLS-1$
+        putChecksum(header);
+        writeTar(out, header, 0, TAR_BLOCK);
+        writeTar(out, name, 0, name.length);
+        writeTar(out, new byte[1], 0, 1);
+        writePadding(out);
+    }
+
+    /**
+     * Method that writes data to the tar archive.
+     *
+     * @param out The archive stream
+     * @param b The data
+     * @param off The offset of the data
+     * @param len The length of the data
+     * @throws IOException If the data can't be written
+     */
+    private void writeTar(OutputStream out, byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        this.mTarLength += len;
+    }
+
+    /**
+     * Method that completes the last block of the tar archive with zeros.
+     *
+     * @param out The archive stream
+     * @throws IOException If the data can't be written
+     */
+    private void writePadding(OutputStream out) throws IOException {
+        int padding = (int)((TAR_BLOCK - (this.mTarLength % TAR_BLOCK)) % TAR_BLOCK);
+        if (padding > 0) {
+            writeTar(out, new byte[padding], 0, padding);
+        }
+    }
+
+    /**
+     * Method that extracts a tar archive.
+     *
+     * @param in The archive stream
+     * @param dst The folder where extract the archive
+     * @return boolean If the operation wasn't aborted
+     * @throws IOException If the archive can't be extracted
+     */
+    private boolean readTar(InputStream in, File dst) throws IOException {
+        String root = dst.getCanonicalPath();
+        List<File> folders = new ArrayList<File>();
+        List<Long> times = new ArrayList<Long>();
+        byte[] header = new byte[TAR_BLOCK];
+        String longName = null;
+        String longLink = null;
+        String paxName = null;
+        String paxLink = null;
+        long paxSize = -1;
+        while (true) {
+            if (isAborted()) {
+                return false;
+            }
+            if (!readBlock(in, header) || isEmptyBlock(header)) {
+                // The end of the archive
+                break;
+            }
+            if (!isValidChecksum(header)) {
+                throw new IOException("Invalid tar header"); //$NON-NLS-1$
+            }
+            byte type = header[156];
+            long size = getNumber(header, 124, 12);
+
+            // Extended headers of the next entry
+            if (type == TYPE_LONG_NAME || type == TYPE_LONG_LINK) {
+                String s = readString(in, size);
+                if (type == TYPE_LONG_NAME) {
+                    longName = s;
+                } else {
+                    longLink = s;
+                }
+                continue;
+            }
+            if (type == TYPE_PAX) {
+                String[] records = readString(in, size).split("\n"); //$NON-NLS-1$
+                for (int i = 0; i < records.length; i++) {
+                    // "<length> <key>=<value>"
+                    int sp = records[i].indexOf(' ');
+                    int eq = records[i].indexOf('=');
+                    if (sp == -1 || eq < sp) {
+                        continue;
+                    }
+                    String key = records[i].substring(sp + 1, eq);
+                    String value = records[i].substring(eq + 1);
+                    if (key.compareTo("path") == 0) { //$NON-NLS-1$
+                        paxName = value;
+                    } else if (key.compareTo("linkpath") == 0) { //$NON-NLS-1$
+                        paxLink = value;
+                    } else if (key.compareTo("size") == 0) { //$NON-NLS-1$
+                        try {
+                            paxSize = Long.parseLong(value);
+                        } catch (NumberFormatException e) {/**NON BLOCK**/}
+                    }
+                }
+                continue;
+            }
+            if (type == TYPE_PAX_GLOBAL) {
+                skip(in, size + getPadding(size));
+                continue;
+            }
+
+            String name = paxName != null ? paxName : longName;
+            if (name == null) {
+                name = getString(header, 0, NAME_LEN);
+                String prefix = getString(header, 345, PREFIX_LEN);
+                if (isUstar(header) && prefix.length() > 0) {
+                    name = prefix + File.separator + name;
+                }
+            }
+            String link = paxLink != null ? paxLink : longLink;
+            if (link == null) {
+                link = getString(header, 157, NAME_LEN);
+            }
+            if (paxSize >= 0) {
+                size = paxSize;
+            }
+            longName = null;
+            longLink = null;
+            paxName = null;
+            paxLink = null;
+            paxSize = -1;
+            int mode = (int)getNumber(header, 100, 8);
+            long time = getNumber(header, 136, 12) * 1000L;
+
+            File file = resolve(root, name);
+            if (file == null) {
+                Log.w(TAG, String.format("%s: unsafe path; not extracted", name)); //$NON-NLS-1$
+                skip(in, size + getPadding(size));
+                continue;
+            }
+            long data = size;
+            boolean folder = type == TYPE_DIRECTORY
+                    || (type == TYPE_OLD_FILE && name.endsWith(File.separator));
+            if (folder) {
+                if (!file.isDirectory() && !file.mkdirs()) {
+                    throw new IOException(String.format(
+                            "Failed to create %s", file)); //$NON-NLS-1$
+                }
+                folders.add(file);
+                times.add(Long.valueOf(time));
+
+            } else if (type == TYPE_FILE || type == TYPE_OLD_FILE || type == TYPE_CONTIGUOUS) {
+                if (!writeFile(in, file, size)) {
+                    return false;
+                }
+                data = 0;
+                if ((mode & 0111) != 0 && !file.setExecutable(true, false)) {
+                    Log.w(TAG, String.format(
+                            "Failed to set the permissions of %s", file)); //$NON-NLS-1$
+                }
+                if (!file.setLastModified(time)) {
+                    Log.w(TAG, String.format("Failed to set the time of %s", file)); //$NON-NLS-1$
+                }
+
+            } else if (type == TYPE_HARDLINK) {
+                // Copy the linked file (extracted before)
+                File target = resolve(root, link);
+                if (target == null || !target.isFile()) {
+                    Log.w(TAG, String.format("%s: missing link target", name)); //$NON-NLS-1$
+                } else {
+                    InputStream tin = new FileInputStream(target);
+                    try {
+                        if (!writeFile(tin, file, -1)) {
+                            return false;
+                        }
+                    } finally {
+                        closeQuietly(tin);
+                    }
+                }
+
+            } else if (type == TYPE_SYMLINK) {
+                Log.w(TAG, String.format(
+                        "%s: symbolic links aren't supported; not extracted", name)); //$NON-NLS-1$
+
+            } else {
+                Log.w(TAG, String.format(
+                        "%s: unsupported entry type %c; not extracted", //$NON-NLS-1$
+                        name, Character.valueOf((char)type)));
+            }
+            skip(in, data + getPadding(size));
+            onEntry(name);
+        }
+
+        // The content of the folders changed their times
+        for (int i = folders.size() - 1; i >= 0; i--) {
+            if (!folders.get(i).setLastModified(times.get(i).longValue())) {
+                Log.w(TAG, String.format(
+                        "Failed to set the time of %s", folders.get(i))); //$NON-NLS-1$
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that extracts a zip archive.
+     *
+     * @param in The archive stream
+     * @param dst The folder where extract the archive
+     * @return boolean If the operation wasn't aborted
+     * @throws IOException If the archive can't be extracted
+     */
+    private boolean readZip(InputStream in, File dst) throws IOException {
+        String root = dst.getCanonicalPath();
+        List<File> folders = new ArrayList<File>();
+        List<Long> times = new ArrayList<Long>();
+        ZipInputStream zis = new ZipInputStream(in);
+        try {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (isAborted()) {
+                    return false;
+                }
+                String name = entry.getName();
+                File file = resolve(root, name);
+                if (file == null) {
+                    Log.w(TAG, String.format("%s: unsafe path; not extracted", name)); //$NON-NLS-1$
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    if (!file.isDirectory() && !file.mkdirs()) {
+                        throw new IOException(String.format(
+                                "Failed to create %s", file)); //$NON-NLS-1$
+                    }
+                    if (entry.getTime() != -1) {
+                        folders.add(file);
+                        times.add(Long.valueOf(entry.getTime()));
+                    }
+                } else {
+                    if (!writeFile(zis, file, -1)) {
+                        return false;
+                    }
+                    if (entry.getTime() != -1 && !file.setLastModified(entry.getTime())) {
+                        Log.w(TAG, String.format(
+                                "Failed to set the time of %s", file)); //$NON-NLS-1$
+                    }
+                }
+                onEntry(name);
+            }
+        } finally {
+            closeQuietly(zis);
+        }
+
+        // The content of the folders changed their times
+        for (int i = folders.size() - 1; i >= 0; i--) {
+            if (!folders.get(i).setLastModified(times.get(i).longValue())) {
+                Log.w(TAG, String.format(
+                        "Failed to set the time of %s", folders.get(i))); //$NON-NLS-1$
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that writes the data of a stream to a file (overwriting it).
+     *
+     * @param in The stream
+     * @param file The file
+     * @param size The bytes to write, or -1 to write the stream until its end
+     * @return boolean If the operation wasn't aborted
+     * @throws IOException If the file can't be written
+     */
+    private boolean writeFile(InputStream in, File file, long size) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(String.format("Failed to create %s", parent)); //$NON-NLS-1$
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            long remaining = size < 0 ? Long.MAX_VALUE : size;
+            while (remaining > 0) {
+                if (isAborted()) {
+                    return false;
+                }
+                int read = in.read(this.mBuffer, 0, (int)Math.min(this.mBuffer.length, remaining));
+                if (read == -1) {
+                    if (size < 0) {
+                        break;
+                    }
+                    throw new EOFException("Unexpected end of archive"); //$NON-NLS-1$
+                }
+                out.write(this.mBuffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * Method that resolves the file of an entry, checking that it's in the
+     * destination folder.
+     *
+     * @param root The canonical path of the destination folder
+     * @param name The name of the entry
+     * @return File The file of the entry, or null if it's out of the destination folder
+     * @throws IOException If the path can't be resolved
+     */
+    private static File resolve(String root, String name) throws IOException {
+        // Absolute names are relative to the destination (as tar does)
+        String n = name;
+        while (n.startsWith(File.separator)) {
+            n = n.substring(1);
+        }
+        File file = new File(root, n);
+        String path = file.getCanonicalPath();
+        if (path.compareTo(root) != 0 && !path.startsWith(root + File.separator)) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Method that returns the name of the entry of a source file, relative to the
+     * folder of the archive. The leading parent references are removed (as tar does).
+     *
+     * @param file The source file
+     * @param root The folder of the archive
+     * @return String The name of the entry
+     */
+    private static String getEntryName(File file, String root) {
+        String name = FileHelper.toRelativePath(file.getAbsolutePath(), root);
+        String parentRef = ".." + File.separator; //$NON-NLS-1$
+        while (name.startsWith(parentRef)) {
+            name = name.substring(parentRef.length());
+        }
+        while (name.startsWith(File.separator)) {
+            name = name.substring(1);
+        }
+        if (name.length() == 0 || name.compareTo("..") == 0) { //$NON-NLS-1$
+            name = file.getName();
+        }
+        return name;
+    }
+
+    /**
+     * Method that returns if a file is a symbolic link.
+     *
+     * @param file The file
+     * @return boolean If the file is a symbolic link
+     */
+    private static boolean isSymlink(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null) {
+            return false;
+        }
+        try {
+            // Resolve the parent, so only the file itself can be a symlink
+            File f = new File(parent.getCanonicalFile(), file.getName());
+            return f.getCanonicalPath().compareTo(f.getAbsolutePath()) != 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method that opens the compression stream of a mode.
+     *
+     * @param mode The compression mode
+     * @param out The stream of the compressed data
+     * @return OutputStream The compression stream
+     * @throws IOException If the stream can't be opened
+     */
+    private static OutputStream openCompressor(CompressionMode mode, OutputStream out)
+            throws IOException {
+        switch (mode) {
+            case AC_GZIP:
+            case AC_GZIP2:
+            case C_GZIP:
+                return new ParallelGzipOutputStream(out);
+            case AC_BZIP:
+            case C_BZIP:
+                return new BZip2OutputStream(out);
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * Method that opens the decompression stream of a mode.
+     *
+     * @param mode The uncompression mode
+     * @param in The stream of the compressed data
+     * @return InputStream The decompression stream
+     * @throws IOException If the stream can't be opened
+     */
+    private static InputStream openDecompressor(UncompressionMode mode, InputStream in)
+            throws IOException {
+        switch (mode) {
+            case AC_GUNZIP:
+            case AC_GUNZIP2:
+            case C_GUNZIP:
+                return new MultiMemberGzipInputStream(in);
+            case AC_BUNZIP:
+            case C_BUNZIP:
+                return new BZip2InputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Method that reads a block of the tar archive.
+     *
+     * @param in The archive stream
+     * @param block The block
+     * @return boolean If the block was read. false at the end of the stream
+     * @throws IOException If the block can't be read
+     */
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int pos = 0;
+        while (pos < block.length) {
+            int read = in.read(block, pos, block.length - pos);
+            if (read == -1) {
+                if (pos == 0) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of archive"); //$NON-NLS-1$
+            }
+            pos += read;
+        }
+        return true;
+    }
+
+    /**
+     * Method that reads the string of the data of an extended header entry.
+     *
+     * @param in The archive stream
+     * @param size The size of the data
+     * @return String The string
+     * @throws IOException If the data can't be read
+     */
+    private static String readString(InputStream in, long size) throws IOException {
+        if (size < 0 || size > 1024 * 1024) {
+            throw new IOException("Invalid tar header"); //$NON-NLS-1$
+        }
+        byte[] data = new byte[(int)(size + getPadding(size))];
+        if (data.length > 0 && !readBlock(in, data)) {
+            throw new EOFException("Unexpected end of archive"); //$NON-NLS-1$
+        }
+        return getString(data, 0, (int)size);
+    }
+
+    /**
+     * Method that skips data of the tar archive.
+     *
+     * @param in The archive stream
+     * @param count The number of bytes
+     * @throws IOException If the data can't be skipped
+     */
+    private void skip(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            int read = in.read(this.mBuffer, 0, (int)Math.min(this.mBuffer.length, remaining));
+            if (read == -1) {
+                throw new EOFException("Unexpected end of archive"); //$NON-NLS-1$
+            }
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Method that returns the padding of the data of an entry.
+     *
+     * @param size The size of the data
+     * @return long The number of bytes up to the next block
+     */
+    private static long getPadding(long size) {
+        return (TAR_BLOCK - (size % TAR_BLOCK)) % TAR_BLOCK;
+    }
+
+    /**
+     * Method that returns if a block is empty (the end of the archive).
+     *
+     * @param block The block
+     * @return boolean If the block is all zeros
+     */
+    private static boolean isEmptyBlock(byte[] block) {
+        for (int i = 0; i < block.length; i++) {
+            if (block[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that returns if a header is a ustar (or GNU) header.
+     *
+     * @param header The header
+     * @return boolean If the header has the ustar magic
+     */
+    private static boolean isUstar(byte[] header) {
+        // GNU headers use the prefix field for other data
+        return header[257] == 'u' && header[258] == 's' && header[259] == 't'
+                && header[260] == 'a' && header[261] == 'r' && header[262] == 0;
+    }
+
+    /**
+     * Method that checks the checksum of a header (unsigned or signed, as old tar
+     * implementations computed it).
+     *
+     * @param header The header
+     * @return boolean If the checksum is valid
+     */
+    private static boolean isValidChecksum(byte[] header) {
+        long expected = getNumber(header, 148, 8);
+        long unsigned = 0;
+        long signed = 0;
+        for (int i = 0; i < header.length; i++) {
+            byte b = i >= 148 && i < 156 ? (byte)' ' : header[i];
+            unsigned += b & 0xff;
+            signed += b;
+        }
+        return expected == unsigned || expected == signed;
+    }
+
+    /**
+     * Method that computes and stores the checksum of a header.
+     *
+     * @param header The header
+     */
+    private static void putChecksum(byte[] header) {
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long sum = 0;
+        for (int i = 0; i < header.length; i++) {
+            sum += header[i] & 0xff;
+        }
+        // Six octal digits, a NUL and a space
+        putNumber(header, 148, 7, sum);
+        header[155] = ' ';
+    }
+
+    /**
+     * Method that stores a number of a header as octal digits and a NUL, or as a
+     * base-256 number (GNU) if it's too big.
+     *
+     * @param header The header
+     * @param off The offset of the field
+     * @param len The length of the field
+     * @param value The number
+     */
+    private static void putNumber(byte[] header, int off, int len, long value) {
+        if (value >= 1L << (3 * (len - 1))) {
+            long v = value;
+            for (int i = off + len - 1; i > off; i--) {
+                header[i] = (byte)v;
+                v >>>= 8;
+            }
+            header[off] = (byte)0x80;
+            return;
+        }
+        long v = value;
+        for (int i = off + len - 2; i >= off; i--) {
+            header[i] = (byte)('0' + (v & 7));
+            v >>>= 3;
+        }
+        header[off + len - 1] = 0;
+    }
+
+    /**
+     * Method that reads a number of a header (octal or base-256).
+     *
+     * @param header The header
+     * @param off The offset of the field
+     * @param len The length of the field
+     * @return long The number
+     */
+    private static long getNumber(byte[] header, int off, int len) {
+        if ((header[off] & 0x80) != 0) {
+            long v = header[off] & 0x7f;
+            for (int i = off + 1; i < off + len; i++) {
+                v = (v << 8) | (header[i] & 0xff);
+            }
+            return v;
+        }
+        long v = 0;
+        for (int i = off; i < off + len; i++) {
+            byte b = header[i];
+            if (b == 0 || (b == ' ' && v != 0)) {
+                break;
+            }
+            if (b >= '0' && b <= '7') {
+                v = (v << 3) + (b - '0');
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Method that reads a NUL-terminated string of a header.
+     *
+     * @param header The header
+     * @param off The offset of the field
+     * @param len The length of the field
+     * @return String The string
+     */
+    private static String getString(byte[] header, int off, int len) {
+        int end = off;
+        while (end < off + len && header[end] != 0) {
+            end++;
+        }
+        try {
+            return new String(header, off, end - off, UTF8);
+        } catch (UnsupportedEncodingException e) {
+            return new String(header, off, end - off);
+        }
+    }
+
+    /**
+     * Method that closes a stream, ignoring the errors.
+     *
+     * @param c The stream (may be null)
+     */
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (Exception e) {/**NON BLOCK**/}
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+/**
+ * The CRC of the blocks of a bzip2 stream (CRC-32 with the bits in big-endian order,
+ * unlike the CRC-32 of zip and gzip).
+ */
+final class BZip2Crc {
+
+    private static final int[] TABLE = new int[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i << 24;
+            for (int j = 0; j < 8; j++) {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ 0x04c11db7 : c << 1;
+            }
+            TABLE[i] = c;
+        }
+    }
+
+    private int mCrc;
+
+    /**
+     * Constructor of <code>BZip2Crc</code>.
+     */
+    BZip2Crc() {
+        super();
+        reset();
+    }
+
+    /**
+     * Method that resets the CRC.
+     */
+    void reset() {
+        this.mCrc = 0xffffffff;
+    }
+
+    /**
+     * Method that updates the CRC with a byte.
+     *
+     * @param b The byte
+     */
+    void update(int b) {
+        this.mCrc = (this.mCrc << 8) ^ TABLE[((this.mCrc >>> 24) ^ b) & 0xff];
+    }
+
+    /**
+     * Method that updates the CRC with a repeated byte.
+     *
+     * @param b The byte
+     * @param count The number of repetitions
+     */
+    void update(int b, int count) {
+        for (int i = 0; i < count; i++) {
+            update(b);
+        }
+    }
+
+    /**
+     * Method that returns the CRC of the bytes.
+     *
+     * @return int The CRC
+     */
+    int getValue() {
+        return ~this.mCrc;
+    }
+}
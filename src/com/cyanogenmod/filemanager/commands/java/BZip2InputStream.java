@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that decompresses a bzip2 stream.<br/>
+ * <br/>
+ * The blocks are decoded one by one (huffman, move-to-front and zero runs), and the
+ * inverse Burrows-Wheeler transform and the initial run-length encoding are undone
+ * while the block is read. The CRC of every block and of the whole stream are
+ * checked. Concatenated streams (as the written by the parallel bzip2
+ * implementations) are read as a single stream. Randomised blocks (only written by
+ * very old versions of bzip2) aren't supported.
+ */
+public class BZip2InputStream extends FilterInputStream {
+
+    // The magic numbers of the blocks and of the end of the stream
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+
+    private static final int MAX_GROUPS = 6;
+    private static final int MAX_ALPHA_SIZE = 258;
+    private static final int MAX_CODE_LEN = 23;
+    private static final int GROUP_SIZE = 50;
+    private static final int RUNA = 0;
+    private static final int RUNB = 1;
+
+    // The bit reader
+    private int mBitBuffer;
+    private int mBitCount;
+
+    // The current block
+    private int[] mTT;
+    private int mBlockSize100k;
+    private int mBlockLength;
+    private int mTPos;
+    private int mRead;
+    private int mExpectedCrc;
+    private int mCombinedCrc;
+    private final BZip2Crc mCrc;
+    private boolean mEof;
+
+    // The state of the run-length decoding
+    private int mLastChar;
+    private int mRunLength;
+    private int mRepeat;
+
+    // The tables of the huffman decoding (reused between blocks)
+    private final int[][] mLimit;
+    private final int[][] mBase;
+    private final int[][] mPerm;
+    private final int[] mMinLens;
+    private final byte[][] mLens;
+    private final byte[] mSelectors;
+    private final byte[] mSelectorsMtf;
+
+    /**
+     * Constructor of <code>BZip2InputStream</code>.
+     *
+     * @param in The compressed stream
+     * @throws IOException If the stream isn't a bzip2 stream
+     */
+    public BZip2InputStream(InputStream in) throws IOException {
+        super(in);
+        this.mCrc = new BZip2Crc();
+        this.mLimit = new int[MAX_GROUPS][MAX_CODE_LEN + 2];
+        this.mBase = new int[MAX_GROUPS][MAX_CODE_LEN + 2];
+        this.mPerm = new int[MAX_GROUPS][MAX_ALPHA_SIZE];
+        this.mMinLens = new int[MAX_GROUPS];
+        this.mLens = new byte[MAX_GROUPS][MAX_ALPHA_SIZE];
+        this.mSelectors = new byte[32768];
+        this.mSelectorsMtf = new byte[32768];
+        if (!readStreamHeader(true)) {
+            throw new IOException("Not in bzip2 format"); //$NON-NLS-1$
+        }
+        this.mEof = !nextBlock();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+        return read == -1 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len && !this.mEof) {
+            // Pending repeats of the current run
+            if (this.mRepeat > 0) {
+                b[off + count++] = (byte)this.mLastChar;
+                this.mCrc.update(this.mLastChar);
+                this.mRepeat--;
+                continue;
+            }
+            if (this.mRead == this.mBlockLength) {
+                endBlock();
+                this.mEof = !nextBlock();
+                continue;
+            }
+
+            // Next byte of the inverse transform
+            this.mTPos = this.mTT[this.mTPos];
+            int ch = this.mTPos & 0xff;
+            this.mTPos >>>= 8;
+            this.mRead++;
+            if (this.mRunLength == 4) {
+                // The byte is the count of the repeats of the run
+                this.mRepeat = ch;
+                this.mRunLength = 0;
+                continue;
+            }
+            if (ch == this.mLastChar) {
+                this.mRunLength++;
+            } else {
+                this.mLastChar = ch;
+                this.mRunLength = 1;
+            }
+            b[off + count++] = (byte)ch;
+            this.mCrc.update(ch);
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+        return this.mEof ? 0 : 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] b = new byte[(int)Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(b, 0, (int)Math.min(n - skipped, b.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    /**
+     * Method that reads the header of a stream.
+     *
+     * @param first If it is the first stream (otherwise the end of the data is allowed)
+     * @return boolean If a stream was found
+     * @throws IOException If the header is invalid
+     */
+    private boolean readStreamHeader(boolean first) throws IOException {
+        int b = this.in.read();
+        if (b == -1 && !first) {
+            return false;
+        }
+        if (b != 'B' || this.in.read() != 'Z' || this.in.read() != 'h') {
+            if (!first) {
+                // Trailing garbage. Ignore it like bzip2 does
+                return false;
+            }
+            throw new IOException("Not in bzip2 format"); //$NON-NLS-1$
+        }
+        int level = this.in.read();
+        if (level < '1' || level > '9') {
+            throw new IOException("Invalid bzip2 block size"); //$NON-NLS-1$
+        }
+        this.mBlockSize100k = level - '0';
+        this.mBitBuffer = 0;
+        this.mBitCount = 0;
+        this.mCombinedCrc = 0;
+        return true;
+    }
+
+    /**
+     * Method that checks the CRC of the block that was read.
+     *
+     * @throws IOException If the CRC doesn't match
+     */
+    private void endBlock() throws IOException {
+        int crc = this.mCrc.getValue();
+        if (crc != this.mExpectedCrc) {
+            throw new IOException("bzip2 block CRC error"); //$NON-NLS-1$
+        }
+        this.mCombinedCrc = ((this.mCombinedCrc << 1) | (this.mCombinedCrc >>> 31)) ^ crc;
+    }
+
+    /**
+     * Method that decodes the next block of the stream.
+     *
+     * @return boolean If a block was decoded. false at the end of the data
+     * @throws IOException If the data is invalid
+     */
+    private boolean nextBlock() throws IOException {
+        long magic = readBitsLong(48);
+        while (magic == EOS_MAGIC) {
+            int crc = readBits(32);
+            if (crc != this.mCombinedCrc) {
+                throw new IOException("bzip2 stream CRC error"); //$NON-NLS-1$
+            }
+            // Concatenated streams
+            if (!readStreamHeader(false)) {
+                return false;
+            }
+            magic = readBitsLong(48);
+        }
+        if (magic != BLOCK_MAGIC) {
+            throw new IOException("Invalid bzip2 block"); //$NON-NLS-1$
+        }
+        this.mExpectedCrc = readBits(32);
+        if (readBits(1) != 0) {
+            throw new IOException("Randomised bzip2 blocks aren't supported"); //$NON-NLS-1$
+        }
+        int origPtr = readBits(24);
+        decodeBlock();
+        if (origPtr < 0 || origPtr >= this.mBlockLength) {
+            throw new IOException("Invalid bzip2 block pointer"); //$NON-NLS-1$
+        }
+
+        // Prepare the inverse transform
+        int[] cftab = new int[257];
+        for (int i = 0; i < this.mBlockLength; i++) {
+            cftab[(this.mTT[i] & 0xff) + 1]++;
+        }
+        for (int i = 1; i < 257; i++) {
+            cftab[i] += cftab[i - 1];
+        }
+        for (int i = 0; i < this.mBlockLength; i++) {
+            int ch = this.mTT[i] & 0xff;
+            this.mTT[cftab[ch]++] |= (i << 8);
+        }
+        this.mTPos = this.mTT[origPtr] >>> 8;
+        this.mRead = 0;
+        this.mLastChar = -1;
+        this.mRunLength = 0;
+        this.mRepeat = 0;
+        this.mCrc.reset();
+        return true;
+    }
+
+    /**
+     * Method that decodes the symbols of a block into the transform array.
+     *
+     * @throws IOException If the data is invalid
+     */
+    private void decodeBlock() throws IOException {
+        // The symbols used
+        byte[] seqToUnseq = new byte[256];
+        int inUse = 0;
+        int inUse16 = readBits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int bits = readBits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((bits & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[inUse++] = (byte)(i * 16 + j);
+                    }
+                }
+            }
+        }
+        if (inUse == 0) {
+            throw new IOException("Invalid bzip2 symbol map"); //$NON-NLS-1$
+        }
+        int alphaSize = inUse + 2;
+
+        // The selectors of the tables
+        int groups = readBits(3);
+        int selectors = readBits(15);
+        if (groups < 2 || groups > MAX_GROUPS || selectors < 1) {
+            throw new IOException("Invalid bzip2 huffman groups"); //$NON-NLS-1$
+        }
+        for (int i = 0; i < selectors; i++) {
+            int j = 0;
+            while (readBits(1) != 0) {
+                j++;
+                if (j >= groups) {
+                    throw new IOException("Invalid bzip2 selector"); //$NON-NLS-1$
+                }
+            }
+            this.mSelectorsMtf[i] = (byte)j;
+        }
+        byte[] pos = new byte[MAX_GROUPS];
+        for (int i = 0; i < groups; i++) {
+            pos[i] = (byte)i;
+        }
+        for (int i = 0; i < selectors; i++) {
+            int v = this.mSelectorsMtf[i];
+            byte tmp = pos[v];
+            while (v > 0) {
+                pos[v] = pos[v - 1];
+                v--;
+            }
+            pos[0] = tmp;
+            this.mSelectors[i] = tmp;
+        }
+
+        // The code lengths of the tables
+        for (int t = 0; t < groups; t++) {
+            int curr = readBits(5);
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (curr < 1 || curr > 20) {
+                        throw new IOException("Invalid bzip2 code length"); //$NON-NLS-1$
+                    }
+                    if (readBits(1) == 0) {
+                        break;
+                    }
+                    curr += readBits(1) == 0 ? 1 : -1;
+                }
+                this.mLens[t][i] = (byte)curr;
+            }
+            createDecodeTables(t, alphaSize);
+        }
+
+        // The symbols
+        int max = this.mBlockSize100k * 100000;
+        if (this.mTT == null || this.mTT.length < max) {
+            this.mTT = new int[max];
+        }
+        int[] tt = this.mTT;
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            mtf[i] = (byte)i;
+        }
+        int eob = inUse + 1;
+        int length = 0;
+        int group = 0;
+        int groupPos = 0;
+        int runLength = 0;
+        int runWeight = 1;
+        while (true) {
+            if (groupPos == 0) {
+                if (group >= selectors) {
+                    throw new IOException("Invalid bzip2 selectors"); //$NON-NLS-1$
+                }
+                groupPos = GROUP_SIZE;
+                group++;
+            }
+            groupPos--;
+            int sym = decodeSymbol(this.mSelectors[group - 1]);
+            if (sym == RUNA || sym == RUNB) {
+                runLength += (sym == RUNA ? 1 : 2) * runWeight;
+                runWeight <<= 1;
+                if (runLength > max) {
+                    throw new IOException("Invalid bzip2 run"); //$NON-NLS-1$
+                }
+                continue;
+            }
+
+            // Flush the pending run of the first symbol
+            if (runLength > 0) {
+                if (length + runLength > max) {
+                    throw new IOException("Invalid bzip2 block size"); //$NON-NLS-1$
+                }
+                int ch = seqToUnseq[mtf[0] & 0xff] & 0xff;
+                while (runLength > 0) {
+                    tt[length++] = ch;
+                    runLength--;
+                }
+                runWeight = 1;
+            }
+            if (sym == eob) {
+                break;
+            }
+            if (sym > eob || length >= max) {
+                throw new IOException("Invalid bzip2 symbol"); //$NON-NLS-1$
+            }
+
+            // Move to front
+            int v = sym - 1;
+            byte tmp = mtf[v];
+            System.arraycopy(mtf, 0, mtf, 1, v);
+            mtf[0] = tmp;
+            tt[length++] = seqToUnseq[tmp & 0xff] & 0xff;
+        }
+        this.mBlockLength = length;
+    }
+
+    /**
+     * Method that creates the decoding tables of the canonical huffman code of a table.
+     *
+     * @param t The table
+     * @param alphaSize The number of symbols
+     */
+    private void createDecodeTables(int t, int alphaSize) {
+        byte[] lens = this.mLens[t];
+        int[] limit = this.mLimit[t];
+        int[] base = this.mBase[t];
+        int[] perm = this.mPerm[t];
+        int minLen = 32;
+        int maxLen = 0;
+        for (int i = 0; i < alphaSize; i++) {
+            maxLen = Math.max(maxLen, lens[i]);
+            minLen = Math.min(minLen, lens[i]);
+        }
+        int pp = 0;
+        for (int i = minLen; i <= maxLen; i++) {
+            for (int j = 0; j < alphaSize; j++) {
+                if (lens[j] == i) {
+                    perm[pp++] = j;
+                }
+            }
+        }
+        for (int i = 0; i < base.length; i++) {
+            base[i] = 0;
+            limit[i] = 0;
+        }
+        for (int i = 0; i < alphaSize; i++) {
+            base[lens[i] + 1]++;
+        }
+        for (int i = 1; i < base.length; i++) {
+            base[i] += base[i - 1];
+        }
+        int vec = 0;
+        for (int i = minLen; i <= maxLen; i++) {
+            vec += base[i + 1] - base[i];
+            limit[i] = vec - 1;
+            vec <<= 1;
+        }
+        for (int i = minLen + 1; i <= maxLen; i++) {
+            base[i] = ((limit[i - 1] + 1) << 1) - base[i];
+        }
+        // No code is longer than the maximum length
+        for (int i = maxLen + 1; i < limit.length; i++) {
+            limit[i] = Integer.MAX_VALUE;
+        }
+        this.mMinLens[t] = minLen;
+    }
+
+    /**
+     * Method that decodes a symbol with a huffman table.
+     *
+     * @param t The table
+     * @return int The symbol
+     * @throws IOException If the code is invalid
+     */
+    private int decodeSymbol(int t) throws IOException {
+        int[] limit = this.mLimit[t];
+        int n = this.mMinLens[t];
+        int vec = readBits(n);
+        while (vec > limit[n]) {
+            n++;
+            if (n > MAX_CODE_LEN) {
+                throw new IOException("Invalid bzip2 huffman code"); //$NON-NLS-1$
+            }
+            vec = (vec << 1) | readBits(1);
+        }
+        int index = vec - this.mBase[t][n];
+        if (index < 0 || index >= MAX_ALPHA_SIZE) {
+            throw new IOException("Invalid bzip2 huffman code"); //$NON-NLS-1$
+        }
+        return this.mPerm[t][index];
+    }
+
+    /**
+     * Method that reads bits of the stream.
+     *
+     * @param n The number of bits (up to 32)
+     * @return int The bits
+     * @throws IOException If the end of the stream was reached
+     */
+    private int readBits(int n) throws IOException {
+        if (n > 24) {
+            int high = readBits(n - 16);
+            return (high << 16) | readBits(16);
+        }
+        while (this.mBitCount < n) {
+            int b = this.in.read();
+            if (b == -1) {
+                throw new IOException("Unexpected end of bzip2 stream"); //$NON-NLS-1$
+            }
+            this.mBitBuffer = (this.mBitBuffer << 8) | b;
+            this.mBitCount += 8;
+        }
+        this.mBitCount -= n;
+        return (this.mBitBuffer >>> this.mBitCount) & ((1 << n) - 1);
+    }
+
+    /**
+     * Method that reads up to 64 bits of the stream.
+     *
+     * @param n The number of bits
+     * @return long The bits
+     * @throws IOException If the end of the stream was reached
+     */
+    private long readBitsLong(int n) throws IOException {
+        long high = readBits(n - 24) & 0xffffffffL;
+        return (high << 24) | readBits(24);
+    }
+}
@@ -0,0 +1,706 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that compresses the data in the bzip2 format.<br/>
+ * <br/>
+ * The data is split in blocks of {@link #BLOCK_SIZE_100K} x 100000 bytes, that are
+ * sorted (Burrows-Wheeler transform) with a prefix-doubling sort of the rotations of
+ * the block, and coded with move-to-front, zero runs and up to six huffman tables
+ * chosen per group of 50 symbols, as the reference implementation does. The stream
+ * is readable by <code>bunzip2</code> and by {@link BZip2InputStream}.
+ */
+public class BZip2OutputStream extends OutputStream {
+
+    /**
+     * The size of the blocks, in units of 100000 bytes (as <code>bzip2 -9</code>).
+     */
+    public static final int BLOCK_SIZE_100K = 9;
+
+    // The magic numbers of the blocks and of the end of the stream
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+
+    private static final int MAX_GROUPS = 6;
+    private static final int MAX_ALPHA_SIZE = 258;
+    private static final int MAX_CODE_LEN = 17;
+    private static final int GROUP_SIZE = 50;
+    private static final int ITERATIONS = 4;
+    private static final int RUNA = 0;
+    private static final int RUNB = 1;
+
+    private final OutputStream mOut;
+    private final byte[] mOutBuffer;
+    private int mOutLength;
+    private int mBitBuffer;
+    private int mBitCount;
+
+    // The current block
+    private final byte[] mBlock;
+    private final int mBlockMax;
+    private int mBlockLength;
+    private final boolean[] mInUse;
+    private final BZip2Crc mCrc;
+    private int mCombinedCrc;
+
+    // The current run of the initial run-length encoding
+    private int mRunChar;
+    private int mRunLength;
+
+    private boolean mFinished;
+
+    /**
+     * Constructor of <code>BZip2OutputStream</code>.
+     *
+     * @param out The stream where write the compressed data
+     * @throws IOException If the header of the stream can't be written
+     */
+    public BZip2OutputStream(OutputStream out) throws IOException {
+        super();
+        this.mOut = out;
+        this.mOutBuffer = new byte[8192];
+        this.mBlock = new byte[BLOCK_SIZE_100K * 100000];
+        this.mBlockMax = this.mBlock.length - 19;
+        this.mInUse = new boolean[256];
+        this.mCrc = new BZip2Crc();
+        this.mRunChar = -1;
+        writeBits(8, 'B');
+        writeBits(8, 'Z');
+        writeBits(8, 'h');
+        writeBits(8, '0' + BLOCK_SIZE_100K);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException {
+        int ch = b & 0xff;
+        if (ch == this.mRunChar && this.mRunLength < 255) {
+            this.mRunLength++;
+            return;
+        }
+        if (this.mRunChar != -1) {
+            flushRun();
+        }
+        this.mRunChar = ch;
+        this.mRunLength = 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            int ch = b[i] & 0xff;
+            if (ch == this.mRunChar && this.mRunLength < 255) {
+                this.mRunLength++;
+                continue;
+            }
+            if (this.mRunChar != -1) {
+                flushRun();
+            }
+            this.mRunChar = ch;
+            this.mRunLength = 1;
+        }
+    }
+
+    /**
+     * Method that compresses the pending data and writes the end of the stream,
+     * without closing the underlying stream.
+     *
+     * @throws IOException If the data can't be written
+     */
+    public void finish() throws IOException {
+        if (this.mFinished) {
+            return;
+        }
+        this.mFinished = true;
+        if (this.mRunChar != -1) {
+            flushRun();
+            this.mRunChar = -1;
+        }
+        if (this.mBlockLength > 0) {
+            writeBlock();
+        }
+        writeBitsLong(48, EOS_MAGIC);
+        writeBits(32, this.mCombinedCrc);
+        if (this.mBitCount > 0) {
+            writeBits(8 - this.mBitCount, 0);
+        }
+        flushOut();
+        this.mOut.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        // The data of a block can't be flushed until the block is complete
+        flushOut();
+        this.mOut.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            this.mOut.close();
+        }
+    }
+
+    /**
+     * Method that adds the current run to the block (a run of 4 or more bytes is
+     * written as 4 bytes and the count of the remaining bytes), and compresses the
+     * block when it is full.
+     *
+     * @throws IOException If the block can't be written
+     */
+    private void flushRun() throws IOException {
+        int ch = this.mRunChar;
+        int len = this.mRunLength;
+        this.mCrc.update(ch, len);
+        this.mInUse[ch] = true;
+        byte b = (byte)ch;
+        if (len < 4) {
+            for (int i = 0; i < len; i++) {
+                this.mBlock[this.mBlockLength++] = b;
+            }
+        } else {
+            this.mBlock[this.mBlockLength++] = b;
+            this.mBlock[this.mBlockLength++] = b;
+            this.mBlock[this.mBlockLength++] = b;
+            this.mBlock[this.mBlockLength++] = b;
+            this.mBlock[this.mBlockLength++] = (byte)(len - 4);
+            this.mInUse[len - 4] = true;
+        }
+        if (this.mBlockLength >= this.mBlockMax) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Method that compresses and writes the current block.
+     *
+     * @throws IOException If the block can't be written
+     */
+    private void writeBlock() throws IOException {
+        int n = this.mBlockLength;
+        int crc = this.mCrc.getValue();
+        this.mCombinedCrc = ((this.mCombinedCrc << 1) | (this.mCombinedCrc >>> 31)) ^ crc;
+
+        // Burrows-Wheeler transform
+        int[] p = sortRotations(this.mBlock, n);
+        int origPtr = 0;
+        byte[] last = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int pos = p[i];
+            if (pos == 0) {
+                origPtr = i;
+                pos = n;
+            }
+            last[i] = this.mBlock[pos - 1];
+        }
+        p = null;
+
+        // The symbols used
+        byte[] unseqToSeq = new byte[256];
+        int inUse = 0;
+        for (int i = 0; i < 256; i++) {
+            if (this.mInUse[i]) {
+                unseqToSeq[i] = (byte)inUse++;
+            }
+        }
+        int alphaSize = inUse + 2;
+        int eob = inUse + 1;
+
+        // Move to front and zero runs
+        char[] mtfv = new char[n + 1];
+        int[] freq = new int[MAX_ALPHA_SIZE];
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < inUse; i++) {
+            mtf[i] = (byte)i;
+        }
+        int count = 0;
+        int zeros = 0;
+        for (int i = 0; i < n; i++) {
+            byte ll = unseqToSeq[last[i] & 0xff];
+            if (mtf[0] == ll) {
+                zeros++;
+                continue;
+            }
+            if (zeros > 0) {
+                count = writeZeroRun(mtfv, count, freq, zeros);
+                zeros = 0;
+            }
+            int j = 1;
+            while (mtf[j] != ll) {
+                j++;
+            }
+            System.arraycopy(mtf, 0, mtf, 1, j);
+            mtf[0] = ll;
+            mtfv[count++] = (char)(j + 1);
+            freq[j + 1]++;
+        }
+        if (zeros > 0) {
+            count = writeZeroRun(mtfv, count, freq, zeros);
+        }
+        mtfv[count++] = (char)eob;
+        freq[eob]++;
+        last = null;
+
+        // Header
+        writeBitsLong(48, BLOCK_MAGIC);
+        writeBits(32, crc);
+        writeBits(1, 0);
+        writeBits(24, origPtr);
+        int inUse16 = 0;
+        for (int i = 0; i < 16; i++) {
+            for (int j = 0; j < 16; j++) {
+                if (this.mInUse[i * 16 + j]) {
+                    inUse16 |= 0x8000 >>> i;
+                    break;
+                }
+            }
+        }
+        writeBits(16, inUse16);
+        for (int i = 0; i < 16; i++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int bits = 0;
+                for (int j = 0; j < 16; j++) {
+                    if (this.mInUse[i * 16 + j]) {
+                        bits |= 0x8000 >>> j;
+                    }
+                }
+                writeBits(16, bits);
+            }
+        }
+
+        writeSymbols(mtfv, count, freq, alphaSize);
+
+        // Reset the block
+        this.mBlockLength = 0;
+        for (int i = 0; i < 256; i++) {
+            this.mInUse[i] = false;
+        }
+        this.mCrc.reset();
+    }
+
+    /**
+     * Method that codes a run of zeros of the move-to-front values as RUNA and RUNB
+     * symbols (a bijective base-2 number).
+     *
+     * @param mtfv The coded values
+     * @param count The number of coded values
+     * @param freq The frequencies of the symbols
+     * @param zeros The length of the run
+     * @return int The new number of coded values
+     */
+    private static int writeZeroRun(char[] mtfv, int count, int[] freq, int zeros) {
+        int c = count;
+        int z = zeros - 1;
+        while (true) {
+            int sym = (z & 1) != 0 ? RUNB : RUNA;
+            mtfv[c++] = (char)sym;
+            freq[sym]++;
+            if (z < 2) {
+                break;
+            }
+            z = (z - 2) >> 1;
+        }
+        return c;
+    }
+
+    /**
+     * Method that chooses the huffman tables of the block, and writes the selectors,
+     * the tables and the coded symbols.
+     *
+     * @param mtfv The symbols
+     * @param count The number of symbols
+     * @param freq The frequencies of the symbols
+     * @param alphaSize The number of symbols of the alphabet
+     * @throws IOException If the data can't be written
+     */
+    private void writeSymbols(char[] mtfv, int count, int[] freq, int alphaSize)
+            throws IOException {
+        int groups;
+        if (count < 200) {
+            groups = 2;
+        } else if (count < 600) {
+            groups = 3;
+        } else if (count < 1200) {
+            groups = 4;
+        } else if (count < 2400) {
+            groups = 5;
+        } else {
+            groups = MAX_GROUPS;
+        }
+
+        // Initial tables, that split the symbols by frequency
+        byte[][] lens = new byte[groups][alphaSize];
+        int parts = groups;
+        int remaining = count;
+        int gs = 0;
+        while (parts > 0) {
+            int target = remaining / parts;
+            int ge = gs - 1;
+            int acc = 0;
+            while (acc < target && ge < alphaSize - 1) {
+                ge++;
+                acc += freq[ge];
+            }
+            if (ge > gs && parts != groups && parts != 1 && ((groups - parts) % 2 == 1)) {
+                acc -= freq[ge];
+                ge--;
+            }
+            for (int v = 0; v < alphaSize; v++) {
+                lens[parts - 1][v] = (byte)(v >= gs && v <= ge ? 0 : 15);
+            }
+            parts--;
+            gs = ge + 1;
+            remaining -= acc;
+        }
+
+        // Refine the tables with the groups that choose them
+        int selectors = (count + GROUP_SIZE - 1) / GROUP_SIZE;
+        byte[] selector = new byte[selectors];
+        int[][] groupFreq = new int[groups][alphaSize];
+        int[] cost = new int[groups];
+        for (int iter = 0; iter < ITERATIONS; iter++) {
+            for (int t = 0; t < groups; t++) {
+                for (int v = 0; v < alphaSize; v++) {
+                    groupFreq[t][v] = 0;
+                }
+            }
+            int s = 0;
+            for (gs = 0; gs < count; gs += GROUP_SIZE) {
+                int ge = Math.min(gs + GROUP_SIZE, count);
+                for (int t = 0; t < groups; t++) {
+                    int c = 0;
+                    byte[] len = lens[t];
+                    for (int i = gs; i < ge; i++) {
+                        c += len[mtfv[i]];
+                    }
+                    cost[t] = c;
+                }
+                int best = 0;
+                for (int t = 1; t < groups; t++) {
+                    if (cost[t] < cost[best]) {
+                        best = t;
+                    }
+                }
+                selector[s++] = (byte)best;
+                int[] f = groupFreq[best];
+                for (int i = gs; i < ge; i++) {
+                    f[mtfv[i]]++;
+                }
+            }
+            for (int t = 0; t < groups; t++) {
+                makeCodeLengths(lens[t], groupFreq[t], alphaSize, MAX_CODE_LEN);
+            }
+        }
+
+        // The codes of the tables
+        int[][] codes = new int[groups][alphaSize];
+        for (int t = 0; t < groups; t++) {
+            int minLen = 32;
+            int maxLen = 0;
+            for (int v = 0; v < alphaSize; v++) {
+                maxLen = Math.max(maxLen, lens[t][v]);
+                minLen = Math.min(minLen, lens[t][v]);
+            }
+            int vec = 0;
+            for (int l = minLen; l <= maxLen; l++) {
+                for (int v = 0; v < alphaSize; v++) {
+                    if (lens[t][v] == l) {
+                        codes[t][v] = vec++;
+                    }
+                }
+                vec <<= 1;
+            }
+        }
+
+        // The selectors (move-to-front coded)
+        writeBits(3, groups);
+        writeBits(15, selectors);
+        byte[] pos = new byte[groups];
+        for (int t = 0; t < groups; t++) {
+            pos[t] = (byte)t;
+        }
+        for (int i = 0; i < selectors; i++) {
+            byte sel = selector[i];
+            int j = 0;
+            while (pos[j] != sel) {
+                j++;
+            }
+            System.arraycopy(pos, 0, pos, 1, j);
+            pos[0] = sel;
+            for (int k = 0; k < j; k++) {
+                writeBits(1, 1);
+            }
+            writeBits(1, 0);
+        }
+
+        // The code lengths (delta coded)
+        for (int t = 0; t < groups; t++) {
+            int curr = lens[t][0];
+            writeBits(5, curr);
+            for (int v = 0; v < alphaSize; v++) {
+                int len = lens[t][v];
+                while (curr < len) {
+                    writeBits(2, 2);
+                    curr++;
+                }
+                while (curr > len) {
+                    writeBits(2, 3);
+                    curr--;
+                }
+                writeBits(1, 0);
+            }
+        }
+
+        // The symbols
+        int s = 0;
+        for (gs = 0; gs < count; gs += GROUP_SIZE) {
+            int ge = Math.min(gs + GROUP_SIZE, count);
+            int t = selector[s++];
+            byte[] len = lens[t];
+            int[] code = codes[t];
+            for (int i = gs; i < ge; i++) {
+                int v = mtfv[i];
+                writeBits(len[v], code[v]);
+            }
+        }
+    }
+
+    /**
+     * Method that computes the lengths of the huffman codes of the symbols, limited
+     * to a maximum length. The symbols that aren't used get a code too.
+     *
+     * @param len The lengths of the codes
+     * @param freq The frequencies of the symbols
+     * @param alphaSize The number of symbols
+     * @param maxLen The maximum length of a code
+     */
+    private static void makeCodeLengths(byte[] len, int[] freq, int alphaSize, int maxLen) {
+        int[] weight = new int[alphaSize * 2];
+        int[] parent = new int[alphaSize * 2];
+        int[] active = new int[alphaSize];
+        for (int i = 0; i < alphaSize; i++) {
+            weight[i] = (freq[i] == 0 ? 1 : freq[i]) << 8;
+        }
+        while (true) {
+            // The weights keep the depth of the subtree in the low byte, so the
+            // shallower trees are merged first
+            int nodes = alphaSize;
+            int actives = alphaSize;
+            for (int i = 0; i < alphaSize; i++) {
+                active[i] = i;
+                parent[i] = -1;
+            }
+            while (actives > 1) {
+                int m1 = 0;
+                int m2 = 1;
+                if (weight[active[m2]] < weight[active[m1]]) {
+                    m1 = 1;
+                    m2 = 0;
+                }
+                for (int i = 2; i < actives; i++) {
+                    int w = weight[active[i]];
+                    if (w < weight[active[m1]]) {
+                        m2 = m1;
+                        m1 = i;
+                    } else if (w < weight[active[m2]]) {
+                        m2 = i;
+                    }
+                }
+                int n1 = active[m1];
+                int n2 = active[m2];
+                weight[nodes] = ((weight[n1] & 0xffffff00) + (weight[n2] & 0xffffff00))
+                        | (1 + Math.max(weight[n1] & 0xff, weight[n2] & 0xff));
+                parent[nodes] = -1;
+                parent[n1] = nodes;
+                parent[n2] = nodes;
+
+                // Replace the merged nodes with the new one
+                int lo = Math.min(m1, m2);
+                int hi = Math.max(m1, m2);
+                active[lo] = nodes;
+                active[hi] = active[actives - 1];
+                actives--;
+                nodes++;
+            }
+
+            boolean tooLong = false;
+            for (int i = 0; i < alphaSize; i++) {
+                int depth = 0;
+                int k = i;
+                while (parent[k] >= 0) {
+                    k = parent[k];
+                    depth++;
+                }
+                // A single symbol still needs a code
+                len[i] = (byte)Math.max(depth, 1);
+                if (depth > maxLen) {
+                    tooLong = true;
+                }
+            }
+            if (!tooLong) {
+                return;
+            }
+
+            // Flatten the frequencies and try again
+            for (int i = 0; i < alphaSize; i++) {
+                int w = weight[i] >> 8;
+                weight[i] = (1 + (w / 2)) << 8;
+            }
+        }
+    }
+
+    /**
+     * Method that sorts the rotations of a block (prefix doubling with counting
+     * sorts).
+     *
+     * @param block The block
+     * @param n The length of the block
+     * @return int[] The start positions of the rotations in sorted order
+     */
+    private static int[] sortRotations(byte[] block, int n) {
+        int[] p = new int[n];
+        int[] c = new int[n];
+        int[] pn = new int[n];
+        int[] cn = new int[n];
+        int[] cnt = new int[Math.max(256, n)];
+
+        // Sort by the first byte
+        for (int i = 0; i < n; i++) {
+            cnt[block[i] & 0xff]++;
+        }
+        for (int i = 1; i < 256; i++) {
+            cnt[i] += cnt[i - 1];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            p[--cnt[block[i] & 0xff]] = i;
+        }
+        int classes = 1;
+        c[p[0]] = 0;
+        for (int i = 1; i < n; i++) {
+            if (block[p[i]] != block[p[i - 1]]) {
+                classes++;
+            }
+            c[p[i]] = classes - 1;
+        }
+
+        // Sort by the first 2^(h+1) bytes, from the order by the first 2^h bytes
+        for (int k = 1; k < n && classes < n; k <<= 1) {
+            for (int i = 0; i < n; i++) {
+                int v = p[i] - k;
+                pn[i] = v < 0 ? v + n : v;
+            }
+            for (int i = 0; i < classes; i++) {
+                cnt[i] = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                cnt[c[pn[i]]]++;
+            }
+            for (int i = 1; i < classes; i++) {
+                cnt[i] += cnt[i - 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                p[--cnt[c[pn[i]]]] = pn[i];
+            }
+            cn[p[0]] = 0;
+            classes = 1;
+            for (int i = 1; i < n; i++) {
+                int cur = p[i] + k;
+                int prev = p[i - 1] + k;
+                if (cur >= n) {
+                    cur -= n;
+                }
+                if (prev >= n) {
+                    prev -= n;
+                }
+                if (c[p[i]] != c[p[i - 1]] || c[cur] != c[prev]) {
+                    classes++;
+                }
+                cn[p[i]] = classes - 1;
+            }
+            int[] tmp = c;
+            c = cn;
+            cn = tmp;
+        }
+        return p;
+    }
+
+    /**
+     * Method that writes bits to the stream.
+     *
+     * @param n The number of bits (up to 32)
+     * @param v The bits
+     * @throws IOException If the data can't be written
+     */
+    private void writeBits(int n, int v) throws IOException {
+        if (n > 24) {
+            writeBits(n - 16, v >>> 16);
+            writeBits(16, v & 0xffff);
+            return;
+        }
+        this.mBitBuffer = (this.mBitBuffer << n) | (v & ((1 << n) - 1));
+        this.mBitCount += n;
+        while (this.mBitCount >= 8) {
+            this.mBitCount -= 8;
+            if (this.mOutLength == this.mOutBuffer.length) {
+                flushOut();
+            }
+            this.mOutBuffer[this.mOutLength++] = (byte)(this.mBitBuffer >>> this.mBitCount);
+        }
+    }
+
+    /**
+     * Method that writes up to 64 bits to the stream.
+     *
+     * @param n The number of bits
+     * @param v The bits
+     * @throws IOException If the data can't be written
+     */
+    private void writeBitsLong(int n, long v) throws IOException {
+        writeBits(n - 24, (int)(v >>> 24));
+        writeBits(24, (int)(v & 0xffffff));
+    }
+
+    /**
+     * Method that writes the buffered bytes to the underlying stream.
+     *
+     * @throws IOException If the data can't be written
+     */
+    private void flushOut() throws IOException {
+        if (this.mOutLength > 0) {
+            this.mOut.write(this.mOutBuffer, 0, this.mOutLength);
+            this.mOutLength = 0;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.Checksum;
+import com.cyanogenmod.filemanager.util.HashCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * A class for compute the checksums of a file.<br/>
+ * <br/>
+ * The MD5, SHA-1 and SHA-256 are computed in a single pass over the file, read in
+ * large blocks, reporting the progress of the operation.
+ */
+public class ChecksumCommand extends Program implements ChecksumExecutable {
+
+    private static final String TAG = "ChecksumCommand"; //$NON-NLS-1$
+
+    // The size of the blocks read from the file
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // The minimum time between partial results
+    private static final long PARTIAL_RESULT_DELAY = 250L;
+
+    private final String mFile;
+    private final AsyncResultListener mAsyncResultListener;
+    private final Checksum mChecksum;
+    private long mLastNotification;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>ChecksumCommand</code>.
+     *
+     * @param file The absolute path of the file
+     * @param asyncResultListener The partial result listener
+     */
+    public ChecksumCommand(String file, AsyncResultListener asyncResultListener) {
+        super();
+        this.mFile = file;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mChecksum = new Checksum(file, new File(file).length());
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Checksum getChecksum() {
+        synchronized (this.mChecksum) {
+            return this.mChecksum.clone();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Computing checksums of %s", this.mFile)); //$NON-NLS-1$
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        int exitCode = 0;
+        try {
+            digest();
+        } catch (Exception e) {
+            if (isTrace()) {
+                Log.v(TAG, String.format("Result: FAIL. %s", //$NON-NLS-1$
+                        e.getClass().getSimpleName()));
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(e);
+            }
+            exitCode = 1;
+        }
+
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            this.mSync.notify();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(exitCode);
+        }
+
+        if (isTrace() && exitCode == 0) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that reads the file and computes its checksums.
+     *
+     * @throws InsufficientPermissionsException If the file can't be read
+     * @throws NoSuchFileOrDirectory If the file doesn't exists
+     * @throws ExecutionException If the operation fails
+     */
+    private void digest()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        File f = new File(this.mFile);
+        if (!f.exists()) {
+            throw new NoSuchFileOrDirectory(this.mFile);
+        }
+        if (!f.isFile() || !f.canRead()) {
+            throw new InsufficientPermissionsException();
+        }
+
+        MessageDigest md5;
+        MessageDigest sha1;
+        MessageDigest sha256;
+        try {
+            md5 = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+            sha1 = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            sha256 = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+        } catch (NoSuchAlgorithmException e) {
+            throw new ExecutionException("digest algorithm not available", e); //$NON-NLS-1$
+        }
+
+        // Every block read is digested by the three algorithms
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(f);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = fis.read(buffer)) != -1) {
+                if (this.mCancelled || this.mEnded) {
+                    return;
+                }
+                md5.update(buffer, 0, read);
+                sha1.update(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+                synchronized (this.mChecksum) {
+                    this.mChecksum.addBytes(read);
+                }
+                checkNotifyPartialResult();
+            }
+        } catch (IOException e) {
+            throw new ExecutionException("failed to read the file", e); //$NON-NLS-1$
+        } finally {
+            try {
+                if (fis != null) {
+                    fis.close();
+                }
+            } catch (Throwable e) {/**NON BLOCK**/}
+        }
+
+        synchronized (this.mChecksum) {
+            this.mChecksum.setChecksums(
+                    HashCache.toHex(md5.digest()),
+                    HashCache.toHex(sha1.digest()),
+                    HashCache.toHex(sha256.digest()));
+        }
+        notifyPartialResult();
+    }
+
+    /**
+     * Method that sends the checksums to the listener if the last partial result
+     * is old.
+     */
+    private void checkNotifyPartialResult() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastNotification >= PARTIAL_RESULT_DELAY) {
+            this.mLastNotification = now;
+            notifyPartialResult();
+        }
+    }
+
+    /**
+     * Method that sends a snapshot of the checksums to the listener.
+     */
+    private void notifyPartialResult() {
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(getChecksum());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mCancelled = true;
+                    return true;
+                }
+                this.mCancelled = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mEnded = true;
+                    return true;
+                }
+                this.mEnded = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.CompressExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.preferences.CompressionMode;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+
+/**
+ * A class for create an archive of files and folders, or compress a file, in
+ * background with an {@link ArchiveEngine}. Every archived entry is notified as a
+ * partial result (as the shell command does).
+ */
+public class CompressCommand extends Program implements CompressExecutable {
+
+    private static final String TAG = "CompressCommand"; //$NON-NLS-1$
+
+    private final CompressionMode mMode;
+    private final String[] mSrc;
+    private final String mOutFile;
+    private final AsyncResultListener mAsyncResultListener;
+    private Boolean mResult;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>CompressCommand</code>. This method creates an
+     * archive-compressed file from one or various file system objects.
+     *
+     * @param mode The compression mode
+     * @param dst The absolute path of the new compress file
+     * @param src An array of file system objects to compress
+     * @param asyncResultListener The partial result listener
+     */
+    public CompressCommand(
+            CompressionMode mode, String dst, String[] src,
+            AsyncResultListener asyncResultListener) {
+        super();
+        this.mMode = mode;
+        this.mSrc = src;
+        this.mOutFile = dst;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mResult = Boolean.FALSE;
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * Constructor of <code>CompressCommand</code>. This method creates a compressed
+     * file from one file.
+     *
+     * @param mode The compression mode
+     * @param src The file to compress
+     * @param asyncResultListener The partial result listener
+     */
+    public CompressCommand(
+            CompressionMode mode, String src, AsyncResultListener asyncResultListener) {
+        super();
+        this.mMode = mode;
+        this.mSrc = new String[]{src};
+        this.mOutFile = String.format("%s.%s", src, mode.mExtension); //$NON-NLS-1$
+        this.mAsyncResultListener = asyncResultListener;
+        this.mResult = Boolean.FALSE;
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getOutCompressedFile() {
+        return this.mOutFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Compressing %d items to %s (%s)", //$NON-NLS-1$
+                            Integer.valueOf(this.mSrc.length), this.mOutFile, this.mMode));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        int exitCode = 0;
+        try {
+            compress();
+        } catch (Exception e) {
+            if (isTrace()) {
+                Log.v(TAG, String.format("Result: FAIL. %s", //$NON-NLS-1$
+                        e.getClass().getSimpleName()));
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(e);
+            }
+            exitCode = 1;
+        }
+
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            this.mSync.notify();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(exitCode);
+        }
+
+        if (isTrace() && exitCode == 0) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that creates the archive or the compressed file.
+     *
+     * @throws InsufficientPermissionsException If the output file can't be written
+     * @throws NoSuchFileOrDirectory If a source doesn't exists
+     * @throws ExecutionException If the operation fails
+     */
+    private void compress()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        File[] src = new File[this.mSrc.length];
+        for (int i = 0; i < this.mSrc.length; i++) {
+            src[i] = new File(this.mSrc[i]);
+            if (!src[i].exists()) {
+                throw new NoSuchFileOrDirectory(this.mSrc[i]);
+            }
+        }
+        File dst = new File(this.mOutFile);
+
+        ArchiveEngine engine = new ArchiveEngine() {
+            @Override
+            protected void onEntry(String name) {
+                if (getAsyncResultListener() != null) {
+                    getAsyncResultListener().onPartialResult(name);
+                }
+            }
+
+            @Override
+            protected boolean isAborted() {
+                return CompressCommand.this.mCancelled || CompressCommand.this.mEnded;
+            }
+        };
+        try {
+            boolean completed = this.mMode.mArchive
+                    ? engine.archive(this.mMode, dst, src)
+                    : engine.compress(this.mMode, src[0], dst);
+            this.mResult = Boolean.valueOf(completed);
+        } catch (FileNotFoundException e) {
+            // The output file can't be created
+            throw new InsufficientPermissionsException();
+        } catch (IOException e) {
+            throw new ExecutionException(
+                    String.format("Failed to compress to %s", this.mOutFile), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mCancelled = true;
+                    return true;
+                }
+                this.mCancelled = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
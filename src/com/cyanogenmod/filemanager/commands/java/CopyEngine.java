@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.console.ExecutionException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A class for copy files and folders in the java console.<br/>
+ * <br/>
+ * Regular files are copied with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}, that lets the kernel move the data
+ * without copying it into the java heap. The chunks start at {@link #MIN_CHUNK} and
+ * adapt to the speed of the storage, so every chunk takes about {@link #CHUNK_TIME}
+ * milliseconds. If the channel can't transfer (returns no progress), the copy
+ * continues with a direct buffer. The modification times of the copied files and
+ * folders are preserved.<br/>
+ * <br/>
+ * The copy of a file can be resumed from an offset (see {@link #getResumeOffset(File,
+ * File)}), keeping the bytes already copied of the destination file.<br/>
+ * <br/>
+ * A move (see {@link #move(File, File, boolean)}) renames the source when the source
+ * and the destination share a mount point, and streams it file by file otherwise.
+ */
+public class CopyEngine {
+
+    private static final String TAG = "CopyEngine"; //$NON-NLS-1$
+
+    /**
+     * The minimum size of a transferred chunk.
+     */
+    public static final long MIN_CHUNK = 256 * 1024L;
+    /**
+     * The maximum size of a transferred chunk.
+     */
+    public static final long MAX_CHUNK = 32 * 1024 * 1024L;
+    /**
+     * The target time of the transfer of a chunk, in milliseconds.
+     */
+    public static final long CHUNK_TIME = 250L;
+
+    // The size of the direct buffer of the fallback copy
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+    private ByteBuffer mBuffer;
+    private File mCurrent;
+    private long mPosition;
+
+    /**
+     * Constructor of <code>CopyEngine</code>.
+     */
+    public CopyEngine() {
+        super();
+    }
+
+    /**
+     * Method that copies a file or folder recursively.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @return boolean If the operation complete successfully
+     * @throws ExecutionException If a problem was detected in the operation
+     */
+    public boolean copy(final File src, final File dst) throws ExecutionException {
+        if (isAborted()) {
+            return false;
+        }
+        if (src.isDirectory()) {
+            // Create the directory
+            if (dst.exists() && !dst.isDirectory()) {
+                Log.e(TAG,
+                        String.format("Failed to check destionation dir: %s", dst)); //$NON-NLS-1$
+                throw new ExecutionException("the path exists but is not a folder"); //$NON-NLS-1$
+            }
+            if (!dst.exists()) {
+                if (!dst.mkdir()) {
+                    Log.e(TAG, String.format("Failed to create directory: %s", dst)); //$NON-NLS-1$
+                    return false;
+                }
+            }
+            File[] files = src.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    if (!copy(files[i], new File(dst, files[i].getName()))) {
+                        return false;
+                    }
+                }
+            }
+            // After the content, that changes the modification time of the folder
+            preserveModifiedTime(src, dst);
+            return true;
+        }
+
+        // Copy the file
+        return copyFile(src, dst);
+    }
+
+    /**
+     * Method that moves a file or folder recursively.<br/>
+     * <br/>
+     * If the source and the destination are in the same mount point, the source is
+     * renamed (the folders that already exist in the destination are merged, renaming
+     * their content). Otherwise, every file is copied and its source deleted before
+     * the next file is copied, so the move never needs more free space than the
+     * biggest file. The source folders are deleted after their content.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @param rename If the source and the destination are in the same mount point
+     * @return boolean If the operation complete successfully
+     * @throws ExecutionException If a problem was detected in the operation
+     */
+    public boolean move(final File src, final File dst, final boolean rename)
+            throws ExecutionException {
+        if (isAborted()) {
+            return false;
+        }
+        // An existing folder is merged, any other destination is replaced atomically
+        boolean merge = src.isDirectory() && dst.isDirectory();
+        if (rename && !merge && src.renameTo(dst)) {
+            onRenamed(src, dst);
+            return true;
+        }
+        if (src.isDirectory()) {
+            // Create the directory
+            if (dst.exists() && !dst.isDirectory()) {
+                Log.e(TAG,
+                        String.format("Failed to check destionation dir: %s", dst)); //$NON-NLS-1$
+                throw new ExecutionException("the path exists but is not a folder"); //$NON-NLS-1$
+            }
+            if (!dst.exists()) {
+                if (!dst.mkdir()) {
+                    Log.e(TAG, String.format("Failed to create directory: %s", dst)); //$NON-NLS-1$
+                    return false;
+                }
+            }
+            File[] files = src.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    if (!move(files[i], new File(dst, files[i].getName()), rename)) {
+                        return false;
+                    }
+                }
+            }
+            preserveModifiedTime(src, dst);
+            if (!src.delete()) {
+                Log.w(TAG, String.format("Failed to delete directory %s", src)); //$NON-NLS-1$
+            }
+            return true;
+        }
+
+        // Move the file
+        if (!copyFile(src, dst)) {
+            return false;
+        }
+        if (!src.delete()) {
+            Log.w(TAG, String.format("Failed to delete file %s", src)); //$NON-NLS-1$
+        }
+        return true;
+    }
+
+    /**
+     * Method that copies a file.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @return boolean If the operation complete successfully
+     */
+    public boolean copyFile(final File src, final File dst) {
+        this.mCurrent = src;
+        this.mPosition = 0;
+        long offset = getResumeOffset(src, dst);
+        if (offset > 0 && offset == src.length()) {
+            // Already copied
+            onTransferred(offset);
+            onFileCopied(src, dst);
+            return true;
+        }
+
+        FileInputStream fis = null;
+        FileOutputStream fos = null;
+        try {
+            fis = new FileInputStream(src);
+            fos = new FileOutputStream(dst, offset > 0);
+            if (offset > 0) {
+                // Discard the bytes after the offset, and continue from it
+                fos.getChannel().truncate(offset);
+                this.mPosition = offset;
+                onTransferred(offset);
+            }
+            transfer(fis.getChannel(), fos.getChannel(), offset);
+        } catch (InterruptedIOException e) {
+            // Aborted. Don't leave a partial file
+            try {
+                fos.close();
+            } catch (Throwable ex) {/**NON BLOCK**/}
+            if (!dst.delete()) {
+                Log.w(TAG, String.format("Failed to delete partial file %s", dst)); //$NON-NLS-1$
+            }
+            return false;
+        } catch (Throwable e) {
+            Log.e(TAG,
+                    String.format("Failed to copy from %s to %s", src, dst), e); //$NON-NLS-1$
+            return false;
+        } finally {
+            try {
+                if (fis != null) {
+                    fis.close();
+                }
+            } catch (Throwable e) {/**NON BLOCK**/}
+            try {
+                if (fos != null) {
+                    fos.close();
+                }
+            } catch (Throwable e) {/**NON BLOCK**/}
+        }
+        preserveModifiedTime(src, dst);
+        onFileCopied(src, dst);
+        return true;
+    }
+
+    /**
+     * Method that transfers the content of a channel to other channel, from a position
+     * to the end of the source.
+     *
+     * @param in The source channel
+     * @param out The destination channel (positioned at the same position)
+     * @param position The position where to start the transfer
+     * @return long The number of bytes transferred
+     * @throws InterruptedIOException If the transfer was aborted
+     * @throws IOException If the transfer fails
+     */
+    protected long transfer(FileChannel in, FileChannel out, long position)
+            throws IOException {
+        long size = in.size();
+        long pos = position;
+        long chunk = MIN_CHUNK;
+        while (pos < size) {
+            if (isAborted()) {
+                throw new InterruptedIOException();
+            }
+            long start = SystemClock.elapsedRealtime();
+            long count = Math.min(chunk, size - pos);
+            long transferred = in.transferTo(pos, count, out);
+            if (transferred <= 0) {
+                // The channel can't transfer. Continue with the direct buffer
+                pos += copyBuffered(in, out, pos, size);
+                break;
+            }
+            pos += transferred;
+            this.mPosition = pos;
+            onTransferred(transferred);
+
+            // Adapt the chunk to the target time
+            long time = SystemClock.elapsedRealtime() - start;
+            if (transferred == count && time < CHUNK_TIME / 2) {
+                chunk = Math.min(MAX_CHUNK, chunk * 2);
+            } else if (time > CHUNK_TIME * 2) {
+                chunk = Math.max(MIN_CHUNK, chunk / 2);
+            }
+        }
+        return pos - position;
+    }
+
+    /**
+     * Method that returns the file being copied.
+     *
+     * @return File The source file being copied
+     */
+    protected File getCurrentFile() {
+        return this.mCurrent;
+    }
+
+    /**
+     * Method that returns the bytes copied of the file being copied.
+     *
+     * @return long The bytes copied of the file being copied
+     */
+    protected long getCurrentPosition() {
+        return this.mPosition;
+    }
+
+    /**
+     * Method that returns the offset from which the copy of a file must continue.
+     * The destination file is kept until the offset, and the rest is copied.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @return long The offset from which copy the file (0 to copy all the file, the
+     * size of the source to skip the file)
+     */
+    protected long getResumeOffset(File src, File dst) {
+        return 0;
+    }
+
+    /**
+     * Method invoked after every transferred chunk.
+     *
+     * @param bytes The number of bytes transferred
+     */
+    protected void onTransferred(long bytes) {
+        /**NON BLOCK**/
+    }
+
+    /**
+     * Method invoked after every copied file.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     */
+    protected void onFileCopied(File src, File dst) {
+        /**NON BLOCK**/
+    }
+
+    /**
+     * Method invoked after a file or folder was moved with a rename.
+     *
+     * @param src The source file or folder (that doesn't exist anymore)
+     * @param dst The destination file or folder
+     */
+    protected void onRenamed(File src, File dst) {
+        /**NON BLOCK**/
+    }
+
+    /**
+     * Method that returns if the copy must be aborted. Checked before every file
+     * and every transferred chunk.
+     *
+     * @return boolean If the copy must be aborted
+     */
+    protected boolean isAborted() {
+        return false;
+    }
+
+    /**
+     * Method that copies the content of a channel to other channel through a direct
+     * buffer.
+     *
+     * @param in The source channel
+     * @param out The destination channel
+     * @param position The position where to start the copy
+     * @param size The size of the source
+     * @return long The number of bytes copied
+     * @throws IOException If the copy fails
+     */
+    private long copyBuffered(FileChannel in, FileChannel out, long position, long size)
+            throws IOException {
+        if (this.mBuffer == null) {
+            this.mBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        ByteBuffer buffer = this.mBuffer;
+        long pos = position;
+        in.position(pos);
+        while (pos < size) {
+            if (isAborted()) {
+                throw new InterruptedIOException();
+            }
+            buffer.clear();
+            int read = in.read(buffer);
+            if (read == -1) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            pos += read;
+            this.mPosition = pos;
+            onTransferred(read);
+        }
+        return pos - position;
+    }
+
+    /**
+     * Method that sets the modification time of the source in the destination.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     */
+    private static void preserveModifiedTime(File src, File dst) {
+        long modified = src.lastModified();
+        if (modified != 0 && !dst.setLastModified(modified)) {
+            Log.w(TAG, String.format(
+                    "Failed to preserve the modification time of %s", dst)); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.DeleteExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A class for delete a batch of files and directories in background. The items are
+ * deleted in parallel with a {@link DeleteEngine}.
+ */
+public class DeleteCommand extends Program implements DeleteExecutable {
+
+    private static final String TAG = "DeleteCommand"; //$NON-NLS-1$
+
+    private final String[] mItems;
+    private final AsyncResultListener mAsyncResultListener;
+    private final List<String> mFailed;
+    private Boolean mResult;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>DeleteCommand</code>.
+     *
+     * @param items The absolute paths to the files and directories to be deleted
+     * @param asyncResultListener The partial result listener
+     */
+    public DeleteCommand(String[] items, AsyncResultListener asyncResultListener) {
+        super();
+        this.mItems = items;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mFailed = new ArrayList<String>();
+        this.mResult = Boolean.FALSE;
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getFailed() {
+        synchronized (this.mFailed) {
+            return new ArrayList<String>(this.mFailed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Deleting %d items", //$NON-NLS-1$
+                            Integer.valueOf(this.mItems.length)));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        File[] files = new File[this.mItems.length];
+        for (int i = 0; i < this.mItems.length; i++) {
+            files[i] = new File(this.mItems[i]);
+        }
+        DeleteEngine engine = new DeleteEngine() {
+            @Override
+            protected void onDeleted(File item) {
+                if (getAsyncResultListener() != null) {
+                    getAsyncResultListener().onPartialResult(item.getAbsolutePath());
+                }
+            }
+
+            @Override
+            protected boolean isAborted() {
+                return DeleteCommand.this.mCancelled || DeleteCommand.this.mEnded;
+            }
+        };
+        boolean completed = engine.delete(files);
+
+        // Check the items that still exist
+        synchronized (this.mFailed) {
+            this.mFailed.clear();
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].exists()) {
+                    this.mFailed.add(this.mItems[i]);
+                }
+            }
+        }
+        this.mResult = Boolean.valueOf(completed);
+
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            this.mSync.notify();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, String.format("Result: OK. %d items not deleted", //$NON-NLS-1$
+                    Integer.valueOf(this.mFailed.size())));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mCancelled = true;
+                    return true;
+                }
+                this.mCancelled = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
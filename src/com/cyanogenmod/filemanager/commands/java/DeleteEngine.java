@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class for delete files and folders in the java console.<br/>
+ * <br/>
+ * The folders are deleted by a pool of {@link #MAX_THREADS} threads: every folder is
+ * listed by a task that deletes its files and creates a new task for every subfolder,
+ * so the subfolders of a big tree are deleted in parallel. A folder is deleted when the
+ * last task of its content ends. The symlinks are deleted, not followed.
+ */
+public class DeleteEngine {
+
+    private static final String TAG = "DeleteEngine"; //$NON-NLS-1$
+
+    /**
+     * The number of threads that delete the folders.
+     */
+    public static final int MAX_THREADS = 4;
+
+    // The time between checks of the abort of the operation
+    private static final long POLL_DELAY = 250L;
+
+    /**
+     * A folder being deleted.
+     */
+    private static final class Node {
+        final File mFolder;
+        final Node mParent;
+        // The listing of the folder, plus the subfolders not deleted yet
+        final AtomicInteger mPending;
+
+        /**
+         * Constructor of <code>Node</code>.
+         *
+         * @param folder The folder
+         * @param parent The node of the parent folder, or null if the folder is an item
+         */
+        Node(File folder, Node parent) {
+            super();
+            this.mFolder = folder;
+            this.mParent = parent;
+            this.mPending = new AtomicInteger(1);
+        }
+    }
+
+    private ExecutorService mExecutor;
+    private int mRemaining;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>DeleteEngine</code>.
+     */
+    public DeleteEngine() {
+        super();
+    }
+
+    /**
+     * Method that deletes files and folders recursively. The method returns when
+     * all the items were processed, or the operation was aborted.
+     *
+     * @param items The files and folders to delete
+     * @return boolean If the operation wasn't aborted. The deleted items are notified
+     * through {@link #onDeleted(File)}
+     */
+    public boolean delete(File[] items) {
+        synchronized (this.mSync) {
+            this.mRemaining = items.length;
+        }
+        this.mExecutor = Executors.newFixedThreadPool(MAX_THREADS);
+        try {
+            for (int i = 0; i < items.length; i++) {
+                if (isFolder(items[i])) {
+                    submit(new Node(items[i], null));
+                } else {
+                    itemEnded(items[i], items[i].delete());
+                }
+            }
+
+            // Wait for all the items
+            synchronized (this.mSync) {
+                while (this.mRemaining > 0) {
+                    if (isAborted()) {
+                        return false;
+                    }
+                    this.mSync.wait(POLL_DELAY);
+                }
+            }
+            return true;
+
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            this.mExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Method invoked after every deleted item. The method is invoked from the
+     * threads of the engine.
+     *
+     * @param item The deleted file or folder
+     */
+    protected void onDeleted(File item) {
+        /**NON BLOCK**/
+    }
+
+    /**
+     * Method that returns if the operation must be aborted. Checked before every
+     * folder.
+     *
+     * @return boolean If the operation must be aborted
+     */
+    protected boolean isAborted() {
+        return false;
+    }
+
+    /**
+     * Method that submits the deletion of the content of a folder.
+     *
+     * @param node The node of the folder
+     */
+    private void submit(final Node node) {
+        try {
+            this.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deleteContent(node);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The operation ended
+        }
+    }
+
+    /**
+     * Method that deletes the files of a folder, and submits its subfolders.
+     *
+     * @param node The node of the folder
+     * @hide
+     */
+    void deleteContent(Node node) {
+        try {
+            if (isAborted()) {
+                return;
+            }
+            File[] files = node.mFolder.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    if (isFolder(files[i])) {
+                        node.mPending.incrementAndGet();
+                        submit(new Node(files[i], node));
+                    } else if (!files[i].delete()) {
+                        Log.w(TAG, String.format(
+                                "Failed to delete file %s", files[i])); //$NON-NLS-1$
+                    }
+                }
+            }
+        } finally {
+            // Always, or the folder and its parents never end
+            release(node);
+        }
+    }
+
+    /**
+     * Method that releases a task of a folder. The folder is deleted when its last
+     * task is released, and then the task of its parent is released.
+     *
+     * @param node The node of the folder
+     */
+    private void release(Node node) {
+        Node n = node;
+        while (n.mPending.decrementAndGet() == 0) {
+            boolean deleted = n.mFolder.delete();
+            if (n.mParent == null) {
+                itemEnded(n.mFolder, deleted);
+                return;
+            }
+            if (!deleted) {
+                Log.w(TAG, String.format("Failed to delete directory %s", n.mFolder)); //$NON-NLS-1$
+            }
+            n = n.mParent;
+        }
+    }
+
+    /**
+     * Method that marks an item as processed.
+     *
+     * @param item The file or folder
+     * @param deleted If the item was deleted
+     */
+    private void itemEnded(File item, boolean deleted) {
+        if (deleted) {
+            onDeleted(item);
+        }
+        synchronized (this.mSync) {
+            this.mRemaining--;
+            this.mSync.notify();
+        }
+    }
+
+    /**
+     * Method that returns if a file is a folder (and not a symlink to a folder).
+     *
+     * @param file The file
+     * @return boolean If the file is a folder
+     */
+    private static boolean isFolder(File file) {
+        if (!file.isDirectory()) {
+            return false;
+        }
+        File parent = file.getParentFile();
+        if (parent == null) {
+            return true;
+        }
+        try {
+            // Resolve the parent, so only the file itself can be a symlink
+            File f = new File(parent.getCanonicalFile(), file.getName());
+            return f.getCanonicalPath().compareTo(f.getAbsolutePath()) == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.DuplicateFinder;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for find the files with the same content in a folder.<br/>
+ * <br/>
+ * The tree is walked with a {@link ParallelTreeWalker}, and every regular file is passed
+ * to a {@link DuplicateFinder}, so the files are hashed while the tree is still being
+ * walked. Every group of duplicates found (or grown) is sent as a partial result.
+ * Symlinks are not followed nor compared, so a file is never reported as a duplicate
+ * of itself.
+ */
+public class DuplicatesCommand extends Program implements DuplicatesExecutable {
+
+    private static final String TAG = "DuplicatesCommand"; //$NON-NLS-1$
+
+    private final String mDirectory;
+    private final AsyncResultListener mAsyncResultListener;
+    private final DuplicateFinder mFinder;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private ParallelTreeWalker mWalker;
+    private boolean mRunning;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>DuplicatesCommand</code>.
+     *
+     * @param directory The absolute directory where to find the duplicates
+     * @param asyncResultListener The partial result listener
+     */
+    public DuplicatesCommand(String directory, AsyncResultListener asyncResultListener) {
+        super();
+        this.mDirectory = directory;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mFinder = new DuplicateFinder(directory, true) {
+            @Override
+            protected void onDuplicates(DuplicateGroup group) {
+                //If a listener is defined, then send the partial result
+                if (getAsyncResultListener() != null) {
+                    getAsyncResultListener().onPartialResult(group);
+                }
+            }
+
+            @Override
+            protected boolean isAborted() {
+                return DuplicatesCommand.this.mCancelled || DuplicatesCommand.this.mEnded;
+            }
+        };
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Finding duplicates in %s", this.mDirectory)); //$NON-NLS-1$
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        File f = new File(this.mDirectory);
+        if (!f.exists()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(new NoSuchFileOrDirectory(this.mDirectory));
+            }
+        } else if (!f.isDirectory()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(
+                        new ExecutionException("path exists but it's not a folder")); //$NON-NLS-1$
+            }
+        } else {
+            // Walk the tree and wait for the files still being hashed
+            this.mFinder.start();
+            synchronized (this.mSync) {
+                this.mRunning = true;
+            }
+            try {
+                findParallel(f);
+                this.mFinder.await();
+            } finally {
+                // Notify a pending cancellation or ending request
+                synchronized (this.mSync) {
+                    this.mRunning = false;
+                    this.mSync.notify();
+                }
+            }
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that walks the tree in parallel, adding the regular files to the finder.
+     *
+     * @param folder The folder where to start the walk
+     */
+    private void findParallel(File folder) {
+        final ParallelTreeWalker walker =
+                new ParallelTreeWalker(ParallelTreeWalker.getDefaultParallelism());
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+
+        walker.walkFolders(folder, new ParallelTreeWalker.FolderVisitor() {
+            @Override
+            public File[] onVisitFolder(int worker, File dir) {
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    return null;
+                }
+                File canonical;
+                try {
+                    // Resolve the folder, so only the entries themselves can be symlinks
+                    canonical = dir.getCanonicalFile();
+                } catch (IOException e) {
+                    return null;
+                }
+                List<File> folders = new ArrayList<File>();
+                int cc = files.length;
+                for (int i = 0; i < cc && !walker.isCancelled(); i++) {
+                    File file = files[i];
+                    if (isSymlink(canonical, file.getName())) {
+                        continue;
+                    }
+                    if (file.isDirectory()) {
+                        folders.add(file);
+                    } else {
+                        FileSystemObject fso = FileHelper.createFileSystemObject(file);
+                        if (fso != null) {
+                            DuplicatesCommand.this.mFinder.addFile(fso);
+                        }
+                    }
+                }
+                return folders.toArray(new File[folders.size()]);
+            }
+
+            @Override
+            public void onWorkerEnd(int worker) {
+                /**NON BLOCK**/
+            }
+        });
+
+        synchronized (this.mSync) {
+            this.mWalker = null;
+        }
+    }
+
+    /**
+     * Method that returns if an entry of a folder is a symlink.
+     *
+     * @param folder The canonical folder
+     * @param name The name of the entry
+     * @return boolean If the entry is a symlink (or it can't be resolved)
+     * @hide
+     */
+    static boolean isSymlink(File folder, String name) {
+        try {
+            File f = new File(folder, name);
+            return f.getCanonicalPath().compareTo(f.getAbsolutePath()) != 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DuplicateGroup> getDuplicates() {
+        return this.mFinder.getDuplicates();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                this.mCancelled = true;
+                this.mFinder.cancel();
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (this.mRunning) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                this.mFinder.cancel();
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                if (this.mRunning) {
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
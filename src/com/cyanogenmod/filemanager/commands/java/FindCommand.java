@@ -23,28 +23,45 @@ import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.CompiledQuery;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.util.FileHelper;
-import com.cyanogenmod.filemanager.util.SearchHelper;
 
 import java.io.File;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
- * A class for search files.
+ * A class for search files.<br/>
+ * <br/>
+ * The tree is walked with a {@link ParallelTreeWalker}, and the matches are
+ * communicated in batches (a <code>List</code> of {@link FileSystemObject}). The workers
+ * queue their batches and a single thread delivers them to the listener, so the walk
+ * doesn't wait for the listener (the ranking of the results).
  */
 public class FindCommand extends Program implements FindExecutable {
 
     private static final String TAG = "FindCommand"; //$NON-NLS-1$
 
+    // The number of matches of a worker that are sent together to the listener
+    private static final int PARTIAL_RESULT_BATCH = 50;
+    // The maximum time that a match waits in a batch before being sent to the listener
+    private static final long PARTIAL_RESULT_MAX_DELAY = 250L;
+    // The batch that marks the end of the matches
+    private static final List<FileSystemObject> END_OF_RESULTS =
+            new ArrayList<FileSystemObject>(0);
+
     private final String mDirectory;
-    private final String[] mQueryRegExp;
+    private final CompiledQuery mQuery;
     private final AsyncResultListener mAsyncResultListener;
 
-    private boolean mCancelled;
-    private boolean mEnded;
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private ParallelTreeWalker mWalker;
     private final Object mSync = new Object();
+    private final LinkedBlockingQueue<List<FileSystemObject>> mPartialResults;
 
     /**
      * Constructor of <code>FindCommand</code>.
@@ -56,8 +73,9 @@ public class FindCommand extends Program implements FindExecutable {
     public FindCommand(String directory, Query query, AsyncResultListener asyncResultListener) {
         super();
         this.mDirectory = directory;
-        this.mQueryRegExp = createRegexp(directory, query);
+        this.mQuery = new CompiledQuery(query);
         this.mAsyncResultListener = asyncResultListener;
+        this.mPartialResults = new LinkedBlockingQueue<List<FileSystemObject>>();
         this.mCancelled = false;
         this.mEnded = false;
     }
@@ -79,7 +97,7 @@ public class FindCommand extends Program implements FindExecutable {
         if (isTrace()) {
             Log.v(TAG,
                     String.format("Finding in %s the query %s", //$NON-NLS-1$
-                            this.mDirectory, Arrays.toString(this.mQueryRegExp)));
+                            this.mDirectory, this.mQuery.getQuery().getTerms()));
         }
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncStart();
@@ -105,7 +123,7 @@ public class FindCommand extends Program implements FindExecutable {
         }
 
         // Find the data
-        findRecursive(f);
+        findParallel(f);
 
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
@@ -120,48 +138,140 @@ public class FindCommand extends Program implements FindExecutable {
     }
 
     /**
-     * Method that search files recursively
+     * Method that search files walking the tree in parallel
      *
      * @param folder The folder where to start the search
      */
-    private void findRecursive(File folder) {
-        // Obtains the files and folders of the folders
-        File[] files = folder.listFiles();
-        if (files != null) {
-            int cc = files.length;
-            for (int i = 0; i < cc; i++) {
-                if (files[i].isDirectory()) {
-                    findRecursive(files[i]);
+    private void findParallel(File folder) {
+        final ParallelTreeWalker walker =
+                new ParallelTreeWalker(ParallelTreeWalker.getDefaultParallelism());
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+
+        // Every worker accumulates its matches in its own batch
+        final List<List<FileSystemObject>> batches =
+                new ArrayList<List<FileSystemObject>>(walker.getParallelism());
+        final long[] lastNotifications = new long[walker.getParallelism()];
+        for (int i = 0; i < walker.getParallelism(); i++) {
+            batches.add(new ArrayList<FileSystemObject>(PARTIAL_RESULT_BATCH));
+            lastNotifications[i] = System.currentTimeMillis();
+        }
+
+        // The consumer of the batches
+        Thread delivery = null;
+        if (this.mAsyncResultListener != null) {
+            delivery = new Thread(TAG + "-results") { //$NON-NLS-1$
+                @Override
+                public void run() {
+                    deliverPartialResults();
                 }
+            };
+            delivery.start();
+        }
 
-                // Check if the file or folder matches the regexp
-                try {
-                    int ccc = this.mQueryRegExp.length;
-                    for (int j = 0; j < ccc; j++) {
-                        if (files[i].getName().matches(this.mQueryRegExp[j])) {
-                            FileSystemObject fso =
-                                    FileHelper.createFileSystemObject(files[i]);
-                            if (fso != null) {
-                                if (isTrace()) {
-                                    Log.v(TAG, String.valueOf(fso));
-                                }
-                                if (this.mAsyncResultListener != null) {
-                                    this.mAsyncResultListener.onPartialResult(fso);
-                                }
-                            }
+        walker.walk(folder, new ParallelTreeWalker.Visitor() {
+            @Override
+            public boolean onVisit(int worker, File file, boolean isDirectory) {
+                // Check if the file or folder matches the query and its filters
+                if (FindCommand.this.mQuery.matches(file.getName()) &&
+                    FindCommand.this.mQuery.accepts(file, isDirectory)) {
+                    FileSystemObject fso = FileHelper.createFileSystemObject(file);
+                    if (fso != null) {
+                        if (isTrace()) {
+                            Log.v(TAG, String.valueOf(fso));
                         }
-                    }
-                } catch (Exception e) {/**NON-BLOCK**/}
-
-                // Check if the process was cancelled
-                try {
-                    synchronized (this.mSync) {
-                        if (this.mCancelled  || this.mEnded) {
-                            this.mSync.notify();
-                            break;
+                        List<FileSystemObject> batch = batches.get(worker);
+                        batch.add(fso);
+                        long now = System.currentTimeMillis();
+                        if (batch.size() >= PARTIAL_RESULT_BATCH ||
+                            (now - lastNotifications[worker]) >= PARTIAL_RESULT_MAX_DELAY) {
+                            batches.set(worker,
+                                    new ArrayList<FileSystemObject>(PARTIAL_RESULT_BATCH));
+                            lastNotifications[worker] = now;
+                            notifyPartialResult(batch);
                         }
                     }
-                } catch (Exception e) {/**NON BLOCK**/}
+                }
+                return true;
+            }
+
+            @Override
+            public void onWorkerEnd(int worker) {
+                List<FileSystemObject> batch = batches.get(worker);
+                if (batch.size() > 0) {
+                    notifyPartialResult(batch);
+                }
+            }
+        });
+
+        // Wait for the delivery of the pending batches
+        if (delivery != null) {
+            this.mPartialResults.offer(END_OF_RESULTS);
+            try {
+                delivery.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Notify a pending cancellation or ending request
+        synchronized (this.mSync) {
+            this.mWalker = null;
+            if (this.mCancelled || this.mEnded) {
+                this.mSync.notify();
+            }
+        }
+    }
+
+    /**
+     * Method that queues a batch of matches for the listener. This method doesn't
+     * block the worker.
+     *
+     * @param batch The batch of matches
+     * @hide
+     */
+    void notifyPartialResult(List<FileSystemObject> batch) {
+        if (this.mAsyncResultListener != null) {
+            this.mPartialResults.offer(batch);
+        }
+    }
+
+    /**
+     * Method that sends the queued batches to the listener until the end of the
+     * matches. The batches are sent from this thread only, so the listener don't need
+     * to be thread-safe. The batches queued while the listener was busy are sent
+     * together.
+     *
+     * @hide
+     */
+    void deliverPartialResults() {
+        boolean ended = false;
+        while (!ended) {
+            List<List<FileSystemObject>> batches = new ArrayList<List<FileSystemObject>>();
+            try {
+                batches.add(this.mPartialResults.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.mPartialResults.drainTo(batches);
+
+            List<FileSystemObject> results = new ArrayList<FileSystemObject>();
+            int cc = batches.size();
+            for (int i = 0; i < cc; i++) {
+                List<FileSystemObject> batch = batches.get(i);
+                if (batch == END_OF_RESULTS) {
+                    ended = true;
+                } else {
+                    results.addAll(batch);
+                }
+            }
+            if (results.size() > 0) {
+                this.mAsyncResultListener.onPartialResult(results);
             }
         }
     }
@@ -171,9 +281,7 @@ public class FindCommand extends Program implements FindExecutable {
      */
     @Override
     public boolean isCancelled() {
-        synchronized (this.mSync) {
-            return this.mCancelled;
-        }
+        return this.mCancelled;
     }
 
     /**
@@ -184,7 +292,10 @@ public class FindCommand extends Program implements FindExecutable {
         try {
             synchronized (this.mSync) {
                 this.mCancelled = true;
-                this.mSync.wait(5000L);
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                    this.mSync.wait(5000L);
+                }
             }
         } catch (Exception e) {/**NON BLOCK**/}
         return true;
@@ -198,7 +309,10 @@ public class FindCommand extends Program implements FindExecutable {
         try {
             synchronized (this.mSync) {
                 this.mEnded = true;
-                this.mSync.wait(5000L);
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                    this.mSync.wait(5000L);
+                }
             }
         } catch (Exception e) {/**NON BLOCK**/}
         return true;
@@ -235,21 +349,4 @@ public class FindCommand extends Program implements FindExecutable {
     public AsyncResultListener getAsyncResultListener() {
         return this.mAsyncResultListener;
     }
-
-    /**
-     * Method that create the regexp of this command, using the directory and
-     * arguments and creating the regular expressions of the search.
-     *
-     * @param directory The directory where to search
-     * @param query The query make for user
-     * @return String[] The regexp for filtering files
-     */
-    private static String[] createRegexp(String directory, Query query) {
-        String[] args = new String[query.getSlotsCount()];
-        int cc = query.getSlotsCount();
-        for (int i = 0; i < cc; i++) {
-            args[i] = SearchHelper.toIgnoreCaseRegExp(query.getSlot(i), true);
-        }
-        return args;
-    }
 }
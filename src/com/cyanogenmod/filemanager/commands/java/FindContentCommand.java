@@ -0,0 +1,691 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.FindContentExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.CompiledQuery;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.util.BoyerMooreHorspool;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.SearchHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for search text inside files.<br/>
+ * <br/>
+ * The tree is walked with a {@link ParallelTreeWalker}, that puts the candidate files
+ * (the ones that pass the filters of the query) in a bounded queue. A pool of scanners
+ * takes the files from the queue and reads them with large buffered reads, seeking the
+ * terms (see {@link SearchHelper#getContentTerms(Query)}) with a
+ * {@link BoyerMooreHorspool} matcher. Binary files and files bigger than the configured
+ * limit are skipped. The matches of every file are communicated as a <code>List</code>
+ * of {@link ContentMatch}, from a single delivery thread.
+ */
+public class FindContentCommand extends Program implements FindContentExecutable {
+
+    private static final String TAG = "FindContentCommand"; //$NON-NLS-1$
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    // The size of the read buffer of every scanner
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // The number of bytes at the start of a file where seek for binary content
+    private static final int BINARY_CHECK_SIZE = 8 * 1024;
+    // The number of pending files that the walkers can put in the queue
+    private static final int QUEUE_CAPACITY = 512;
+    // The time that walkers and scanners wait for the queue before check for cancellation
+    private static final long QUEUE_WAIT = 250L;
+
+    // The marker of the end of the queue (compared by reference)
+    private static final File END_OF_QUEUE = new File(""); //$NON-NLS-1$
+    // The batch that marks the end of the matches
+    private static final List<ContentMatch> END_OF_RESULTS = new ArrayList<ContentMatch>(0);
+
+    /**
+     * A class that seeks a term in a buffer.
+     */
+    private static class Searcher {
+        // The matcher of the literal part of the term (null if the term matches any line)
+        final BoyerMooreHorspool mMatcher;
+        // The compiled term, if the literal part must be verified with the full term
+        final CompiledQuery.Term mVerify;
+
+        /**
+         * Constructor of <code>Searcher</code>.
+         *
+         * @param term The term to seek
+         */
+        Searcher(CompiledQuery.Term term) {
+            super();
+            if (term.isLiteral()) {
+                this.mMatcher = new BoyerMooreHorspool(term.getTerm());
+                this.mVerify = null;
+            } else {
+                // Seek the longest literal part of the term, and verify the candidate lines
+                String longest = ""; //$NON-NLS-1$
+                String[] parts = term.getTerm().split("\\*"); //$NON-NLS-1$
+                for (int i = 0; i < parts.length; i++) {
+                    if (parts[i].length() > longest.length()) {
+                        longest = parts[i];
+                    }
+                }
+                this.mMatcher = longest.length() > 0 ? new BoyerMooreHorspool(longest) : null;
+                this.mVerify = term;
+            }
+        }
+    }
+
+    private final String mDirectory;
+    private final CompiledQuery mQuery;
+    private final Searcher[] mSearchers;
+    private final long mMaxFileSize;
+    private final int mMaxMatches;
+    private final AsyncResultListener mAsyncResultListener;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private ParallelTreeWalker mWalker;
+    private final Object mSync = new Object();
+    private final LinkedBlockingQueue<List<ContentMatch>> mPartialResults;
+
+    /**
+     * Constructor of <code>FindContentCommand</code>.
+     *
+     * @param directory The absolute directory where start the search
+     * @param query The terms to be searched
+     * @param asyncResultListener The partial result listener
+     */
+    public FindContentCommand(
+            String directory, Query query, AsyncResultListener asyncResultListener) {
+        super();
+        this.mDirectory = directory;
+        this.mQuery = new CompiledQuery(query);
+        List<String> terms = SearchHelper.getContentTerms(query);
+        int cc = terms.size();
+        this.mSearchers = new Searcher[cc];
+        for (int i = 0; i < cc; i++) {
+            this.mSearchers[i] = new Searcher(new CompiledQuery.Term(terms.get(i)));
+        }
+        Resources res = FileManagerApplication.getInstance().getResources();
+        this.mMaxFileSize = res.getInteger(R.integer.content_search_max_file_size);
+        this.mMaxMatches = res.getInteger(R.integer.content_search_max_matches_per_file);
+        this.mAsyncResultListener = asyncResultListener;
+        this.mPartialResults = new LinkedBlockingQueue<List<ContentMatch>>();
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Finding content in %s the query %s", //$NON-NLS-1$
+                            this.mDirectory, this.mQuery.getQuery().getTerms()));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        File f = new File(this.mDirectory);
+        if (!f.exists()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(new NoSuchFileOrDirectory(this.mDirectory));
+            }
+        }
+        if (!f.isDirectory()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(
+                        new ExecutionException("path exists but it's not a folder")); //$NON-NLS-1$
+            }
+        }
+
+        // Find the data
+        if (this.mSearchers.length > 0) {
+            findParallel(f);
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that walks the tree and scans the files in parallel
+     *
+     * @param folder The folder where to start the search
+     */
+    private void findParallel(File folder) {
+        final int parallelism = ParallelTreeWalker.getDefaultParallelism();
+        final ParallelTreeWalker walker = new ParallelTreeWalker(parallelism);
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+
+        // Start the scanners
+        final BlockingQueue<File> queue = new ArrayBlockingQueue<File>(QUEUE_CAPACITY);
+        Thread[] scanners = new Thread[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            scanners[i] = new Thread(TAG + "-" + i) { //$NON-NLS-1$
+                @Override
+                public void run() {
+                    scanQueue(queue);
+                }
+            };
+            scanners[i].start();
+        }
+
+        // The consumer of the matches
+        Thread delivery = null;
+        if (this.mAsyncResultListener != null) {
+            delivery = new Thread(TAG + "-results") { //$NON-NLS-1$
+                @Override
+                public void run() {
+                    deliverPartialResults();
+                }
+            };
+            delivery.start();
+        }
+
+        // Walk the tree, queueing the candidate files
+        walker.walk(folder, new ParallelTreeWalker.Visitor() {
+            @Override
+            public boolean onVisit(int worker, File file, boolean isDirectory) {
+                if (!isDirectory && file.length() <= FindContentCommand.this.mMaxFileSize &&
+                    FindContentCommand.this.mQuery.accepts(file, false)) {
+                    enqueue(queue, file);
+                }
+                return true;
+            }
+
+            @Override
+            public void onWorkerEnd(int worker) {/**NON BLOCK**/}
+        });
+
+        // Signal the end of the queue to every scanner, and wait for them
+        if (isStopped()) {
+            queue.clear();
+        }
+        for (int i = 0; i < parallelism; i++) {
+            enqueue(queue, END_OF_QUEUE);
+        }
+        for (int i = 0; i < parallelism; i++) {
+            try {
+                scanners[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Wait for the delivery of the pending matches
+        if (delivery != null) {
+            this.mPartialResults.offer(END_OF_RESULTS);
+            try {
+                delivery.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Notify a pending cancellation or ending request
+        synchronized (this.mSync) {
+            this.mWalker = null;
+            if (this.mCancelled || this.mEnded) {
+                this.mSync.notify();
+            }
+        }
+    }
+
+    /**
+     * Method that puts a file in the queue, waiting for free space in the queue while
+     * the command is not stopped. The end of queue marker is always queued.
+     *
+     * @param queue The queue of files
+     * @param file The file to queue
+     * @hide
+     */
+    void enqueue(BlockingQueue<File> queue, File file) {
+        try {
+            while (!queue.offer(file, QUEUE_WAIT, TimeUnit.MILLISECONDS)) {
+                if (isStopped()) {
+                    if (file != END_OF_QUEUE) {
+                        return;
+                    }
+                    // Scanners are leaving; make room for the marker
+                    queue.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The main loop of a scanner thread.
+     *
+     * @param queue The queue of files
+     * @hide
+     */
+    void scanQueue(BlockingQueue<File> queue) {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try {
+            while (true) {
+                File file = queue.take();
+                if (file == END_OF_QUEUE) {
+                    break;
+                }
+                if (isStopped()) {
+                    continue;
+                }
+                try {
+                    List<ContentMatch> matches = scan(file, buffer);
+                    if (matches != null && matches.size() > 0) {
+                        notifyPartialResult(matches);
+                    }
+                } catch (Exception e) {
+                    if (isTrace()) {
+                        Log.v(TAG, String.format("Failed to scan %s", file), e); //$NON-NLS-1$
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method that scans a file seeking the terms of the query.
+     *
+     * @param file The file to scan
+     * @param buffer The read buffer of the scanner
+     * @return List<ContentMatch> The matches found, or null if the file is binary
+     * @throws IOException If the file can't be read
+     */
+    private List<ContentMatch> scan(File file, byte[] buffer) throws IOException {
+        List<ContentMatch> matches = null;
+        FileSystemObject fso = null;
+        int[] nextHits = new int[this.mSearchers.length];
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            int count = 0;          // The valid bytes in the buffer
+            int lineNumber = 1;     // The line number at the start of the buffer
+            boolean first = true;
+            boolean eof = false;
+            while (!eof && !isStopped()) {
+                int read = fis.read(buffer, count, buffer.length - count);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    count += read;
+                }
+
+                // Skip binary files
+                if (first && (count >= BINARY_CHECK_SIZE || eof)) {
+                    first = false;
+                    int check = Math.min(count, BINARY_CHECK_SIZE);
+                    for (int i = 0; i < check; i++) {
+                        if (buffer[i] == 0) {
+                            return null;
+                        }
+                    }
+                }
+
+                // Only process complete lines, unless the file ended or the line
+                // doesn't fit in the buffer
+                int limit = lastIndexOf(buffer, (byte)'\n', count) + 1;
+                if (eof || (limit == 0 && count == buffer.length)) {
+                    limit = count;
+                } else if (limit == 0 || first) {
+                    continue;
+                }
+
+                // Seek the terms in the complete lines
+                for (int i = 0; i < nextHits.length; i++) {
+                    nextHits[i] = -2;
+                }
+                int pos = 0;
+                int counted = 0;
+                while (pos < limit) {
+                    int hit = -1;
+                    for (int i = 0; i < nextHits.length; i++) {
+                        if (nextHits[i] != -1 && nextHits[i] < pos) {
+                            nextHits[i] = findNext(this.mSearchers[i], buffer, pos, limit);
+                        }
+                        if (nextHits[i] != -1 && (hit == -1 || nextHits[i] < hit)) {
+                            hit = nextHits[i];
+                        }
+                    }
+                    if (hit == -1) {
+                        break;
+                    }
+
+                    // Extract the line of the match
+                    int start = lastIndexOf(buffer, (byte)'\n', hit) + 1;
+                    int end = indexOf(buffer, (byte)'\n', hit, limit);
+                    lineNumber += count(buffer, (byte)'\n', counted, start);
+                    counted = start;
+                    if (fso == null) {
+                        fso = FileHelper.createFileSystemObject(file);
+                        matches = new ArrayList<ContentMatch>();
+                    }
+                    matches.add(new ContentMatch(fso, lineNumber, decodeLine(buffer, start, end)));
+                    if (matches.size() >= this.mMaxMatches) {
+                        return matches;
+                    }
+                    pos = end + 1;
+                }
+                lineNumber += count(buffer, (byte)'\n', counted, limit);
+
+                // Move the incomplete line to the start of the buffer
+                System.arraycopy(buffer, limit, buffer, 0, count - limit);
+                count -= limit;
+            }
+        } finally {
+            try {
+                fis.close();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Method that finds the next match of a term in a region of the buffer.
+     *
+     * @param searcher The searcher of the term
+     * @param buffer The buffer
+     * @param from The start of the region (inclusive)
+     * @param to The end of the region (exclusive)
+     * @return int The position of the next match, or -1 if there are no more matches
+     */
+    private static int findNext(Searcher searcher, byte[] buffer, int from, int to) {
+        if (searcher.mMatcher == null) {
+            // The term matches any line
+            return from < to ? from : -1;
+        }
+        int pos = from;
+        while (pos < to) {
+            int hit = searcher.mMatcher.indexOf(buffer, pos, to);
+            if (hit == -1 || searcher.mVerify == null) {
+                return hit;
+            }
+
+            // The literal part was found. Check the full term against the line
+            int start = lastIndexOf(buffer, (byte)'\n', hit) + 1;
+            int end = indexOf(buffer, (byte)'\n', hit, to);
+            if (searcher.mVerify.find(new String(buffer, start, end - start, UTF8), null)) {
+                return hit;
+            }
+            pos = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Method that decodes a line of the buffer, limiting its length.
+     *
+     * @param buffer The buffer
+     * @param start The start of the line (inclusive)
+     * @param end The end of the line (exclusive)
+     * @return String The decoded line
+     */
+    private static String decodeLine(byte[] buffer, int start, int end) {
+        // A character takes up to 4 bytes in UTF-8
+        int len = Math.min(end - start, ContentMatch.MAX_LINE_LENGTH * 4);
+        String line = new String(buffer, start, len, UTF8).trim();
+        if (line.length() > ContentMatch.MAX_LINE_LENGTH) {
+            line = line.substring(0, ContentMatch.MAX_LINE_LENGTH);
+        }
+        return line;
+    }
+
+    /**
+     * Method that returns the position of the last occurrence of a byte before a position.
+     *
+     * @param buffer The buffer
+     * @param b The byte to find
+     * @param to The end of the search (exclusive)
+     * @return int The position of the byte, or -1 if not found
+     */
+    private static int lastIndexOf(byte[] buffer, byte b, int to) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that returns the position of the first occurrence of a byte in a region.
+     *
+     * @param buffer The buffer
+     * @param b The byte to find
+     * @param from The start of the region (inclusive)
+     * @param to The end of the region (exclusive)
+     * @return int The position of the byte, or <code>to</code> if not found
+     */
+    private static int indexOf(byte[] buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Method that counts the occurrences of a byte in a region.
+     *
+     * @param buffer The buffer
+     * @param b The byte to count
+     * @param from The start of the region (inclusive)
+     * @param to The end of the region (exclusive)
+     * @return int The number of occurrences
+     */
+    private static int count(byte[] buffer, byte b, int from, int to) {
+        int c = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) {
+                c++;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Method that queues the matches of a file for the listener. This method doesn't
+     * block the scanner.
+     *
+     * @param matches The matches of a file
+     * @hide
+     */
+    void notifyPartialResult(List<ContentMatch> matches) {
+        if (this.mAsyncResultListener != null) {
+            this.mPartialResults.offer(matches);
+        }
+    }
+
+    /**
+     * Method that sends the queued matches to the listener until the end of the
+     * search. The matches are sent from this thread only, so the listener don't need
+     * to be thread-safe. The matches queued while the listener was busy are sent
+     * together.
+     *
+     * @hide
+     */
+    void deliverPartialResults() {
+        boolean ended = false;
+        while (!ended) {
+            List<List<ContentMatch>> batches = new ArrayList<List<ContentMatch>>();
+            try {
+                batches.add(this.mPartialResults.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.mPartialResults.drainTo(batches);
+
+            List<ContentMatch> matches = new ArrayList<ContentMatch>();
+            int cc = batches.size();
+            for (int i = 0; i < cc; i++) {
+                List<ContentMatch> batch = batches.get(i);
+                if (batch == END_OF_RESULTS) {
+                    ended = true;
+                } else {
+                    matches.addAll(batch);
+                }
+            }
+            if (matches.size() > 0) {
+                this.mAsyncResultListener.onPartialResult(matches);
+            }
+        }
+    }
+
+    /**
+     * Method that returns if the command was cancelled or ended.
+     *
+     * @return boolean If the command was cancelled or ended
+     * @hide
+     */
+    boolean isStopped() {
+        return this.mCancelled || this.mEnded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                this.mCancelled = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                    this.mSync.wait(5000L);
+                }
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -24,24 +24,40 @@ import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.FolderUsage;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+import com.cyanogenmod.filemanager.util.FolderUsageCache;
+import com.cyanogenmod.filemanager.util.FolderUsageCache.DirectoryUsage;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A class for retrieve the disk usage of a folder.
+ * A class for retrieve the disk usage of a folder.<br/>
+ * <br/>
+ * The usage of every folder is kept in the {@link FolderUsageCache}, so only the folders
+ * whose modification time changed since the last computation are listed again.<br/>
+ * <br/>
+ * The tree is walked with a {@link ParallelTreeWalker}. Every worker accumulates the
+ * usage in its own {@link FolderUsage}, that is merged in the total periodically and
+ * when the worker ends, so the workers don't contend for the total.
  */
 public class FolderUsageCommand extends Program implements FolderUsageExecutable {
 
     private static final String TAG = "FolderUsage"; //$NON-NLS-1$
 
+    // The minimum time between partial results
+    private static final long PARTIAL_RESULT_DELAY = 100L;
+
     private final String mDirectory;
     private final AsyncResultListener mAsyncResultListener;
     private final FolderUsage mFolderUsage;
 
-    private boolean mCancelled;
-    private boolean mEnded;
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private ParallelTreeWalker mWalker;
     private final Object mSync = new Object();
 
     /**
@@ -111,7 +127,7 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
         }
 
         // Compute data recursively
-        computeRecursive(f);
+        computeParallel(f);
 
         synchronized (this.mSync) {
             this.mEnded = true;
@@ -131,54 +147,121 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
     }
 
     /**
-     * Method that computes the folder usage recursively
+     * Method that computes the folder usage of the tree in parallel, reusing the
+     * cached usage of the folders that didn't change.
      *
      * @param folder The folder where to start the computation
      */
-    private void computeRecursive(File folder) {
-        // Obtains the files and folders of the folders
-        try {
-            File[] files = folder.listFiles();
-            int c = 0;
-            if (files != null) {
-                int cc = files.length;
-                for (int i = 0; i < cc; i++) {
-                    if (files[i].isDirectory()) {
-                        this.mFolderUsage.addFolder();
-                        computeRecursive(files[i]);
-                    } else {
-                        this.mFolderUsage.addFile();
-                        // Compute statistics and size
-                        MimeTypeCategory category =
-                                MimeTypeHelper.getCategory(null, files[i]);
-                        this.mFolderUsage.addFileToCategory(category);
-                        this.mFolderUsage.addSize(files[i].length());
-                    }
+    private void computeParallel(File folder) {
+        final Map<String, DirectoryUsage> cached =
+                new ConcurrentHashMap<String, DirectoryUsage>(
+                        FolderUsageCache.load(folder.getAbsolutePath()));
+        final List<DirectoryUsage> changed =
+                Collections.synchronizedList(new ArrayList<DirectoryUsage>());
+
+        final ParallelTreeWalker walker =
+                new ParallelTreeWalker(ParallelTreeWalker.getDefaultParallelism());
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+        }
+        final int parallelism = walker.getParallelism();
+        final FolderUsage[] accumulators = new FolderUsage[parallelism];
+        final long[] lastNotifications = new long[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            accumulators[i] = new FolderUsage(this.mDirectory);
+        }
+
+        walker.walkFolders(folder, new ParallelTreeWalker.FolderVisitor() {
+            @Override
+            public File[] onVisitFolder(int worker, File dir) {
+                // Check if the process was cancelled
+                if (FolderUsageCommand.this.mCancelled || FolderUsageCommand.this.mEnded) {
+                    walker.cancel();
+                    return null;
+                }
 
-                    // Partial notification
-                    if (c % 5 == 0) {
-                        //If a listener is defined, then send the partial result
-                        if (getAsyncResultListener() != null) {
-                            getAsyncResultListener().onPartialResult(this.mFolderUsage);
-                        }
+                // Reuse the cached usage if the folder didn't change. An inaccessible
+                // folder has no modification time, so it is never reused
+                String path = dir.getAbsolutePath();
+                long modified = dir.lastModified();
+                DirectoryUsage du = cached.remove(path);
+                if (du == null || modified == 0 || du.getModified() != modified) {
+                    du = FolderUsageCache.scan(dir, modified);
+                    if (modified != 0) {
+                        changed.add(du);
                     }
+                }
+                accumulators[worker].add(du.getUsage());
+
+                // Partial notification
+                long now = System.currentTimeMillis();
+                if (now - lastNotifications[worker] >= PARTIAL_RESULT_DELAY) {
+                    lastNotifications[worker] = now;
+                    flush(accumulators, worker, true);
+                }
 
-                    // Check if the process was cancelled
-                    try {
-                        synchronized (this.mSync) {
-                            if (this.mCancelled  || this.mEnded) {
-                                this.mSync.notify();
-                                break;
-                            }
-                        }
-                    } catch (Exception e) {/**NON BLOCK**/}
+                String[] children = du.getChildren();
+                File[] folders = new File[children.length];
+                for (int i = 0; i < children.length; i++) {
+                    folders[i] = new File(dir, children[i]);
                 }
+                return folders;
+            }
+
+            @Override
+            public void onWorkerEnd(int worker) {
+                flush(accumulators, worker, false);
             }
-        } finally {
-            //If a listener is defined, then send the partial result
-            if (getAsyncResultListener() != null) {
-                getAsyncResultListener().onPartialResult(this.mFolderUsage);
+        });
+
+        // Save the listed folders. The folders not found anymore are removed
+        // (only known if the whole tree was walked)
+        boolean completed = !walker.isCancelled();
+        FolderUsageCache.save(changed, completed ? cached.keySet() : new ArrayList<String>());
+
+        //If a listener is defined, then send the partial result
+        notifyPartialResult();
+
+        synchronized (this.mSync) {
+            this.mWalker = null;
+        }
+    }
+
+    /**
+     * Method that merges the usage accumulated by a worker in the total usage.
+     *
+     * @param accumulators The accumulators of the workers
+     * @param worker The worker
+     * @param notify If the partial result must be notified
+     * @hide
+     */
+    void flush(FolderUsage[] accumulators, int worker, boolean notify) {
+        synchronized (this.mFolderUsage) {
+            this.mFolderUsage.add(accumulators[worker]);
+        }
+        accumulators[worker] = new FolderUsage(this.mDirectory);
+        if (notify) {
+            notifyPartialResult();
+        }
+    }
+
+    /**
+     * Method that sends a snapshot of the total usage to the listener.
+     *
+     * @hide
+     */
+    void notifyPartialResult() {
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            FolderUsage snapshot;
+            synchronized (this.mFolderUsage) {
+                try {
+                    snapshot = (FolderUsage)this.mFolderUsage.clone();
+                } catch (CloneNotSupportedException e) {
+                    return;
+                }
             }
+            getAsyncResultListener().onPartialResult(snapshot);
         }
     }
 
@@ -204,6 +287,9 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
                     return true;
                 }
                 this.mCancelled = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
                 this.mSync.wait(5000L);
             }
         } catch (Exception e) {/**NON BLOCK**/}
@@ -218,6 +304,9 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
         try {
             synchronized (this.mSync) {
                 this.mEnded = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
                 this.mSync.wait(5000L);
             }
         } catch (Exception e) {/**NON BLOCK**/}
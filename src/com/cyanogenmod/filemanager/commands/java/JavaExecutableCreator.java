@@ -21,17 +21,21 @@ import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChangeCurrentDirExecutable;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.commands.CompressExecutable;
 import com.cyanogenmod.filemanager.commands.CopyExecutable;
 import com.cyanogenmod.filemanager.commands.CreateDirExecutable;
 import com.cyanogenmod.filemanager.commands.CreateFileExecutable;
 import com.cyanogenmod.filemanager.commands.CurrentDirExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteDirExecutable;
+import com.cyanogenmod.filemanager.commands.DeleteExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteFileExecutable;
 import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.ExecutableCreator;
+import com.cyanogenmod.filemanager.commands.FindContentExecutable;
 import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.commands.FolderUsageExecutable;
 import com.cyanogenmod.filemanager.commands.GroupsExecutable;
@@ -49,6 +53,8 @@ import com.cyanogenmod.filemanager.commands.ReadExecutable;
 import com.cyanogenmod.filemanager.commands.ResolveLinkExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.SendSignalExecutable;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
+import com.cyanogenmod.filemanager.commands.TransferExecutable;
 import com.cyanogenmod.filemanager.commands.UncompressExecutable;
 import com.cyanogenmod.filemanager.commands.WriteExecutable;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
@@ -59,6 +65,8 @@ import com.cyanogenmod.filemanager.model.Permissions;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.preferences.UncompressionMode;
+import com.cyanogenmod.filemanager.util.TransferJournal;
 
 /**
  * A class for create shell {@link "Executable"} objects.
@@ -104,6 +112,16 @@ public class JavaExecutableCreator implements ExecutableCreator {
         throw new CommandNotFoundException("Not implemented"); //$NON-NLS-1$
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChecksumExecutable createChecksumExecutable(
+            String file, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new ChecksumCommand(file, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -113,6 +131,17 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new CopyCommand(src, dst);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferExecutable createCopyExecutable(
+            String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new TransferCommand(false, src, dst, journal, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -157,6 +186,16 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new DeleteFileCommand(file);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeleteExecutable createDeleteExecutable(
+            String[] items, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new DeleteCommand(items, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -203,6 +242,16 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new FindCommand(directory, query, asyncResultListener);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FindContentExecutable createFindContentExecutable(
+            String directory, Query query, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new FindContentCommand(directory, query, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -213,6 +262,26 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new FolderUsageCommand(directory, asyncResultListener);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysisExecutable createStorageAnalysisExecutable(
+            String directory, int top, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new StorageAnalysisCommand(directory, top, asyncResultListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DuplicatesExecutable createDuplicatesExecutable(
+            String directory, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new DuplicatesCommand(directory, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -285,6 +354,17 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new MoveCommand(src, dst);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferExecutable createMoveExecutable(
+            String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException {
+        return new TransferCommand(true, src, dst, journal, asyncResultListener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -375,7 +455,7 @@ public class JavaExecutableCreator implements ExecutableCreator {
             CompressionMode mode, String dst, String[] src,
             AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        throw new CommandNotFoundException("Not implemented"); //$NON-NLS-1$
+        return new CompressCommand(mode, dst, src, asyncResultListener);
     }
 
     /**
@@ -386,7 +466,11 @@ public class JavaExecutableCreator implements ExecutableCreator {
             CompressionMode mode, String src,
             AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        throw new CommandNotFoundException("Not implemented"); //$NON-NLS-1$
+        if (mode.mArchive) {
+            throw new CommandNotFoundException(
+                    "Unsupported compression mode"); //$NON-NLS-1$
+        }
+        return new CompressCommand(mode, src, asyncResultListener);
     }
 
     /**
@@ -397,7 +481,12 @@ public class JavaExecutableCreator implements ExecutableCreator {
             String src, String dst,
             AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        throw new CommandNotFoundException("Not implemented"); //$NON-NLS-1$
+        UncompressionMode mode = ArchiveEngine.getUncompressionMode(src);
+        if (mode == null) {
+            throw new CommandNotFoundException(
+                    "Unsupported uncompress mode"); //$NON-NLS-1$
+        }
+        return new UncompressCommand(mode, src, dst, asyncResultListener);
     }
 
 }
@@ -23,7 +23,6 @@ import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.MountPoint;
-import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MountPointHelper;
 
 import java.io.File;
@@ -79,34 +78,15 @@ public class MoveCommand extends Program implements MoveExecutable {
             throw new NoSuchFileOrDirectory(this.mSrc);
         }
 
-        //Move or copy recursively
-        if (d.exists()) {
-            if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
-                if (isTrace()) {
-                    Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
-                }
-                throw new InsufficientPermissionsException();
-            }
-            if (!FileHelper.deleteFolder(s)) {
-                if (isTrace()) {
-                    Log.v(TAG, "Result: OK. WARNING. Source not deleted."); //$NON-NLS-1$
-                }
-            }
-        } else {
-            // Move between filesystem is not allow. If rename fails then use copy operation
-            if (!s.renameTo(d)) {
-                if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
-                    if (isTrace()) {
-                        Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
-                    }
-                    throw new InsufficientPermissionsException();
-                }
-                if (!FileHelper.deleteFolder(s)) {
-                    if (isTrace()) {
-                        Log.v(TAG, "Result: OK. WARNING. Source not deleted."); //$NON-NLS-1$
-                    }
-                }
+        // A move in the same mount point is a rename. Otherwise the source is streamed
+        // file by file
+        boolean rename =
+                MountPointHelper.isSameMountPoint(s.getAbsolutePath(), d.getAbsolutePath());
+        if (!new CopyEngine().move(s, d, rename)) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
             }
+            throw new InsufficientPermissionsException();
         }
 
         if (isTrace()) {
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An input stream that decompresses a gzip stream of one or many members (as the
+ * written by {@link ParallelGzipOutputStream} or by <code>pigz</code>) as a single
+ * stream. The CRC and the size of every member are checked. The data after the last
+ * member that isn't a gzip member is ignored, as <code>gunzip</code> does.
+ */
+public class MultiMemberGzipInputStream extends InputStream {
+
+    // The flags of the header
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream mIn;
+    private final Inflater mInflater;
+    private final CRC32 mCrc;
+    private final byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+    private long mSize;
+    private boolean mEof;
+
+    /**
+     * Constructor of <code>MultiMemberGzipInputStream</code>.
+     *
+     * @param in The compressed stream
+     * @throws IOException If the stream isn't a gzip stream
+     */
+    public MultiMemberGzipInputStream(InputStream in) throws IOException {
+        super();
+        this.mIn = in;
+        this.mInflater = new Inflater(true);
+        this.mCrc = new CRC32();
+        this.mBuffer = new byte[64 * 1024];
+        if (!readHeader(true)) {
+            throw new IOException("Not in gzip format"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+        return read == -1 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!this.mEof) {
+            int count;
+            try {
+                count = this.mInflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                IOException ioe = new IOException("Invalid gzip data"); //$NON-NLS-1$
+                ioe.initCause(e);
+                throw ioe;
+            }
+            if (count > 0) {
+                this.mCrc.update(b, off, count);
+                this.mSize += count;
+                return count;
+            }
+            if (this.mInflater.finished()) {
+                // The unused input is the start of the trailer
+                this.mPos = this.mLimit - this.mInflater.getRemaining();
+                readTrailer();
+                this.mInflater.reset();
+                this.mCrc.reset();
+                this.mSize = 0;
+                this.mEof = !readHeader(false);
+                continue;
+            }
+            if (this.mInflater.needsDictionary()) {
+                throw new IOException("Invalid gzip data"); //$NON-NLS-1$
+            }
+            if (this.mInflater.needsInput()) {
+                if (this.mPos == this.mLimit && !fill()) {
+                    throw new EOFException("Unexpected end of gzip stream"); //$NON-NLS-1$
+                }
+                this.mInflater.setInput(this.mBuffer, this.mPos, this.mLimit - this.mPos);
+                this.mPos = this.mLimit;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+        return this.mEof ? 0 : 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.mInflater.end();
+        this.mIn.close();
+    }
+
+    /**
+     * Method that reads the header of a member.
+     *
+     * @param first If it is the first member (otherwise the end of the data is allowed)
+     * @return boolean If a member was found
+     * @throws IOException If the header is invalid
+     */
+    private boolean readHeader(boolean first) throws IOException {
+        int id1 = readByte();
+        if (id1 == -1 && !first) {
+            return false;
+        }
+        int id2 = readByte();
+        if (id1 != 0x1f || id2 != 0x8b) {
+            if (!first) {
+                // Trailing garbage
+                return false;
+            }
+            throw new IOException("Not in gzip format"); //$NON-NLS-1$
+        }
+        if (readByte() != 8) {
+            throw new IOException("Unsupported gzip compression method"); //$NON-NLS-1$
+        }
+        int flags = readByte();
+        // Time, extra flags and OS
+        skipBytes(6);
+        if ((flags & FEXTRA) != 0) {
+            int len = readByte() | (readByte() << 8);
+            skipBytes(len);
+        }
+        if ((flags & FNAME) != 0) {
+            skipString();
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipString();
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+        return true;
+    }
+
+    /**
+     * Method that reads and checks the trailer of a member.
+     *
+     * @throws IOException If the trailer doesn't match the data
+     */
+    private void readTrailer() throws IOException {
+        long crc = readInt();
+        long size = readInt();
+        if (crc != this.mCrc.getValue()) {
+            throw new IOException("gzip CRC error"); //$NON-NLS-1$
+        }
+        if (size != (this.mSize & 0xffffffffL)) {
+            throw new IOException("gzip length error"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that reads an unsigned little-endian int.
+     *
+     * @return long The value
+     * @throws IOException If the end of the stream was reached
+     */
+    private long readInt() throws IOException {
+        long v = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = readByte();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of gzip stream"); //$NON-NLS-1$
+            }
+            v |= ((long)b) << (i * 8);
+        }
+        return v;
+    }
+
+    /**
+     * Method that skips a zero-terminated string of the header.
+     *
+     * @throws IOException If the end of the stream was reached
+     */
+    private void skipString() throws IOException {
+        int b;
+        do {
+            b = readByte();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of gzip stream"); //$NON-NLS-1$
+            }
+        } while (b != 0);
+    }
+
+    /**
+     * Method that skips bytes of the header.
+     *
+     * @param count The number of bytes
+     * @throws IOException If the end of the stream was reached
+     */
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (readByte() == -1) {
+                throw new EOFException("Unexpected end of gzip stream"); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Method that reads a byte of the data that isn't deflated.
+     *
+     * @return int The byte, or -1 at the end of the stream
+     * @throws IOException If the byte can't be read
+     */
+    private int readByte() throws IOException {
+        if (this.mPos == this.mLimit && !fill()) {
+            return -1;
+        }
+        return this.mBuffer[this.mPos++] & 0xff;
+    }
+
+    /**
+     * Method that reads more data of the underlying stream.
+     *
+     * @return boolean If data was read. false at the end of the stream
+     * @throws IOException If the data can't be read
+     */
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = this.mIn.read(this.mBuffer, 0, this.mBuffer.length);
+        } while (read == 0);
+        if (read == -1) {
+            return false;
+        }
+        this.mPos = 0;
+        this.mLimit = read;
+        return true;
+    }
+}
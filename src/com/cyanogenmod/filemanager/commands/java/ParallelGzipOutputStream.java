@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that compresses the data in the gzip format with all the
+ * processors of the device.<br/>
+ * <br/>
+ * The data is split in blocks of {@link #BLOCK_SIZE} bytes, that are deflated in
+ * parallel by a pool of threads, and written in order as consecutive gzip members.
+ * A gzip file of many members is a valid gzip file (RFC 1952), that
+ * <code>gunzip</code> and {@link MultiMemberGzipInputStream} read as a single
+ * stream. The size of the blocks keeps the loss of compression (every block is
+ * deflated without the history of the previous one) under the 1%.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * The size of the blocks deflated in parallel.
+     */
+    public static final int BLOCK_SIZE = 1024 * 1024;
+
+    // The header of the members (no name, no time, unix)
+    private static final byte[] HEADER = {
+        0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 3
+    };
+
+    private final OutputStream mOut;
+    private final int mLevel;
+    private final ExecutorService mExecutor;
+    private final int mMaxPending;
+    private final LinkedList<Future<byte[]>> mPending;
+    private byte[] mBlock;
+    private int mLength;
+    private boolean mWritten;
+    private boolean mFinished;
+
+    /**
+     * Constructor of <code>ParallelGzipOutputStream</code>.
+     *
+     * @param out The stream where write the compressed data
+     */
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor of <code>ParallelGzipOutputStream</code>.
+     *
+     * @param out The stream where write the compressed data
+     * @param level The compression level
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) {
+        super();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.mOut = out;
+        this.mLevel = level;
+        this.mExecutor = Executors.newFixedThreadPool(threads);
+        // A block for every thread, and the oldest one that is being written
+        this.mMaxPending = threads + 1;
+        this.mPending = new LinkedList<Future<byte[]>>();
+        this.mBlock = new byte[BLOCK_SIZE];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            int count = Math.min(remaining, BLOCK_SIZE - this.mLength);
+            System.arraycopy(b, pos, this.mBlock, this.mLength, count);
+            this.mLength += count;
+            pos += count;
+            remaining -= count;
+            if (this.mLength == BLOCK_SIZE) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Method that compresses the pending data and writes all the members, without
+     * closing the underlying stream.
+     *
+     * @throws IOException If the data can't be written
+     */
+    public void finish() throws IOException {
+        if (this.mFinished) {
+            return;
+        }
+        this.mFinished = true;
+        try {
+            // An empty stream is still a gzip member
+            if (this.mLength > 0 || !this.mWritten) {
+                submitBlock();
+            }
+            while (!this.mPending.isEmpty()) {
+                writeMember();
+            }
+            this.mOut.flush();
+        } finally {
+            this.mExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            this.mOut.close();
+        }
+    }
+
+    /**
+     * Method that queues the current block to be deflated, and writes the oldest
+     * members if there are too many blocks in flight.
+     *
+     * @throws IOException If the data can't be written
+     */
+    private void submitBlock() throws IOException {
+        final byte[] data = this.mBlock;
+        final int length = this.mLength;
+        final int level = this.mLevel;
+        this.mPending.add(this.mExecutor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return deflateMember(data, length, level);
+            }
+        }));
+        this.mWritten = true;
+        this.mBlock = new byte[BLOCK_SIZE];
+        this.mLength = 0;
+        while (this.mPending.size() > this.mMaxPending) {
+            writeMember();
+        }
+    }
+
+    /**
+     * Method that waits for the oldest member and writes it.
+     *
+     * @throws IOException If the data can't be written
+     */
+    private void writeMember() throws IOException {
+        Future<byte[]> future = this.mPending.removeFirst();
+        byte[] member;
+        try {
+            member = future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Failed to deflate"); //$NON-NLS-1$
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+        this.mOut.write(member);
+    }
+
+    /**
+     * Method that deflates a block as a complete gzip member.
+     *
+     * @param data The block
+     * @param length The length of the data of the block
+     * @param level The compression level
+     * @return byte[] The gzip member
+     * @hide
+     */
+    static byte[] deflateMember(byte[] data, int length, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+        out.write(HEADER, 0, HEADER.length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        // Trailer
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeInt(out, (int)crc.getValue());
+        writeInt(out, length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Method that writes an int in little-endian order.
+     *
+     * @param out The stream
+     * @param v The value
+     */
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class for walk a filesystem tree using several threads.<br/>
+ * <br/>
+ * Every worker thread owns a deque of pending folders. A worker pushes and pops the
+ * folders that it discovers from the head of its own deque (depth-first, so siblings
+ * are listed together) and, when it runs out of work, steals the oldest pending folder
+ * from the tail of the deque of other worker. Bigger subtrees are shallower, so stolen
+ * folders tend to be the ones with more work below them. A worker that has nothing to
+ * steal blocks until other worker pushes new folders or the walk ends.
+ */
+public class ParallelTreeWalker {
+
+    private static final String TAG = "ParallelTreeWalker"; //$NON-NLS-1$
+
+    /**
+     * The maximum number of worker threads. Walking is I/O bound, so there is no
+     * benefit in using more threads than cores that can issue syscalls concurrently.
+     */
+    private static final int MAX_PARALLELISM = 8;
+
+    /**
+     * An interface for receive the entries found by the walker.
+     */
+    public interface Visitor {
+        /**
+         * Invoked for every entry of a walked folder. This method is called concurrently
+         * from all the worker threads.
+         *
+         * @param worker The index of the worker thread (from 0 to parallelism - 1)
+         * @param file The entry found
+         * @param isDirectory If the entry is a folder
+         * @return boolean If the walker must descend into the folder. Ignored for files
+         */
+        boolean onVisit(int worker, File file, boolean isDirectory);
+
+        /**
+         * Invoked when a worker thread finishes its work, from the worker thread.
+         *
+         * @param worker The index of the worker thread (from 0 to parallelism - 1)
+         */
+        void onWorkerEnd(int worker);
+    }
+
+    /**
+     * An interface for walk the tree folder by folder. The visitor lists the folder
+     * (or knows its subfolders by other means) and returns the subfolders to walk.
+     */
+    public interface FolderVisitor {
+        /**
+         * Invoked for every walked folder. This method is called concurrently
+         * from all the worker threads.
+         *
+         * @param worker The index of the worker thread (from 0 to parallelism - 1)
+         * @param folder The folder
+         * @return File[] The subfolders to walk. Can be null
+         */
+        File[] onVisitFolder(int worker, File folder);
+
+        /**
+         * Invoked when a worker thread finishes its work, from the worker thread.
+         *
+         * @param worker The index of the worker thread (from 0 to parallelism - 1)
+         */
+        void onWorkerEnd(int worker);
+    }
+
+    private final int mParallelism;
+    private final List<LinkedBlockingDeque<File>> mDeques;
+    private final AtomicInteger mPending;
+    private final AtomicInteger mIdle;
+    private final Object mIdleSync = new Object();
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>ParallelTreeWalker</code>.
+     *
+     * @param parallelism The number of worker threads
+     */
+    public ParallelTreeWalker(int parallelism) {
+        super();
+        this.mParallelism = Math.max(1, parallelism);
+        this.mDeques = new ArrayList<LinkedBlockingDeque<File>>(this.mParallelism);
+        for (int i = 0; i < this.mParallelism; i++) {
+            this.mDeques.add(new LinkedBlockingDeque<File>());
+        }
+        this.mPending = new AtomicInteger();
+        this.mIdle = new AtomicInteger();
+        this.mCancelled = false;
+    }
+
+    /**
+     * Method that returns the default number of worker threads for this device.
+     *
+     * @return int The default number of worker threads
+     */
+    public static int getDefaultParallelism() {
+        return Math.max(1,
+                Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Method that returns the number of worker threads of this walker.
+     *
+     * @return int The number of worker threads
+     */
+    public int getParallelism() {
+        return this.mParallelism;
+    }
+
+    /**
+     * Method that walks the tree. This method blocks until the whole tree was
+     * walked or the walker was cancelled. The calling thread works as the first worker.
+     *
+     * @param root The folder where to start the walk (is not visited)
+     * @param visitor The visitor of the entries
+     */
+    public void walk(File root, final Visitor visitor) {
+        walkFolders(root, new FolderVisitor() {
+            @Override
+            public File[] onVisitFolder(int worker, File folder) {
+                File[] files = folder.listFiles();
+                if (files == null) {
+                    return null;
+                }
+                List<File> folders = new ArrayList<File>();
+                int cc = files.length;
+                for (int i = 0; i < cc && !ParallelTreeWalker.this.mCancelled; i++) {
+                    boolean isDirectory = files[i].isDirectory();
+                    try {
+                        if (visitor.onVisit(worker, files[i], isDirectory) && isDirectory) {
+                            folders.add(files[i]);
+                        }
+                    } catch (Exception e) {
+                        Log.w(TAG, String.format(
+                                "Failed to visit %s", files[i]), e); //$NON-NLS-1$
+                    }
+                }
+                return folders.toArray(new File[folders.size()]);
+            }
+
+            @Override
+            public void onWorkerEnd(int worker) {
+                visitor.onWorkerEnd(worker);
+            }
+        });
+    }
+
+    /**
+     * Method that walks the tree folder by folder. This method blocks until the whole
+     * tree was walked or the walker was cancelled. The calling thread works as the
+     * first worker.
+     *
+     * @param root The folder where to start the walk (is visited)
+     * @param visitor The visitor of the folders
+     */
+    public void walkFolders(File root, final FolderVisitor visitor) {
+        this.mPending.set(1);
+        this.mDeques.get(0).offerFirst(root);
+
+        // Start the workers
+        Thread[] threads = new Thread[this.mParallelism - 1];
+        for (int i = 0; i < threads.length; i++) {
+            final int worker = i + 1;
+            threads[i] = new Thread(TAG + "-" + worker) { //$NON-NLS-1$
+                @Override
+                public void run() {
+                    work(worker, visitor);
+                }
+            };
+            threads[i].start();
+        }
+        work(0, visitor);
+
+        // Wait for the rest of the workers
+        for (int i = 0; i < threads.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Method that cancels the walk. Workers stop after the entry being visited.
+     */
+    public void cancel() {
+        this.mCancelled = true;
+        synchronized (this.mIdleSync) {
+            this.mIdleSync.notifyAll();
+        }
+    }
+
+    /**
+     * Method that returns if the walk was cancelled.
+     *
+     * @return boolean If the walk was cancelled
+     */
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * The main loop of a worker thread.
+     *
+     * @param worker The index of the worker thread
+     * @param visitor The visitor of the folders
+     * @hide
+     */
+    void work(int worker, FolderVisitor visitor) {
+        LinkedBlockingDeque<File> own = this.mDeques.get(worker);
+        try {
+            while (!this.mCancelled) {
+                File folder = own.pollFirst();
+                if (folder == null) {
+                    folder = steal(worker);
+                }
+                if (folder == null) {
+                    if (!awaitWork()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                try {
+                    File[] folders = null;
+                    try {
+                        folders = visitor.onVisitFolder(worker, folder);
+                    } catch (Exception e) {
+                        Log.w(TAG, String.format(
+                                "Failed to visit %s", folder), e); //$NON-NLS-1$
+                    }
+                    if (folders != null) {
+                        // Push in reverse order, so the first subfolder is popped first
+                        for (int i = folders.length - 1; i >= 0; i--) {
+                            this.mPending.incrementAndGet();
+                            own.offerFirst(folders[i]);
+                        }
+                        if (folders.length > 0) {
+                            wakeIdleWorkers();
+                        }
+                    }
+                } finally {
+                    if (this.mPending.decrementAndGet() == 0) {
+                        // The walk ended
+                        wakeIdleWorkers();
+                    }
+                }
+            }
+        } finally {
+            visitor.onWorkerEnd(worker);
+        }
+    }
+
+    /**
+     * Method that blocks an idle worker until there is a pending folder in any deque
+     * or the walk ends.
+     *
+     * @return boolean If the worker must look for work again (false if the walk ended)
+     */
+    private boolean awaitWork() {
+        synchronized (this.mIdleSync) {
+            // Announce the worker before checking for work, so a worker that pushes
+            // folders after the check sees it as idle and wakes it
+            this.mIdle.incrementAndGet();
+            try {
+                while (!this.mCancelled && this.mPending.get() != 0 && !hasWork()) {
+                    this.mIdleSync.wait();
+                }
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+            } finally {
+                this.mIdle.decrementAndGet();
+            }
+            return !this.mCancelled && this.mPending.get() != 0;
+        }
+    }
+
+    /**
+     * Method that wakes the idle workers, if any.
+     */
+    private void wakeIdleWorkers() {
+        if (this.mIdle.get() > 0) {
+            synchronized (this.mIdleSync) {
+                this.mIdleSync.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Method that returns if there is a pending folder in any deque.
+     *
+     * @return boolean If there is a pending folder
+     */
+    private boolean hasWork() {
+        for (int i = 0; i < this.mParallelism; i++) {
+            if (!this.mDeques.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that steals the oldest pending folder of other worker.
+     *
+     * @param worker The index of the thief
+     * @return File The stolen folder, or null if there is nothing to steal
+     */
+    private File steal(int worker) {
+        for (int i = 1; i < this.mParallelism; i++) {
+            File folder = this.mDeques.get((worker + i) % this.mParallelism).pollLast();
+            if (folder != null) {
+                return folder;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer.Folder;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class for analyze the storage used by a folder (the largest files and folders,
+ * and the size tree).<br/>
+ * <br/>
+ * The tree is walked with a {@link ParallelTreeWalker}, and the results are accumulated
+ * in a {@link StorageAnalyzer}, whose snapshots are sent as partial results.
+ */
+public class StorageAnalysisCommand extends Program implements StorageAnalysisExecutable {
+
+    private static final String TAG = "StorageAnalysis"; //$NON-NLS-1$
+
+    // The minimum time between partial results
+    private static final long PARTIAL_RESULT_DELAY = 250L;
+
+    private final String mDirectory;
+    private final AsyncResultListener mAsyncResultListener;
+    private final StorageAnalyzer mAnalyzer;
+    private final AtomicLong mLastNotification;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private ParallelTreeWalker mWalker;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>StorageAnalysisCommand</code>.
+     *
+     * @param directory The absolute directory to analyze
+     * @param top The number of largest files and folders to return
+     * @param asyncResultListener The partial result listener
+     */
+    public StorageAnalysisCommand(
+            String directory, int top, AsyncResultListener asyncResultListener) {
+        super();
+        this.mDirectory = directory;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mAnalyzer = new StorageAnalyzer(directory, top);
+        this.mLastNotification = new AtomicLong();
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysis getStorageAnalysis() {
+        return this.mAnalyzer.snapshot();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Analyzing storage of folder %s", //$NON-NLS-1$
+                            this.mDirectory));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        File f = new File(this.mDirectory);
+        if (!f.exists()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(new NoSuchFileOrDirectory(this.mDirectory));
+            }
+        }
+        if (!f.isDirectory()) {
+            if (isTrace()) {
+                Log.v(TAG, "Result: FAIL. NoSuchFileOrDirectory"); //$NON-NLS-1$
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(
+                        new ExecutionException("path exists but it's not a folder")); //$NON-NLS-1$
+            }
+        }
+
+        // Analyze the tree
+        analyze(f);
+
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            this.mSync.notify();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(0);
+        }
+
+        if (isTrace()) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that walks the tree in parallel and accumulates the analysis.
+     *
+     * @param folder The folder where to start the analysis
+     */
+    private void analyze(File folder) {
+        final StorageAnalyzer analyzer = this.mAnalyzer;
+        // The folders found but not walked yet
+        final Map<String, Folder> pending = new ConcurrentHashMap<String, Folder>();
+        pending.put(folder.getAbsolutePath(), analyzer.getRoot());
+
+        final ParallelTreeWalker walker =
+                new ParallelTreeWalker(ParallelTreeWalker.getDefaultParallelism());
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+        }
+        walker.walkFolders(folder, new ParallelTreeWalker.FolderVisitor() {
+            @Override
+            public File[] onVisitFolder(int worker, File dir) {
+                // Check if the process was cancelled
+                if (StorageAnalysisCommand.this.mCancelled
+                        || StorageAnalysisCommand.this.mEnded) {
+                    walker.cancel();
+                    return null;
+                }
+
+                Folder node = pending.remove(dir.getAbsolutePath());
+                if (node == null) {
+                    return null;
+                }
+                File[] files = dir.listFiles();
+                File[] folders = null;
+                if (files != null) {
+                    int cc = files.length;
+                    folders = new File[cc];
+                    int count = 0;
+                    long size = 0;
+                    for (int i = 0; i < cc; i++) {
+                        File f = files[i];
+                        if (f.isDirectory()) {
+                            Folder child = analyzer.addFolder(node, f.getName());
+                            pending.put(f.getAbsolutePath(), child);
+                            folders[count++] = f;
+                        } else {
+                            long length = f.length();
+                            analyzer.addFile(node, f.getName(), length);
+                            size += length;
+                        }
+                    }
+                    analyzer.addSize(node, size);
+                    if (count < cc) {
+                        File[] subfolders = new File[count];
+                        System.arraycopy(folders, 0, subfolders, 0, count);
+                        folders = subfolders;
+                    }
+                }
+                analyzer.endFolder(node);
+
+                // Partial notification
+                long now = System.currentTimeMillis();
+                long last = StorageAnalysisCommand.this.mLastNotification.get();
+                if (now - last >= PARTIAL_RESULT_DELAY
+                        && StorageAnalysisCommand.this.mLastNotification.compareAndSet(
+                                last, now)) {
+                    notifyPartialResult();
+                }
+                return folders;
+            }
+
+            @Override
+            public void onWorkerEnd(int worker) {
+                /**NON BLOCK**/
+            }
+        });
+
+        //If a listener is defined, then send the partial result
+        notifyPartialResult();
+
+        synchronized (this.mSync) {
+            this.mWalker = null;
+        }
+    }
+
+    /**
+     * Method that sends a snapshot of the analysis to the listener.
+     *
+     * @hide
+     */
+    void notifyPartialResult() {
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mAnalyzer.snapshot());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mCancelled = true;
+                    return true;
+                }
+                this.mCancelled = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.TransferExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.TransferProgress;
+import com.cyanogenmod.filemanager.util.MountPointHelper;
+import com.cyanogenmod.filemanager.util.TransferJournal;
+
+import java.io.File;
+
+
+/**
+ * A class for copy or move a file or directory in background, reporting the
+ * progress of the operation.<br/>
+ * <br/>
+ * The source is sized first, and then copied with a {@link CopyEngine}. A move in the
+ * same mount point is a rename; a move between mount points copies and deletes the
+ * source file by file, so it never needs the space of the whole source.<br/>
+ * <br/>
+ * If a journal is passed, the copied files and the offset of the file in flight are
+ * recorded in it, and a resumed operation skips the files already copied.
+ */
+public class TransferCommand extends Program implements TransferExecutable {
+
+    private static final String TAG = "TransferCommand"; //$NON-NLS-1$
+
+    // The minimum time between partial results
+    private static final long PARTIAL_RESULT_DELAY = 250L;
+
+    private final boolean mMove;
+    private final String mSrc;
+    private final String mDst;
+    private final TransferJournal mJournal;
+    private final AsyncResultListener mAsyncResultListener;
+    private final TransferProgress mProgress;
+    private Boolean mResult;
+    private long mLastNotification;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>TransferCommand</code>.
+     *
+     * @param move If the source must be moved (otherwise it's copied)
+     * @param src The name of the file or directory to be copied or moved
+     * @param dst The name of the file or directory in which copy or move the source
+     * @param journal The journal of the operation (may be null)
+     * @param asyncResultListener The partial result listener
+     */
+    public TransferCommand(boolean move, String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener) {
+        super();
+        this.mMove = move;
+        this.mSrc = src;
+        this.mDst = dst;
+        this.mJournal = journal;
+        this.mAsyncResultListener = asyncResultListener;
+        this.mProgress = new TransferProgress(src, dst);
+        this.mResult = Boolean.FALSE;
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferProgress getProgress() {
+        synchronized (this.mProgress) {
+            return this.mProgress.clone();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("%s from %s to %s", //$NON-NLS-1$
+                            this.mMove ? "Moving" : "Copying", //$NON-NLS-1$ //$NON-NLS-2$
+                            this.mSrc, this.mDst));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        int exitCode = 0;
+        try {
+            transfer();
+        } catch (Exception e) {
+            if (isTrace()) {
+                Log.v(TAG, String.format("Result: FAIL. %s", //$NON-NLS-1$
+                        e.getClass().getSimpleName()));
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(e);
+            }
+            exitCode = 1;
+        }
+
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            this.mSync.notify();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(exitCode);
+        }
+
+        if (isTrace() && exitCode == 0) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that sizes and transfers the source.
+     *
+     * @throws InsufficientPermissionsException If the source can't be copied
+     * @throws NoSuchFileOrDirectory If the source doesn't exists
+     * @throws ExecutionException If the operation fails
+     */
+    private void transfer()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        File s = new File(this.mSrc);
+        File d = new File(this.mDst);
+        if (!s.exists()) {
+            throw new NoSuchFileOrDirectory(this.mSrc);
+        }
+
+        // A move in the same mount point is a single rename. Otherwise (or if the
+        // destination must be merged) the source is streamed file by file
+        boolean rename = this.mMove &&
+                MountPointHelper.isSameMountPoint(s.getAbsolutePath(), d.getAbsolutePath());
+        if (rename && !d.exists() && s.renameTo(d)) {
+            complete();
+            return;
+        }
+
+        // Size the source
+        size(s);
+        synchronized (this.mProgress) {
+            this.mProgress.start();
+        }
+        notifyPartialResult();
+
+        // Copy
+        CopyEngine engine = new CopyEngine() {
+            @Override
+            protected void onTransferred(long bytes) {
+                synchronized (TransferCommand.this.mProgress) {
+                    TransferCommand.this.mProgress.addBytes(bytes);
+                }
+                if (TransferCommand.this.mJournal != null) {
+                    TransferCommand.this.mJournal.fileProgress(
+                            getCurrentFile().getAbsolutePath(), getCurrentPosition());
+                }
+                checkNotifyPartialResult();
+            }
+
+            @Override
+            protected void onFileCopied(File src, File dst) {
+                synchronized (TransferCommand.this.mProgress) {
+                    TransferCommand.this.mProgress.addFile();
+                }
+                if (TransferCommand.this.mJournal != null) {
+                    TransferCommand.this.mJournal.fileCopied(src.getAbsolutePath());
+                }
+                checkNotifyPartialResult();
+            }
+
+            @Override
+            protected void onRenamed(File src, File dst) {
+                renamed(dst);
+                checkNotifyPartialResult();
+            }
+
+            @Override
+            protected long getResumeOffset(File src, File dst) {
+                if (TransferCommand.this.mJournal == null) {
+                    return 0;
+                }
+                return TransferCommand.this.mJournal.getResumeOffset(src, dst);
+            }
+
+            @Override
+            protected boolean isAborted() {
+                return TransferCommand.this.mCancelled || TransferCommand.this.mEnded;
+            }
+        };
+        boolean result = this.mMove ? engine.move(s, d, rename) : engine.copy(s, d);
+        if (!result) {
+            if (this.mCancelled || this.mEnded) {
+                notifyPartialResult();
+                return;
+            }
+            throw new InsufficientPermissionsException();
+        }
+        complete();
+    }
+
+    /**
+     * Method that adds the files of the source to the total of the progress.
+     *
+     * @param file The file or folder to size
+     */
+    private void size(File file) {
+        if (this.mCancelled || this.mEnded) {
+            return;
+        }
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    size(files[i]);
+                }
+            }
+            return;
+        }
+        synchronized (this.mProgress) {
+            this.mProgress.addTotal(file.length());
+        }
+    }
+
+    /**
+     * Method that adds the files of a renamed file or folder to the transferred
+     * files of the progress.
+     *
+     * @param file The renamed file or folder
+     * @hide
+     */
+    void renamed(File file) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    renamed(files[i]);
+                }
+            }
+            return;
+        }
+        synchronized (this.mProgress) {
+            this.mProgress.addBytes(file.length());
+            this.mProgress.addFile();
+        }
+    }
+
+    /**
+     * Method that marks the operation as complete.
+     */
+    private void complete() {
+        synchronized (this.mProgress) {
+            this.mProgress.complete();
+        }
+        this.mResult = Boolean.TRUE;
+        notifyPartialResult();
+    }
+
+    /**
+     * Method that sends a snapshot of the progress to the listener if the last
+     * partial result is old.
+     *
+     * @hide
+     */
+    void checkNotifyPartialResult() {
+        long now = System.currentTimeMillis();
+        if (now - this.mLastNotification >= PARTIAL_RESULT_DELAY) {
+            this.mLastNotification = now;
+            notifyPartialResult();
+        }
+    }
+
+    /**
+     * Method that sends a snapshot of the progress to the listener.
+     */
+    private void notifyPartialResult() {
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(getProgress());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mCancelled = true;
+                    return true;
+                }
+                this.mCancelled = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.UncompressExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.preferences.UncompressionMode;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+
+/**
+ * A class for extract an archive or uncompress a compressed file in background with
+ * an {@link ArchiveEngine}. Every extracted entry is notified as a partial result (as
+ * the shell command does).<br/>
+ * <br/>
+ * <ul>
+ * <li>For archive and archive-compressed files, the file is extracted in a directory
+ * of the current location of the file with the name of the file without the extension.</li>
+ * <li>For compressed files, the file is extracted in the same directory in a file without
+ * the extension, and the source file is deleted.</li>
+ * </ul>
+ */
+public class UncompressCommand extends Program implements UncompressExecutable {
+
+    private static final String TAG = "UncompressCommand"; //$NON-NLS-1$
+
+    private final UncompressionMode mMode;
+    private final String mSrc;
+    private final String mOutFile;
+    private final AsyncResultListener mAsyncResultListener;
+    private Boolean mResult;
+
+    private volatile boolean mCancelled;
+    private volatile boolean mEnded;
+    private final Object mSync = new Object();
+
+    /**
+     * Constructor of <code>UncompressCommand</code>.
+     *
+     * @param mode The uncompression mode (see
+     * {@link ArchiveEngine#getUncompressionMode(String)})
+     * @param src The archive-compressed file
+     * @param dst The destination file of folder (if null this method resolve with the best
+     * fit based on the src)
+     * @param asyncResultListener The partial result listener
+     */
+    public UncompressCommand(
+            UncompressionMode mode, String src, String dst,
+            AsyncResultListener asyncResultListener) {
+        super();
+        this.mMode = mode;
+        this.mSrc = src;
+        if (dst != null) {
+            this.mOutFile = dst;
+        } else {
+            String name = new File(FileHelper.getName(src)).getName();
+            this.mOutFile = new File(new File(src).getParent(), name).getAbsolutePath();
+        }
+        this.mAsyncResultListener = asyncResultListener;
+        this.mResult = Boolean.FALSE;
+        this.mCancelled = false;
+        this.mEnded = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getOutUncompressedFile() {
+        return this.mOutFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean IsArchive() {
+        return this.mMode.mArchive;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Uncompressing %s to %s (%s)", //$NON-NLS-1$
+                            this.mSrc, this.mOutFile, this.mMode));
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncStart();
+        }
+
+        int exitCode = 0;
+        try {
+            uncompress();
+        } catch (Exception e) {
+            if (isTrace()) {
+                Log.v(TAG, String.format("Result: FAIL. %s", //$NON-NLS-1$
+                        e.getClass().getSimpleName()));
+            }
+            if (this.mAsyncResultListener != null) {
+                this.mAsyncResultListener.onException(e);
+            }
+            exitCode = 1;
+        }
+
+        synchronized (this.mSync) {
+            this.mEnded = true;
+            this.mSync.notify();
+        }
+
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+        }
+        if (this.mAsyncResultListener != null) {
+            this.mAsyncResultListener.onAsyncExitCode(exitCode);
+        }
+
+        if (isTrace() && exitCode == 0) {
+            Log.v(TAG, "Result: OK"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that extracts the archive or uncompresses the compressed file.
+     *
+     * @throws InsufficientPermissionsException If the output can't be written
+     * @throws NoSuchFileOrDirectory If the source doesn't exists
+     * @throws ExecutionException If the operation fails
+     */
+    private void uncompress()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        File src = new File(this.mSrc);
+        if (!src.exists()) {
+            throw new NoSuchFileOrDirectory(this.mSrc);
+        }
+
+        ArchiveEngine engine = new ArchiveEngine() {
+            @Override
+            protected void onEntry(String name) {
+                if (getAsyncResultListener() != null) {
+                    getAsyncResultListener().onPartialResult(name);
+                }
+            }
+
+            @Override
+            protected boolean isAborted() {
+                return UncompressCommand.this.mCancelled || UncompressCommand.this.mEnded;
+            }
+        };
+        try {
+            boolean completed = engine.uncompress(this.mMode, src, new File(this.mOutFile));
+            this.mResult = Boolean.valueOf(completed);
+        } catch (FileNotFoundException e) {
+            // The output can't be created
+            throw new InsufficientPermissionsException();
+        } catch (IOException e) {
+            throw new ExecutionException(
+                    String.format("Failed to uncompress %s", this.mSrc), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (this.mSync) {
+            return this.mCancelled;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel() {
+        try {
+            synchronized (this.mSync) {
+                if (this.mEnded || this.mCancelled) {
+                    this.mCancelled = true;
+                    return true;
+                }
+                this.mCancelled = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean end() {
+        try {
+            synchronized (this.mSync) {
+                this.mEnded = true;
+                this.mSync.wait(5000L);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnEndListener(OnEndListener onEndListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnCancelListener(OnCancelListener onCancelListener) {
+        //Ignore. Java console don't use this
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCancellable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncResultListener getAsyncResultListener() {
+        return this.mAsyncResultListener;
+    }
+}
@@ -270,6 +270,7 @@ public abstract class AsyncResultProgram
             this.mWorkerThread.mAlive = false;
             this.mSync.notify();
         }
+        onRequestCancel();
 
         //Notify cancellation
         if (this.mOnCancelListener != null) {
@@ -297,6 +298,7 @@ public abstract class AsyncResultProgram
             this.mWorkerThread.mAlive = false;
             this.mSync.notify();
         }
+        onRequestCancel();
 
         //Notify ending
         SIGNAL signal = onRequestEnd();
@@ -311,6 +313,15 @@ public abstract class AsyncResultProgram
         return false;
     }
 
+    /**
+     * Method invoked when the cancellation or the end of the program is requested,
+     * before the process is killed. Programs that keep working in java after the
+     * process ends (see {@link #onEndParsePartialResult(boolean)}) must stop here.
+     */
+    protected void onRequestCancel() {
+        /**NON BLOCK**/
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.Checksum;
+
+/**
+ * A class for compute the checksums of a file.<br/>
+ * <br/>
+ * The output of the console is text, so the digests are computed by the shell tools
+ * (one line per algorithm) instead of reading the content of the file.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?md5sum"}
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?sha1sum"}
+ */
+public class ChecksumCommand extends AsyncResultProgram implements ChecksumExecutable {
+
+    private static final String TAG = "ChecksumCommand"; //$NON-NLS-1$
+
+    private static final String ID = "checksum"; //$NON-NLS-1$
+
+    // The length of the digests in hexadecimal
+    private static final int MD5_LENGTH = 32;
+    private static final int SHA1_LENGTH = 40;
+    private static final int SHA256_LENGTH = 64;
+
+    private final String mFile;
+    private Checksum mChecksum;
+
+    /**
+     * Constructor of <code>ChecksumCommand</code>.
+     *
+     * @param file The absolute path of the file
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public ChecksumCommand(
+            String file, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener, new String[]{file});
+        this.mFile = file;
+        this.mChecksum = new Checksum(file, -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Checksum getChecksum() {
+        return this.mChecksum.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mChecksum = new Checksum(this.mFile, -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        try {
+            //Partial contains full lines
+            String[] lines = partialIn.split("\n"); //$NON-NLS-1$
+            for (int i = 0; i < lines.length; i++) {
+                parseLine(lines[i].trim(), this.mChecksum);
+            }
+
+            //If a listener is defined, then send the partial result
+            if (getAsyncResultListener() != null) {
+                getAsyncResultListener().onPartialResult(this.mChecksum.clone());
+            }
+
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that parses a line of the output of a checksum tool.<br/>
+     * <br/>
+     * We expect lines with the digest and the name of the file:<br/>
+     * <code>d41d8cd98f00b204e9800998ecf8427e  /sdcard/test.txt</code><br/>
+     * The algorithm is identified by the length of the digest.
+     *
+     * @param line The line to parse
+     * @param checksum The checksums where to set the parsed digest
+     */
+    private static void parseLine(String line, Checksum checksum) {
+        int pos = line.indexOf(' ');
+        if (pos == -1) {
+            return;
+        }
+        String digest = line.substring(0, pos);
+        switch (digest.length()) {
+            case MD5_LENGTH:
+                checksum.setMd5(digest);
+                break;
+            case SHA1_LENGTH:
+                checksum.setSha1(digest);
+                break;
+            case SHA256_LENGTH:
+                checksum.setSha256(digest);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+        // We have not privileges to read the file
+        if (exitCode == 1) {
+            throw new InsufficientPermissionsException();
+        }
+
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 1 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.DeleteExecutable;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for delete a batch of files and directories in background.<br/>
+ * <br/>
+ * The command deletes the items one by one (a <code>D &lt;item&gt;</code> line for
+ * every deleted item), and then checks the items that still exist with a single
+ * <code>stat</code> (a <code>F &lt;item&gt;</code> line for every item not deleted).
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?rm"}
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?stat"}
+ */
+public class DeleteCommand extends AsyncResultProgram implements DeleteExecutable {
+
+    private static final String ID = "rmbatch";  //$NON-NLS-1$
+
+    private Boolean mResult;
+    private final List<String> mFailed;
+    private String mPartial;
+
+    /**
+     * Constructor of <code>DeleteCommand</code>.
+     *
+     * @param items The absolute paths to the files and directories to be deleted
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public DeleteCommand(String[] items, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener);
+        addExpandedArguments(items, true);
+        this.mFailed = new ArrayList<String>();
+        this.mResult = Boolean.FALSE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mResult = Boolean.FALSE;
+        synchronized (this.mFailed) {
+            this.mFailed.clear();
+        }
+        this.mPartial = ""; //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        if (this.mPartial.length() > 0) {
+            parseLine(this.mPartial);
+        }
+        this.mPartial = ""; //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        // The partial may end in the middle of a line
+        String in = this.mPartial + partialIn;
+        final int len = in.length();
+        int start = 0;
+        while (start < len) {
+            int end = in.indexOf('\n', start);
+            if (end == -1) {
+                break;
+            }
+            parseLine(in.substring(start, end));
+            start = end + 1;
+        }
+        this.mPartial = in.substring(start);
+    }
+
+    /**
+     * Method that parses a line of the output of the command.
+     *
+     * @param line The line
+     */
+    private void parseLine(String line) {
+        if (line.length() < 3) {
+            return;
+        }
+        String item = line.substring(2);
+        switch (line.charAt(0)) {
+            case 'D':
+                if (getAsyncResultListener() != null) {
+                    getAsyncResultListener().onPartialResult(item);
+                }
+                break;
+            case 'F':
+                synchronized (this.mFailed) {
+                    this.mFailed.add(item);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getFailed() {
+        synchronized (this.mFailed) {
+            return new ArrayList<String>(this.mFailed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode == 143 || exitCode == 137) {
+            return;
+        }
+        if (exitCode != 0) {
+            throw new ExecutionException("exitcode != 0 && != 143 && != 137"); //$NON-NLS-1$
+        }
+        this.mResult = Boolean.TRUE;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.DuplicateFinder;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.ParseHelper;
+
+import java.util.List;
+
+/**
+ * A class for find the files with the same content in a folder.<br/>
+ * <br/>
+ * The regular files of the folder are listed with <code>find</code> and <code>stat</code>,
+ * and every file is passed to a {@link DuplicateFinder} as it arrives, so the files are
+ * hashed while the folder is still being walked. Every group of duplicates found (or
+ * grown) is sent as a partial result. The files that the application can't read are
+ * not compared.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?find"}
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?stat"}
+ */
+public class DuplicatesCommand extends AsyncResultProgram implements DuplicatesExecutable {
+
+    private static final String TAG = "DuplicatesCommand"; //$NON-NLS-1$
+
+    private static final String ID = "duplicates";  //$NON-NLS-1$
+
+    private final String mDirectory;
+    private DuplicateFinder mFinder;
+
+    /**
+     * Constructor of <code>DuplicatesCommand</code>.
+     *
+     * @param directory The absolute directory where to find the duplicates
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public DuplicatesCommand(String directory, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener, new String[]{FileHelper.addTrailingSlash(directory)});
+        this.mDirectory = directory;
+        this.mFinder = createFinder();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mFinder = createFinder();
+        this.mFinder.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        if (cancelled) {
+            this.mFinder.cancel();
+        }
+        // Wait for the files still being hashed
+        this.mFinder.await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        try {
+            //Partial contains full lines (one terse stat record per line)
+            int len = partialIn.length();
+            int start = 0;
+            while (start < len) {
+                int end = partialIn.indexOf(FileHelper.NEWLINE, start);
+                if (end == -1) {
+                    end = len;
+                }
+                String line = partialIn.substring(start, end);
+                start = end + FileHelper.NEWLINE.length();
+
+                //Checks that there is some text in the line. Otherwise ignore it
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                try {
+                    FileSystemObject fso = ParseHelper.parseStatOutput(line);
+                    this.mFinder.addFile(fso);
+                } catch (Exception e) {
+                    // Log the parsing error
+                    if (isTrace()) {
+                        Log.w(TAG,
+                            String.format(
+                                    "Failed to parse output: %s", //$NON-NLS-1$
+                                    String.valueOf(line)));
+                    }
+                }
+            }
+
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that creates the finder of the duplicates, that sends the groups found to
+     * the listener.
+     *
+     * @return DuplicateFinder The finder
+     */
+    private DuplicateFinder createFinder() {
+        return new DuplicateFinder(this.mDirectory, true) {
+            @Override
+            protected void onDuplicates(DuplicateGroup group) {
+                //If a listener is defined, then send the partial result
+                if (getAsyncResultListener() != null) {
+                    getAsyncResultListener().onPartialResult(group);
+                }
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onRequestCancel() {
+        // The files can be still being hashed after find ends
+        this.mFinder.cancel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //Find in a subdirectory without permissions returns 1, but this
+        //not must be treated as an error
+        //Ignore exit code 123 (xargs: a batched stat failed, ie. a file was removed)
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 1 && exitCode != 123
+                && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 1 && != 123 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DuplicateGroup> getDuplicates() {
+        return this.mFinder.getDuplicates();
+    }
+}
@@ -18,6 +18,7 @@ package com.cyanogenmod.filemanager.commands.shell;
 
 import android.util.Log;
 
+import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
@@ -27,12 +28,11 @@ import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.ParseHelper;
 import com.cyanogenmod.filemanager.util.SearchHelper;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,7 +47,7 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
 
     private static final String ID = "find";  //$NON-NLS-1$
 
-    private final File mDirectory;
+    private final String mDirectoryPath;
 
     /**
      * Constructor of <code>FindCommand</code>.
@@ -61,7 +61,8 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
             String directory, Query query, AsyncResultListener asyncResultListener)
             throws InvalidCommandDefinitionException {
         super(ID, asyncResultListener, createArgs(FileHelper.addTrailingSlash(directory), query));
-        this.mDirectory = new File(directory);
+        addExpandedArguments(createFilterArgs(query), true);
+        this.mDirectoryPath = new File(directory).getAbsolutePath();
     }
 
     /**
@@ -86,19 +87,24 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
     @Override
     public void onParsePartialResult(final String partialIn) {
 
-        // Check the in buffer to extract information
+        // Check the in buffer to extract information. The partial buffer contains
+        // only complete lines (one terse stat record per line), so the buffer is
+        // scanned in place instead of copying it through a reader
         final List<FileSystemObject> partialFiles = new ArrayList<FileSystemObject>();
-        BufferedReader br = null;
         try {
-            //Read the partial + previous partial and clean partial
-            br = new BufferedReader(new StringReader(partialIn));
+            int len = partialIn.length();
+            int start = 0;
+            while (start < len) {
+                int end = partialIn.indexOf(FileHelper.NEWLINE, start);
+                if (end == -1) {
+                    end = len;
+                }
+                String line = partialIn.substring(start, end);
+                start = end + FileHelper.NEWLINE.length();
 
-            //Add all lines to an array
-            String line = null;
-            while ((line = br.readLine()) != null) {
                 //Checks that there is some text in the line. Otherwise ignore it
                 if (line.trim().length() == 0) {
-                    break;
+                    continue;
                 }
 
                 // Add to the list
@@ -106,7 +112,7 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
                     FileSystemObject fso = ParseHelper.parseStatOutput(line);
 
                     // Search directory is not part of the search
-                    if (fso.getFullPath().compareTo(this.mDirectory.getAbsolutePath()) != 0) {
+                    if (fso.getFullPath().compareTo(this.mDirectoryPath) != 0) {
                         partialFiles.add(fso);
                     }
 
@@ -122,21 +128,12 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
             }
 
             //If a listener is defined, then send the partial result
-            if (getAsyncResultListener() != null) {
+            if (getAsyncResultListener() != null && partialFiles.size() > 0) {
                 getAsyncResultListener().onPartialResult(partialFiles);
             }
 
         } catch (Exception ex) {
             Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
-
-        } finally {
-            try {
-                if (br != null) {
-                    br.close();
-                }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
-            }
         }
     }
 
@@ -171,11 +168,13 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
 
         //Search in a subdirectory without permissions returns 1, but this
         //not must be treated as an error
+        //Ignore exit code 123 (xargs: a batched stat failed, ie. a file was removed)
         //Ignore exit code 143 (cancelled)
         //Ignore exit code 137 (kill -9)
-        if (exitCode != 0 && exitCode != 1 && exitCode != 143 && exitCode != 137) {
+        if (exitCode != 0 && exitCode != 1 && exitCode != 123
+                && exitCode != 143 && exitCode != 137) {
             throw new ExecutionException(
-                        "exitcode != 0 && != 1 && != 143 && != 137"); //$NON-NLS-1$
+                        "exitcode != 0 && != 1 && != 123 && != 143 && != 137"); //$NON-NLS-1$
         }
     }
 
@@ -192,8 +191,84 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
         args[0] = directory;
         int cc = query.getSlotsCount();
         for (int i = 0; i < cc; i++) {
-            args[i + 1] = SearchHelper.toIgnoreCaseRegExp(query.getSlot(i), false);
+            args[i + 1] = SearchHelper.toIgnoreCaseRegExp(query.getSlot(i));
         }
         return args;
     }
+
+    /**
+     * Method that create the <code>find</code> expressions of the filters of the query,
+     * so the filtered objects are never stat'ed nor reported.
+     *
+     * @param query The query make for user
+     * @return String[] The expressions of the filters
+     * @hide
+     */
+    static String[] createFilterArgs(Query query) {
+        if (!query.hasFilters()) {
+            return new String[]{};
+        }
+        List<String> args = new ArrayList<String>();
+
+        // Type
+        switch (query.getFileType()) {
+            case DIRECTORY:
+                args.add("-type"); //$NON-NLS-1$
+                args.add("d"); //$NON-NLS-1$
+                break;
+            case SYMLINK:
+                args.add("-type"); //$NON-NLS-1$
+                args.add("l"); //$NON-NLS-1$
+                break;
+            default:
+                if (query.isRegularFilesOnly()) {
+                    args.add("-type"); //$NON-NLS-1$
+                    args.add("f"); //$NON-NLS-1$
+                }
+                break;
+        }
+
+        // Category (by the extensions of the category)
+        if (query.getCategory() != null) {
+            List<String> extensions =
+                    MimeTypeHelper.getExtensions(
+                            FileManagerApplication.getInstance(), query.getCategory());
+            int cc = extensions.size();
+            if (cc > 0) {
+                args.add("("); //$NON-NLS-1$
+                for (int i = 0; i < cc; i++) {
+                    if (i > 0) {
+                        args.add("-o"); //$NON-NLS-1$
+                    }
+                    args.add("-name"); //$NON-NLS-1$
+                    args.add(SearchHelper.toIgnoreCaseExtensionGlob(extensions.get(i)));
+                }
+                args.add(")"); //$NON-NLS-1$
+            }
+        }
+
+        // Size (in bytes: +N is greater than N, -N is lower than N)
+        if (query.getMinSize() > 0) {
+            args.add("-size"); //$NON-NLS-1$
+            args.add(String.format("+%dc", Long.valueOf(query.getMinSize() - 1))); //$NON-NLS-1$
+        }
+        if (query.getMaxSize() != Query.NO_FILTER) {
+            args.add("-size"); //$NON-NLS-1$
+            args.add(String.format("-%dc", Long.valueOf(query.getMaxSize() + 1))); //$NON-NLS-1$
+        }
+
+        // Modification date (in minutes from now)
+        long now = System.currentTimeMillis();
+        if (query.getModifiedAfter() != Query.NO_FILTER) {
+            long minutes = (now - query.getModifiedAfter() + 59999L) / 60000L;
+            args.add("-mmin"); //$NON-NLS-1$
+            args.add(String.format("-%d", Long.valueOf(Math.max(1, minutes)))); //$NON-NLS-1$
+        }
+        if (query.getModifiedBefore() != Query.NO_FILTER) {
+            long minutes = Math.max(0, (now - query.getModifiedBefore()) / 60000L);
+            args.add("-mmin"); //$NON-NLS-1$
+            args.add(String.format("+%d", Long.valueOf(minutes))); //$NON-NLS-1$
+        }
+        return args.toArray(new String[args.size()]);
+    }
 }
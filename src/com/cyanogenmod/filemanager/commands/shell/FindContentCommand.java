@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.FindContentExecutable;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.SearchHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for search text inside files. The files are selected with <code>find</code>
+ * (only regular files under the maximum size that pass the filters of the query) and
+ * scanned with <code>grep</code> for the terms of
+ * {@link SearchHelper#getContentTerms(Query)}.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?grep"}
+ */
+public class FindContentCommand extends AsyncResultProgram implements FindContentExecutable {
+
+    private static final String TAG = "FindContentCommand"; //$NON-NLS-1$
+
+    private static final String ID = "findcontent";  //$NON-NLS-1$
+
+    private final String mDirectory;
+    private FileSystemObject mLastFso;
+
+    /**
+     * Constructor of <code>FindContentCommand</code>.
+     *
+     * @param directory The absolute path of the directory where do the search
+     * @param query The terms to be searched
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public FindContentCommand(
+            String directory, Query query, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener, createArgs(FileHelper.addTrailingSlash(directory)));
+        this.mDirectory = FileHelper.addTrailingSlash(directory);
+
+        // The filters of the query select the files
+        addExpandedArguments(FindCommand.createFilterArgs(query), true);
+
+        // Every term of the query is passed as a grep expression
+        List<String> terms = SearchHelper.getContentTerms(query);
+        int cc = terms.size();
+        String[] expressions = new String[cc * 2];
+        for (int i = 0; i < cc; i++) {
+            expressions[i * 2] = "-e"; //$NON-NLS-1$
+            expressions[(i * 2) + 1] = SearchHelper.toGrepRegExp(terms.get(i));
+        }
+        addExpandedArguments(expressions, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mLastFso = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+
+        // Check the in buffer to extract information. Every line has the format
+        // <path>:<line number>:<text>
+        final List<ContentMatch> partialMatches = new ArrayList<ContentMatch>();
+        try {
+            int len = partialIn.length();
+            int start = 0;
+            while (start < len) {
+                int end = partialIn.indexOf(FileHelper.NEWLINE, start);
+                if (end == -1) {
+                    end = len;
+                }
+                String line = partialIn.substring(start, end);
+                start = end + FileHelper.NEWLINE.length();
+
+                try {
+                    ContentMatch match = parseLine(line);
+                    if (match != null) {
+                        partialMatches.add(match);
+                    }
+                } catch (Exception e) {
+                    // Log the parsing error
+                    if (isTrace()) {
+                        Log.w(TAG,
+                            String.format(
+                                    "Failed to parse output: %s", //$NON-NLS-1$
+                                    String.valueOf(line)));
+                    }
+                }
+            }
+
+            //If a listener is defined, then send the partial result
+            if (getAsyncResultListener() != null && partialMatches.size() > 0) {
+                getAsyncResultListener().onPartialResult(partialMatches);
+            }
+
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that parses a line of the grep output.
+     *
+     * @param line The line to parse
+     * @return ContentMatch The match, or null if the line isn't a valid match
+     */
+    private ContentMatch parseLine(String line) {
+        // Paths start with the search directory. Find the first ":<digits>:" after it
+        if (!line.startsWith(this.mDirectory)) {
+            return null;
+        }
+        int cc = line.length();
+        int sep = line.indexOf(':', this.mDirectory.length());
+        while (sep != -1) {
+            int pos = sep + 1;
+            while (pos < cc && Character.isDigit(line.charAt(pos))) {
+                pos++;
+            }
+            if (pos > sep + 1 && pos < cc && line.charAt(pos) == ':') {
+                String path = line.substring(0, sep);
+                int lineNumber = Integer.parseInt(line.substring(sep + 1, pos));
+                String text = line.substring(pos + 1);
+
+                // Binary content is not reported (grep doesn't skip binary files)
+                if (isBinary(text)) {
+                    return null;
+                }
+                if (text.length() > ContentMatch.MAX_LINE_LENGTH) {
+                    text = text.substring(0, ContentMatch.MAX_LINE_LENGTH);
+                }
+
+                // The matches of a file are consecutive. Reuse the file system object
+                FileSystemObject fso = this.mLastFso;
+                if (fso == null || fso.getFullPath().compareTo(path) != 0) {
+                    fso = FileHelper.createFileSystemObject(new File(path));
+                    if (fso == null) {
+                        return null;
+                    }
+                    this.mLastFso = fso;
+                }
+                return new ContentMatch(fso, lineNumber, text.trim());
+            }
+            sep = line.indexOf(':', sep + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Method that checks if a text contains control characters of binary content.
+     *
+     * @param text The text to check
+     * @return boolean If the text contains binary content
+     */
+    private static boolean isBinary(String text) {
+        int cc = text.length();
+        for (int i = 0; i < cc; i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x20 && ch != '\t' && ch != '\r' && ch != '\f') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //No matches returns 1 (123 if xargs invoked grep several times), but this
+        //not must be treated as an error
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 1 && exitCode != 123
+                && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 1 && != 123 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that create the arguments of this command.
+     *
+     * @param directory The directory where to search
+     * @return String[] The arguments of the command
+     */
+    private static String[] createArgs(String directory) {
+        Resources res = FileManagerApplication.getInstance().getResources();
+        int maxFileSize = res.getInteger(R.integer.content_search_max_file_size);
+        int maxMatches = res.getInteger(R.integer.content_search_max_matches_per_file);
+        return new String[]{
+                directory,
+                String.valueOf(maxFileSize / 1024),
+                String.valueOf(maxMatches)};
+    }
+}
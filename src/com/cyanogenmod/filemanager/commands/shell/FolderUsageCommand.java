@@ -35,10 +35,7 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
 
 /**
  * A class for retrieve the disk usage of a folder
@@ -90,101 +87,9 @@ public class FolderUsageCommand extends AsyncResultProgram implements FolderUsag
      */
     @Override
     public void onParsePartialResult(final String partialIn) {
-
-        // Check the in buffer to extract information
-        BufferedReader br = null;
         try {
-            // Parse the line. We expect a ls -l output line
-            // -rw-r--r-- root     root            7 2012-12-30 00:49 test.txt
-            //
-            // (1) permissions
-            // (2) owner
-            // (3) group
-            // (4) size
-            // (5) date
-            // (6) name
-
             //Partial contains full lines
-            br = new BufferedReader(new StringReader(partialIn));
-
-            //Add all lines to an array
-            List<String> lines = new ArrayList<String>();
-            String line = null;
-            while ((line = br.readLine()) != null) {
-                // Discard empty, paths, and folder links
-                if (line.length() == 0 ||
-                    line.startsWith(FileHelper.ROOT_DIRECTORY) ||
-                    line.startsWith(FileHelper.CURRENT_DIRECTORY) ||
-                    line.startsWith(FileHelper.PARENT_DIRECTORY)) {
-                    continue;
-                }
-                lines.add(line);
-            }
-
-            int c = 0;
-            try {
-                while (lines.size() > 0) {
-                    // Retrieve the info
-                    String szLine = lines.remove(0).trim();
-                    try {
-                        // Clean the line (we don't care about names, only need the extension)
-                        // so remove spaces is safe here
-                        while (szLine.indexOf("  ") != -1) { //$NON-NLS-1$
-                            szLine = szLine.replaceAll("  ", " "); //$NON-NLS-1$ //$NON-NLS-2$
-                        }
-
-                        char type = szLine.charAt(0);
-                        if (type == Symlink.UNIX_ID ||
-                                type == BlockDevice.UNIX_ID ||
-                                type == CharacterDevice.UNIX_ID ||
-                                type == DomainSocket.UNIX_ID ||
-                                type == NamedPipe.UNIX_ID) {
-                            // File + Category
-                            this.mFolderUsage.addFile();
-                            if (type == Symlink.UNIX_ID) {
-                                this.mFolderUsage.addFileToCategory(MimeTypeCategory.NONE);
-                            } else {
-                                this.mFolderUsage.addFileToCategory(MimeTypeCategory.SYSTEM);
-                            }
-
-                        } else if (type == Directory.UNIX_ID) {
-                            // Folder
-                            this.mFolderUsage.addFolder();
-
-                        } else {
-                            // File + Category + Size
-                            try {
-                                // we need a valid line
-                                String[] fields = szLine.split(" "); //$NON-NLS-1$
-                                if (fields.length < 7) {
-                                    continue;
-                                }
-
-                                long size = Long.parseLong(fields[3]);
-                                String name = fields[fields.length-1];// We only need the extension
-                                String ext = FileHelper.getExtension(name);
-                                MimeTypeCategory category =
-                                        MimeTypeHelper.getCategoryFromExt(null, ext);
-                                this.mFolderUsage.addFile();
-                                this.mFolderUsage.addFileToCategory(category);
-                                this.mFolderUsage.addSize(size);
-                            } catch (Exception e) {/**NON BLOCK**/}
-                        }
-                        c++;
-
-                    } catch (Exception e) {
-                        // Ignore.
-                    }
-
-                    // Partial notification
-                    if (c % 5 == 0) {
-                        //If a listener is defined, then send the partial result
-                        if (getAsyncResultListener() != null) {
-                            getAsyncResultListener().onPartialResult(this.mFolderUsage);
-                        }
-                    }
-                }
-            } catch (Exception ex) { /**NON BLOCK **/ }
+            parse(partialIn, this.mFolderUsage);
 
             //If a listener is defined, then send the partial result
             if (getAsyncResultListener() != null) {
@@ -193,16 +98,147 @@ public class FolderUsageCommand extends AsyncResultProgram implements FolderUsag
 
         } catch (Exception ex) {
             Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+    }
 
-        } finally {
-            try {
-                if (br != null) {
-                    br.close();
+    /**
+     * Method that parses <code>ls -alR</code> output lines and adds them to a folder usage.
+     * The lines are tokenized in a single pass over the input, without splitting
+     * it in lines or fields.<br/>
+     * <br/>
+     * We expect ls -l output lines:<br/>
+     * <code>-rw-r--r-- root     root            7 2012-12-30 00:49 test.txt</code>
+     * <ol>
+     * <li>permissions</li>
+     * <li>owner</li>
+     * <li>group</li>
+     * <li>size</li>
+     * <li>date</li>
+     * <li>time</li>
+     * <li>name</li>
+     * </ol>
+     * Empty lines, paths and folder links are discarded.
+     *
+     * @param in The output of the command (full lines)
+     * @param usage The folder usage where to add the parsed lines
+     * @return int The number of parsed lines
+     */
+    public static int parse(String in, FolderUsage usage) {
+        final int len = in.length();
+        int parsed = 0;
+        int start = 0;
+        while (start < len) {
+            int end = in.indexOf('\n', start);
+            if (end == -1) {
+                end = len;
+            }
+            if (parseLine(in, start, end, usage)) {
+                parsed++;
+            }
+            start = end + 1;
+        }
+        return parsed;
+    }
+
+    /**
+     * Method that parses a <code>ls -alR</code> output line.
+     *
+     * @param in The output of the command
+     * @param start The start of the line (inclusive)
+     * @param end The end of the line (exclusive)
+     * @param usage The folder usage where to add the parsed line
+     * @return boolean If the line was parsed
+     */
+    private static boolean parseLine(String in, int start, int end, FolderUsage usage) {
+        // Discard empty, paths, and folder links (".", "..")
+        if (start >= end) {
+            return false;
+        }
+        char type = in.charAt(start);
+        if (type == File.separatorChar || type == '.') {
+            return false;
+        }
+
+        // Trim the line
+        while (start < end && in.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && in.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return false;
+        }
+        type = in.charAt(start);
+
+        if (type == Symlink.UNIX_ID ||
+                type == BlockDevice.UNIX_ID ||
+                type == CharacterDevice.UNIX_ID ||
+                type == DomainSocket.UNIX_ID ||
+                type == NamedPipe.UNIX_ID) {
+            // File + Category
+            usage.addFile();
+            if (type == Symlink.UNIX_ID) {
+                usage.addFileToCategory(MimeTypeCategory.NONE);
+            } else {
+                usage.addFileToCategory(MimeTypeCategory.SYSTEM);
+            }
+            return true;
+        }
+        if (type == Directory.UNIX_ID) {
+            // Folder
+            usage.addFolder();
+            return true;
+        }
+
+        // File + Category + Size. Walk the fields, reading the size (4th field)
+        // and remembering where the last field (the name) starts
+        long size = -1;
+        int field = 0;
+        int lastField = start;
+        int pos = start;
+        while (pos < end) {
+            // Start of a field
+            lastField = pos;
+            if (field == 3) {
+                size = 0;
+                char c;
+                while (pos < end && (c = in.charAt(pos)) > ' ') {
+                    if (c < '0' || c > '9') {
+                        // we need a valid line
+                        return false;
+                    }
+                    size = size * 10 + (c - '0');
+                    pos++;
                 }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
+            } else {
+                while (pos < end && in.charAt(pos) > ' ') {
+                    pos++;
+                }
+            }
+            field++;
+
+            // Skip the separators
+            while (pos < end && in.charAt(pos) <= ' ') {
+                pos++;
             }
         }
+        // we need a valid line
+        if (field < 7 || size < 0) {
+            return false;
+        }
+
+        // We only need the extension
+        String ext = null;
+        int dot = in.lastIndexOf('.', end - 1);
+        if (dot > lastField) {
+            ext = FileHelper.getExtension(in.substring(lastField, end));
+        }
+        MimeTypeCategory category = MimeTypeHelper.getCategoryFromExt(null, ext);
+        usage.addFile();
+        usage.addFileToCategory(category);
+        usage.addSize(size);
+        return true;
     }
 
     /**
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer;
+import com.cyanogenmod.filemanager.util.StorageAnalyzer.Folder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class for analyze the storage used by a folder (the largest files and folders,
+ * and the size tree).<br/>
+ * <br/>
+ * The output of <code>ls -alR</code> is parsed as it arrives and accumulated in a
+ * {@link StorageAnalyzer}, whose snapshots are sent as partial results. A folder's
+ * listing ends when the header of the next folder is found.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?ls"}
+ */
+public class StorageAnalysisCommand
+    extends AsyncResultProgram implements StorageAnalysisExecutable {
+
+    private static final String TAG = "StorageAnalysisCommand"; //$NON-NLS-1$
+
+    private static final String ID = "storageanalysis"; //$NON-NLS-1$
+
+    private final String mDirectory;
+    private final int mTop;
+    private StorageAnalyzer mAnalyzer;
+
+    // The folders found but not listed yet
+    private final Map<String, Folder> mPending;
+    // The folder being listed, and the size of its files not added yet
+    private Folder mCurrent;
+    private long mCurrentSize;
+
+    /**
+     * Constructor of <code>StorageAnalysisCommand</code>.
+     *
+     * @param directory The absolute directory to analyze
+     * @param top The number of largest files and folders to return
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public StorageAnalysisCommand(
+            String directory, int top, AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID, asyncResultListener, new String[]{directory});
+        this.mDirectory = directory;
+        this.mTop = top;
+        this.mAnalyzer = new StorageAnalyzer(directory, top);
+        this.mPending = new HashMap<String, Folder>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        this.mAnalyzer = new StorageAnalyzer(this.mDirectory, this.mTop);
+        this.mPending.clear();
+        this.mCurrent = this.mAnalyzer.getRoot();
+        this.mCurrentSize = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        endCurrent();
+
+        // The folders that weren't listed (no permissions) end empty
+        List<Folder> folders = new ArrayList<Folder>(this.mPending.values());
+        this.mPending.clear();
+        int cc = folders.size();
+        for (int i = 0; i < cc; i++) {
+            this.mAnalyzer.endFolder(folders.get(i));
+        }
+
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mAnalyzer.snapshot());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        try {
+            //Partial contains full lines
+            final int len = partialIn.length();
+            int start = 0;
+            while (start < len) {
+                int end = partialIn.indexOf('\n', start);
+                if (end == -1) {
+                    end = len;
+                }
+                parseLine(partialIn, start, end);
+                start = end + 1;
+            }
+            if (this.mCurrent != null) {
+                this.mAnalyzer.addSize(this.mCurrent, this.mCurrentSize);
+                this.mCurrentSize = 0;
+            }
+
+            //If a listener is defined, then send the partial result
+            if (getAsyncResultListener() != null) {
+                getAsyncResultListener().onPartialResult(this.mAnalyzer.snapshot());
+            }
+
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that parses a <code>ls -alR</code> output line. We expect folder headers
+     * (<code>/sdcard/DCIM:</code>) and ls -l output lines:<br/>
+     * <code>-rw-r--r-- root     root            7 2012-12-30 00:49 test.txt</code><br/>
+     * <code>drwxr-xr-x root     root              2012-12-30 00:49 folder</code>
+     *
+     * @param in The output of the command
+     * @param start The start of the line (inclusive)
+     * @param end The end of the line (exclusive)
+     */
+    private void parseLine(String in, int start, int end) {
+        while (end > start && in.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start >= end) {
+            return;
+        }
+
+        // A folder header
+        char type = in.charAt(start);
+        if (type == File.separatorChar && in.charAt(end - 1) == ':') {
+            String path = in.substring(start, end - 1);
+            Folder root = this.mAnalyzer.getRoot();
+            if (this.mCurrent == root && (path.compareTo(root.getPath()) == 0
+                    || root.getPath().compareTo(path + File.separator) == 0)) {
+                // The header of the analyzed folder
+                return;
+            }
+            endCurrent();
+            this.mCurrent = this.mPending.remove(path);
+            return;
+        }
+        if (this.mCurrent == null) {
+            // The listing of an unknown folder
+            return;
+        }
+
+        // Walk the fields, reading the size (4th field) and the date (yyyy-MM-dd);
+        // the name starts after the time field
+        long size = -1;
+        int field = 0;
+        int date = -1;
+        int name = -1;
+        int pos = start;
+        while (pos < end) {
+            int s = pos;
+            while (pos < end && in.charAt(pos) > ' ') {
+                pos++;
+            }
+            if (field == 3) {
+                size = parseSize(in, s, pos);
+            }
+            if (date == -1 && field >= 3 && isDate(in, s, pos)) {
+                date = field;
+            }
+            field++;
+            while (pos < end && in.charAt(pos) <= ' ') {
+                pos++;
+            }
+            if (date != -1 && field == date + 2) {
+                name = pos;
+                break;
+            }
+        }
+        if (name == -1 || name >= end) {
+            // we need a valid line
+            return;
+        }
+
+        if (type == Directory.UNIX_ID) {
+            String folder = in.substring(name, end);
+            if (folder.compareTo(FileHelper.CURRENT_DIRECTORY) != 0 &&
+                folder.compareTo(FileHelper.PARENT_DIRECTORY) != 0) {
+                Folder child = this.mAnalyzer.addFolder(this.mCurrent, folder);
+                this.mPending.put(child.getPath(), child);
+            }
+        } else if (type == '-') {
+            // Only regular files have size (devices have major/minor numbers)
+            if (size > 0) {
+                this.mAnalyzer.addFile(this.mCurrent, in.substring(name, end), size);
+                this.mCurrentSize += size;
+            } else {
+                this.mAnalyzer.addFile(this.mCurrent, null, 0);
+            }
+        } else {
+            this.mAnalyzer.addFile(this.mCurrent, null, 0);
+        }
+    }
+
+    /**
+     * Method that ends the listing of the current folder.
+     */
+    private void endCurrent() {
+        if (this.mCurrent != null) {
+            this.mAnalyzer.addSize(this.mCurrent, this.mCurrentSize);
+            this.mAnalyzer.endFolder(this.mCurrent);
+            this.mCurrent = null;
+            this.mCurrentSize = 0;
+        }
+    }
+
+    /**
+     * Method that parses the size field.
+     *
+     * @param in The output of the command
+     * @param start The start of the field (inclusive)
+     * @param end The end of the field (exclusive)
+     * @return long The size, or -1 if the field is not a size
+     */
+    private static long parseSize(String in, int start, int end) {
+        long size = 0;
+        for (int i = start; i < end; i++) {
+            char c = in.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            size = size * 10 + (c - '0');
+        }
+        return size;
+    }
+
+    /**
+     * Method that returns if a field is a date (yyyy-MM-dd).
+     *
+     * @param in The output of the command
+     * @param start The start of the field (inclusive)
+     * @param end The end of the field (exclusive)
+     * @return boolean If the field is a date
+     */
+    private static boolean isDate(String in, int start, int end) {
+        return end - start == 10 && in.charAt(start + 4) == '-' && in.charAt(start + 7) == '-';
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StorageAnalysis getStorageAnalysis() {
+        return this.mAnalyzer.snapshot();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //Access a subdirectory without permissions returns 1, but this
+        //not must be treated as an error
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode != 0 && exitCode != 1 && exitCode != 143 && exitCode != 137) {
+            throw new ExecutionException(
+                        "exitcode != 0 && != 1 && != 143 && != 137"); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.commands.TransferExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.TransferProgress;
+import com.cyanogenmod.filemanager.util.TransferJournal;
+
+/**
+ * A class for copy or move a file or directory in background, reporting the
+ * progress of the operation.<br/>
+ * <br/>
+ * The command first sizes the source (a <code>S &lt;size&gt;</code> line for every file,
+ * and a <code>T</code> line at the end), and then copies it entry by entry (a
+ * <code>C &lt;size&gt; &lt;file&gt;</code> line for every copied file, and
+ * <code>P &lt;bytes&gt; &lt;file&gt;</code> lines with the bytes copied of the big files
+ * while they are copied). A move in the same device is a rename; a move between
+ * devices deletes every source file after its copy.<br/>
+ * <br/>
+ * If a journal is passed, the copied files and the bytes copied of the big files are
+ * recorded in it. A resumed operation skips the files with the size of the source, and
+ * continues the partial files.<br/>
+ * <br/>
+ * The listener receives the exit code after the result of the operation (or its
+ * exception), as with the java console, so an ended operation has always its outcome.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?cp"}
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?mv"}
+ */
+public class TransferCommand extends AsyncResultProgram implements TransferExecutable {
+
+    private static final String TAG = "TransferCommand"; //$NON-NLS-1$
+
+    private static final String ID = "transferprogress";  //$NON-NLS-1$
+
+    // The modes of the transfer script
+    private static final String COPY_MODE = "cp";  //$NON-NLS-1$
+    private static final String MOVE_MODE = "mv";  //$NON-NLS-1$
+
+    // The minimum time between partial results
+    private static final long PARTIAL_RESULT_DELAY = 250L;
+
+    /**
+     * A listener that delays the exit code until the outcome of the command is known.
+     * The console notifies the exit code before the command checks it.
+     */
+    private static class OrderedResultListener implements AsyncResultListener {
+        private final AsyncResultListener mListener;
+        private int mExitCode;
+        private boolean mExitCodeNotified;
+
+        /**
+         * Constructor of <code>OrderedResultListener</code>.
+         *
+         * @param listener The listener of the command
+         */
+        public OrderedResultListener(AsyncResultListener listener) {
+            super();
+            this.mListener = listener;
+            this.mExitCode = -1;
+            this.mExitCodeNotified = false;
+        }
+
+        /**
+         * Method that notifies the exit code to the listener, once.
+         */
+        void notifyExitCode() {
+            synchronized (this) {
+                if (this.mExitCodeNotified) {
+                    return;
+                }
+                this.mExitCodeNotified = true;
+            }
+            this.mListener.onAsyncExitCode(this.mExitCode);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAsyncStart() {
+            this.mListener.onAsyncStart();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAsyncEnd(boolean cancelled) {
+            this.mListener.onAsyncEnd(cancelled);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized void onAsyncExitCode(int exitCode) {
+            // Notified when the command checks the exit code
+            this.mExitCode = exitCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onPartialResult(Object result) {
+            this.mListener.onPartialResult(result);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onException(Exception cause) {
+            this.mListener.onException(cause);
+            notifyExitCode();
+        }
+    }
+
+    private final String mSrc;
+    private final String mDst;
+    private final TransferJournal mJournal;
+    private TransferProgress mProgress;
+    private Boolean mResult;
+    // The bytes copied of the file being copied
+    private long mCurrentBytes;
+    private long mLastNotification;
+    private String mPartial;
+
+    /**
+     * Constructor of <code>TransferCommand</code>.
+     *
+     * @param move If the source must be moved (otherwise it's copied)
+     * @param src The name of the file or directory to be copied or moved
+     * @param dst The name of the file or directory in which copy or move the source
+     * @param journal The journal of the operation (may be null)
+     * @param asyncResultListener The partial result listener
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public TransferCommand(boolean move, String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener)
+            throws InvalidCommandDefinitionException {
+        super(ID,
+                asyncResultListener != null ?
+                        new OrderedResultListener(asyncResultListener) : null,
+                new String[]{move ? MOVE_MODE : COPY_MODE, src, dst,
+                        isResumed(journal) ? "1" : "0"}); //$NON-NLS-1$ //$NON-NLS-2$
+        this.mSrc = src;
+        this.mDst = dst;
+        this.mJournal = journal;
+        this.mProgress = new TransferProgress(src, dst);
+        this.mResult = Boolean.FALSE;
+    }
+
+    /**
+     * Method that returns if the operation of a journal is resumed.
+     *
+     * @param journal The journal (may be null)
+     * @return boolean If the operation is resumed
+     */
+    private static boolean isResumed(TransferJournal journal) {
+        return journal != null && journal.isResumed();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        synchronized (this) {
+            this.mProgress = new TransferProgress(this.mSrc, this.mDst);
+        }
+        this.mResult = Boolean.FALSE;
+        this.mCurrentBytes = 0;
+        this.mLastNotification = 0;
+        this.mPartial = ""; //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEndParsePartialResult(boolean cancelled) {
+        if (this.mPartial.length() > 0) {
+            parseLine(this.mPartial, 0, this.mPartial.length());
+        }
+        this.mPartial = ""; //$NON-NLS-1$
+        notifyPartialResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(final String partialIn) {
+        try {
+            // The partial may end in the middle of a line
+            String in = this.mPartial + partialIn;
+            final int len = in.length();
+            int start = 0;
+            while (start < len) {
+                int end = in.indexOf('\n', start);
+                if (end == -1) {
+                    break;
+                }
+                parseLine(in, start, end);
+                start = end + 1;
+            }
+            this.mPartial = in.substring(start);
+
+            // Partial notification
+            long now = System.currentTimeMillis();
+            if (now - this.mLastNotification >= PARTIAL_RESULT_DELAY) {
+                this.mLastNotification = now;
+                notifyPartialResult();
+            }
+
+        } catch (Exception ex) {
+            Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that parses a line of the output of the command.
+     *
+     * @param in The output of the command
+     * @param start The start of the line (inclusive)
+     * @param end The end of the line (exclusive)
+     */
+    private void parseLine(String in, int start, int end) {
+        if (end - start < 1) {
+            return;
+        }
+        char type = in.charAt(start);
+        long size = end - start > 2 ? parseSize(in, start + 2, end) : 0;
+        if (this.mJournal != null && (type == 'C' || type == 'P')) {
+            // The file follows the size
+            int file = in.indexOf(' ', start + 2);
+            if (file != -1 && file < end) {
+                String path = in.substring(file + 1, end);
+                if (type == 'C') {
+                    this.mJournal.fileCopied(path);
+                } else {
+                    this.mJournal.fileProgress(path, size);
+                }
+            }
+        }
+        synchronized (this) {
+            switch (type) {
+                case 'S':
+                    this.mProgress.addTotal(size);
+                    break;
+                case 'T':
+                    // The sizing ended. The transfer starts now
+                    this.mProgress.start();
+                    break;
+                case 'P':
+                    this.mProgress.addBytes(size - this.mCurrentBytes);
+                    this.mCurrentBytes = size;
+                    break;
+                case 'C':
+                    this.mProgress.addBytes(size - this.mCurrentBytes);
+                    this.mProgress.addFile();
+                    this.mCurrentBytes = 0;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Method that parses a size field.
+     *
+     * @param in The output of the command
+     * @param start The start of the field (inclusive)
+     * @param end The end of the field (exclusive)
+     * @return long The size, or 0 if the field is not a size
+     */
+    private static long parseSize(String in, int start, int end) {
+        long size = 0;
+        for (int i = start; i < end; i++) {
+            char c = in.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            size = size * 10 + (c - '0');
+        }
+        return size;
+    }
+
+    /**
+     * Method that sends a snapshot of the progress to the listener.
+     */
+    private void notifyPartialResult() {
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(getProgress());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParseErrorPartialResult(String partialErr) {/**NON BLOCK**/}
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SIGNAL onRequestEnd() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mResult;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized TransferProgress getProgress() {
+        return this.mProgress.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIgnoreShellStdErrCheck() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+
+        //Ignore exit code 143 (cancelled)
+        //Ignore exit code 137 (kill -9)
+        if (exitCode == 143 || exitCode == 137) {
+            notifyExitCode();
+            return;
+        }
+        if (exitCode != 0) {
+            // The exit code is notified after the exception
+            throw new ExecutionException("exitcode != 0 && != 143 && != 137"); //$NON-NLS-1$
+        }
+
+        // A renamed source wasn't sized, but it's complete
+        synchronized (this) {
+            this.mProgress.complete();
+        }
+        this.mResult = Boolean.TRUE;
+        notifyExitCode();
+    }
+
+    /**
+     * Method that notifies the exit code to the listener, once the outcome of the
+     * command is known.
+     */
+    private void notifyExitCode() {
+        if (getAsyncResultListener() != null) {
+            ((OrderedResultListener)getAsyncResultListener()).notifyExitCode();
+        }
+    }
+}
@@ -298,6 +298,25 @@ public final class ConsoleBuilder {
         }
 
         // No rooted. Then create a java console
+        return createJavaConsole(context, initialDirectory);
+    }
+
+    /**
+     * Method that creates a new java console. The java console runs the commands
+     * inside the process of the application, so only has the permissions of the
+     * application, but it doesn't need a shell to transfer data.
+     *
+     * @param context The current context
+     * @param initialDirectory The initial directory of the console
+     * @return Console The java console
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @see JavaConsole
+     */
+    public static Console createJavaConsole(Context context, String initialDirectory)
+            throws FileNotFoundException, IOException, ConsoleAllocException {
+        int bufferSize = context.getResources().getInteger(R.integer.buffer_size);
         JavaConsole console = new JavaConsole(context, initialDirectory, bufferSize);
         console.alloc();
         return console;
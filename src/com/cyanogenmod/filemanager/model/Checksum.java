@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+
+/**
+ * A class that holds the checksums of a file (MD5, SHA-1 and SHA-256) and the progress
+ * of their computation.
+ */
+public class Checksum implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = -3627501863390215472L;
+
+    private final String mPath;
+    private final long mSize;
+    private long mBytes;
+    private String mMd5;
+    private String mSha1;
+    private String mSha256;
+
+    /**
+     * Constructor of <code>Checksum</code>.
+     *
+     * @param path The absolute path of the file
+     * @param size The size of the file (-1 if unknown)
+     */
+    public Checksum(String path, long size) {
+        super();
+        this.mPath = path;
+        this.mSize = size;
+        this.mBytes = 0;
+    }
+
+    /**
+     * Method that returns the absolute path of the file.
+     *
+     * @return String The absolute path of the file
+     */
+    public String getPath() {
+        return this.mPath;
+    }
+
+    /**
+     * Method that returns the size of the file.
+     *
+     * @return long The size of the file (-1 if unknown)
+     */
+    public long getSize() {
+        return this.mSize;
+    }
+
+    /**
+     * Method that adds bytes to the bytes of the file already digested.
+     *
+     * @param bytes The number of bytes digested
+     */
+    public void addBytes(long bytes) {
+        this.mBytes += bytes;
+    }
+
+    /**
+     * Method that returns the bytes of the file already digested.
+     *
+     * @return long The bytes digested
+     */
+    public long getBytes() {
+        return this.mBytes;
+    }
+
+    /**
+     * Method that returns the progress of the computation. If the size of the file
+     * is unknown, the progress is the number of checksums already computed.
+     *
+     * @return int The progress of the computation (0-100)
+     */
+    public int getProgress() {
+        if (isComplete()) {
+            return 100;
+        }
+        if (this.mSize < 0) {
+            int computed = (this.mMd5 != null ? 1 : 0) + (this.mSha1 != null ? 1 : 0);
+            return (computed * 100) / 3;
+        }
+        if (this.mSize == 0) {
+            return 0;
+        }
+        return (int)Math.min(99, (this.mBytes * 100) / this.mSize);
+    }
+
+    /**
+     * Method that sets the checksums of the file, completing the computation.
+     *
+     * @param md5 The MD5 of the file
+     * @param sha1 The SHA-1 of the file
+     * @param sha256 The SHA-256 of the file
+     */
+    public void setChecksums(String md5, String sha1, String sha256) {
+        this.mMd5 = md5;
+        this.mSha1 = sha1;
+        this.mSha256 = sha256;
+        this.mBytes = Math.max(0, this.mSize);
+    }
+
+    /**
+     * Method that sets the MD5 of the file.
+     *
+     * @param md5 The MD5 of the file
+     */
+    public void setMd5(String md5) {
+        this.mMd5 = md5;
+    }
+
+    /**
+     * Method that sets the SHA-1 of the file.
+     *
+     * @param sha1 The SHA-1 of the file
+     */
+    public void setSha1(String sha1) {
+        this.mSha1 = sha1;
+    }
+
+    /**
+     * Method that sets the SHA-256 of the file.
+     *
+     * @param sha256 The SHA-256 of the file
+     */
+    public void setSha256(String sha256) {
+        this.mSha256 = sha256;
+    }
+
+    /**
+     * Method that returns if all the checksums are known.
+     *
+     * @return boolean If all the checksums are known
+     */
+    public boolean isComplete() {
+        return this.mMd5 != null && this.mSha1 != null && this.mSha256 != null;
+    }
+
+    /**
+     * Method that returns the MD5 of the file.
+     *
+     * @return String The MD5 of the file, or null if not computed
+     */
+    public String getMd5() {
+        return this.mMd5;
+    }
+
+    /**
+     * Method that returns the SHA-1 of the file.
+     *
+     * @return String The SHA-1 of the file, or null if not computed
+     */
+    public String getSha1() {
+        return this.mSha1;
+    }
+
+    /**
+     * Method that returns the SHA-256 of the file.
+     *
+     * @return String The SHA-256 of the file, or null if not computed
+     */
+    public String getSha256() {
+        return this.mSha256;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Checksum clone() {
+        Checksum other = new Checksum(this.mPath, this.mSize);
+        other.mBytes = this.mBytes;
+        other.mMd5 = this.mMd5;
+        other.mSha1 = this.mSha1;
+        other.mSha256 = this.mSha256;
+        return other;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Checksum [path=" + this.mPath //$NON-NLS-1$
+                + ", bytes=" + this.mBytes + "/" + this.mSize //$NON-NLS-1$ //$NON-NLS-2$
+                + ", md5=" + this.mMd5 //$NON-NLS-1$
+                + ", sha1=" + this.mSha1 //$NON-NLS-1$
+                + ", sha256=" + this.mSha256 + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
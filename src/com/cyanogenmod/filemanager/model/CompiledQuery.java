@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A class that holds the terms of a {@link Query} prepared to be matched against
+ * names. A <code>CompiledQuery</code> is immutable, so it can be created once per
+ * search and shared by the walkers, the relevance calculation and the highlighting
+ * of the results.<br/>
+ * <br/>
+ * Terms are matched in a case insensitive way anywhere in the name. The only
+ * wildcard is <code>*</code>. Terms without wildcards are matched without regular
+ * expressions.<br/>
+ * <br/>
+ * The filters of the query are checked by {@link #accepts(File, boolean)} from the
+ * cheapest to the most expensive one, so rejected entries are stat'ed as less as possible.
+ */
+public class CompiledQuery {
+
+    private static final char WILDCARD = '*';
+
+    /**
+     * A class that represents a compiled term of the query.
+     */
+    public static class Term {
+        private final String mTerm;
+        private final Pattern mPattern;
+
+        /**
+         * Constructor of <code>Term</code>.
+         *
+         * @param term The term of the query
+         */
+        public Term(String term) {
+            super();
+            this.mTerm = term;
+            this.mPattern = (term.indexOf(WILDCARD) != -1) ? compile(term) : null;
+        }
+
+        /**
+         * Method that returns the term of the query.
+         *
+         * @return String The term of the query
+         */
+        public String getTerm() {
+            return this.mTerm;
+        }
+
+        /**
+         * Method that returns if the term is matched without regular expressions.
+         *
+         * @return boolean If the term is matched without regular expressions
+         */
+        public boolean isLiteral() {
+            return this.mPattern == null;
+        }
+
+        /**
+         * Method that finds the first match of the term in a name.
+         *
+         * @param name The name where to find the term
+         * @param bounds An array of at least 2 positions where to return the start
+         * (inclusive) and the end (exclusive) of the match. Can be null.
+         * @return boolean If the term was found
+         */
+        public boolean find(String name, int[] bounds) {
+            if (this.mPattern == null) {
+                // Literal: case insensitive search without regexp
+                int len = this.mTerm.length();
+                int cc = name.length() - len;
+                for (int i = 0; i <= cc; i++) {
+                    if (name.regionMatches(true, i, this.mTerm, 0, len)) {
+                        if (bounds != null) {
+                            bounds[0] = i;
+                            bounds[1] = i + len;
+                        }
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            Matcher matcher = this.mPattern.matcher(name);
+            if (matcher.find()) {
+                if (bounds != null) {
+                    bounds[0] = matcher.start();
+                    bounds[1] = matcher.end();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Method that compiles a term with wildcards. The rest of the term is quoted,
+         * so it is safe to use any character in the term.
+         *
+         * @param term The term of the query
+         * @return Pattern The compiled term
+         */
+        private static Pattern compile(String term) {
+            StringBuilder sb = new StringBuilder(term.length() + 16);
+            int start = 0;
+            int pos;
+            while ((pos = term.indexOf(WILDCARD, start)) != -1) {
+                if (pos > start) {
+                    sb.append(Pattern.quote(term.substring(start, pos)));
+                }
+                sb.append(".*"); //$NON-NLS-1$
+                start = pos + 1;
+            }
+            if (start < term.length()) {
+                sb.append(Pattern.quote(term.substring(start)));
+            }
+            return Pattern.compile(
+                    sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+    }
+
+    private final Query mQuery;
+    private final Term[] mTerms;
+
+    /**
+     * Constructor of <code>CompiledQuery</code>.
+     *
+     * @param query The query to compile
+     */
+    public CompiledQuery(Query query) {
+        super();
+        this.mQuery = query;
+        List<String> queries = query.getQueries();
+        int cc = queries.size();
+        this.mTerms = new Term[cc];
+        for (int i = 0; i < cc; i++) {
+            this.mTerms[i] = new Term(queries.get(i));
+        }
+    }
+
+    /**
+     * Method that returns the query compiled.
+     *
+     * @return Query The query
+     */
+    public Query getQuery() {
+        return this.mQuery;
+    }
+
+    /**
+     * Method that returns the number of terms of the query.
+     *
+     * @return int The number of terms
+     */
+    public int getTermsCount() {
+        return this.mTerms.length;
+    }
+
+    /**
+     * Method that returns a term of the query.
+     *
+     * @param index The index of the term
+     * @return Term The compiled term
+     */
+    public Term getTerm(int index) {
+        return this.mTerms[index];
+    }
+
+    /**
+     * Method that returns if any of the terms of the query matches the name.
+     *
+     * @param name The name to check
+     * @return boolean If the name is matched by the query
+     */
+    public boolean matches(String name) {
+        int cc = this.mTerms.length;
+        for (int i = 0; i < cc; i++) {
+            if (this.mTerms[i].find(name, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that returns if a file passes the filters of the query.
+     *
+     * @param file The file to check
+     * @param isDirectory If the file is a directory
+     * @return boolean If the file passes the filters of the query
+     */
+    public boolean accepts(File file, boolean isDirectory) {
+        final Query query = this.mQuery;
+        if (!query.hasFilters()) {
+            return true;
+        }
+
+        // Type (already known)
+        if (isDirectory && query.isRegularFilesOnly()) {
+            return false;
+        }
+        switch (query.getFileType()) {
+            case DIRECTORY:
+                if (!isDirectory) {
+                    return false;
+                }
+                break;
+            case SYMLINK:
+                if (!isSymlink(file)) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+
+        // Category (by the extension of the name; mime types must be loaded)
+        MimeTypeCategory category = query.getCategory();
+        if (category != null) {
+            String ext = FileHelper.getExtension(file.getName());
+            if (MimeTypeHelper.getCategoryFromExt(null, ext).compareTo(category) != 0) {
+                return false;
+            }
+        }
+
+        // Size and modification date (require a stat)
+        if (query.getMinSize() != Query.NO_FILTER || query.getMaxSize() != Query.NO_FILTER) {
+            long size = file.length();
+            if ((query.getMinSize() != Query.NO_FILTER && size < query.getMinSize()) ||
+                (query.getMaxSize() != Query.NO_FILTER && size > query.getMaxSize())) {
+                return false;
+            }
+        }
+        if (query.getModifiedAfter() != Query.NO_FILTER ||
+            query.getModifiedBefore() != Query.NO_FILTER) {
+            long modified = file.lastModified();
+            if ((query.getModifiedAfter() != Query.NO_FILTER &&
+                    modified < query.getModifiedAfter()) ||
+                (query.getModifiedBefore() != Query.NO_FILTER &&
+                    modified > query.getModifiedBefore())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that returns if a file is a symbolic link.
+     *
+     * @param file The file to check
+     * @return boolean If the file is a symbolic link
+     */
+    private static boolean isSymlink(File file) {
+        try {
+            File parent = file.getParentFile();
+            File f = (parent == null)
+                    ? file
+                    : new File(parent.getCanonicalFile(), file.getName());
+            return !f.getCanonicalFile().equals(f.getAbsoluteFile());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
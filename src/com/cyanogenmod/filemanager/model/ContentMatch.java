@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+
+/**
+ * A class that represents a line of a file that matches the terms of a content search.
+ */
+public class ContentMatch implements Serializable {
+
+    private static final long serialVersionUID = -2795390917650349470L;
+
+    /**
+     * The maximum number of characters of the matching line that are kept.
+     */
+    public static final int MAX_LINE_LENGTH = 160;
+
+    private final FileSystemObject mFso;
+    private final int mLineNumber;
+    private final String mLine;
+
+    /**
+     * Constructor of <code>ContentMatch</code>.
+     *
+     * @param fso The file that contains the match
+     * @param lineNumber The number of the matching line (1 based)
+     * @param line The text of the matching line (could be truncated)
+     */
+    public ContentMatch(FileSystemObject fso, int lineNumber, String line) {
+        super();
+        this.mFso = fso;
+        this.mLineNumber = lineNumber;
+        this.mLine = line;
+    }
+
+    /**
+     * Method that returns the file that contains the match.
+     *
+     * @return FileSystemObject The file that contains the match
+     */
+    public FileSystemObject getFso() {
+        return this.mFso;
+    }
+
+    /**
+     * Method that returns the number of the matching line (1 based).
+     *
+     * @return int The number of the matching line
+     */
+    public int getLineNumber() {
+        return this.mLineNumber;
+    }
+
+    /**
+     * Method that returns the text of the matching line (could be truncated).
+     *
+     * @return String The text of the matching line
+     */
+    public String getLine() {
+        return this.mLine;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ContentMatch [fso=" + this.mFso //$NON-NLS-1$
+                + ", lineNumber=" + this.mLineNumber //$NON-NLS-1$
+                + ", line=" + this.mLine + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
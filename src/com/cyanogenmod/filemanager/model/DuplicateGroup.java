@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class that holds a group of files with the same content (the same size and the
+ * same hash).
+ */
+public class DuplicateGroup implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = -2816943106521876493L;
+
+    private final long mSize;
+    private final String mHash;
+    private final List<FileSystemObject> mFiles;
+
+    /**
+     * Constructor of <code>DuplicateGroup</code>.
+     *
+     * @param size The size of the files
+     * @param hash The hash of the content of the files
+     */
+    public DuplicateGroup(long size, String hash) {
+        super();
+        this.mSize = size;
+        this.mHash = hash;
+        this.mFiles = new ArrayList<FileSystemObject>();
+    }
+
+    /**
+     * Method that returns the identifier of the group (the size and the hash).
+     *
+     * @return String The identifier of the group
+     */
+    public String getId() {
+        return this.mSize + ":" + this.mHash; //$NON-NLS-1$
+    }
+
+    /**
+     * Method that returns the size of every file of the group.
+     *
+     * @return long The size of the files
+     */
+    public long getSize() {
+        return this.mSize;
+    }
+
+    /**
+     * Method that returns the hash of the content of the files.
+     *
+     * @return String The hash of the content of the files
+     */
+    public String getHash() {
+        return this.mHash;
+    }
+
+    /**
+     * Method that returns the files of the group.
+     *
+     * @return List<FileSystemObject> The files of the group
+     */
+    public List<FileSystemObject> getFiles() {
+        return this.mFiles;
+    }
+
+    /**
+     * Method that adds a file to the group.
+     *
+     * @param fso The file
+     */
+    public void addFile(FileSystemObject fso) {
+        this.mFiles.add(fso);
+    }
+
+    /**
+     * Method that removes a file from the group.
+     *
+     * @param path The absolute path of the file
+     * @return boolean If the file was removed
+     */
+    public boolean removeFile(String path) {
+        int cc = this.mFiles.size();
+        for (int i = 0; i < cc; i++) {
+            if (this.mFiles.get(i).getFullPath().compareTo(path) == 0) {
+                this.mFiles.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that returns if the group still has duplicates (two or more files).
+     *
+     * @return boolean If the group has duplicates
+     */
+    public boolean hasDuplicates() {
+        return this.mFiles.size() > 1;
+    }
+
+    /**
+     * Method that returns the space that would be freed keeping only one file of
+     * the group.
+     *
+     * @return long The wasted space
+     */
+    public long getWastedSpace() {
+        return this.mSize * Math.max(0, this.mFiles.size() - 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DuplicateGroup clone() {
+        DuplicateGroup other = new DuplicateGroup(this.mSize, this.mHash);
+        other.mFiles.addAll(this.mFiles);
+        return other;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "DuplicateGroup [size=" + this.mSize //$NON-NLS-1$
+                + ", hash=" + this.mHash //$NON-NLS-1$
+                + ", files=" + this.mFiles.size() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import com.cyanogenmod.filemanager.preferences.CompressionMode;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class that holds a copy, move, delete, compress or uncompress operation queued
+ * to run in background.<br/>
+ * <br/>
+ * The sources and the destinations depend on the kind of the operation:
+ * <ul>
+ * <li>Copy and move: a destination for every source.</li>
+ * <li>Delete: no destinations.</li>
+ * <li>Compress: the archive as the only destination, or no destination if a single
+ * file is compressed (the name of the compressed file is derived from the source).</li>
+ * <li>Uncompress: the compressed file as the only source, and no destinations.</li>
+ * </ul>
+ */
+public class FileOperation implements Serializable {
+
+    private static final long serialVersionUID = -6373830461329553174L;
+
+    /**
+     * The kinds of operations.
+     */
+    public enum TYPE {
+        /**
+         * Copy files and folders
+         */
+        COPY,
+        /**
+         * Move files and folders
+         */
+        MOVE,
+        /**
+         * Delete files and folders
+         */
+        DELETE,
+        /**
+         * Compress files and folders
+         */
+        COMPRESS,
+        /**
+         * Uncompress a file
+         */
+        UNCOMPRESS
+    }
+
+    private long mId;
+    private final TYPE mType;
+    private final List<String> mSources;
+    private final List<String> mDestinations;
+    private CompressionMode mMode;
+    private String mJournal;
+    private boolean mRelaunch;
+
+    /**
+     * Constructor of <code>FileOperation</code>.
+     *
+     * @param type The kind of the operation
+     */
+    public FileOperation(TYPE type) {
+        super();
+        this.mId = -1;
+        this.mType = type;
+        this.mSources = new ArrayList<String>();
+        this.mDestinations = new ArrayList<String>();
+    }
+
+    /**
+     * Method that returns the identifier of the operation in the queue.
+     *
+     * @return long The identifier of the operation, or -1 if the operation isn't queued
+     */
+    public long getId() {
+        return this.mId;
+    }
+
+    /**
+     * Method that sets the identifier of the operation in the queue.
+     *
+     * @param id The identifier of the operation
+     */
+    public void setId(long id) {
+        this.mId = id;
+    }
+
+    /**
+     * Method that returns the kind of the operation.
+     *
+     * @return TYPE The kind of the operation
+     */
+    public TYPE getType() {
+        return this.mType;
+    }
+
+    /**
+     * Method that returns the source files and folders of the operation.
+     *
+     * @return List<String> The absolute paths of the sources
+     */
+    public List<String> getSources() {
+        return this.mSources;
+    }
+
+    /**
+     * Method that returns the destination files and folders of the operation.
+     *
+     * @return List<String> The absolute paths of the destinations
+     */
+    public List<String> getDestinations() {
+        return this.mDestinations;
+    }
+
+    /**
+     * Method that adds a source file or folder.
+     *
+     * @param src The absolute path of the source
+     */
+    public void addSource(String src) {
+        this.mSources.add(src);
+    }
+
+    /**
+     * Method that adds a source file or folder and its destination.
+     *
+     * @param src The absolute path of the source
+     * @param dst The absolute path of the destination
+     */
+    public void addTransfer(String src, String dst) {
+        this.mSources.add(src);
+        this.mDestinations.add(dst);
+    }
+
+    /**
+     * Method that sets the destination of an operation with a single destination.
+     *
+     * @param dst The absolute path of the destination
+     */
+    public void setDestination(String dst) {
+        this.mDestinations.clear();
+        this.mDestinations.add(dst);
+    }
+
+    /**
+     * Method that returns the compression mode of a compress operation.
+     *
+     * @return CompressionMode The compression mode, or null if the operation isn't a
+     * compress operation
+     */
+    public CompressionMode getMode() {
+        return this.mMode;
+    }
+
+    /**
+     * Method that sets the compression mode of a compress operation.
+     *
+     * @param mode The compression mode
+     */
+    public void setMode(CompressionMode mode) {
+        this.mMode = mode;
+    }
+
+    /**
+     * Method that returns the name of the transfer journal of a copy or move operation.
+     *
+     * @return String The name of the journal, or null if the operation has no journal
+     */
+    public String getJournal() {
+        return this.mJournal;
+    }
+
+    /**
+     * Method that sets the name of the transfer journal of a copy or move operation.
+     *
+     * @param journal The name of the journal
+     */
+    public void setJournal(String journal) {
+        this.mJournal = journal;
+    }
+
+    /**
+     * Method that returns if the commands of the operation that fail for missing
+     * privileges can be relaunched with privileges without asking the user.
+     *
+     * @return boolean If the failed commands can be relaunched
+     */
+    public boolean isRelaunch() {
+        return this.mRelaunch;
+    }
+
+    /**
+     * Method that sets if the commands of the operation that fail for missing
+     * privileges can be relaunched with privileges (the user accepted it). This
+     * isn't stored in the queue.
+     *
+     * @param relaunch If the failed commands can be relaunched
+     */
+    public void setRelaunch(boolean relaunch) {
+        this.mRelaunch = relaunch;
+    }
+
+    /**
+     * Method that returns if the operation copies or moves files.
+     *
+     * @return boolean If the operation is a copy or a move
+     */
+    public boolean isTransfer() {
+        return this.mType.compareTo(TYPE.COPY) == 0 || this.mType.compareTo(TYPE.MOVE) == 0;
+    }
+
+    /**
+     * Method that returns the files and folders whose parent folders are written or
+     * read by the operation.
+     *
+     * @return List<String> The absolute paths of the sources and the destinations
+     */
+    public List<String> getPaths() {
+        List<String> paths = new ArrayList<String>(this.mSources);
+        paths.addAll(this.mDestinations);
+        return paths;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "FileOperation [id=" + this.mId //$NON-NLS-1$
+                + ", type=" + this.mType //$NON-NLS-1$
+                + ", sources=" + this.mSources //$NON-NLS-1$
+                + ", destinations=" + this.mDestinations //$NON-NLS-1$
+                + ", mode=" + this.mMode //$NON-NLS-1$
+                + ", journal=" + this.mJournal //$NON-NLS-1$
+                + ", relaunch=" + this.mRelaunch + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
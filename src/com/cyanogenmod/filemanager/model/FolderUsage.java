@@ -92,6 +92,37 @@ public class FolderUsage implements Serializable, Cloneable {
         this.mStatistics.put(category.ordinal(), Long.valueOf(count));
     }
 
+    /**
+     * Method that adds a number of files to the category
+     *
+     * @param category The category
+     * @param count The number of files
+     */
+    public void addFilesToCategory(MimeTypeCategory category, long count) {
+        long total = this.mStatistics.get(category.ordinal()).longValue();
+        this.mStatistics.put(category.ordinal(), Long.valueOf(total + count));
+    }
+
+    /**
+     * Method that adds the usage of other folder (folders, files, size and statistics)
+     * to this usage.
+     *
+     * @param usage The usage to add
+     */
+    public void add(FolderUsage usage) {
+        this.mNumberOfFolders += usage.mNumberOfFolders;
+        this.mNumberOfFiles += usage.mNumberOfFiles;
+        this.mTotalSize += usage.mTotalSize;
+        MimeTypeCategory[] categories = MimeTypeCategory.values();
+        int cc = categories.length;
+        for (int i = 0; i < cc; i++) {
+            long count = usage.getStatisticsForCategory(categories[i]);
+            if (count > 0) {
+                addFilesToCategory(categories[i], count);
+            }
+        }
+    }
+
     /**
      * Method that returns the folder of which retrieve the usage.
      *
@@ -101,6 +132,24 @@ public class FolderUsage implements Serializable, Cloneable {
         return this.mFolder;
     }
 
+    /**
+     * Method sets the total number of folders.
+     *
+     * @param numberOfFolders The total number of folders
+     */
+    public void setNumberOfFolders(int numberOfFolders) {
+        this.mNumberOfFolders = numberOfFolders;
+    }
+
+    /**
+     * Method sets the total number of files.
+     *
+     * @param numberOfFiles The total number of files
+     */
+    public void setNumberOfFiles(int numberOfFiles) {
+        this.mNumberOfFiles = numberOfFiles;
+    }
+
     /**
      * Method that returns the total number of folders.
      *
@@ -204,7 +253,7 @@ public class FolderUsage implements Serializable, Cloneable {
         other.mNumberOfFiles = this.mNumberOfFiles;
         other.mTotalSize = this.mTotalSize;
         other.mStatistics = this.mStatistics.clone();
-        return super.clone();
+        return other;
     }
 
     /**
@@ -18,24 +18,64 @@ package com.cyanogenmod.filemanager.model;
 
 import android.text.TextUtils;
 
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A class that restrict the number of queries that can
- * be made to the application search system.
+ * be made to the application search system.<br/>
+ * <br/>
+ * Besides the terms, a query can hold filters (size, modification date, category
+ * and type of the file system objects) that are applied by the search commands
+ * while walking, so the rejected objects are never reported.
  */
 public class Query implements Serializable {
 
     private static final long serialVersionUID = 3485374541081012723L;
 
+    /**
+     * An enumeration of the types of file system objects that a query can filter.
+     */
+    public enum FileType {
+        /**
+         * Any type
+         */
+        ALL,
+        /**
+         * Regular files
+         */
+        FILE,
+        /**
+         * Directories
+         */
+        DIRECTORY,
+        /**
+         * Symbolic links
+         */
+        SYMLINK
+    }
+
+    /**
+     * The value of a filter that is not set.
+     */
+    public static final long NO_FILTER = -1;
+
     //IMP! This need to be sync which the command_list.xml resource
     //to have the same slots as the filled for the find command
     private static final int SLOTS_COUNT = 5;
 
     private final String[] mQUERIES = new String[SLOTS_COUNT];
 
+    private long mMinSize = NO_FILTER;
+    private long mMaxSize = NO_FILTER;
+    private long mModifiedAfter = NO_FILTER;
+    private long mModifiedBefore = NO_FILTER;
+    private MimeTypeCategory mCategory;
+    private FileType mFileType = FileType.ALL;
+
     /**
      * Constructor of <code>Query</code>.
      */
@@ -120,4 +160,152 @@ public class Query implements Serializable {
         }
         return terms;
     }
+
+    /**
+     * Method that sets the range of sizes of the files. Filtering by size implies
+     * that only regular files are matched.
+     *
+     * @param minSize The minimum size in bytes (inclusive), or {@link #NO_FILTER}
+     * @param maxSize The maximum size in bytes (inclusive), or {@link #NO_FILTER}
+     * @return Query The query reference
+     */
+    public Query setSizeRange(long minSize, long maxSize) {
+        this.mMinSize = minSize;
+        this.mMaxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Method that returns the minimum size in bytes of the files.
+     *
+     * @return long The minimum size (inclusive), or {@link #NO_FILTER}
+     */
+    public long getMinSize() {
+        return this.mMinSize;
+    }
+
+    /**
+     * Method that returns the maximum size in bytes of the files.
+     *
+     * @return long The maximum size (inclusive), or {@link #NO_FILTER}
+     */
+    public long getMaxSize() {
+        return this.mMaxSize;
+    }
+
+    /**
+     * Method that sets the range of modification dates of the file system objects.
+     *
+     * @param after The time in milliseconds after which the objects were modified,
+     * or {@link #NO_FILTER}
+     * @param before The time in milliseconds before which the objects were modified,
+     * or {@link #NO_FILTER}
+     * @return Query The query reference
+     */
+    public Query setModifiedRange(long after, long before) {
+        this.mModifiedAfter = after;
+        this.mModifiedBefore = before;
+        return this;
+    }
+
+    /**
+     * Method that returns the time after which the objects were modified.
+     *
+     * @return long The time in milliseconds, or {@link #NO_FILTER}
+     */
+    public long getModifiedAfter() {
+        return this.mModifiedAfter;
+    }
+
+    /**
+     * Method that returns the time before which the objects were modified.
+     *
+     * @return long The time in milliseconds, or {@link #NO_FILTER}
+     */
+    public long getModifiedBefore() {
+        return this.mModifiedBefore;
+    }
+
+    /**
+     * Method that sets the category of the files. Filtering by category implies
+     * that only regular files are matched.
+     *
+     * @param category The category, or null to not filter by category
+     * @return Query The query reference
+     */
+    public Query setCategory(MimeTypeCategory category) {
+        this.mCategory = category;
+        return this;
+    }
+
+    /**
+     * Method that returns the category of the files.
+     *
+     * @return MimeTypeCategory The category, or null if the query doesn't filter by category
+     */
+    public MimeTypeCategory getCategory() {
+        return this.mCategory;
+    }
+
+    /**
+     * Method that sets the type of the file system objects.
+     *
+     * @param fileType The type of the file system objects
+     * @return Query The query reference
+     */
+    public Query setFileType(FileType fileType) {
+        this.mFileType = fileType;
+        return this;
+    }
+
+    /**
+     * Method that returns the type of the file system objects.
+     *
+     * @return FileType The type of the file system objects
+     */
+    public FileType getFileType() {
+        return this.mFileType;
+    }
+
+    /**
+     * Method that returns if the query only matches regular files, because of the type,
+     * the size or the category filters.
+     *
+     * @return boolean If the query only matches regular files
+     */
+    public boolean isRegularFilesOnly() {
+        return this.mFileType.compareTo(FileType.FILE) == 0
+                || this.mCategory != null
+                || this.mMinSize != NO_FILTER
+                || this.mMaxSize != NO_FILTER;
+    }
+
+    /**
+     * Method that returns if the query has any filter.
+     *
+     * @return boolean If the query has any filter
+     */
+    public boolean hasFilters() {
+        return this.mMinSize != NO_FILTER
+                || this.mMaxSize != NO_FILTER
+                || this.mModifiedAfter != NO_FILTER
+                || this.mModifiedBefore != NO_FILTER
+                || this.mCategory != null
+                || this.mFileType.compareTo(FileType.ALL) != 0;
+    }
+
+    /**
+     * Method that returns if the query has the same filters than other query.
+     *
+     * @param other The other query
+     * @return boolean If both queries have the same filters
+     */
+    public boolean hasSameFilters(Query other) {
+        return this.mMinSize == other.mMinSize
+                && this.mMaxSize == other.mMaxSize
+                && this.mModifiedAfter == other.mModifiedAfter
+                && this.mModifiedBefore == other.mModifiedBefore
+                && this.mCategory == other.mCategory
+                && this.mFileType == other.mFileType;
+    }
 }
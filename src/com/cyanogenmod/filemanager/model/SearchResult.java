@@ -27,6 +27,7 @@ public class SearchResult implements Serializable, Comparable<SearchResult> {
 
     private double mRelevance;
     private FileSystemObject mFso;
+    private ContentMatch mContentMatch;
 
     /**
      * The maximum relevance.
@@ -85,6 +86,27 @@ public class SearchResult implements Serializable, Comparable<SearchResult> {
         this.mFso = fso;
     }
 
+    /**
+     * Method that returns the first match of the terms inside the content of
+     * the file system object.
+     *
+     * @return ContentMatch The first content match, or null if the search wasn't
+     * a content search
+     */
+    public ContentMatch getContentMatch() {
+        return this.mContentMatch;
+    }
+
+    /**
+     * Method that sets the first match of the terms inside the content of
+     * the file system object.
+     *
+     * @param contentMatch The first content match
+     */
+    public void setContentMatch(ContentMatch contentMatch) {
+        this.mContentMatch = contentMatch;
+    }
+
     /**
      * {@inheritDoc}
      */
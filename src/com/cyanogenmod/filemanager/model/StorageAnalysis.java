@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A class that holds a snapshot of the storage analysis of a folder: the largest files,
+ * the largest folders and a tree of the sizes of the folders (the data of a treemap
+ * or a sunburst view).<br/>
+ * <br/>
+ * While the analysis is running, the sizes of the folders that aren't complete only
+ * account for the content walked so far.
+ */
+public class StorageAnalysis implements Serializable {
+
+    private static final long serialVersionUID = 4318402467253318916L;
+
+    /**
+     * A file or folder and its size.
+     */
+    public static class Entry implements Serializable {
+
+        private static final long serialVersionUID = -5361683346386815497L;
+
+        private final String mPath;
+        private final long mSize;
+
+        /**
+         * Constructor of <code>Entry</code>.
+         *
+         * @param path The absolute path of the file or folder
+         * @param size The size of the file, or the total size of the folder
+         */
+        public Entry(String path, long size) {
+            super();
+            this.mPath = path;
+            this.mSize = size;
+        }
+
+        /**
+         * Method that returns the absolute path of the file or folder.
+         *
+         * @return String The absolute path
+         */
+        public String getPath() {
+            return this.mPath;
+        }
+
+        /**
+         * Method that returns the size of the file, or the total size of the folder.
+         *
+         * @return long The size
+         */
+        public long getSize() {
+            return this.mSize;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Entry [path=" + this.mPath //$NON-NLS-1$
+                    + ", size=" + this.mSize + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * A folder of the size tree. The children are sorted by size (the largest first) and
+     * only the largest are kept; the rest of the size of the folder (its own files and
+     * the smaller subfolders) is returned by {@link #getOthersSize()}.
+     */
+    public static class Node implements Serializable {
+
+        private static final long serialVersionUID = 2938610874950377208L;
+
+        private final String mName;
+        private final long mSize;
+        private final boolean mComplete;
+        private final List<Node> mChildren;
+
+        /**
+         * Constructor of <code>Node</code>.
+         *
+         * @param name The name of the folder
+         * @param size The total size of the folder
+         * @param complete If the whole folder was walked
+         * @param children The largest subfolders, sorted by size
+         */
+        public Node(String name, long size, boolean complete, List<Node> children) {
+            super();
+            this.mName = name;
+            this.mSize = size;
+            this.mComplete = complete;
+            this.mChildren = children;
+        }
+
+        /**
+         * Method that returns the name of the folder.
+         *
+         * @return String The name of the folder
+         */
+        public String getName() {
+            return this.mName;
+        }
+
+        /**
+         * Method that returns the total size of the folder.
+         *
+         * @return long The total size of the folder
+         */
+        public long getSize() {
+            return this.mSize;
+        }
+
+        /**
+         * Method that returns if the whole folder was walked.
+         *
+         * @return boolean If the whole folder was walked
+         */
+        public boolean isComplete() {
+            return this.mComplete;
+        }
+
+        /**
+         * Method that returns the largest subfolders, sorted by size (the largest first).
+         *
+         * @return List<Node> The largest subfolders
+         */
+        public List<Node> getChildren() {
+            return this.mChildren;
+        }
+
+        /**
+         * Method that returns the size of the folder that is not in any of the
+         * returned children (its own files and the smaller subfolders).
+         *
+         * @return long The size that is not in the children
+         */
+        public long getOthersSize() {
+            long others = this.mSize;
+            int cc = this.mChildren.size();
+            for (int i = 0; i < cc; i++) {
+                others -= this.mChildren.get(i).mSize;
+            }
+            return Math.max(0, others);
+        }
+    }
+
+    private final String mFolder;
+    private final int mNumberOfFolders;
+    private final int mNumberOfFiles;
+    private final boolean mComplete;
+    private final List<Entry> mLargestFiles;
+    private final List<Entry> mLargestFolders;
+    private final Node mRoot;
+
+    /**
+     * Constructor of <code>StorageAnalysis</code>.
+     *
+     * @param folder The analyzed folder
+     * @param numberOfFolders The number of folders found
+     * @param numberOfFiles The number of files found
+     * @param complete If the whole folder was walked
+     * @param largestFiles The largest files, sorted by size
+     * @param largestFolders The largest folders, sorted by size
+     * @param root The size tree
+     */
+    public StorageAnalysis(
+            String folder, int numberOfFolders, int numberOfFiles, boolean complete,
+            List<Entry> largestFiles, List<Entry> largestFolders, Node root) {
+        super();
+        this.mFolder = folder;
+        this.mNumberOfFolders = numberOfFolders;
+        this.mNumberOfFiles = numberOfFiles;
+        this.mComplete = complete;
+        this.mLargestFiles = largestFiles;
+        this.mLargestFolders = largestFolders;
+        this.mRoot = root;
+    }
+
+    /**
+     * Method that returns the analyzed folder.
+     *
+     * @return String The analyzed folder
+     */
+    public String getFolder() {
+        return this.mFolder;
+    }
+
+    /**
+     * Method that returns the number of folders found.
+     *
+     * @return int The number of folders
+     */
+    public int getNumberOfFolders() {
+        return this.mNumberOfFolders;
+    }
+
+    /**
+     * Method that returns the number of files found.
+     *
+     * @return int The number of files
+     */
+    public int getNumberOfFiles() {
+        return this.mNumberOfFiles;
+    }
+
+    /**
+     * Method that returns the total size of the analyzed folder.
+     *
+     * @return long The total size
+     */
+    public long getTotalSize() {
+        return this.mRoot.getSize();
+    }
+
+    /**
+     * Method that returns if the whole folder was analyzed.
+     *
+     * @return boolean If the whole folder was analyzed
+     */
+    public boolean isComplete() {
+        return this.mComplete;
+    }
+
+    /**
+     * Method that returns the largest files, sorted by size (the largest first).
+     *
+     * @return List<Entry> The largest files
+     */
+    public List<Entry> getLargestFiles() {
+        return this.mLargestFiles;
+    }
+
+    /**
+     * Method that returns the largest folders, sorted by size (the largest first). Only
+     * the complete folders are returned; the analyzed folder is not included.
+     *
+     * @return List<Entry> The largest folders
+     */
+    public List<Entry> getLargestFolders() {
+        return this.mLargestFolders;
+    }
+
+    /**
+     * Method that returns the size tree. The root is the analyzed folder.
+     *
+     * @return Node The size tree
+     */
+    public Node getRoot() {
+        return this.mRoot;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "StorageAnalysis [folder=" + this.mFolder //$NON-NLS-1$
+                + ", numberOfFolders=" + this.mNumberOfFolders //$NON-NLS-1$
+                + ", numberOfFiles=" + this.mNumberOfFiles //$NON-NLS-1$
+                + ", totalSize=" + getTotalSize() //$NON-NLS-1$
+                + ", complete=" + this.mComplete //$NON-NLS-1$
+                + ", largestFiles=" + this.mLargestFiles //$NON-NLS-1$
+                + ", largestFolders=" + this.mLargestFolders + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import java.io.Serializable;
+
+/**
+ * A class that holds the progress of a copy or move operation (files and bytes
+ * transferred of the total), and computes its throughput and the estimated time left.
+ */
+public class TransferProgress implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = 5314897826151004872L;
+
+    private final String mSource;
+    private final String mDestination;
+    private int mTotalFiles;
+    private long mTotalBytes;
+    private int mFiles;
+    private long mBytes;
+    private long mStartTime;
+    private long mTime;
+
+    /**
+     * Constructor of <code>TransferProgress</code>.
+     *
+     * @param source The source file or folder
+     * @param destination The destination file or folder
+     */
+    public TransferProgress(String source, String destination) {
+        super();
+        this.mSource = source;
+        this.mDestination = destination;
+        this.mTotalFiles = 0;
+        this.mTotalBytes = 0;
+        this.mFiles = 0;
+        this.mBytes = 0;
+        this.mStartTime = System.currentTimeMillis();
+        this.mTime = this.mStartTime;
+    }
+
+    /**
+     * Method that returns the source file or folder.
+     *
+     * @return String The source file or folder
+     */
+    public String getSource() {
+        return this.mSource;
+    }
+
+    /**
+     * Method that returns the destination file or folder.
+     *
+     * @return String The destination file or folder
+     */
+    public String getDestination() {
+        return this.mDestination;
+    }
+
+    /**
+     * Method that adds a file to transfer.
+     *
+     * @param size The size of the file
+     */
+    public void addTotal(long size) {
+        this.mTotalFiles++;
+        this.mTotalBytes += size;
+    }
+
+    /**
+     * Method that returns the number of files to transfer.
+     *
+     * @return int The number of files to transfer
+     */
+    public int getTotalFiles() {
+        return this.mTotalFiles;
+    }
+
+    /**
+     * Method that returns the number of bytes to transfer.
+     *
+     * @return long The number of bytes to transfer
+     */
+    public long getTotalBytes() {
+        return this.mTotalBytes;
+    }
+
+    /**
+     * Method that adds a transferred file.
+     */
+    public void addFile() {
+        this.mFiles++;
+        this.mTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Method that adds transferred bytes.
+     *
+     * @param bytes The number of bytes transferred
+     */
+    public void addBytes(long bytes) {
+        this.mBytes += bytes;
+        this.mTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Method that returns the number of files transferred.
+     *
+     * @return int The number of files transferred
+     */
+    public int getFiles() {
+        return this.mFiles;
+    }
+
+    /**
+     * Method that returns the number of bytes transferred.
+     *
+     * @return long The number of bytes transferred
+     */
+    public long getBytes() {
+        return this.mBytes;
+    }
+
+    /**
+     * Method that marks the transfer as complete.
+     */
+    public void complete() {
+        this.mFiles = this.mTotalFiles;
+        this.mBytes = this.mTotalBytes;
+        this.mTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Method that adds the files and bytes of other transfer to this transfer (an
+     * aggregate of several transfers). The time of this transfer is the time of
+     * the last transfer updated.
+     *
+     * @param other The other transfer
+     */
+    public void merge(TransferProgress other) {
+        this.mTotalFiles += other.mTotalFiles;
+        this.mTotalBytes += other.mTotalBytes;
+        this.mFiles += other.mFiles;
+        this.mBytes += other.mBytes;
+        this.mTime = Math.max(this.mTime, other.mTime);
+    }
+
+    /**
+     * Method that restarts the time of the transfer (when the sizing of the transfer
+     * ends and the data starts to be transferred).
+     */
+    public void start() {
+        this.mStartTime = System.currentTimeMillis();
+        this.mTime = this.mStartTime;
+    }
+
+    /**
+     * Method that returns the time elapsed since the start of the transfer, in milliseconds.
+     *
+     * @return long The time elapsed
+     */
+    public long getElapsedTime() {
+        return this.mTime - this.mStartTime;
+    }
+
+    /**
+     * Method that returns the throughput of the transfer, in bytes per second.
+     *
+     * @return long The throughput of the transfer, or 0 if unknown
+     */
+    public long getThroughput() {
+        long elapsed = getElapsedTime();
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (this.mBytes * 1000L) / elapsed;
+    }
+
+    /**
+     * Method that returns the estimated time left of the transfer, in milliseconds.
+     *
+     * @return long The estimated time left, or -1 if unknown
+     */
+    public long getTimeLeft() {
+        long throughput = getThroughput();
+        if (throughput <= 0) {
+            return -1;
+        }
+        return (Math.max(0, this.mTotalBytes - this.mBytes) * 1000L) / throughput;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransferProgress clone() {
+        TransferProgress other = new TransferProgress(this.mSource, this.mDestination);
+        other.mTotalFiles = this.mTotalFiles;
+        other.mTotalBytes = this.mTotalBytes;
+        other.mFiles = this.mFiles;
+        other.mBytes = this.mBytes;
+        other.mStartTime = this.mStartTime;
+        other.mTime = this.mTime;
+        return other;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "TransferProgress [source=" + this.mSource //$NON-NLS-1$
+                + ", destination=" + this.mDestination //$NON-NLS-1$
+                + ", files=" + this.mFiles + "/" + this.mTotalFiles //$NON-NLS-1$ //$NON-NLS-2$
+                + ", bytes=" + this.mBytes + "/" + this.mTotalBytes //$NON-NLS-1$ //$NON-NLS-2$
+                + ", elapsed=" + getElapsedTime() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -96,8 +96,20 @@ public enum FileManagerSettings {
      * @hide
      */
     SETTINGS_USE_FLINGER("cm_filemanager_use_flinger", Boolean.FALSE),  //$NON-NLS-1$
+    /**
+     * Which background file operations run at the same time
+     * @hide
+     */
+    SETTINGS_FILE_OPERATIONS_CONCURRENCY(
+            "cm_filemanager_file_operations_concurrency", //$NON-NLS-1$
+            FileOperationConcurrency.PER_VOLUME),
 
 
+    /**
+     * When to search the terms inside the content of the files
+     * @hide
+     */
+    SETTINGS_SEARCH_CONTENT("cm_filemanager_search_content", Boolean.FALSE), //$NON-NLS-1$
     /**
      * When to highlight the terms of the search in the search results
      * @hide
@@ -154,6 +166,12 @@ public enum FileManagerSettings {
     public final static String INTENT_FILE_CHANGED =
                         "com.cyanogenmod.filemanager.INTENT_FILE_CHANGED"; //$NON-NLS-1$
 
+    /**
+     * A broadcast intent that is sent when a background file operation has ended
+     */
+    public final static String INTENT_FILE_OPERATION_ENDED =
+                        "com.cyanogenmod.filemanager.INTENT_FILE_OPERATION_ENDED"; //$NON-NLS-1$
+
     /**
      * The extra key with the preference key that was changed
      */
@@ -164,6 +182,11 @@ public enum FileManagerSettings {
      */
     public final static String EXTRA_FILE_CHANGED_KEY = "file"; //$NON-NLS-1$
 
+    /**
+     * The extra key with the result of the file operation that has ended
+     */
+    public final static String EXTRA_FILE_OPERATION_RESULT = "result"; //$NON-NLS-1$
+
     /**
      * The extra key with the file key that was changed
      */
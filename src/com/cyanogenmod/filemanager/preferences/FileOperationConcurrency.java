@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.preferences;
+
+/**
+ * An enumeration of the policies that decide which background file operations
+ * run at the same time.
+ */
+public enum FileOperationConcurrency implements ObjectStringIdentifier {
+
+    /**
+     * The operations run one after another.
+     */
+    SERIAL("0"), //$NON-NLS-1$
+    /**
+     * The operations that use different volumes run at the same time. The operations
+     * that share a volume run one after another, in the order they were queued.
+     */
+    PER_VOLUME("1"), //$NON-NLS-1$
+    /**
+     * The operations run at the same time, regardless of their volumes.
+     */
+    PARALLEL("2"); //$NON-NLS-1$
+
+    private String mId;
+
+    /**
+     * Constructor of <code>FileOperationConcurrency</code>.
+     *
+     * @param id The unique identifier of the enumeration
+     */
+    private FileOperationConcurrency(String id) {
+        this.mId = id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getId() {
+        return this.mId;
+    }
+
+    /**
+     * Method that returns an instance of {@link FileOperationConcurrency} from its
+     * unique identifier.
+     *
+     * @param id The unique identifier
+     * @return FileOperationConcurrency The concurrency policy
+     */
+    public static FileOperationConcurrency fromId(String id) {
+        FileOperationConcurrency[] values = values();
+        int cc = values.length;
+        for (int i = 0; i < cc; i++) {
+            if (values[i].mId.compareTo(id) == 0) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+}
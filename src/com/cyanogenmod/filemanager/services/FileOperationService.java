@@ -0,0 +1,1066 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.services;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.IBinder;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.activities.NavigationActivity;
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.CompressExecutable;
+import com.cyanogenmod.filemanager.commands.DeleteExecutable;
+import com.cyanogenmod.filemanager.commands.UncompressExecutable;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleBuilder;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.RelaunchableException;
+import com.cyanogenmod.filemanager.model.FileOperation;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.MountPoint;
+import com.cyanogenmod.filemanager.model.TransferProgress;
+import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
+import com.cyanogenmod.filemanager.preferences.FileOperationConcurrency;
+import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
+import com.cyanogenmod.filemanager.preferences.Preferences;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.ExceptionUtil;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FileOperationQueue;
+import com.cyanogenmod.filemanager.util.MountPointHelper;
+import com.cyanogenmod.filemanager.util.TransferJournal;
+import com.cyanogenmod.filemanager.util.TransferScheduler;
+import com.cyanogenmod.filemanager.util.TransferScheduler.OnTransferListener;
+import com.cyanogenmod.filemanager.util.TransferScheduler.Transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A foreground service that runs the copy, move, delete, compress and uncompress
+ * operations in background, so they survive the rotation and the death of the
+ * activities.<br/>
+ * <br/>
+ * The operations are stored in a {@link FileOperationQueue} when they are queued, and
+ * removed when they end, so the service runs again the operations interrupted by the
+ * death of the process when it's restarted. Every operation runs in its own thread
+ * and console, and which operations run at the same time is decided by the
+ * {@link FileManagerSettings#SETTINGS_FILE_OPERATIONS_CONCURRENCY} setting: one at a
+ * time, the operations that use different volumes (mount points), or all of them (up
+ * to {@link #MAX_OPERATIONS}).<br/>
+ * <br/>
+ * The progress of the running operations is shown in the notification of the
+ * service, and the end of every operation is broadcasted with
+ * {@link FileManagerSettings#INTENT_FILE_OPERATION_ENDED}. The service can't ask the
+ * user, so an operation that fails is reported with a notification. If the failure
+ * can be resolved with privileges, the notification lets the user queue the
+ * operation again ({@link #ACTION_RELAUNCH}), and then the commands that fail for
+ * missing privileges are relaunched once with a privileged console. Copies and moves
+ * continue from their journals.
+ */
+public class FileOperationService extends Service {
+
+    private static final String TAG = "FileOperationService"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    /**
+     * The action that queues an operation ({@link #EXTRA_OPERATION}).
+     */
+    public static final String ACTION_ENQUEUE =
+            "com.cyanogenmod.filemanager.services.ENQUEUE"; //$NON-NLS-1$
+
+    /**
+     * The action that runs the operations interrupted by the death of the process.
+     */
+    public static final String ACTION_RESUME =
+            "com.cyanogenmod.filemanager.services.RESUME"; //$NON-NLS-1$
+
+    /**
+     * The action that queues again a failed operation ({@link #EXTRA_OPERATION}),
+     * relaunching with privileges the commands that need them.
+     */
+    public static final String ACTION_RELAUNCH =
+            "com.cyanogenmod.filemanager.services.RELAUNCH"; //$NON-NLS-1$
+
+    /**
+     * The action that cancels all the operations.
+     */
+    public static final String ACTION_CANCEL =
+            "com.cyanogenmod.filemanager.services.CANCEL"; //$NON-NLS-1$
+
+    /**
+     * The operation to queue.
+     */
+    public static final String EXTRA_OPERATION = "extra_operation"; //$NON-NLS-1$
+
+    /**
+     * The maximum number of operations that run at the same time.
+     */
+    public static final int MAX_OPERATIONS = 4;
+
+    // The notification of the running operations, and the tag of the failures
+    private static final int NOTIFICATION_ID = 1;
+    private static final String NOTIFICATION_FAILED_TAG = "failed"; //$NON-NLS-1$
+
+    // The time between updates of the notification
+    private static final long NOTIFICATION_DELAY = 1000L;
+
+    // The wait for the result of an ended deletion
+    private static final int RESULT_RETRIES = 10;
+    private static final long RESULT_DELAY = 50L;
+
+    /**
+     * A listener of a command of an operation.
+     */
+    private static final class CommandListener implements AsyncResultListener {
+        final Operation mOperation;
+        volatile boolean mEnd;
+        volatile Throwable mCause;
+
+        /**
+         * Constructor of <code>CommandListener</code>.
+         *
+         * @param operation The operation that runs the command
+         */
+        CommandListener(Operation operation) {
+            super();
+            this.mOperation = operation;
+        }
+
+        /**
+         * Method that waits for the end of the command.
+         *
+         * @throws InterruptedException If the wait was interrupted
+         */
+        synchronized void await() throws InterruptedException {
+            while (!this.mEnd) {
+                wait();
+            }
+        }
+
+        @Override
+        public void onAsyncStart() {/**NON BLOCK**/}
+
+        @Override
+        public void onAsyncEnd(boolean cancelled) {/**NON BLOCK**/}
+
+        @Override
+        public synchronized void onAsyncExitCode(int exitCode) {
+            this.mEnd = true;
+            notify();
+        }
+
+        @Override
+        public void onException(Exception cause) {
+            this.mCause = cause;
+        }
+
+        @Override
+        public void onPartialResult(Object result) {
+            // The item processed
+            this.mOperation.mCurrent = (String)result;
+            this.mOperation.mDone.incrementAndGet();
+        }
+    }
+
+    /**
+     * An operation that runs in its own thread.
+     */
+    private final class Operation implements Runnable {
+        final FileOperation mOperation;
+        final boolean mResumed;
+        Set<String> mVolumes;
+        volatile boolean mCancelled;
+        volatile String mCurrent;
+        // Incremented from the threads of the commands (several with the java console)
+        final AtomicInteger mDone;
+        volatile int mTotal;
+        volatile String mOutput;
+        volatile Throwable mCause;
+        volatile TransferScheduler mScheduler;
+        volatile AsyncResultExecutable mCmd;
+        Console mConsole;
+
+        /**
+         * Constructor of <code>Operation</code>.
+         *
+         * @param operation The queued operation
+         * @param resumed If the operation was interrupted by the death of the process, or
+         * is relaunched after a failure
+         */
+        Operation(FileOperation operation, boolean resumed) {
+            super();
+            this.mOperation = operation;
+            this.mResumed = resumed;
+            this.mDone = new AtomicInteger();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            if (DEBUG) {
+                Log.v(TAG, String.format("Running %s", this.mOperation)); //$NON-NLS-1$
+            }
+            try {
+                switch (this.mOperation.getType()) {
+                    case COPY:
+                    case MOVE:
+                        transfer();
+                        break;
+                    case DELETE:
+                        delete();
+                        break;
+                    case COMPRESS:
+                        compress();
+                        break;
+                    case UNCOMPRESS:
+                        uncompress();
+                        break;
+                    default:
+                        break;
+                }
+            } catch (Throwable ex) {
+                if (!this.mCancelled) {
+                    this.mCause = ex;
+                }
+            }
+
+            // The operation has ended (successfully or not)
+            FileOperationQueue.remove(this.mOperation);
+            FileOperationService.this.mHandler.post(new Runnable() {
+                @Override
+                @SuppressWarnings("synthetic-access")
+                public void run() {
+                    onOperationEnded(Operation.this);
+                }
+            });
+        }
+
+        /**
+         * Method that cancels the operation.
+         */
+        void cancel() {
+            this.mCancelled = true;
+            TransferScheduler scheduler = this.mScheduler;
+            if (scheduler != null) {
+                scheduler.cancel();
+            }
+            AsyncResultExecutable cmd = this.mCmd;
+            try {
+                if (cmd != null && cmd.isCancellable() && !cmd.isCancelled()) {
+                    cmd.cancel();
+                }
+            } catch (Throwable ex) {/**NON BLOCK**/}
+        }
+
+        /**
+         * Method that copies or moves the files of the operation, with a
+         * {@link TransferScheduler}. The operation is recorded in a journal, from
+         * which an interrupted operation is resumed.
+         *
+         * @throws Throwable If the operation fails
+         */
+        private void transfer() throws Throwable {
+            final Context ctx = FileOperationService.this;
+            boolean move = this.mOperation.getType().compareTo(FileOperation.TYPE.MOVE) == 0;
+            TransferScheduler scheduler;
+            if (this.mOperation.getJournal() != null) {
+                TransferJournal journal = TransferJournal.load(ctx, this.mOperation.getJournal());
+                if (journal == null) {
+                    // The operation ended before the process died
+                    return;
+                }
+                scheduler = new TransferScheduler(ctx, journal);
+            } else {
+                List<File> sources = new ArrayList<File>();
+                List<File> destinations = new ArrayList<File>();
+                int cc = this.mOperation.getSources().size();
+                for (int i = 0; i < cc; i++) {
+                    File src = new File(this.mOperation.getSources().get(i));
+                    File dst = new File(this.mOperation.getDestinations().get(i));
+                    // If the source is the same as destiny then don't do the operation
+                    if (src.compareTo(dst) != 0) {
+                        sources.add(src);
+                        destinations.add(dst);
+                    }
+                }
+                try {
+                    TransferJournal journal =
+                            TransferJournal.create(ctx, move, sources, destinations);
+                    this.mOperation.setJournal(journal.getName());
+                    FileOperationQueue.updateJournal(this.mOperation);
+                    scheduler = new TransferScheduler(ctx, journal);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Failed to create the journal of the operation", ex); //$NON-NLS-1$
+                    scheduler = new TransferScheduler(ctx, move);
+                    cc = sources.size();
+                    for (int i = 0; i < cc; i++) {
+                        scheduler.add(sources.get(i), destinations.get(i));
+                    }
+                }
+            }
+            this.mScheduler = scheduler;
+            if (this.mCancelled) {
+                scheduler.cancel();
+            }
+
+            // Copy or move the files concurrently
+            scheduler.execute(new OnTransferListener() {
+                @Override
+                public void onTransferProgress() {/**NON BLOCK**/}
+
+                @Override
+                public void onTransferEnd(Transfer transfer) throws Throwable {
+                    // Check that the transfer was completed retrieving the fso modified
+                    String dst = transfer.getDestination().getAbsolutePath();
+                    FileSystemObject fso = CommandHelper.getFileInfo(ctx, dst, false, null);
+                    if (fso == null) {
+                        throw new NoSuchFileOrDirectory(dst);
+                    }
+                }
+
+                @Override
+                public boolean onTransferFailed(Transfer transfer, Throwable cause)
+                        throws Throwable {
+                    // The user can't be asked from background. Relaunch the transfer
+                    // only if the user already accepted it, and abort the operation
+                    // otherwise
+                    if (transfer.isRelaunched()) {
+                        throw cause;
+                    }
+                    prepareRelaunch(cause);
+                    return true;
+                }
+            });
+        }
+
+        /**
+         * Method that deletes the files of the operation. The items of every folder
+         * are deleted in batches, every batch with a single command, and the children
+         * before their parents.
+         *
+         * @throws Throwable If the operation fails
+         */
+        private void delete() throws Throwable {
+            this.mConsole = createConsole();
+            try {
+                // Sort the items by path to avoid delete parents prior to children
+                List<String> items = new ArrayList<String>(this.mOperation.getSources());
+                Collections.sort(items, Collections.reverseOrder());
+                Map<String, List<String>> folders = new LinkedHashMap<String, List<String>>();
+                int cc = items.size();
+                for (int i = 0; i < cc; i++) {
+                    String item = items.get(i);
+                    if (this.mResumed && !exists(item)) {
+                        // Deleted before the process died (or the operation failed)
+                        continue;
+                    }
+                    String parent = new File(item).getParent();
+                    List<String> folder = folders.get(parent);
+                    if (folder == null) {
+                        folder = new ArrayList<String>();
+                        folders.put(parent, folder);
+                    }
+                    folder.add(item);
+                    this.mTotal++;
+                }
+
+                Iterator<List<String>> it = folders.values().iterator();
+                while (it.hasNext() && !this.mCancelled) {
+                    List<String[]> batches = CommandHelper.splitBatches(it.next());
+                    int cc2 = batches.size();
+                    for (int i = 0; i < cc2 && !this.mCancelled; i++) {
+                        deleteBatch(batches.get(i), false);
+                    }
+                }
+            } finally {
+                releaseConsole(this.mConsole);
+                this.mConsole = null;
+            }
+        }
+
+        /**
+         * Method that deletes a batch of files and folders.
+         *
+         * @param batch The files and folders of the same folder
+         * @param relaunched If the batch is relaunched
+         * @throws Throwable If the batch can't be deleted
+         */
+        private void deleteBatch(String[] batch, boolean relaunched) throws Throwable {
+            CommandListener listener = new CommandListener(this);
+            DeleteExecutable cmd;
+            try {
+                cmd = CommandHelper.delete(
+                        FileOperationService.this, batch, listener, this.mConsole);
+            } catch (RelaunchableException e) {
+                relaunchBatch(batch, relaunched, e);
+                return;
+            }
+            this.mCmd = cmd;
+            if (this.mCancelled) {
+                cancel();
+            }
+            listener.await();
+
+            // The exception of the exit code can arrive after the exit code
+            for (int i = 0; i < RESULT_RETRIES && listener.mCause == null &&
+                    !Boolean.TRUE.equals(cmd.getResult()); i++) {
+                Thread.sleep(RESULT_DELAY);
+            }
+            if (this.mCancelled) {
+                return;
+            }
+            if (listener.mCause instanceof RelaunchableException) {
+                relaunchBatch(batch, relaunched, listener.mCause);
+                return;
+            }
+            if (listener.mCause != null) {
+                throw listener.mCause;
+            }
+            if (!Boolean.TRUE.equals(cmd.getResult())) {
+                throw new ExecutionException("delete failed"); //$NON-NLS-1$
+            }
+
+            // Check that the operation was completed with the items that still exist
+            List<String> failed = cmd.getFailed();
+            if (!failed.isEmpty()) {
+                throw new ExecutionException(
+                        String.format(
+                                "Failed to delete file: %s", failed.get(0))); //$NON-NLS-1$
+            }
+        }
+
+        /**
+         * Method that relaunches a batch of files and folders that failed to be
+         * deleted, with a new console.
+         *
+         * @param batch The files and folders of the same folder
+         * @param relaunched If the batch was already relaunched
+         * @param cause The cause of the failure
+         * @throws Throwable If the batch can't be relaunched or deleted
+         */
+        private void relaunchBatch(String[] batch, boolean relaunched, Throwable cause)
+                throws Throwable {
+            if (relaunched) {
+                throw cause;
+            }
+            prepareRelaunch(cause);
+
+            // The default console has changed (to a privileged console)
+            releaseConsole(this.mConsole);
+            this.mConsole = createConsole();
+            deleteBatch(batch, true);
+        }
+
+        /**
+         * Method that prepares the relaunch of a command that failed for missing
+         * privileges. The user can't be asked from background, so the command is
+         * relaunched only if the user accepted it, queuing again the operation from
+         * the notification of its failure.
+         *
+         * @param cause The cause of the failure
+         * @throws Throwable If the command can't be relaunched
+         */
+        void prepareRelaunch(Throwable cause) throws Throwable {
+            if (!this.mOperation.isRelaunch() || this.mCancelled ||
+                    !ExceptionUtil.canRelaunch(FileOperationService.this, cause)) {
+                throw cause;
+            }
+            ExceptionUtil.relaunch(FileOperationService.this, (RelaunchableException)cause);
+        }
+
+        /**
+         * Method that compresses the files of the operation.
+         *
+         * @throws Throwable If the operation fails
+         */
+        private void compress() throws Throwable {
+            Console console = createConsole();
+            try {
+                CommandListener listener = new CommandListener(this);
+                List<String> sources = this.mOperation.getSources();
+                CompressExecutable cmd;
+                if (this.mOperation.getDestinations().isEmpty()) {
+                    // Compression of a single file
+                    cmd = CommandHelper.compress(
+                            FileOperationService.this, this.mOperation.getMode(),
+                            sources.get(0), listener, console);
+                } else {
+                    // Archive or Archive-Compression
+                    cmd = CommandHelper.compress(
+                            FileOperationService.this, this.mOperation.getMode(),
+                            this.mOperation.getDestinations().get(0),
+                            sources.toArray(new String[sources.size()]),
+                            listener, console);
+                }
+                this.mCmd = cmd;
+                this.mOutput = cmd.getOutCompressedFile();
+                if (this.mCancelled) {
+                    cancel();
+                }
+                listener.await();
+                checkOutput(listener,
+                        String.format(
+                                "Failed to compress file(s) to: %s", //$NON-NLS-1$
+                                this.mOutput));
+            } finally {
+                releaseConsole(console);
+            }
+        }
+
+        /**
+         * Method that uncompresses the file of the operation.
+         *
+         * @throws Throwable If the operation fails
+         */
+        private void uncompress() throws Throwable {
+            Console console = createConsole();
+            try {
+                CommandListener listener = new CommandListener(this);
+                String src = this.mOperation.getSources().get(0);
+                UncompressExecutable cmd =
+                        CommandHelper.uncompress(
+                                FileOperationService.this, src, null, listener, console);
+                this.mCmd = cmd;
+                this.mOutput = cmd.getOutUncompressedFile();
+                if (this.mCancelled) {
+                    cancel();
+                }
+                listener.await();
+                checkOutput(listener,
+                        String.format("Failed to extract file: %s", src)); //$NON-NLS-1$
+            } finally {
+                releaseConsole(console);
+            }
+        }
+
+        /**
+         * Method that checks that a compress or uncompress command was completed,
+         * retrieving its output file or folder.
+         *
+         * @param listener The listener of the ended command
+         * @param msg The message of the failure
+         * @throws Throwable If the command failed
+         */
+        private void checkOutput(CommandListener listener, String msg) throws Throwable {
+            if (this.mCancelled) {
+                return;
+            }
+            if (listener.mCause != null) {
+                throw listener.mCause;
+            }
+            boolean failed = false;
+            try {
+                FileSystemObject fso = CommandHelper.getFileInfo(
+                        FileOperationService.this, this.mOutput, false, null);
+                failed = fso == null;
+            } catch (Throwable e) {
+                failed = true;
+            }
+            if (failed) {
+                throw new ExecutionException(msg);
+            }
+        }
+
+        /**
+         * Method that returns if a file or folder exists.
+         *
+         * @param path The file or folder
+         * @return boolean If the file or folder exists
+         */
+        private boolean exists(String path) {
+            try {
+                return CommandHelper.getFileInfo(
+                        FileOperationService.this, path, false, this.mConsole) != null;
+            } catch (NoSuchFileOrDirectory e) {
+                return false;
+            } catch (Throwable e) {
+                // Let the deletion decide
+                return true;
+            }
+        }
+
+        /**
+         * Method that returns the title of the operation.
+         *
+         * @return int The resource identifier of the title
+         */
+        int getTitle() {
+            switch (this.mOperation.getType()) {
+                case COPY:
+                    return R.string.waiting_dialog_copying_title;
+                case MOVE:
+                    return R.string.waiting_dialog_moving_title;
+                case DELETE:
+                    return R.string.waiting_dialog_deleting_title;
+                case COMPRESS:
+                    return R.string.waiting_dialog_compressing_title;
+                case UNCOMPRESS:
+                    return R.string.waiting_dialog_extracting_title;
+                default:
+                    return R.string.waiting_dialog_msg;
+            }
+        }
+
+        /**
+         * Method that returns the file or folder being processed.
+         *
+         * @return String The file or folder being processed, or null if unknown
+         */
+        String getCurrent() {
+            TransferScheduler scheduler = this.mScheduler;
+            if (scheduler != null) {
+                Transfer transfer = scheduler.getCurrent();
+                return transfer != null ? transfer.getSource().getAbsolutePath() : null;
+            }
+            return this.mCurrent != null ? this.mCurrent : this.mOutput;
+        }
+
+        /**
+         * Method that returns the progress of the operation.
+         *
+         * @return int The progress (0-100), or -1 if unknown
+         */
+        int getProgress() {
+            TransferScheduler scheduler = this.mScheduler;
+            if (scheduler != null) {
+                TransferProgress progress = scheduler.getProgress();
+                if (progress == null || progress.getTotalBytes() <= 0) {
+                    return -1;
+                }
+                return (int)((progress.getBytes() * 100) / progress.getTotalBytes());
+            }
+            if (this.mTotal <= 0) {
+                return -1;
+            }
+            return Math.min(100, (this.mDone.get() * 100) / this.mTotal);
+        }
+    }
+
+    private final List<Operation> mPending = new ArrayList<Operation>();
+    private final List<Operation> mRunning = new ArrayList<Operation>();
+    private boolean mForeground;
+    private int mLastStartId;
+
+    /**
+     * @hide
+     */
+    Handler mHandler;
+
+    private final Runnable mNotificationUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateNotification();
+        }
+    };
+
+    /**
+     * Method that queues an operation to run in background.
+     *
+     * @param ctx The current context
+     * @param operation The operation
+     */
+    public static void enqueue(Context ctx, FileOperation operation) {
+        Intent intent = new Intent(ctx, FileOperationService.class);
+        intent.setAction(ACTION_ENQUEUE);
+        intent.putExtra(EXTRA_OPERATION, operation);
+        ctx.startService(intent);
+    }
+
+    /**
+     * Method that runs the operations interrupted by the death of the process, if
+     * any.
+     *
+     * @param ctx The current context
+     */
+    public static void resume(Context ctx) {
+        Intent intent = new Intent(ctx, FileOperationService.class);
+        intent.setAction(ACTION_RESUME);
+        ctx.startService(intent);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        this.mHandler = new Handler();
+
+        // The operations interrupted by the death of the process
+        List<FileOperation> operations = FileOperationQueue.load();
+        int cc = operations.size();
+        for (int i = 0; i < cc; i++) {
+            this.mPending.add(new Operation(operations.get(i), true));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        this.mLastStartId = startId;
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_ENQUEUE.equals(action) || ACTION_RELAUNCH.equals(action)) {
+            FileOperation operation =
+                    (FileOperation)intent.getSerializableExtra(EXTRA_OPERATION);
+            if (operation != null && ACTION_RELAUNCH.equals(action)) {
+                // The user accepted to relaunch the failed operation with privileges
+                NotificationManager nm =
+                        (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
+                nm.cancel(NOTIFICATION_FAILED_TAG, (int)operation.getId());
+                operation.setRelaunch(true);
+            }
+            if (operation != null) {
+                // Store the operation, so it's run again if the process dies
+                if (!FileOperationQueue.add(operation)) {
+                    Log.w(TAG, "The operation will not survive the process"); //$NON-NLS-1$
+                }
+                this.mPending.add(
+                        new Operation(operation, ACTION_RELAUNCH.equals(action)));
+            }
+        } else if (ACTION_CANCEL.equals(action)) {
+            cancelAll();
+        }
+        schedule();
+        checkStop();
+        return START_STICKY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        this.mHandler.removeCallbacks(this.mNotificationUpdater);
+        super.onDestroy();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * Method that launches the pending operations allowed by the concurrency policy.
+     * The pending operations are launched in the order they were queued.
+     */
+    private void schedule() {
+        FileOperationConcurrency concurrency = getConcurrency();
+
+        // The volumes used by the running operations, and by the operations that
+        // were queued before and must run first
+        Set<String> busy = new HashSet<String>();
+        int cc = this.mRunning.size();
+        for (int i = 0; i < cc; i++) {
+            busy.addAll(this.mRunning.get(i).mVolumes);
+        }
+
+        Iterator<Operation> it = this.mPending.iterator();
+        while (it.hasNext() && this.mRunning.size() < MAX_OPERATIONS) {
+            if (concurrency.compareTo(FileOperationConcurrency.SERIAL) == 0 &&
+                    !this.mRunning.isEmpty()) {
+                break;
+            }
+            Operation operation = it.next();
+            if (operation.mVolumes == null) {
+                operation.mVolumes = getVolumes(operation.mOperation);
+            }
+            if (concurrency.compareTo(FileOperationConcurrency.PER_VOLUME) == 0 &&
+                    !Collections.disjoint(busy, operation.mVolumes)) {
+                busy.addAll(operation.mVolumes);
+                continue;
+            }
+            it.remove();
+            busy.addAll(operation.mVolumes);
+            this.mRunning.add(operation);
+            new Thread(operation, TAG + "-" + operation.mOperation.getId()).start(); //$NON-NLS-1$
+        }
+        if (!this.mRunning.isEmpty()) {
+            updateNotification();
+        }
+    }
+
+    /**
+     * Method invoked in the main thread when an operation ends.
+     *
+     * @param operation The operation
+     * @hide
+     */
+    void onOperationEnded(Operation operation) {
+        if (DEBUG) {
+            Log.v(TAG, String.format("Ended %s", operation.mOperation)); //$NON-NLS-1$
+        }
+        this.mRunning.remove(operation);
+
+        // Notify the result
+        boolean success = operation.mCause == null && !operation.mCancelled;
+        if (operation.mCause != null) {
+            ExceptionUtil.translateException(this, operation.mCause, true, false);
+            notifyFailure(operation);
+        } else if (success) {
+            FileOperation.TYPE type = operation.mOperation.getType();
+            String msg = getString(R.string.msgs_success);
+            if (type.compareTo(FileOperation.TYPE.COMPRESS) == 0) {
+                msg = getString(R.string.msgs_compressing_success, operation.mOutput);
+            } else if (type.compareTo(FileOperation.TYPE.UNCOMPRESS) == 0) {
+                msg = getString(R.string.msgs_extracting_success, operation.mOutput);
+            }
+            DialogHelper.showToast(this, msg, Toast.LENGTH_SHORT);
+        }
+        Intent intent = new Intent(FileManagerSettings.INTENT_FILE_OPERATION_ENDED);
+        intent.putExtra(FileManagerSettings.EXTRA_FILE_OPERATION_RESULT, success);
+        sendBroadcast(intent);
+
+        schedule();
+        checkStop();
+    }
+
+    /**
+     * Method that cancels the running and the pending operations.
+     */
+    private void cancelAll() {
+        int cc = this.mPending.size();
+        for (int i = 0; i < cc; i++) {
+            FileOperation operation = this.mPending.get(i).mOperation;
+            FileOperationQueue.remove(operation);
+
+            // Don't resume the cancelled operation later
+            if (operation.getJournal() != null) {
+                TransferJournal journal = TransferJournal.load(this, operation.getJournal());
+                if (journal != null) {
+                    journal.delete();
+                }
+            }
+        }
+        this.mPending.clear();
+        cc = this.mRunning.size();
+        for (int i = 0; i < cc; i++) {
+            this.mRunning.get(i).cancel();
+        }
+    }
+
+    /**
+     * Method that stops the service if there are no operations.
+     */
+    private void checkStop() {
+        if (!this.mRunning.isEmpty() || !this.mPending.isEmpty()) {
+            return;
+        }
+        this.mHandler.removeCallbacks(this.mNotificationUpdater);
+        if (this.mForeground) {
+            stopForeground(true);
+            this.mForeground = false;
+        }
+        stopSelf(this.mLastStartId);
+    }
+
+    /**
+     * Method that shows the progress of the running operations in the notification
+     * of the service.
+     *
+     * @hide
+     */
+    void updateNotification() {
+        this.mHandler.removeCallbacks(this.mNotificationUpdater);
+        if (this.mRunning.isEmpty()) {
+            return;
+        }
+
+        Operation first = this.mRunning.get(0);
+        String title = this.mRunning.size() == 1
+                ? getString(first.getTitle())
+                : getString(R.string.file_operations_notification_title,
+                        Integer.valueOf(this.mRunning.size()));
+        String current = first.getCurrent();
+        int progress = this.mRunning.size() == 1 ? first.getProgress() : -1;
+
+        Intent cancel = new Intent(this, FileOperationService.class);
+        cancel.setAction(ACTION_CANCEL);
+        Notification.Builder builder = new Notification.Builder(this)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentTitle(title)
+                .setContentText(
+                        current != null ? current : getString(R.string.waiting_dialog_msg))
+                .setProgress(100, Math.max(0, progress), progress < 0)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(getNavigationIntent())
+                .addAction(
+                        android.R.drawable.ic_menu_close_clear_cancel,
+                        getString(android.R.string.cancel),
+                        PendingIntent.getService(this, 0, cancel, 0));
+        if (!this.mPending.isEmpty()) {
+            builder.setContentInfo(
+                    getString(R.string.file_operations_notification_queued,
+                            Integer.valueOf(this.mPending.size())));
+        }
+        Notification notification = builder.build();
+        if (!this.mForeground) {
+            startForeground(NOTIFICATION_ID, notification);
+            this.mForeground = true;
+        } else {
+            NotificationManager nm =
+                    (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
+            nm.notify(NOTIFICATION_ID, notification);
+        }
+        this.mHandler.postDelayed(this.mNotificationUpdater, NOTIFICATION_DELAY);
+    }
+
+    /**
+     * Method that notifies the failure of an operation.
+     *
+     * @param operation The failed operation
+     */
+    private void notifyFailure(Operation operation) {
+        int id = (int)operation.mOperation.getId();
+        Notification.Builder builder = new Notification.Builder(this)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentTitle(getString(R.string.file_operations_notification_failed))
+                .setContentText(
+                        getString(ExceptionUtil.getExceptionMessage(operation.mCause)))
+                .setAutoCancel(true)
+                .setContentIntent(getNavigationIntent());
+
+        // A copy, move or delete that failed for missing privileges can be queued again,
+        // to relaunch its failed commands with privileges
+        FileOperation.TYPE type = operation.mOperation.getType();
+        if ((operation.mOperation.isTransfer() ||
+                type.compareTo(FileOperation.TYPE.DELETE) == 0) &&
+                ExceptionUtil.canRelaunch(this, operation.mCause)) {
+            Intent relaunch = new Intent(this, FileOperationService.class);
+            relaunch.setAction(ACTION_RELAUNCH);
+            relaunch.putExtra(EXTRA_OPERATION, operation.mOperation);
+            builder.addAction(
+                    android.R.drawable.ic_menu_rotate,
+                    getString(R.string.file_operations_notification_relaunch),
+                    PendingIntent.getService(
+                            this, id, relaunch, PendingIntent.FLAG_UPDATE_CURRENT));
+        }
+        NotificationManager nm =
+                (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
+        nm.notify(NOTIFICATION_FAILED_TAG, id, builder.build());
+    }
+
+    /**
+     * Method that returns the intent that opens the application from a notification.
+     *
+     * @return PendingIntent The intent
+     */
+    private PendingIntent getNavigationIntent() {
+        Intent intent = new Intent(this, NavigationActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getActivity(this, 0, intent, 0);
+    }
+
+    /**
+     * Method that returns the volumes (mount points) used by an operation.
+     *
+     * @param operation The operation
+     * @return Set<String> The mount points of the parent folders of the files
+     */
+    private static Set<String> getVolumes(FileOperation operation) {
+        Set<String> volumes = new HashSet<String>();
+        List<String> paths = operation.getPaths();
+        int cc = paths.size();
+        for (int i = 0; i < cc; i++) {
+            String parent = new File(paths.get(i)).getParent();
+            MountPoint mp = parent == null
+                    ? null
+                    : MountPointHelper.getMountPointFromDirectory(parent);
+            volumes.add(mp == null ? "" : mp.getMountPoint()); //$NON-NLS-1$
+        }
+        return volumes;
+    }
+
+    /**
+     * Method that returns the concurrency policy of the operations.
+     *
+     * @return FileOperationConcurrency The concurrency policy
+     */
+    private static FileOperationConcurrency getConcurrency() {
+        String defaultValue = ((ObjectStringIdentifier)FileManagerSettings.
+                SETTINGS_FILE_OPERATIONS_CONCURRENCY.getDefaultValue()).getId();
+        String value = Preferences.getSharedPreferences().getString(
+                FileManagerSettings.SETTINGS_FILE_OPERATIONS_CONCURRENCY.getId(),
+                defaultValue);
+        FileOperationConcurrency concurrency = FileOperationConcurrency.fromId(value);
+        return concurrency != null ? concurrency : FileOperationConcurrency.PER_VOLUME;
+    }
+
+    /**
+     * Method that creates the console of an operation. If the console can't be
+     * created, the operation uses the default console.
+     *
+     * @return Console The console, or null to use the default console
+     * @hide
+     */
+    Console createConsole() {
+        try {
+            return ConsoleBuilder.isPrivileged()
+                    ? ConsoleBuilder.createPrivilegedConsole(this, FileHelper.ROOT_DIRECTORY)
+                    : ConsoleBuilder.createNonPrivilegedConsole(this, FileHelper.ROOT_DIRECTORY);
+        } catch (Throwable ex) {
+            Log.w(TAG, "Failed to create the console of the operation", ex); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Method that destroys the console of an operation.
+     *
+     * @param console The console (may be null)
+     * @hide
+     */
+    static void releaseConsole(Console console) {
+        if (console == null) {
+            return;
+        }
+        try {
+            console.dealloc();
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+    }
+}
@@ -28,6 +28,7 @@ import com.cyanogenmod.filemanager.model.DiskUsage;
 import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
+import com.cyanogenmod.filemanager.util.DiskUsageCache;
 import com.cyanogenmod.filemanager.util.MountPointHelper;
 
 /**
@@ -141,21 +142,25 @@ public class FilesystemAsyncTask extends AsyncTask<String, Integer, Boolean> {
                 }
             });
 
-            //Load information about disk usage
+            //Load information about disk usage (in background, only the view is
+            //updated in the UI thread)
             if (isCancelled()) {
                 return Boolean.TRUE;
             }
+            DiskUsage diskUsage = null;
+            try {
+                diskUsage = DiskUsageCache.getDiskUsage(mp);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to retrieve disk usage information", e); //$NON-NLS-1$
+                diskUsage = new DiskUsage(mp.getMountPoint(), 0, 0, 0);
+            }
+            if (isCancelled()) {
+                return Boolean.TRUE;
+            }
+            final DiskUsage du = diskUsage;
             this.mDiskUsageInfo.post(new Runnable() {
                 @Override
                 public void run() {
-                    DiskUsage du = null;
-                    try {
-                         du = MountPointHelper.getMountPointDiskUsage(mp);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to retrieve disk usage information", e); //$NON-NLS-1$
-                        du = new DiskUsage(
-                                mp.getMountPoint(), 0, 0, 0);
-                    }
                     int usage = 0;
                     if (du != null && du.getTotal() != 0) {
                         usage = (int)(du.getUsed() * 100 / du.getTotal());
@@ -24,24 +24,20 @@ import android.widget.ProgressBar;
 import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.adapters.SearchResultAdapter;
+import com.cyanogenmod.filemanager.model.CompiledQuery;
+import com.cyanogenmod.filemanager.model.ContentMatch;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
 import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
-import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
-import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
-import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
-import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.preferences.SearchSortResultMode;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.FileHelper;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.SearchHelper;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -63,6 +59,7 @@ public class SearchResultDrawingAsyncTask extends AsyncTask<Object, Integer, Boo
      * @hide
      */
     final Query mQueries;
+    private final Map<String, List<ContentMatch>> mContentMatches;
     private boolean mRunning;
 
     /**
@@ -72,15 +69,19 @@ public class SearchResultDrawingAsyncTask extends AsyncTask<Object, Integer, Boo
      * @param searchWaiting A {@link ProgressBar} reference
      * @param files The files to draw
      * @param queries The terms of the search
+     * @param contentMatches The matches inside the content of the files, by full path.
+     * Can be null
      */
     public SearchResultDrawingAsyncTask(
             ListView searchListView, ProgressBar searchWaiting,
-            List<FileSystemObject> files, Query queries) {
+            List<FileSystemObject> files, Query queries,
+            Map<String, List<ContentMatch>> contentMatches) {
         super();
         this.mSearchListView = searchListView;
         this.mSearchWaiting = searchWaiting;
         this.mFiles = files;
         this.mQueries = queries;
+        this.mContentMatches = contentMatches;
         this.mRunning = false;
     }
 
@@ -104,12 +105,7 @@ public class SearchResultDrawingAsyncTask extends AsyncTask<Object, Integer, Boo
             showHideWaiting(true);
 
             // Get sort mode
-            String defaultValue = ((ObjectStringIdentifier)FileManagerSettings.
-                    SETTINGS_SORT_SEARCH_RESULTS_MODE.getDefaultValue()).getId();
-            String value = Preferences.getSharedPreferences().getString(
-                                FileManagerSettings.SETTINGS_SORT_SEARCH_RESULTS_MODE.getId(),
-                                defaultValue);
-            SearchSortResultMode mode = SearchSortResultMode.fromId(value);
+            SearchSortResultMode mode = SearchHelper.getSortResultMode();
 
             // Are we in ChRooted environment?
             boolean chRooted =
@@ -117,26 +113,18 @@ public class SearchResultDrawingAsyncTask extends AsyncTask<Object, Integer, Boo
 
             // Create display restrictions
             Map<DisplayRestrictions, Object> restrictions =
-                    new HashMap<DisplayRestrictions, Object>();
-            restrictions.put(
-                    DisplayRestrictions.MIME_TYPE_RESTRICTION, MimeTypeHelper.ALL_MIME_TYPES);
+                    SearchHelper.createDisplayRestrictions(this.mQueries);
 
             //Process all the data
             final List<SearchResult> result =
                     SearchHelper.convertToResults(
                             FileHelper.applyUserPreferences(
                                     this.mFiles, restrictions, true, chRooted),
-                            this.mQueries);
-            if (mode.compareTo(SearchSortResultMode.NAME) == 0) {
-                Collections.sort(result, new Comparator<SearchResult>() {
-                    @Override
-                    public int compare(SearchResult lhs, SearchResult rhs) {
-                        return FileHelper.doCompare(
-                                lhs.getFso(), rhs.getFso(), NavigationSortMode.NAME_ASC);
-                    }
-                });
-            } else if (mode.compareTo(SearchSortResultMode.RELEVANCE) == 0) {
-                Collections.sort(result);
+                            new CompiledQuery(this.mQueries));
+            SearchHelper.applyContentMatches(result, this.mContentMatches);
+            Comparator<SearchResult> comparator = SearchHelper.getResultComparator(mode);
+            if (comparator != null) {
+                Collections.sort(result, comparator);
             }
 
             this.mSearchListView.post(new Runnable() {
@@ -302,8 +302,7 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                     CopyMoveActionPolicy.copyFileSystemObjects(
                             this.mContext,
                             createLinkedResource(selection, this.mFso),
-                            this.mOnSelectionListener,
-                            this.mOnRequestRefreshListener);
+                            this.mOnSelectionListener);
                 }
                 break;
             // Move selection
@@ -314,8 +313,7 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                     CopyMoveActionPolicy.moveFileSystemObjects(
                             this.mContext,
                             createLinkedResource(selection, this.mFso),
-                            this.mOnSelectionListener,
-                            this.mOnRequestRefreshListener);
+                            this.mOnSelectionListener);
                 }
                 break;
             // Delete selection
@@ -336,8 +334,7 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
             case R.id.mnu_actions_extract:
                 CompressActionPolicy.uncompress(
                             this.mContext,
-                            this.mFso,
-                            this.mOnRequestRefreshListener);
+                            this.mFso);
                 break;
             //- Compress
             case R.id.mnu_actions_compress:
@@ -345,16 +342,14 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                     CompressActionPolicy.compress(
                             this.mContext,
                             this.mFso,
-                            this.mOnSelectionListener,
-                            this.mOnRequestRefreshListener);
+                            this.mOnSelectionListener);
                 }
                 break;
             case R.id.mnu_actions_compress_selection:
                 if (this.mOnSelectionListener != null) {
                     CompressActionPolicy.compress(
                             this.mContext,
-                            this.mOnSelectionListener,
-                            this.mOnRequestRefreshListener);
+                            this.mOnSelectionListener);
                 }
                 break;
 
@@ -365,8 +360,7 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                     CopyMoveActionPolicy.createCopyFileSystemObject(
                                 this.mContext,
                                 this.mFso,
-                                this.mOnSelectionListener,
-                                this.mOnRequestRefreshListener);
+                                this.mOnSelectionListener);
                 }
                 break;
 
@@ -395,6 +389,12 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                         this.mContext, this.mFso, this.mOnRequestRefreshListener);
                 break;
 
+            //- Find duplicates
+            case R.id.mnu_actions_find_duplicates:
+            case R.id.mnu_actions_find_duplicates_current_folder:
+                NavigationActionPolicy.findDuplicates(this.mContext, this.mFso);
+                break;
+
             default:
                 break;
         }
@@ -484,8 +484,7 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                                         ActionsDialog.this.mContext,
                                         inputNameDialog.mFso,
                                         name,
-                                        ActionsDialog.this.mOnSelectionListener,
-                                        ActionsDialog.this.mOnRequestRefreshListener);
+                                        ActionsDialog.this.mOnSelectionListener);
                             }
                             break;
 
@@ -597,6 +596,11 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
                 menu.removeItem(R.id.mnu_actions_create_link);
             }
 
+            //- Find duplicates -> Only directories
+            if (!FileHelper.isDirectory(this.mFso)) {
+                menu.removeItem(R.id.mnu_actions_find_duplicates);
+            }
+
             //Execute only if mime/type category is EXEC
             MimeTypeCategory category = MimeTypeHelper.getCategory(this.mContext, this.mFso);
             if (category.compareTo(MimeTypeCategory.EXEC) != 0) {
@@ -661,6 +665,7 @@ public class ActionsDialog implements OnItemClickListener, OnItemLongClickListen
             menu.removeItem(R.id.mnu_actions_extract);
             menu.removeItem(R.id.mnu_actions_compress);
             menu.removeItem(R.id.mnu_actions_create_link);
+            menu.removeItem(R.id.mnu_actions_find_duplicates);
         }
 
         // Not allowed if not in search
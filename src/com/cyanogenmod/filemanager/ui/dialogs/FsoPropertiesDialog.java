@@ -39,9 +39,13 @@ import android.widget.TextView;
 import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.commands.FolderUsageExecutable;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
+import com.cyanogenmod.filemanager.console.Console;
 import com.cyanogenmod.filemanager.console.ConsoleBuilder;
 import com.cyanogenmod.filemanager.model.AID;
+import com.cyanogenmod.filemanager.model.Checksum;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.FolderUsage;
 import com.cyanogenmod.filemanager.model.Group;
@@ -49,6 +53,8 @@ import com.cyanogenmod.filemanager.model.GroupPermission;
 import com.cyanogenmod.filemanager.model.OthersPermission;
 import com.cyanogenmod.filemanager.model.Permission;
 import com.cyanogenmod.filemanager.model.Permissions;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
 import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.model.UserPermission;
@@ -62,11 +68,14 @@ import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.HashCache;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 import com.cyanogenmod.filemanager.util.ResourcesHelper;
 
+import java.io.File;
 import java.text.DateFormat;
+import java.util.List;
 
 /**
  * A class that wraps a dialog for showing information about a {@link FileSystemObject}
@@ -82,6 +91,9 @@ public class FsoPropertiesDialog
     private static final String OTHERS_TYPE = "others"; //$NON-NLS-1$
 
     private static final String AID_FORMAT = "%05d - %s"; //$NON-NLS-1$
+
+    // The number of largest files and folders shown
+    private static final int LARGEST_ITEMS = 5;
     private static final String AID_SEPARATOR = " - "; //$NON-NLS-1$
 
     /**
@@ -136,6 +148,143 @@ public class FsoPropertiesDialog
      */
     boolean mDrawingFolderUsage;
 
+    /**
+     * @hide
+     */
+    TextView mTvChecksums;
+    /**
+     * @hide
+     */
+    FileSystemObject mChecksumFso;
+    /**
+     * @hide
+     */
+    ChecksumExecutable mChecksumExecutable;
+    /**
+     * @hide
+     */
+    Console mChecksumConsole;
+    /**
+     * @hide
+     */
+    Checksum mChecksum;
+
+    /**
+     * @hide
+     */
+    TextView mTvLargest;
+    /**
+     * @hide
+     */
+    StorageAnalysisExecutable mStorageAnalysisExecutable;
+    /**
+     * @hide
+     */
+    StorageAnalysis mStorageAnalysis;
+
+    private final AsyncResultListener mStorageAnalysisListener = new AsyncResultListener() {
+        @Override
+        public void onAsyncStart() {/**NON BLOCK**/}
+
+        @Override
+        public void onAsyncEnd(final boolean cancelled) {
+            final StorageAnalysis analysis = FsoPropertiesDialog.this.mStorageAnalysis;
+            ((Activity)FsoPropertiesDialog.this.mContext).runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    FsoPropertiesDialog.this.mStorageAnalysisExecutable = null;
+                    if (!cancelled && analysis != null) {
+                        printStorageAnalysis(analysis, false);
+                    } else {
+                        // Tap again to retry
+                        FsoPropertiesDialog.this.mTvLargest.setText(
+                                cancelled ? R.string.cancelled_message : R.string.error_message);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onPartialResult(Object partialResults) {
+            final StorageAnalysis analysis = (StorageAnalysis)partialResults;
+            FsoPropertiesDialog.this.mStorageAnalysis = analysis;
+            ((Activity)FsoPropertiesDialog.this.mContext).runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    // The largest items fill in while the folder is analyzed
+                    if (FsoPropertiesDialog.this.mStorageAnalysisExecutable != null) {
+                        printStorageAnalysis(analysis, !analysis.isComplete());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+
+        @Override
+        public void onException(Exception cause) {
+            ExceptionUtil.translateException(
+                    FsoPropertiesDialog.this.mContext, cause, true, false);
+        }
+    };
+
+    private final AsyncResultListener mChecksumListener = new AsyncResultListener() {
+        @Override
+        public void onAsyncStart() {/**NON BLOCK**/}
+
+        @Override
+        public void onAsyncEnd(final boolean cancelled) {
+            final Checksum checksum = FsoPropertiesDialog.this.mChecksum;
+            final boolean complete = !cancelled && checksum != null && checksum.isComplete();
+            if (complete) {
+                saveChecksums(checksum);
+            }
+            releaseChecksumConsole();
+
+            ((Activity)FsoPropertiesDialog.this.mContext).runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    FsoPropertiesDialog.this.mChecksumExecutable = null;
+                    if (complete) {
+                        printChecksums(
+                                checksum.getMd5(), checksum.getSha1(), checksum.getSha256());
+                    } else {
+                        // Tap again to retry
+                        FsoPropertiesDialog.this.mTvChecksums.setText(
+                                cancelled ? R.string.cancelled_message : R.string.error_message);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onPartialResult(Object partialResults) {
+            final Checksum checksum = (Checksum)partialResults;
+            FsoPropertiesDialog.this.mChecksum = checksum;
+            if (checksum.isComplete()) {
+                return;
+            }
+            ((Activity)FsoPropertiesDialog.this.mContext).runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (FsoPropertiesDialog.this.mChecksumExecutable != null) {
+                        printChecksumsProgress(checksum.getProgress());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+
+        @Override
+        public void onException(Exception cause) {
+            ExceptionUtil.translateException(
+                    FsoPropertiesDialog.this.mContext, cause, true, false);
+        }
+    };
+
     private DialogInterface.OnDismissListener mOnDismissListener;
 
     /**
@@ -257,6 +406,10 @@ public class FsoPropertiesDialog
         this.mSpnOwner = (Spinner)contentView.findViewById(R.id.fso_properties_owner);
         this.mSpnGroup = (Spinner)contentView.findViewById(R.id.fso_properties_group);
         this.mInfoMsgView = (TextView)contentView.findViewById(R.id.fso_info_msg);
+        View vChecksumsRow = contentView.findViewById(R.id.fso_properties_checksums_row);
+        this.mTvChecksums = (TextView)contentView.findViewById(R.id.fso_properties_checksums);
+        View vLargestRow = contentView.findViewById(R.id.fso_properties_largest_row);
+        this.mTvLargest = (TextView)contentView.findViewById(R.id.fso_properties_largest);
 
         //Fill the text views
         //- Info
@@ -293,6 +446,16 @@ public class FsoPropertiesDialog
         DateFormat df = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
         tvDate.setText(df.format(this.mFso.getLastModifiedTime()));
 
+        //- Checksums (only files, or links to files)
+        this.mChecksumFso = this.mFso;
+        if (this.mChecksumFso instanceof Symlink) {
+            this.mChecksumFso = ((Symlink)this.mChecksumFso).getLinkRef();
+        }
+        if (this.mChecksumFso instanceof RegularFile) {
+            vChecksumsRow.setVisibility(View.VISIBLE);
+            loadChecksums();
+        }
+
         //- Permissions
         String loadingMsg = this.mContext.getString(R.string.loading_message);
         setSpinnerMsg(this.mContext, FsoPropertiesDialog.this.mSpnOwner, loadingMsg);
@@ -308,6 +471,11 @@ public class FsoPropertiesDialog
             if (this.mComputeFolderStatistics) {
                 computeFolderUsage();
             }
+
+            // The largest files and folders are analyzed when the user request it
+            vLargestRow.setVisibility(View.VISIBLE);
+            this.mTvLargest.setText(R.string.fso_properties_dialog_largest_analyze);
+            this.mTvLargest.setOnClickListener(this);
         }
 
         // Check if permissions operations are allowed
@@ -424,12 +592,224 @@ public class FsoPropertiesDialog
         }
     }
 
+    /**
+     * Method that analyzes the largest files and folders of the folder in background
+     */
+    private void analyzeStorage() {
+        String path = this.mFso.getFullPath();
+        if (this.mFso instanceof Symlink && ((Symlink) this.mFso).getLinkRef() != null) {
+            path = ((Symlink) this.mFso).getLinkRef().getFullPath();
+        }
+        this.mStorageAnalysis = null;
+        this.mTvLargest.setText(
+                this.mContext.getString(
+                        R.string.fso_properties_dialog_largest_analyzing, Integer.valueOf(0)));
+        try {
+            this.mStorageAnalysisExecutable =
+                    CommandHelper.analyzeStorage(
+                            this.mContext, path, LARGEST_ITEMS,
+                            this.mStorageAnalysisListener, null);
+        } catch (Exception cause) {
+            //Capture the exception
+            ExceptionUtil.translateException(this.mContext, cause, true, false);
+            this.mStorageAnalysisExecutable = null;
+            this.mTvLargest.setText(R.string.error_message);
+        }
+    }
+
+    /**
+     * Method that prints the largest files and folders of the folder.
+     *
+     * @param analysis The storage analysis of the folder
+     * @param analyzing If the folder is still being analyzed
+     * @hide
+     */
+    void printStorageAnalysis(StorageAnalysis analysis, boolean analyzing) {
+        StringBuilder sb = new StringBuilder();
+        if (analyzing) {
+            sb.append(this.mContext.getString(
+                    R.string.fso_properties_dialog_largest_analyzing,
+                    Integer.valueOf(analysis.getNumberOfFiles())));
+        }
+        String folder = analysis.getFolder();
+        appendLargestItems(sb, R.string.fso_properties_dialog_largest_files,
+                analysis.getLargestFiles(), folder);
+        appendLargestItems(sb, R.string.fso_properties_dialog_largest_folders,
+                analysis.getLargestFolders(), folder);
+        if (sb.length() == 0) {
+            sb.append(this.mContext.getString(R.string.fso_properties_dialog_largest_empty));
+        }
+        this.mTvLargest.setText(sb.toString());
+    }
+
+    /**
+     * Method that appends a list of largest items (files or folders) to a text.
+     *
+     * @param sb The text
+     * @param header The resource identifier of the header of the list
+     * @param items The largest items, sorted by size
+     * @param folder The analyzed folder (the items are printed relative to it)
+     */
+    private void appendLargestItems(
+            StringBuilder sb, int header, List<StorageAnalysis.Entry> items, String folder) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        String prefix = folder.endsWith(File.separator) ? folder : folder + File.separator;
+        if (sb.length() > 0) {
+            sb.append('\n');
+        }
+        sb.append(this.mContext.getString(header));
+        int cc = Math.min(LARGEST_ITEMS, items.size());
+        for (int i = 0; i < cc; i++) {
+            StorageAnalysis.Entry item = items.get(i);
+            String name = item.getPath();
+            if (name.startsWith(prefix)) {
+                name = name.substring(prefix.length());
+            }
+            sb.append('\n');
+            sb.append(this.mContext.getString(
+                    R.string.fso_properties_dialog_largest_entry,
+                    FileHelper.getHumanReadableSize(item.getSize()), name));
+        }
+    }
+
+    /**
+     * Method that loads the cached checksums of the file in background. If the file
+     * changed since they were computed, the checksums are computed on request.
+     */
+    private void loadChecksums() {
+        this.mTvChecksums.setText(R.string.loading_message);
+        final FileSystemObject fso = this.mChecksumFso;
+        AsyncTask<Void, Void, HashCache.Entry> checksumsTask =
+                        new AsyncTask<Void, Void, HashCache.Entry>() {
+            @Override
+            protected HashCache.Entry doInBackground(Void...params) {
+                return HashCache.get(fso.getFullPath());
+            }
+
+            @Override
+            protected void onPostExecute(HashCache.Entry entry) {
+                if (!isCancelled()) {
+                    if (entry != null &&
+                        entry.isValid(fso.getSize(), fso.getLastModifiedTime().getTime()) &&
+                        entry.getMd5() != null && entry.getSha1() != null &&
+                        entry.getSha256() != null) {
+                        printChecksums(entry.getMd5(), entry.getSha1(), entry.getSha256());
+                        return;
+                    }
+
+                    // Not cached. Compute the checksums when the user request it
+                    FsoPropertiesDialog.this.mTvChecksums.setText(
+                            R.string.fso_properties_dialog_checksums_compute);
+                    FsoPropertiesDialog.this.mTvChecksums.setOnClickListener(
+                            FsoPropertiesDialog.this);
+                }
+            }
+        };
+        checksumsTask.execute();
+    }
+
+    /**
+     * Method that computes the checksums of the file in background
+     */
+    private void computeChecksums() {
+        String path = this.mChecksumFso.getFullPath();
+        this.mChecksum = null;
+        printChecksumsProgress(0);
+        try {
+            // A file that the application can read is digested by a java console, in
+            // a single pass over its data. Otherwise, the shell tools compute them
+            Console console = null;
+            if (new File(path).canRead()) {
+                console = ConsoleBuilder.createJavaConsole(
+                        this.mContext, FileHelper.ROOT_DIRECTORY);
+            }
+            this.mChecksumConsole = console;
+            this.mChecksumExecutable =
+                    CommandHelper.computeChecksums(
+                            this.mContext, path, this.mChecksumListener, console);
+        } catch (Exception cause) {
+            //Capture the exception
+            ExceptionUtil.translateException(this.mContext, cause, true, false);
+            releaseChecksumConsole();
+            this.mChecksumExecutable = null;
+            this.mTvChecksums.setText(R.string.error_message);
+        }
+    }
+
+    /**
+     * Method that saves the checksums of the file in the cache.
+     *
+     * @param checksum The checksums of the file
+     * @hide
+     */
+    void saveChecksums(Checksum checksum) {
+        FileSystemObject fso = this.mChecksumFso;
+        long modified = fso.getLastModifiedTime().getTime();
+        HashCache.Entry entry = new HashCache.Entry(fso.getFullPath(), fso.getSize(), modified);
+        // Keep the partial hash computed by the search of duplicates
+        HashCache.Entry cached = HashCache.get(fso.getFullPath());
+        if (cached != null && cached.isValid(fso.getSize(), modified)) {
+            entry.setPartial(cached.getPartial());
+        }
+        entry.setMd5(checksum.getMd5());
+        entry.setSha1(checksum.getSha1());
+        entry.setSha256(checksum.getSha256());
+        HashCache.put(entry);
+    }
+
+    /**
+     * Method that prints the checksums of the file.
+     *
+     * @param md5 The MD5 of the file
+     * @param sha1 The SHA-1 of the file
+     * @param sha256 The SHA-256 of the file
+     * @hide
+     */
+    void printChecksums(String md5, String sha1, String sha256) {
+        this.mTvChecksums.setOnClickListener(null);
+        this.mTvChecksums.setText(
+                this.mContext.getString(
+                        R.string.fso_properties_dialog_checksums_format, md5, sha1, sha256));
+        this.mTvChecksums.setTextIsSelectable(true);
+    }
+
+    /**
+     * Method that prints the progress of the computation of the checksums.
+     *
+     * @param progress The progress of the computation (0-100)
+     * @hide
+     */
+    void printChecksumsProgress(int progress) {
+        this.mTvChecksums.setText(
+                this.mContext.getString(
+                        R.string.fso_properties_dialog_checksums_computing,
+                        Integer.valueOf(progress)));
+    }
+
+    /**
+     * Method that releases the console used to compute the checksums (if it isn't
+     * the default console).
+     *
+     * @hide
+     */
+    void releaseChecksumConsole() {
+        Console console = this.mChecksumConsole;
+        this.mChecksumConsole = null;
+        if (console != null) {
+            console.dealloc();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void onDismiss(DialogInterface dialog) {
         cancelFolderUsageCommand();
+        cancelChecksumCommand();
+        cancelStorageAnalysisCommand();
         if (this.mOnDismissListener != null) {
             this.mOnDismissListener.onDismiss(dialog);
         }
@@ -441,6 +821,8 @@ public class FsoPropertiesDialog
     @Override
     public void onCancel(DialogInterface dialog) {
         cancelFolderUsageCommand();
+        cancelChecksumCommand();
+        cancelStorageAnalysisCommand();
         if (this.mOnDismissListener != null) {
             this.mOnDismissListener.onDismiss(dialog);
         }
@@ -490,6 +872,24 @@ public class FsoPropertiesDialog
                         this.mHasPrivileged || !this.mIsAdvancedMode ? View.GONE : View.VISIBLE);
                 break;
 
+            case R.id.fso_properties_checksums:
+                // Tap to compute, and tap again to cancel
+                if (this.mChecksumExecutable != null) {
+                    cancelChecksumCommand();
+                } else {
+                    computeChecksums();
+                }
+                break;
+
+            case R.id.fso_properties_largest:
+                // Tap to analyze, and tap again to cancel
+                if (this.mStorageAnalysisExecutable != null) {
+                    cancelStorageAnalysisCommand();
+                } else {
+                    analyzeStorage();
+                }
+                break;
+
             case R.id.fso_info_msg:
                 //Change the console
                 boolean superuser = ConsoleBuilder.changeToPrivilegedConsole(this.mContext);
@@ -1035,6 +1435,36 @@ public class FsoPropertiesDialog
         }
     }
 
+    /**
+     * Method that cancels the checksums command execution
+     */
+    private void cancelChecksumCommand() {
+        try {
+            if (this.mChecksumExecutable != null &&
+                this.mChecksumExecutable.isCancellable() &&
+                !this.mChecksumExecutable.isCancelled()) {
+                this.mChecksumExecutable.cancel();
+            }
+        } catch (Exception ex) {
+            Log.e(TAG, "Failed to cancel the checksum command", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that cancels the storage analysis command.
+     */
+    private void cancelStorageAnalysisCommand() {
+        try {
+            if (this.mStorageAnalysisExecutable != null &&
+                this.mStorageAnalysisExecutable.isCancellable() &&
+                !this.mStorageAnalysisExecutable.isCancelled()) {
+                this.mStorageAnalysisExecutable.cancel();
+            }
+        } catch (Exception ex) {
+            Log.e(TAG, "Failed to cancel the storage analysis command", ex); //$NON-NLS-1$
+        }
+    }
+
     /**
      * Method that redraws the information about folder usage
      *
@@ -1160,6 +1590,14 @@ public class FsoPropertiesDialog
         theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
         v = this.mContentView.findViewById(R.id.fso_properties_date);
         theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
+        v = this.mContentView.findViewById(R.id.fso_properties_checksums_label);
+        theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
+        v = this.mContentView.findViewById(R.id.fso_properties_checksums);
+        theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
+        v = this.mContentView.findViewById(R.id.fso_properties_largest_label);
+        theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
+        v = this.mContentView.findViewById(R.id.fso_properties_largest);
+        theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
 
         v = this.mContentView.findViewById(R.id.fso_properties_owner_label);
         theme.setTextColor(this.mContext, (TextView)v, "text_color"); //$NON-NLS-1$
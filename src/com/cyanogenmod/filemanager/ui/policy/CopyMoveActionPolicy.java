@@ -19,24 +19,21 @@ package com.cyanogenmod.filemanager.ui.policy;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.text.Html;
-import android.text.Spanned;
 
 import com.cyanogenmod.filemanager.R;
-import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
-import com.cyanogenmod.filemanager.console.RelaunchableException;
-import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
 import com.cyanogenmod.filemanager.listeners.OnSelectionListener;
+import com.cyanogenmod.filemanager.model.FileOperation;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
-import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.services.FileOperationService;
 import com.cyanogenmod.filemanager.util.DialogHelper;
-import com.cyanogenmod.filemanager.util.ExceptionUtil;
-import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FileOperationQueue;
+import com.cyanogenmod.filemanager.util.TransferJournal;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A class with the convenience methods for resolve copy/move related actions
@@ -90,14 +87,12 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
      * @param fso The file system object
      * @param newName The new name of the object
      * @param onSelectionListener The listener for obtain selection information (required)
-     * @param onRequestRefreshListener The listener for request a refresh (optional)
      */
     public static void renameFileSystemObject(
             final Context ctx,
             final FileSystemObject fso,
             final String newName,
-            final OnSelectionListener onSelectionListener,
-            final OnRequestRefreshListener onRequestRefreshListener) {
+            final OnSelectionListener onSelectionListener) {
 
         // Create the destination filename
         File dst = new File(fso.getParent(), newName);
@@ -113,8 +108,7 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                 ctx,
                 COPY_MOVE_OPERATION.RENAME,
                 files,
-                onSelectionListener,
-                onRequestRefreshListener);
+                onSelectionListener);
     }
 
     /**
@@ -123,13 +117,11 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
      * @param ctx The current context
      * @param fso The file system object
      * @param onSelectionListener The listener for obtain selection information (required)
-     * @param onRequestRefreshListener The listener for request a refresh (optional)
      */
     public static void createCopyFileSystemObject(
             final Context ctx,
             final FileSystemObject fso,
-            final OnSelectionListener onSelectionListener,
-            final OnRequestRefreshListener onRequestRefreshListener) {
+            final OnSelectionListener onSelectionListener) {
 
         // Create a non-existing name
         List<FileSystemObject> curFiles = onSelectionListener.onRequestCurrentItems();
@@ -149,8 +141,7 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                 ctx,
                 COPY_MOVE_OPERATION.CREATE_COPY,
                 files,
-                onSelectionListener,
-                onRequestRefreshListener);
+                onSelectionListener);
     }
 
     /**
@@ -159,20 +150,17 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
      * @param ctx The current context
      * @param files The list of files to copy
      * @param onSelectionListener The listener for obtain selection information (required)
-     * @param onRequestRefreshListener The listener for request a refresh (optional)
      */
     public static void copyFileSystemObjects(
             final Context ctx,
             final List<LinkedResource> files,
-            final OnSelectionListener onSelectionListener,
-            final OnRequestRefreshListener onRequestRefreshListener) {
+            final OnSelectionListener onSelectionListener) {
         // Internal copy
         copyOrMoveFileSystemObjects(
                 ctx,
                 COPY_MOVE_OPERATION.COPY,
                 files,
-                onSelectionListener,
-                onRequestRefreshListener);
+                onSelectionListener);
     }
 
     /**
@@ -181,20 +169,17 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
      * @param ctx The current context
      * @param files The list of files to move
      * @param onSelectionListener The listener for obtain selection information (required)
-     * @param onRequestRefreshListener The listener for request a refresh (optional)
      */
     public static void moveFileSystemObjects(
             final Context ctx,
             final List<LinkedResource> files,
-            final OnSelectionListener onSelectionListener,
-            final OnRequestRefreshListener onRequestRefreshListener) {
+            final OnSelectionListener onSelectionListener) {
         // Internal move
         copyOrMoveFileSystemObjects(
                 ctx,
                 COPY_MOVE_OPERATION.MOVE,
                 files,
-                onSelectionListener,
-                onRequestRefreshListener);
+                onSelectionListener);
     }
 
     /**
@@ -204,14 +189,12 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
      * @param operation Indicates the operation to do
      * @param files The list of source/destination files to copy
      * @param onSelectionListener The listener for obtain selection information (required)
-     * @param onRequestRefreshListener The listener for request a refresh (optional)
      */
     private static void copyOrMoveFileSystemObjects(
             final Context ctx,
             final COPY_MOVE_OPERATION operation,
             final List<LinkedResource> files,
-            final OnSelectionListener onSelectionListener,
-            final OnRequestRefreshListener onRequestRefreshListener) {
+            final OnSelectionListener onSelectionListener) {
 
         // Some previous checks prior to execute
         // 1.- Listener couldn't be null
@@ -254,172 +237,15 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
             }
         }
 
-        // The callable interface
-        final BackgroundCallable callable = new BackgroundCallable() {
-            // The current items
-            private int mCurrent = 0;
-            final Context mCtx = ctx;
-            final COPY_MOVE_OPERATION mOperation = operation;
-            final List<LinkedResource> mFiles = files;
-            final OnRequestRefreshListener mOnRequestRefreshListener = onRequestRefreshListener;
-
-            final Object mSync = new Object();
-            Throwable mCause;
-
-            @Override
-            public int getDialogTitle() {
-                return this.mOperation.compareTo(COPY_MOVE_OPERATION.MOVE) == 0 ||
-                       this.mOperation.compareTo(COPY_MOVE_OPERATION.RENAME) == 0 ?
-                        R.string.waiting_dialog_moving_title :
-                        R.string.waiting_dialog_copying_title;
-            }
-            @Override
-            public int getDialogIcon() {
-                return 0;
-            }
-            @Override
-            public boolean isDialogCancellable() {
-                return false;
-            }
-
-            @Override
-            public Spanned requestProgress() {
-                File src = this.mFiles.get(this.mCurrent).mSrc;
-                File dst = this.mFiles.get(this.mCurrent).mDst;
-
-                // Return the current operation
-                String progress =
-                      this.mCtx.getResources().
-                          getString(
-                              this.mOperation.compareTo(COPY_MOVE_OPERATION.MOVE) == 0 ||
-                              this.mOperation.compareTo(COPY_MOVE_OPERATION.RENAME) == 0 ?
-                                   R.string.waiting_dialog_moving_msg :
-                                   R.string.waiting_dialog_copying_msg,
-                              src.getAbsolutePath(),
-                              dst.getAbsolutePath());
-                return Html.fromHtml(progress);
-            }
-
-            @Override
-            public void onSuccess() {
-                //Operation complete. Refresh
-                if (this.mOnRequestRefreshListener != null) {
-                  // The reference is not the same, so refresh the complete navigation view
-                  this.mOnRequestRefreshListener.onRequestRefresh(null, true);
-                }
-                ActionsPolicy.showOperationSuccessMsg(ctx);
-            }
-
-            @Override
-            public void doInBackground(Object... params) throws Throwable {
-                this.mCause = null;
-
-                // This method expect to receive
-                // 1.- BackgroundAsyncTask
-                BackgroundAsyncTask task = (BackgroundAsyncTask)params[0];
-
-                int cc2 = this.mFiles.size();
-                for (int i = 0; i < cc2; i++) {
-                    File src = this.mFiles.get(i).mSrc;
-                    File dst = this.mFiles.get(i).mDst;
-
-                    doOperation(this.mCtx, src, dst, this.mOperation);
-
-                    // Next file
-                    this.mCurrent++;
-                    if (this.mCurrent < this.mFiles.size()) {
-                        task.onRequestProgress();
-                    }
-                }
-            }
-
-            /**
-             * Method that copy or move the file to another location
-             *
-             * @param ctx The current context
-             * @param src The source file
-             * @param dst The destination file
-             * @param operation Indicates the operation to do
-             */
-            @SuppressWarnings("hiding")
-            private void doOperation(
-                    Context ctx, File src, File dst, COPY_MOVE_OPERATION operation)
-                    throws Throwable {
-                // If the source is the same as destiny then don't do the operation
-                if (src.compareTo(dst) == 0) return;
-
-                try {
-                    // Copy or move?
-                    if (operation.compareTo(COPY_MOVE_OPERATION.MOVE) == 0 ||
-                            operation.compareTo(COPY_MOVE_OPERATION.RENAME) == 0) {
-                        CommandHelper.move(
-                                ctx,
-                                src.getAbsolutePath(),
-                                dst.getAbsolutePath(),
-                                null);
-                    } else {
-                        CommandHelper.copy(
-                                ctx,
-                                src.getAbsolutePath(),
-                                dst.getAbsolutePath(),
-                                null);
-                    }
-                } catch (Exception e) {
-                    // Need to be relaunched?
-                    if (e instanceof RelaunchableException) {
-                        OnRelaunchCommandResult rl = new OnRelaunchCommandResult() {
-                            @Override
-                            @SuppressWarnings("unqualified-field-access")
-                            public void onSuccess() {
-                                synchronized (mSync) {
-                                    mSync.notify();
-                                }
-                            }
-
-                            @Override
-                            @SuppressWarnings("unqualified-field-access")
-                            public void onFailed(Throwable cause) {
-                                mCause = cause;
-                                synchronized (mSync) {
-                                    mSync.notify();
-                                }
-                            }
-                            @Override
-                            @SuppressWarnings("unqualified-field-access")
-                            public void onCancelled() {
-                                synchronized (mSync) {
-                                    mSync.notify();
-                                }
-                            }
-                        };
-
-                        // Translate the exception (and wait for the result)
-                        ExceptionUtil.translateException(ctx, e, false, true, rl);
-                        synchronized (this.mSync) {
-                            this.mSync.wait();
-                        }
-
-                        // Persist the exception?
-                        if (this.mCause != null) {
-                            // The exception must be elevated
-                            throw this.mCause;
-                        }
-
-                    } else {
-                        // The exception must be elevated
-                        throw e;
-                    }
-                }
-
-                // Check that the operation was completed retrieving the fso modified
-                FileSystemObject fso =
-                        CommandHelper.getFileInfo(ctx, dst.getAbsolutePath(), false, null);
-                if (fso == null) {
-                    throw new NoSuchFileOrDirectory(dst.getAbsolutePath());
-                }
-            }
-        };
-        final BackgroundAsyncTask task = new BackgroundAsyncTask(ctx, callable);
+        // The transfers of the operation
+        boolean move = operation.compareTo(COPY_MOVE_OPERATION.MOVE) == 0 ||
+                       operation.compareTo(COPY_MOVE_OPERATION.RENAME) == 0;
+        final FileOperation op =
+                new FileOperation(move ? FileOperation.TYPE.MOVE : FileOperation.TYPE.COPY);
+        for (int i = 0; i < cc; i++) {
+            op.addTransfer(
+                    files.get(i).mSrc.getAbsolutePath(), files.get(i).mDst.getAbsolutePath());
+        }
 
         // Prior to execute, we need to check if some of the files will be overwritten
         List<FileSystemObject> curFiles = onSelectionListener.onRequestCurrentItems();
@@ -439,8 +265,8 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                                     public void onClick(DialogInterface alertDialog, int which) {
                                         // NEGATIVE (overwrite)  POSITIVE (cancel)
                                         if (which == DialogInterface.BUTTON_NEGATIVE) {
-                                            // Execute background task
-                                            task.execute(task);
+                                            // Queue the operation
+                                            FileOperationService.enqueue(ctx, op);
                                         }
                                     }
                                });
@@ -449,8 +275,73 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
             }
         }
 
-        // Execute background task
-        task.execute(task);
+        // Queue the operation
+        FileOperationService.enqueue(ctx, op);
+    }
+
+    /**
+     * Method that resumes the copy or move operations interrupted by the death of the
+     * process, asking the user first. The operations are queued again from their
+     * journals. The journals of the operations still queued in background are resumed
+     * by {@link FileOperationService} without asking.
+     *
+     * @param ctx The current context
+     */
+    public static void resumeInterruptedTransfers(final Context ctx) {
+        final List<TransferJournal> journals = TransferJournal.loadInterrupted(ctx);
+        Set<String> queued = FileOperationQueue.getJournals();
+        for (int i = journals.size() - 1; i >= 0; i--) {
+            if (queued.contains(journals.get(i).getName())) {
+                journals.remove(i);
+            }
+        }
+        if (journals.isEmpty()) {
+            return;
+        }
+
+        AlertDialog dialog =
+                DialogHelper.createYesNoDialog(
+                        ctx,
+                        R.string.msgs_resume_transfers_title,
+                        R.string.msgs_resume_transfers,
+                        new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface alertDialog, int which) {
+                                int cc = journals.size();
+                                if (which == DialogInterface.BUTTON_POSITIVE) {
+                                    for (int i = 0; i < cc; i++) {
+                                        resumeTransfer(ctx, journals.get(i));
+                                    }
+                                    return;
+                                }
+                                // Discard the interrupted operations
+                                for (int i = 0; i < cc; i++) {
+                                    journals.get(i).delete();
+                                }
+                            }
+                       });
+        DialogHelper.delegateDialogShow(ctx, dialog);
+    }
+
+    /**
+     * Method that queues again an interrupted operation.
+     *
+     * @param ctx The current context
+     * @param journal The journal of the interrupted operation
+     */
+    static void resumeTransfer(Context ctx, TransferJournal journal) {
+        FileOperation op =
+                new FileOperation(
+                        journal.isMove() ? FileOperation.TYPE.MOVE : FileOperation.TYPE.COPY);
+        List<TransferJournal.Entry> entries = journal.getPendingEntries();
+        int cc = entries.size();
+        for (int i = 0; i < cc; i++) {
+            op.addTransfer(
+                    entries.get(i).getSource().getAbsolutePath(),
+                    entries.get(i).getDestination().getAbsolutePath());
+        }
+        op.setJournal(journal.getName());
+        FileOperationService.enqueue(ctx, op);
     }
 
     /**
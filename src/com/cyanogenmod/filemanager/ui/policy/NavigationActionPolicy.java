@@ -17,12 +17,16 @@
 package com.cyanogenmod.filemanager.ui.policy;
 
 import android.content.Context;
+import android.content.Intent;
+
+import com.cyanogenmod.filemanager.activities.DuplicatesActivity;
 
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
+import com.cyanogenmod.filemanager.util.FileHelper;
 
 /**
  * A class with the convenience methods for resolve navigation related actions
@@ -55,4 +59,19 @@ public final class NavigationActionPolicy extends ActionsPolicy {
         }
     }
 
+    /**
+     * Method that opens the duplicate files of a folder
+     *
+     * @param ctx The current context
+     * @param fso The folder where to find the duplicate files
+     */
+    public static void findDuplicates(final Context ctx, final FileSystemObject fso) {
+        if (!FileHelper.isDirectory(fso)) {
+            return;
+        }
+        Intent intent = new Intent(ctx, DuplicatesActivity.class);
+        intent.putExtra(DuplicatesActivity.EXTRA_DUPLICATES_DIRECTORY, fso.getFullPath());
+        ctx.startActivity(intent);
+    }
+
 }
\ No newline at end of file
@@ -16,38 +16,53 @@
 
 package com.cyanogenmod.filemanager.ui.widgets;
 
+import android.animation.ValueAnimator;
+import android.animation.ValueAnimator.AnimatorUpdateListener;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.animation.LinearInterpolator;
 
 import com.cyanogenmod.filemanager.model.DiskUsage;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
- * A class that display graphically the usage of a mount point.
+ * A class that display graphically the usage of a mount point.<br/>
+ * <br/>
+ * The graph is animated with a {@link ValueAnimator}, so it is drawn at most once per
+ * frame (driven by the vsync of the display) and does no work when the animation ends.
  */
 public class DiskUsageGraph extends View {
 
+    // The duration of the animation of a degree of the arcs
+    private static final float DEGREE_DURATION = 1.5f;
+
+    private static final float START_ANGLE = -180.0f;
+
     /**
      * @hide
      */
     int mDiskWarningAngle = (360 * 95) / 100;
 
-    private AnimationDrawingThread mThread;
+    private ValueAnimator mAnimator;
     /**
+     * The drawn angle (the total arc first, and then the used arc)
      * @hide
      */
-    final List<DrawingObject> mDrawingObjects =
-            Collections.synchronizedList(new ArrayList<DiskUsageGraph.DrawingObject>(2));
+    float mAngle;
+    private float mUsedAngle;
+    private boolean mDrawing;
+
+    // The drawing objects (created when the size of the view is known)
+    private final RectF mRectF = new RectF();
+    private final Paint mTotalPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mUsedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int mUsedColor;
+    private int mUsedWarningColor;
 
     /**
      * Constructor of <code>DiskUsageGraph</code>.
@@ -93,6 +108,31 @@ public class DiskUsageGraph extends View {
         this.setMeasuredDimension(size, size);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        //Adjust the drawing zone to the stroke
+        int stroke = (w / 2) / 2;
+        this.mRectF.set(stroke / 2, stroke / 2, w - stroke / 2, h - stroke / 2);
+        this.mTotalPaint.setStrokeWidth(stroke);
+        this.mUsedPaint.setStrokeWidth(stroke);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        if (this.mAnimator != null) {
+            this.mAnimator.cancel();
+        }
+        super.onDetachedFromWindow();
+    }
+
     /**
      * Method that sets the free disk space percentage after the widget change his color
      * to advise the user
@@ -104,21 +144,50 @@ public class DiskUsageGraph extends View {
     }
 
     /**
-     * Method that draw the disk usage.
+     * Method that draw the disk usage. Must be called from the UI thread.
      *
      * @param diskUsage The disk usage
      */
     public void drawDiskUsage(DiskUsage diskUsage) {
         // Clear if a current drawing exit
-        if (this.mThread != null) {
-            this.mThread.exit();
+        if (this.mAnimator != null) {
+            this.mAnimator.cancel();
         }
-        this.mDrawingObjects.clear();
-        invalidate();
 
-        // Start drawing thread
-        this.mThread = new AnimationDrawingThread(diskUsage);
-        this.mThread.start();
+        float used = 0.0f;
+        if (diskUsage == null) {
+            used = 100.0f;
+        } else if (diskUsage.getTotal() != 0) {
+            used = (diskUsage.getUsed() * 100) / diskUsage.getTotal();
+        }
+        //Translate to angle
+        this.mUsedAngle = (360 * used) / 100;
+
+        //Initialize the paints of the arcs
+        Theme theme = ThemeManager.getCurrentTheme(getContext());
+        this.mUsedColor = theme.getColor(getContext(), "disk_usage_used_color"); //$NON-NLS-1$
+        this.mUsedWarningColor =
+                theme.getColor(getContext(), "disk_usage_used_warning_color"); //$NON-NLS-1$
+        initializePaint(
+                this.mTotalPaint,
+                theme.getColor(getContext(), "disk_usage_total_color")); //$NON-NLS-1$
+        initializePaint(this.mUsedPaint, this.mUsedColor);
+
+        //Draw the total arc circle and then the used arc circle
+        float end = 360 + this.mUsedAngle;
+        this.mAngle = 0;
+        this.mDrawing = true;
+        this.mAnimator = ValueAnimator.ofFloat(0, end);
+        this.mAnimator.setDuration((long)(end * DEGREE_DURATION));
+        this.mAnimator.setInterpolator(new LinearInterpolator());
+        this.mAnimator.addUpdateListener(new AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                DiskUsageGraph.this.mAngle = ((Float)animation.getAnimatedValue()).floatValue();
+                invalidate();
+            }
+        });
+        this.mAnimator.start();
     }
 
     /**
@@ -128,187 +197,32 @@ public class DiskUsageGraph extends View {
     protected void onDraw(Canvas canvas) {
         //Draw super surface
         super.onDraw(canvas);
-
-        //Draw all the drawing objects
-        int cc = this.mDrawingObjects.size();
-        for (int i = 0; i < cc; i++) {
-            DrawingObject dwo = this.mDrawingObjects.get(i);
-            canvas.drawArc(dwo.mRectF, dwo.mStartAngle, dwo.mSweepAngle, false, dwo.mPaint);
+        if (!this.mDrawing) {
+            return;
         }
-    }
 
-    /**
-     * A thread for drawing the animation of the graph.
-     */
-    private class AnimationDrawingThread extends Thread {
-
-        private final DiskUsage mDiskUsage;
-        private boolean mRunning;
-        private final Object mSync = new Object();
-        private int mIndex = 0;
-
-        /**
-         * Constructor of <code>AnimationDrawingThread</code>.
-         *
-         * @param diskUsage The disk usage
-         */
-        public AnimationDrawingThread(DiskUsage diskUsage) {
-            super();
-            this.mDiskUsage = diskUsage;
-            this.mRunning = false;
-        }
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        @SuppressWarnings("null")
-        public void run() {
-            //Get information about the drawing zone, and adjust the size
-            Rect rect = new Rect();
-            getDrawingRect(rect);
-            int stroke = (rect.width() / 2) / 2;
-            rect.left += stroke / 2;
-            rect.right -= stroke / 2;
-            rect.top += stroke / 2;
-            rect.bottom -= stroke / 2;
-
-            float used = 0.0f;
-            if (this.mDiskUsage == null) {
-                used = 100.0f;
-            } else if (this.mDiskUsage.getTotal() != 0) {
-                used = (this.mDiskUsage.getUsed() * 100) / this.mDiskUsage.getTotal();
-            }
-            //Translate to angle
-            used = (360 * used) / 100;
-
-            synchronized (this.mSync) {
-                this.mRunning = true;
-            }
-            try {
-                boolean disk_warning = false;
-                while (this.mRunning) {
-                    //Get the current arc
-                    DrawingObject dwo = null;
-                    if (DiskUsageGraph.this.mDrawingObjects != null
-                            && DiskUsageGraph.this.mDrawingObjects.size() > this.mIndex) {
-                        dwo = DiskUsageGraph.this.mDrawingObjects.get(this.mIndex);
-                    }
-
-                    //Draw the total arc circle and then the used arc circle
-                    if (this.mIndex == 0 && dwo == null) {
-                        //Initialize the total arc circle
-                        DiskUsageGraph.this.mDrawingObjects.add(
-                                createDrawingObject(
-                                        rect, "disk_usage_total_color", stroke)); //$NON-NLS-1$
-                        continue;
-                    }
-                    if (this.mIndex == 1 && dwo == null) {
-                      //Initialize the used arc circle
-                        DiskUsageGraph.this.mDrawingObjects.add(
-                                createDrawingObject(
-                                        rect, "disk_usage_used_color", stroke)); //$NON-NLS-1$
-                        continue;
-                    }
-
-                    if (this.mIndex == 1 && !disk_warning &&
-                            dwo.mSweepAngle >= DiskUsageGraph.this.mDiskWarningAngle) {
-                        Theme theme = ThemeManager.getCurrentTheme(getContext());
-                        dwo.mPaint.setColor(
-                                theme.getColor(
-                                        getContext(),
-                                        "disk_usage_used_warning_color")); //$NON-NLS-1$
-                        disk_warning = true;
-                    }
-
-                    //Redraw the canvas
-                    post(new Runnable() {
-                        @Override
-                        public void run() {
-                            invalidate();
-                        }
-                    });
-
-                    //Next draw call
-                    dwo.mSweepAngle++;
-                    if (this.mIndex >= 1) {
-                        //Only fill until used
-                        if ((dwo.mSweepAngle >= used) || (this.mIndex > 1)) {
-                            synchronized (this.mSync) {
-                                break;  //End of the animation
-                            }
-                        }
-                    }
-                    if (dwo.mSweepAngle == 360) {
-                        this.mIndex++;
-                    }
-
-                    try {
-                        Thread.sleep(1L);
-                    } catch (Throwable ex) {
-                        /**NON BLOCK**/
-                    }
-                }
-            } finally {
-                try {
-                    synchronized (this.mSync) {
-                        this.mRunning = false;
-                        this.mSync.notify();
-                    }
-                } catch (Throwable ex) {
-                    /**NON BLOCK**/
-                }
-            }
-        }
-
-        /**
-         * Method that force the thread to exit.
-         */
-        public void exit() {
-            try {
-                synchronized (this.mSync) {
-                    if (this.mRunning) {
-                        this.mRunning = false;
-                        this.mSync.wait();
-                    }
-                }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
-            }
-        }
-
-        /**
-         * Method that creates the drawing object.
-         *
-         * @param rect The area of drawing
-         * @param colorResourceThemeId The theme resource identifier of the color
-         * @param stroke The stroke width
-         * @return DrawingObject The drawing object
-         */
-        private DrawingObject createDrawingObject(
-                Rect rect, String colorResourceThemeId, int stroke) {
-            DrawingObject out = new DrawingObject();
-            out.mSweepAngle = 0;
-            Theme theme = ThemeManager.getCurrentTheme(getContext());
-            out.mPaint.setColor(theme.getColor(getContext(), colorResourceThemeId));
-            out.mPaint.setStrokeWidth(stroke);
-            out.mPaint.setAntiAlias(true);
-            out.mPaint.setStrokeCap(Paint.Cap.BUTT);
-            out.mPaint.setStyle(Paint.Style.STROKE);
-            out.mRectF = new RectF(rect);
-            return out;
+        //Draw the total arc and the used arc
+        float total = Math.min(360, this.mAngle);
+        canvas.drawArc(this.mRectF, START_ANGLE, total, false, this.mTotalPaint);
+        if (this.mAngle > 360) {
+            float used = Math.min(this.mUsedAngle, this.mAngle - 360);
+            this.mUsedPaint.setColor(
+                    used >= this.mDiskWarningAngle ? this.mUsedWarningColor : this.mUsedColor);
+            canvas.drawArc(this.mRectF, START_ANGLE, used, false, this.mUsedPaint);
         }
     }
 
     /**
-     * A class with information about a drawing object.
+     * Method that initializes the paint of an arc.
+     *
+     * @param paint The paint
+     * @param color The color of the arc
      */
-    private class DrawingObject {
-        DrawingObject() {/**NON BLOCK**/}
-        int mStartAngle = -180;
-        int mSweepAngle = 0;
-        Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        RectF mRectF = new RectF();
+    private static void initializePaint(Paint paint, int color) {
+        paint.setColor(color);
+        paint.setAntiAlias(true);
+        paint.setStrokeCap(Paint.Cap.BUTT);
+        paint.setStyle(Paint.Style.STROKE);
     }
 
 }
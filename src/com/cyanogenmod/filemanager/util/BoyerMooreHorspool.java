@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * A class that search a pattern of bytes in a buffer using the Boyer-Moore-Horspool
+ * algorithm.<br/>
+ * <br/>
+ * The search is case insensitive for ASCII letters. The pattern is encoded as UTF-8,
+ * and non-ASCII characters are compared as is.
+ */
+public class BoyerMooreHorspool {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private final byte[] mPattern;
+    private final int[] mShift;
+
+    /**
+     * Constructor of <code>BoyerMooreHorspool</code>.
+     *
+     * @param pattern The pattern to search (can't be empty)
+     * @throws IllegalArgumentException If the pattern is empty
+     */
+    public BoyerMooreHorspool(String pattern) {
+        super();
+        byte[] p = pattern.getBytes(UTF8);
+        int len = p.length;
+        if (len == 0) {
+            throw new IllegalArgumentException("empty pattern"); //$NON-NLS-1$
+        }
+        this.mPattern = new byte[len];
+        for (int i = 0; i < len; i++) {
+            this.mPattern[i] = toLower(p[i]);
+        }
+
+        // The bad character shift table (indexed by lowercase byte)
+        this.mShift = new int[256];
+        for (int i = 0; i < 256; i++) {
+            this.mShift[i] = len;
+        }
+        for (int i = 0; i < len - 1; i++) {
+            this.mShift[this.mPattern[i] & 0xff] = len - 1 - i;
+        }
+    }
+
+    /**
+     * Method that returns the length in bytes of the pattern.
+     *
+     * @return int The length in bytes of the pattern
+     */
+    public int length() {
+        return this.mPattern.length;
+    }
+
+    /**
+     * Method that search the pattern in a region of a buffer.
+     *
+     * @param buffer The buffer where to search
+     * @param from The first position of the region (inclusive)
+     * @param to The last position of the region (exclusive)
+     * @return int The position of the first match, or -1 if the pattern wasn't found
+     */
+    public int indexOf(byte[] buffer, int from, int to) {
+        final byte[] pattern = this.mPattern;
+        final int last = pattern.length - 1;
+        int pos = from;
+        while (pos + last < to) {
+            byte b = toLower(buffer[pos + last]);
+            if (b == pattern[last]) {
+                int i = last - 1;
+                while (i >= 0 && toLower(buffer[pos + i]) == pattern[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return pos;
+                }
+            }
+            pos += this.mShift[b & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Method that converts an ASCII uppercase letter to lowercase.
+     *
+     * @param b The byte to convert
+     * @return byte The converted byte
+     */
+    private static byte toLower(byte b) {
+        if (b >= 'A' && b <= 'Z') {
+            return (byte)(b + ('a' - 'A'));
+        }
+        return b;
+    }
+}
@@ -22,17 +22,21 @@ import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChangeCurrentDirExecutable;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.commands.CompressExecutable;
 import com.cyanogenmod.filemanager.commands.CopyExecutable;
 import com.cyanogenmod.filemanager.commands.CreateDirExecutable;
 import com.cyanogenmod.filemanager.commands.CreateFileExecutable;
 import com.cyanogenmod.filemanager.commands.CurrentDirExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteDirExecutable;
+import com.cyanogenmod.filemanager.commands.DeleteExecutable;
 import com.cyanogenmod.filemanager.commands.DeleteFileExecutable;
 import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.FindContentExecutable;
 import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.commands.FolderUsageExecutable;
 import com.cyanogenmod.filemanager.commands.GroupsExecutable;
@@ -49,7 +53,9 @@ import com.cyanogenmod.filemanager.commands.ReadExecutable;
 import com.cyanogenmod.filemanager.commands.ResolveLinkExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.SendSignalExecutable;
+import com.cyanogenmod.filemanager.commands.StorageAnalysisExecutable;
 import com.cyanogenmod.filemanager.commands.SyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.TransferExecutable;
 import com.cyanogenmod.filemanager.commands.UncompressExecutable;
 import com.cyanogenmod.filemanager.commands.WritableExecutable;
 import com.cyanogenmod.filemanager.commands.WriteExecutable;
@@ -63,7 +69,10 @@ import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.OperationTimeoutException;
 import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.model.Checksum;
+import com.cyanogenmod.filemanager.model.ContentMatch;
 import com.cyanogenmod.filemanager.model.DiskUsage;
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.FolderUsage;
 import com.cyanogenmod.filemanager.model.Group;
@@ -72,11 +81,14 @@ import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.model.Permissions;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -85,6 +97,12 @@ import java.util.List;
  */
 public final class CommandHelper {
 
+    /**
+     * The maximum length of the arguments of a batched command. ARG_MAX is 128KB in
+     * the oldest kernels, and the environment of the process is counted in it.
+     */
+    public static final int MAX_BATCH_ARGUMENTS_LENGTH = 64 * 1024;
+
     /**
      * A wrapper class for asynchronous operations that need restore the filesystem
      * after the operation.
@@ -96,6 +114,8 @@ public final class CommandHelper {
         boolean mUnmount = false;
         Console mConsole;
         MountPoint mMountPoint;
+        boolean mUnmountSrc = false;
+        MountPoint mSrcMountPoint;
 
         /**
          * Constructor of <code>UnmountAsyncResultListener</code>
@@ -133,32 +153,34 @@ public final class CommandHelper {
                 this.mRef.onAsyncExitCode(exitCode);
             }
 
+            //The operation changed the disk usage of the written filesystems
+            if (this.mMountPoint != null) {
+                DiskUsageCache.invalidate(this.mMountPoint);
+            }
+            if (this.mSrcMountPoint != null) {
+                DiskUsageCache.invalidate(this.mSrcMountPoint);
+            }
+            //And the cached searches can miss the written files
+            SearchResultCache.clear();
+
             // Now if that the process has finished check if the operation
             // requires to unmount the filesystem
-            if (this.mUnmount && this.mConsole != null &&
-                this.mMountPoint != null && this.mCtx != null) {
-                // Run in background because the console is still executing
-                // the command
-                Thread t = new Thread() {
-                    @Override
-                    public void run() {
-                        try {
-                            MountExecutable unmountExecutable =
-                                    UnmountAsyncResultListener.this.mConsole.
-                                        getExecutableFactory().newCreator().
-                                            createMountExecutable(
-                                                    UnmountAsyncResultListener.this.mMountPoint,
-                                                    false);
-                            UnmountAsyncResultListener.this.mConsole.execute(unmountExecutable);
-                        } catch (Exception e) {
-                            // Capture the exception but not show to the user
-                            ExceptionUtil.translateException(
-                                    UnmountAsyncResultListener.this.mCtx, e, true, false);
-                        }
-                    }
-                };
-                t.start();
+            release();
+        }
+
+        /**
+         * Method that releases the read-write sessions of the filesystems left mounted
+         * for the command. The filesystems are remounted read-only when they are idle.
+         */
+        synchronized void release() {
+            if (this.mUnmount && this.mConsole != null && this.mMountPoint != null) {
+                RemountSession.release(this.mConsole, this.mMountPoint);
+            }
+            if (this.mUnmountSrc && this.mConsole != null && this.mSrcMountPoint != null) {
+                RemountSession.release(this.mConsole, this.mSrcMountPoint);
             }
+            this.mUnmount = false;
+            this.mUnmountSrc = false;
         }
 
         /**
@@ -419,6 +441,90 @@ public final class CommandHelper {
         return executable.getResult().booleanValue();
     }
 
+    /**
+     * Method that deletes a batch of files and directories in background. The items
+     * must fit in the arguments of a command (see {@link #splitBatches(List)}).
+     *
+     * @param context The current context (needed if console == null)
+     * @param items The absolute paths of the files and directories to delete
+     * @param asyncResultListener The listener where to return the deleted items
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return DeleteExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see DeleteExecutable
+     */
+    public static DeleteExecutable delete(
+            Context context, String[] items,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        Console c = ensureConsole(context, console);
+
+        // Create a wrapper listener, for unmount the filesystem if necessary
+        UnmountAsyncResultListener wrapperListener = new UnmountAsyncResultListener();
+        wrapperListener.mCtx = context;
+        wrapperListener.mConsole = c;
+        wrapperListener.mRef = asyncResultListener;
+
+        DeleteExecutable executable1 =
+                c.getExecutableFactory().newCreator().
+                    createDeleteExecutable(items, wrapperListener);
+
+        // Prior to delete, ensure that can write to the disk creating the parent
+        // folder of the items (all the items are in the same folder)
+        CreateDirExecutable executable2 =
+                c.getExecutableFactory().newCreator().
+                    createCreateDirectoryExecutable(new File(items[0]).getParent());
+        wrapperListener.mUnmount = writableExecute(context, executable2, c, true);
+        wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+
+        //- Delete
+        execute(context, executable1, c, wrapperListener);
+        return executable1;
+    }
+
+    /**
+     * Method that splits a list of items in batches that fit in the arguments of a
+     * command ({@link #MAX_BATCH_ARGUMENTS_LENGTH}).
+     *
+     * @param items The items
+     * @return List<String[]> The batches of items
+     */
+    public static List<String[]> splitBatches(List<String> items) {
+        List<String[]> batches = new ArrayList<String[]>();
+        List<String> batch = new ArrayList<String>();
+        int length = 0;
+        int cc = items.size();
+        for (int i = 0; i < cc; i++) {
+            String item = items.get(i);
+            // The encoded argument, its quotes and its separator
+            int itemLength = item.getBytes().length + 3;
+            if (!batch.isEmpty() && length + itemLength > MAX_BATCH_ARGUMENTS_LENGTH) {
+                batches.add(batch.toArray(new String[batch.size()]));
+                batch.clear();
+                length = 0;
+            }
+            batch.add(item);
+            length += itemLength;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch.toArray(new String[batch.size()]));
+        }
+        return batches;
+    }
+
     /**
      * Method that resolves a symlink to its real file system object.
      *
@@ -771,6 +877,76 @@ public final class CommandHelper {
         return executable.getResult().booleanValue();
     }
 
+    /**
+     * Method that moves a file system object in background, reporting the progress
+     * of the operation.
+     *
+     * @param context The current context (needed if console == null)
+     * @param src The file system object to move
+     * @param dst The destination file system object
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return TransferExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see TransferExecutable
+     */
+    public static TransferExecutable move(
+            Context context, String src, String dst,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        return transfer(context, true, src, dst, null, asyncResultListener, console);
+    }
+
+    /**
+     * Method that moves a file system object in background, reporting the progress
+     * of the operation, and recording the copied files in a journal (to resume the
+     * operation if it's interrupted).
+     *
+     * @param context The current context (needed if console == null)
+     * @param src The file system object to move
+     * @param dst The destination file system object
+     * @param journal The journal of the operation. If the journal was resumed, the
+     * files already copied are skipped
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return TransferExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see TransferExecutable
+     * @see TransferJournal
+     */
+    public static TransferExecutable move(
+            Context context, String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        return transfer(context, true, src, dst, journal, asyncResultListener, console);
+    }
+
     /**
      * Method that copies a file system object.
      *
@@ -804,6 +980,76 @@ public final class CommandHelper {
         return executable.getResult().booleanValue();
     }
 
+    /**
+     * Method that copies a file system object in background, reporting the progress
+     * of the operation.
+     *
+     * @param context The current context (needed if console == null)
+     * @param src The file system object to copy
+     * @param dst The destination file system object
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return TransferExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see TransferExecutable
+     */
+    public static TransferExecutable copy(
+            Context context, String src, String dst,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        return transfer(context, false, src, dst, null, asyncResultListener, console);
+    }
+
+    /**
+     * Method that copies a file system object in background, reporting the progress
+     * of the operation, and recording the copied files in a journal (to resume the
+     * operation if it's interrupted).
+     *
+     * @param context The current context (needed if console == null)
+     * @param src The file system object to copy
+     * @param dst The destination file system object
+     * @param journal The journal of the operation. If the journal was resumed, the
+     * files already copied are skipped
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return TransferExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @see TransferExecutable
+     * @see TransferJournal
+     */
+    public static TransferExecutable copy(
+            Context context, String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        return transfer(context, false, src, dst, journal, asyncResultListener, console);
+    }
+
     /**
      * Method that executes a command.
      *
@@ -875,6 +1121,79 @@ public final class CommandHelper {
         return executable;
     }
 
+    /**
+     * Method that does a search of text inside the files of a directory tree.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The "absolute" directory where start the search
+     * @param search The terms to be searched
+     * @param asyncResultListener The partial result listener
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return FindContentExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see ContentMatch
+     * @see FindContentExecutable
+     */
+    public static FindContentExecutable findContent(
+            Context context, String directory, Query search,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        FindContentExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createFindContentExecutable(directory, search, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
+    /**
+     * Method that finds the files with the same content in a directory tree.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The "absolute" directory where start the search
+     * @param asyncResultListener The partial result listener
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return DuplicatesExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see DuplicateGroup
+     * @see DuplicatesExecutable
+     */
+    public static DuplicatesExecutable findDuplicates(
+            Context context, String directory,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        DuplicatesExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createDuplicatesExecutable(directory, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
     /**
      * Method that compute the disk usage of a folder.
      *
@@ -911,6 +1230,44 @@ public final class CommandHelper {
         return executable;
     }
 
+    /**
+     * Method that analyzes the storage used by a folder: the largest files and
+     * folders, and the size tree.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The "absolute" directory to analyze
+     * @param top The number of largest files and folders to return
+     * @param asyncResultListener The partial result listener
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return StorageAnalysisExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see StorageAnalysis
+     * @see StorageAnalysisExecutable
+     */
+    public static StorageAnalysisExecutable analyzeStorage(
+            Context context, String directory, int top,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        StorageAnalysisExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createStorageAnalysisExecutable(directory, top, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
     /**
      * Method that retrieves the disk usage of all the mount points.
      *
@@ -1164,6 +1521,42 @@ public final class CommandHelper {
         execute(context, executable, c);
     }
 
+    /**
+     * Method that computes the checksums (MD5, SHA-1 and SHA-256) of a file.
+     *
+     * @param context The current context (needed if console == null)
+     * @param file The file of which compute the checksums
+     * @param asyncResultListener The partial result listener
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return ChecksumExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see Checksum
+     * @see ChecksumExecutable
+     */
+    public static ChecksumExecutable computeChecksums(
+            Context context, String file,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        ChecksumExecutable executable =
+                c.getExecutableFactory().newCreator().
+                    createChecksumExecutable(file, asyncResultListener);
+        execute(context, executable, c);
+        return executable;
+    }
+
     /**
      * Method that read data from disk.
      *
@@ -1241,19 +1634,18 @@ public final class CommandHelper {
         //- Create
         CreateFileExecutable executable1 =
                 c.getExecutableFactory().newCreator().createCreateFileExecutable(file);
-        boolean unmount = writableExecute(context, executable1, c, true);
+        // Configure the rest of attributes of the wrapper listener
+        wrapperListener.mUnmount = writableExecute(context, executable1, c, true);
+        wrapperListener.mMountPoint = executable1.getDstWritableMountPoint();
         if (executable1.getResult().booleanValue()) {
-            // Configure the rest of attributes of the wrapper listener
-            wrapperListener.mUnmount = unmount;
-            wrapperListener.mMountPoint = executable1.getDstWritableMountPoint();
-
             //- Write
             WriteExecutable executable2 =
                     c.getExecutableFactory().newCreator().
                         createWriteExecutable(file, wrapperListener);
-            execute(context, executable2, c);
+            execute(context, executable2, c, wrapperListener);
             return executable2;
         }
+        wrapperListener.release();
         throw new ExecutionException(String.format("Fail to create file %s", file)); //$NON-NLS-1$
     }
 
@@ -1307,16 +1699,15 @@ public final class CommandHelper {
                 c.getExecutableFactory().
                     newCreator().
                         createCreateFileExecutable(compressOutFile);
-        boolean unmount = writableExecute(context, executable2, c, true);
+        // Configure the rest of attributes of the wrapper listener
+        wrapperListener.mUnmount = writableExecute(context, executable2, c, true);
+        wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
         if (executable2.getResult().booleanValue()) {
-            // Configure the rest of attributes of the wrapper listener
-            wrapperListener.mUnmount = unmount;
-            wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
-
             //- Compress
-            execute(context, executable1, c);
+            execute(context, executable1, c, wrapperListener);
             return executable1;
         }
+        wrapperListener.release();
         throw new ExecutionException(
                 String.format("Fail to create file %s", compressOutFile)); //$NON-NLS-1$
     }
@@ -1370,16 +1761,15 @@ public final class CommandHelper {
                 c.getExecutableFactory().
                     newCreator().
                         createCreateFileExecutable(compressOutFile);
-        boolean unmount = writableExecute(context, executable2, c, true);
+        // Configure the rest of attributes of the wrapper listener
+        wrapperListener.mUnmount = writableExecute(context, executable2, c, true);
+        wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
         if (executable2.getResult().booleanValue()) {
-            // Configure the rest of attributes of the wrapper listener
-            wrapperListener.mUnmount = unmount;
-            wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
-
             //- Compress
-            execute(context, executable1, c);
+            execute(context, executable1, c, wrapperListener);
             return executable1;
         }
+        wrapperListener.release();
         throw new ExecutionException(
                 String.format("Fail to compress to file %s", compressOutFile)); //$NON-NLS-1$
     }
@@ -1444,16 +1834,15 @@ public final class CommandHelper {
                         newCreator().
                             createCreateFileExecutable(compressOutFile);
         }
-        boolean unmount = writableExecute(context, executable2, c, true);
+        // Configure the rest of attributes of the wrapper listener
+        wrapperListener.mUnmount = writableExecute(context, executable2, c, true);
+        wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
         if (((Boolean)executable2.getResult()).booleanValue()) {
-            // Configure the rest of attributes of the wrapper listener
-            wrapperListener.mUnmount = unmount;
-            wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
-
             //- Compress
-            execute(context, executable1, c);
+            execute(context, executable1, c, wrapperListener);
             return executable1;
         }
+        wrapperListener.release();
         throw new ExecutionException(
                 String.format("Fail to uncompress to %s", compressOutFile)); //$NON-NLS-1$
     }
@@ -1516,6 +1905,38 @@ public final class CommandHelper {
         }
     }
 
+    /**
+     * Method that execute an asynchronous program that writes in filesystems left mounted
+     * for it. If the program can't be executed, the filesystems are released.
+     *
+     * @param context The current context (needed if console == null)
+     * @param executable The executable program to execute
+     * @param console The console in which execute the program
+     * @param listener The wrapper listener that releases the filesystems
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     */
+    private static void execute(
+            Context context, Executable executable, Console console,
+            UnmountAsyncResultListener listener)
+            throws ConsoleAllocException, InsufficientPermissionsException, NoSuchFileOrDirectory,
+            OperationTimeoutException, ExecutionException,
+            CommandNotFoundException {
+        boolean executed = false;
+        try {
+            execute(context, executable, console);
+            executed = true;
+        } finally {
+            if (!executed) {
+                listener.release();
+            }
+        }
+    }
+
     /**
      * Method that execute a program that requires write permissions over the filesystem. This
      * method ensure mount/unmount the filesystem before/after executing the operation.
@@ -1542,7 +1963,11 @@ public final class CommandHelper {
 
     /**
      * Method that execute a program that requires write permissions over the filesystem. This
-     * method ensure mount/unmount the filesystem before/after executing the operation.
+     * method ensure mount/unmount the filesystem before/after executing the operation.<br/>
+     * <br/>
+     * The read-only filesystems are remounted through a {@link RemountSession}, so the
+     * writable commands executed in a row (or at the same time) share the remount, and the
+     * filesystem is remounted read-only when it's idle.
      *
      * @param context The current context (needed if console == null)
      * @param executable The writable executable program to execute
@@ -1550,7 +1975,8 @@ public final class CommandHelper {
      * to the default console
      * @param leaveDeviceMounted If the operation must leave the filesystem mounted after
      * the execution
-     * @return boolean If the filesystem was left unmount
+     * @return boolean If the filesystem was left mounted (its session must be released
+     * with {@link RemountSession#release(Console, MountPoint)})
      * @throws NoSuchFileOrDirectory If the file or directory was not found
      * @throws ConsoleAllocException If the console can't be allocated
      * @throws InsufficientPermissionsException If an operation requires elevated permissions
@@ -1573,7 +1999,10 @@ public final class CommandHelper {
         MountPoint mpDst = executable.getDstWritableMountPoint();
         if (mpDst != null) {
             if (MountPointHelper.isMountAllowed(mpDst)) {
-                if (!MountPointHelper.isReadWrite(mpDst)) {
+                //A mount point in a session reads as read-write, but it's restored when
+                //the session is idle. Join the session
+                if (RemountSession.hasSession(mpDst) ||
+                        !MountPointHelper.isReadWrite(mpDst)) {
                     needMountDst = true;
                 } else {
                     //Mount point is already read-write
@@ -1592,7 +2021,10 @@ public final class CommandHelper {
         MountPoint mpSrc = executable.getSrcWritableMountPoint();
         if (mpSrc != null) {
             if (MountPointHelper.isMountAllowed(mpSrc)) {
-                if (!MountPointHelper.isReadWrite(mpSrc)) {
+                //A mount point in a session reads as read-write, but it's restored when
+                //the session is idle. Join the session
+                if (RemountSession.hasSession(mpSrc) ||
+                        !MountPointHelper.isReadWrite(mpSrc)) {
                     needMountSrc = true;
                 } else {
                     //Mount point is already read-write
@@ -1607,86 +2039,142 @@ public final class CommandHelper {
             //and notify to the user
         }
 
-        //Create the mount/unmount executables
-        MountExecutable mountDstExecutable = null;
-        MountExecutable unmountDstExecutable = null;
-        if (needMountDst) {
-            mountDstExecutable =
-                    console.getExecutableFactory().newCreator().
-                        createMountExecutable(mpDst, true);
-            unmountDstExecutable =
-                    console.getExecutableFactory().newCreator().
-                        createMountExecutable(mpDst, false);
-        }
-        MountExecutable mountSrcExecutable = null;
-        MountExecutable unmountSrcExecutable = null;
-        if (needMountSrc) {
-            mountSrcExecutable =
-                    console.getExecutableFactory().newCreator().
-                        createMountExecutable(mpSrc, true);
-            unmountSrcExecutable =
-                    console.getExecutableFactory().newCreator().
-                        createMountExecutable(mpSrc, false);
-        }
-
-        //Execute the commands
+        //Acquire the read-write sessions of the mount points. A mount point that is
+        //read-write by another session isn't remounted again
         boolean mountExecutedDst = false;
         boolean mountExecutedSrc = false;
+        boolean success = false;
         try {
             if (needMountDst) {
-                //Execute the mount command
-                console.execute(mountDstExecutable);
-                mountExecutedDst = true;
+                mountExecutedDst = RemountSession.acquire(console, mpDst);
+                //The session could have been restored meanwhile, and the mount point
+                //be read-write by itself
+                needMountDst = mountExecutedDst;
             }
             if (needMountSrc) {
-                //Execute the mount command
-                console.execute(mountSrcExecutable);
-                mountExecutedSrc = true;
+                mountExecutedSrc = RemountSession.acquire(console, mpSrc);
+                needMountSrc = mountExecutedSrc;
             }
 
             //Execute the command
             console.execute(executable);
+            success = true;
 
         } catch (InsufficientPermissionsException ipEx) {
             //Configure the commands to execute
-            if (needMountDst && !mountExecutedDst) {
+            if ((needMountDst && !mountExecutedDst) || (needMountSrc && !mountExecutedSrc)) {
                 //The failed operation was the mount rw operation
                 //This operations is already in the exception in the fifo queue
                 ipEx.addExecutable(executable);
-            } else if (needMountSrc && !mountExecutedSrc) {
-                //The failed operation was the mount rw operation
-                //This operations is already in the exception in the fifo queue
-                ipEx.addExecutable(executable);
-            }
-            if (needMountDst) {
-                //A mount operation was executed or will be executed
-                ipEx.addExecutable(unmountDstExecutable);
-            }
-            if (needMountSrc) {
-                //A mount operation was executed or will be executed
-                ipEx.addExecutable(unmountSrcExecutable);
+                if (needMountDst && !mountExecutedDst) {
+                    //The relaunched mount operation isn't part of a session
+                    ipEx.addExecutable(
+                            console.getExecutableFactory().newCreator().
+                                createMountExecutable(mpDst, false));
+                }
+                if (needMountSrc && !mountExecutedSrc) {
+                    ipEx.addExecutable(
+                            console.getExecutableFactory().newCreator().
+                                createMountExecutable(mpSrc, false));
+                }
             }
 
             //Rethrow the exception
             throw ipEx;
 
         } finally {
-            //If previously was a mount successful execution, then execute
-            //and unmount operation
-            if (mountExecutedDst && !leaveDeviceMounted) {
-                //Execute the unmount command
-                console.execute(unmountDstExecutable);
+            //The operation changed the disk usage of the written filesystems
+            if (mpDst == null && mpSrc == null) {
+                DiskUsageCache.invalidateAll();
+            } else {
+                if (mpDst != null) {
+                    DiskUsageCache.invalidate(mpDst);
+                }
+                if (mpSrc != null) {
+                    DiskUsageCache.invalidate(mpSrc);
+                }
             }
-            if (mountExecutedSrc && !leaveDeviceMounted) {
-                //Execute the unmount command
-                console.execute(unmountSrcExecutable);
+            //And the cached searches can miss the written files
+            SearchResultCache.clear();
+
+            //Release the sessions (the mount points are restored when they are idle).
+            //If the filesystem must be left mounted, the caller releases them
+            if (mountExecutedDst && (!leaveDeviceMounted || !success)) {
+                RemountSession.release(console, mpDst);
+            }
+            if (mountExecutedSrc && (!leaveDeviceMounted || !success)) {
+                RemountSession.release(console, mpSrc);
             }
         }
 
-        // If the needed unmount was executed
+        // If a session was left acquired
         return (mountExecutedDst || mountExecutedSrc) && leaveDeviceMounted;
     }
 
+    /**
+     * Method that copies or moves a file system object in background.
+     *
+     * @param context The current context (needed if console == null)
+     * @param move If the source must be moved (otherwise it's copied)
+     * @param src The file system object to copy or move
+     * @param dst The destination file system object
+     * @param journal The journal of the operation (may be null)
+     * @param asyncResultListener The listener where to return the progress
+     * @param console The console in which execute the program.
+     * <code>null</code> to attach to the default console
+     * @return TransferExecutable The command executed in background
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     */
+    private static TransferExecutable transfer(
+            Context context, boolean move, String src, String dst, TransferJournal journal,
+            AsyncResultListener asyncResultListener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException {
+        Console c = ensureConsole(context, console);
+
+        // Create a wrapper listener, for unmount the filesystems if necessary
+        UnmountAsyncResultListener wrapperListener = new UnmountAsyncResultListener();
+        wrapperListener.mCtx = context;
+        wrapperListener.mConsole = c;
+        wrapperListener.mRef = asyncResultListener;
+
+        TransferExecutable executable1 = move
+                ? c.getExecutableFactory().newCreator().
+                        createMoveExecutable(src, dst, journal, wrapperListener)
+                : c.getExecutableFactory().newCreator().
+                        createCopyExecutable(src, dst, journal, wrapperListener);
+
+        // Prior to write to disk the data, ensure that can write to the disk creating
+        // the parent folder of the destination (and of the source, that a move deletes)
+        CreateDirExecutable executable2 =
+                c.getExecutableFactory().newCreator().
+                    createCreateDirectoryExecutable(new File(dst).getParent());
+        wrapperListener.mUnmount = writableExecute(context, executable2, c, true);
+        wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+        if (move) {
+            CreateDirExecutable executable3 =
+                    c.getExecutableFactory().newCreator().
+                        createCreateDirectoryExecutable(new File(src).getParent());
+            wrapperListener.mUnmountSrc = writableExecute(context, executable3, c, true);
+            wrapperListener.mSrcMountPoint = executable3.getDstWritableMountPoint();
+        }
+
+        //- Copy or move
+        execute(context, executable1, c, wrapperListener);
+        return executable1;
+    }
+
     /**
      * Method that ensure the console retrieve the default console if a console
      * is not passed.
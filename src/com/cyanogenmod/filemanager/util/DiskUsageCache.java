@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.os.StatFs;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.DiskUsage;
+import com.cyanogenmod.filemanager.model.MountPoint;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class that returns the disk usage of the mount points, computed with
+ * {@link StatFs} (a single syscall) when possible, and with the <code>df</code>
+ * command of the console only as a fallback.<br/>
+ * <br/>
+ * The disk usage of every mount point is cached for {@link #TTL} milliseconds, and
+ * the write operations of the application invalidate the disk usage of the mount
+ * points they write to. The methods of this class may block (the fallback runs a
+ * console command), so they mustn't be called from the UI thread.
+ */
+public final class DiskUsageCache {
+
+    private static final String TAG = "DiskUsageCache"; //$NON-NLS-1$
+
+    private static final boolean DEBUG = false;
+
+    /**
+     * The time that the disk usage of a mount point is cached, in milliseconds.
+     */
+    public static final long TTL = 10000L;
+
+    /**
+     * A cached disk usage.
+     */
+    private static class Entry {
+        DiskUsage mDiskUsage;
+        long mTime;
+    }
+
+    // The cached disk usage by mount point
+    private static final Map<String, Entry> sEntries = new HashMap<String, Entry>();
+
+    /**
+     * Constructor of <code>DiskUsageCache</code>.
+     */
+    private DiskUsageCache() {
+        super();
+    }
+
+    /**
+     * Method that returns the disk usage of a mount point.
+     *
+     * @param mp The mount point
+     * @return DiskUsage The disk usage information, or null if it can't be retrieved
+     */
+    public static DiskUsage getDiskUsage(MountPoint mp) {
+        String path = mp.getMountPoint();
+        long now = SystemClock.elapsedRealtime();
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(path);
+            if (entry != null && (now - entry.mTime) <= TTL) {
+                return entry.mDiskUsage;
+            }
+        }
+
+        DiskUsage du = statfs(path);
+        if (du == null) {
+            // Fallback to the console
+            du = MountPointHelper.getMountPointDiskUsage(mp);
+        }
+        if (du != null) {
+            Entry entry = new Entry();
+            entry.mDiskUsage = du;
+            entry.mTime = now;
+            synchronized (sEntries) {
+                sEntries.put(path, entry);
+            }
+        }
+        return du;
+    }
+
+    /**
+     * Method that invalidates the cached disk usage of a mount point.
+     *
+     * @param mp The mount point
+     */
+    public static void invalidate(MountPoint mp) {
+        synchronized (sEntries) {
+            sEntries.remove(mp.getMountPoint());
+        }
+    }
+
+    /**
+     * Method that invalidates the cached disk usage of all the mount points.
+     */
+    public static void invalidateAll() {
+        synchronized (sEntries) {
+            sEntries.clear();
+        }
+    }
+
+    /**
+     * Method that computes the disk usage of a mount point with {@link StatFs}. Used
+     * and free space are computed as <code>df</code> does (the free space is the space
+     * available to non-root users).
+     *
+     * @param path The mount point
+     * @return DiskUsage The disk usage information, or null if the mount point can't
+     * be queried
+     */
+    private static DiskUsage statfs(String path) {
+        try {
+            StatFs stat = new StatFs(path);
+            long blockSize = stat.getBlockSize();
+            long total = stat.getBlockCount() * blockSize;
+            long used = (stat.getBlockCount() - (long)stat.getFreeBlocks()) * blockSize;
+            long free = stat.getAvailableBlocks() * blockSize;
+            return new DiskUsage(path, total, used, free);
+        } catch (Exception e) {
+            if (DEBUG) {
+                Log.v(TAG, String.format("statfs of %s failed", path), e); //$NON-NLS-1$
+            }
+        }
+        return null;
+    }
+}
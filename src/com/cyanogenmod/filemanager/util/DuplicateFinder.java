@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.RegularFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A class that finds the files with the same content while a tree is walked.<br/>
+ * <br/>
+ * The files are compared in stages, and a file only reaches a stage when other file
+ * matched it in the previous one:
+ * <ol>
+ * <li>The size. Files with a unique size are never read.</li>
+ * <li>A hash of the first and the last {@link #PARTIAL_BLOCK} bytes. Files smaller than
+ * two blocks are hashed completely here, and skip the next stage.</li>
+ * <li>The MD5 of the whole file, read as a stream.</li>
+ * </ol>
+ * The hashes are computed by a pool of {@link #MAX_THREADS} threads while the walk
+ * continues, and a group of duplicates is notified (see {@link #onDuplicates(
+ * DuplicateGroup)}) as soon as its second file is confirmed, and again every time it
+ * grows. The hashes are kept in the {@link HashCache}, so the files that didn't change
+ * are not read again.<br/>
+ * <br/>
+ * The methods of this class can be called concurrently from several walker threads.
+ */
+public class DuplicateFinder {
+
+    private static final String TAG = "DuplicateFinder"; //$NON-NLS-1$
+
+    /**
+     * The size of the blocks of the start and the end of the files that are hashed
+     * in the partial stage.
+     */
+    public static final int PARTIAL_BLOCK = 64 * 1024;
+
+    /**
+     * The number of threads that hash the files.
+     */
+    public static final int MAX_THREADS = 4;
+
+    // The time between checks of the abort of the operation
+    private static final long POLL_DELAY = 250L;
+
+    private static final String HASH_ALGORITHM = "MD5"; //$NON-NLS-1$
+
+    /**
+     * A file being compared.
+     */
+    private static final class Candidate {
+        final FileSystemObject mFso;
+        final File mFile;
+        final long mSize;
+        final HashCache.Entry mEntry;
+
+        /**
+         * Constructor of <code>Candidate</code>.
+         *
+         * @param fso The file
+         * @param entry The hashes of the file
+         */
+        Candidate(FileSystemObject fso, HashCache.Entry entry) {
+            super();
+            this.mFso = fso;
+            this.mFile = fso == null ? null : new File(fso.getFullPath());
+            this.mSize = fso == null ? 0 : fso.getSize();
+            this.mEntry = entry;
+        }
+    }
+
+    // The mark of a key that has already matched two files
+    private static final Candidate MATCHED = new Candidate(null, null);
+
+    private final String mRoot;
+    private final boolean mUseCache;
+    private final Object mLock = new Object();
+    // Guarded by mLock. The first file of every key, or MATCHED after the second file
+    private final Map<Long, Candidate> mBySize;
+    private final Map<String, Candidate> mByPartial;
+    private final Map<String, Candidate> mByHash;
+    private final Map<String, DuplicateGroup> mGroups;
+    private Map<String, HashCache.Entry> mCache;
+    private Set<String> mUnseen;
+    private final Set<HashCache.Entry> mChanged;
+    private int mPending;
+    private ExecutorService mExecutor;
+    private final ThreadLocal<byte[]> mBuffers;
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>DuplicateFinder</code>.
+     *
+     * @param root The absolute path of the walked folder
+     * @param useCache If the hashes must be read from and saved to the {@link HashCache}
+     */
+    public DuplicateFinder(String root, boolean useCache) {
+        super();
+        this.mRoot = root;
+        this.mUseCache = useCache;
+        this.mBySize = new HashMap<Long, Candidate>();
+        this.mByPartial = new HashMap<String, Candidate>();
+        this.mByHash = new HashMap<String, Candidate>();
+        this.mGroups = new HashMap<String, DuplicateGroup>();
+        this.mChanged = new HashSet<HashCache.Entry>();
+        this.mBuffers = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[PARTIAL_BLOCK];
+            }
+        };
+        this.mCancelled = false;
+    }
+
+    /**
+     * Method that starts the finder. Must be called before adding files.
+     */
+    public void start() {
+        Map<String, HashCache.Entry> cache = this.mUseCache
+                ? HashCache.load(this.mRoot)
+                : new HashMap<String, HashCache.Entry>();
+        synchronized (this.mLock) {
+            this.mCache = cache;
+            this.mUnseen = new HashSet<String>(cache.keySet());
+            this.mPending = 0;
+        }
+        this.mExecutor = Executors.newFixedThreadPool(MAX_THREADS);
+    }
+
+    /**
+     * Method that adds a file found by the walk. Only regular files with content
+     * are compared.
+     *
+     * @param fso The file
+     */
+    public void addFile(FileSystemObject fso) {
+        if (this.mCancelled || !(fso instanceof RegularFile)) {
+            return;
+        }
+        long size = fso.getSize();
+        long modified = fso.getLastModifiedTime().getTime();
+        Candidate first = null;
+        Candidate candidate = null;
+        synchronized (this.mLock) {
+            String path = fso.getFullPath();
+            this.mUnseen.remove(path);
+            if (size <= 0) {
+                return;
+            }
+            HashCache.Entry entry = this.mCache.get(path);
+            if (entry == null || !entry.isValid(size, modified)) {
+                entry = new HashCache.Entry(path, size, modified);
+            }
+            candidate = new Candidate(fso, entry);
+
+            // Stage 1: the size
+            Long key = Long.valueOf(size);
+            first = this.mBySize.get(key);
+            if (first == null) {
+                this.mBySize.put(key, candidate);
+                return;
+            }
+            if (first != MATCHED) {
+                this.mBySize.put(key, MATCHED);
+            } else {
+                first = null;
+            }
+        }
+        if (first != null) {
+            submitPartial(first);
+        }
+        submitPartial(candidate);
+    }
+
+    /**
+     * Method that waits until all the files added were compared, and saves the
+     * hashes computed in the cache.
+     *
+     * @return boolean If the comparison wasn't cancelled
+     */
+    public boolean await() {
+        try {
+            synchronized (this.mLock) {
+                while (this.mPending > 0) {
+                    if (this.mCancelled || isAborted()) {
+                        return false;
+                    }
+                    this.mLock.wait(POLL_DELAY);
+                }
+            }
+            return !this.mCancelled;
+
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            this.mExecutor.shutdownNow();
+            saveCache();
+        }
+    }
+
+    /**
+     * Method that cancels the comparison. The files being hashed are abandoned.
+     */
+    public void cancel() {
+        this.mCancelled = true;
+        synchronized (this.mLock) {
+            this.mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Method that returns the groups of duplicates found, the ones that waste more
+     * space first.
+     *
+     * @return List<DuplicateGroup> The groups of duplicates
+     */
+    public List<DuplicateGroup> getDuplicates() {
+        List<DuplicateGroup> groups;
+        synchronized (this.mLock) {
+            groups = new ArrayList<DuplicateGroup>(this.mGroups.size());
+            for (DuplicateGroup group : this.mGroups.values()) {
+                groups.add(group.clone());
+            }
+        }
+        Collections.sort(groups, new Comparator<DuplicateGroup>() {
+            @Override
+            public int compare(DuplicateGroup lhs, DuplicateGroup rhs) {
+                long l = lhs.getWastedSpace();
+                long r = rhs.getWastedSpace();
+                return l > r ? -1 : (l < r ? 1 : 0);
+            }
+        });
+        return groups;
+    }
+
+    /**
+     * Method invoked when a group of duplicates is found or grows. The method is
+     * invoked from the hashing threads, one group at a time.
+     *
+     * @param group A snapshot of the group
+     */
+    protected void onDuplicates(DuplicateGroup group) {
+        /**NON BLOCK**/
+    }
+
+    /**
+     * Method that returns if the comparison must be aborted. Checked before every
+     * file and every block read.
+     *
+     * @return boolean If the comparison must be aborted
+     */
+    protected boolean isAborted() {
+        return false;
+    }
+
+    /**
+     * Method that submits the partial hash of a file.
+     *
+     * @param candidate The file
+     */
+    private void submitPartial(final Candidate candidate) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                partialStage(candidate);
+            }
+        });
+    }
+
+    /**
+     * Method that submits the full hash of a file.
+     *
+     * @param candidate The file
+     */
+    private void submitFull(final Candidate candidate) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                fullStage(candidate);
+            }
+        });
+    }
+
+    /**
+     * Method that submits a task to the pool, accounting it as pending until it ends.
+     *
+     * @param task The task
+     */
+    private void submit(final Runnable task) {
+        synchronized (this.mLock) {
+            this.mPending++;
+        }
+        try {
+            this.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!DuplicateFinder.this.mCancelled && !isAborted()) {
+                            task.run();
+                        }
+                    } finally {
+                        taskEnded();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The comparison ended
+            taskEnded();
+        }
+    }
+
+    /**
+     * Method that accounts the end of a task.
+     *
+     * @hide
+     */
+    void taskEnded() {
+        synchronized (this.mLock) {
+            this.mPending--;
+            if (this.mPending <= 0) {
+                this.mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Method that groups a file by the hash of its first and last blocks.
+     *
+     * @param candidate The file
+     * @hide
+     */
+    void partialStage(Candidate candidate) {
+        HashCache.Entry entry = candidate.mEntry;
+        boolean whole = candidate.mSize <= PARTIAL_BLOCK * 2L;
+        String partial = entry.getPartial();
+        if (partial == null || (whole && entry.getMd5() == null)) {
+            try {
+                partial = whole ? hash(candidate.mFile, false) : hash(candidate.mFile, true);
+            } catch (IOException e) {
+                logReadError(candidate, e);
+                return;
+            }
+            synchronized (this.mLock) {
+                entry.setPartial(partial);
+                if (whole) {
+                    entry.setMd5(partial);
+                }
+                this.mChanged.add(entry);
+            }
+        }
+        if (whole) {
+            // The partial hash covers the whole file
+            confirm(candidate, partial);
+            return;
+        }
+
+        // Stage 2: the first and last blocks
+        String key = candidate.mSize + ":" + partial; //$NON-NLS-1$
+        Candidate first = null;
+        synchronized (this.mLock) {
+            first = this.mByPartial.get(key);
+            if (first == null) {
+                this.mByPartial.put(key, candidate);
+                return;
+            }
+            if (first != MATCHED) {
+                this.mByPartial.put(key, MATCHED);
+            } else {
+                first = null;
+            }
+        }
+        if (first != null) {
+            submitFull(first);
+        }
+        fullStage(candidate);
+    }
+
+    /**
+     * Method that computes the hash of the whole file, and confirms it.
+     *
+     * @param candidate The file
+     * @hide
+     */
+    void fullStage(Candidate candidate) {
+        HashCache.Entry entry = candidate.mEntry;
+        String md5 = entry.getMd5();
+        if (md5 == null) {
+            try {
+                md5 = hash(candidate.mFile, false);
+            } catch (IOException e) {
+                logReadError(candidate, e);
+                return;
+            }
+            synchronized (this.mLock) {
+                entry.setMd5(md5);
+                this.mChanged.add(entry);
+            }
+        }
+        confirm(candidate, md5);
+    }
+
+    /**
+     * Method that groups a file by the hash of its content. The second file of a hash
+     * creates a group of duplicates.
+     *
+     * @param candidate The file
+     * @param md5 The hash of the content of the file
+     */
+    private void confirm(Candidate candidate, String md5) {
+        // Stage 3: the whole content
+        String key = candidate.mSize + ":" + md5; //$NON-NLS-1$
+        synchronized (this.mLock) {
+            if (this.mCancelled) {
+                return;
+            }
+            DuplicateGroup group = this.mGroups.get(key);
+            if (group == null) {
+                Candidate first = this.mByHash.remove(key);
+                if (first == null) {
+                    this.mByHash.put(key, candidate);
+                    return;
+                }
+                group = new DuplicateGroup(candidate.mSize, md5);
+                group.addFile(first.mFso);
+                this.mGroups.put(key, group);
+            }
+            group.addFile(candidate.mFso);
+            onDuplicates(group.clone());
+        }
+    }
+
+    /**
+     * Method that computes the hash of a file.
+     *
+     * @param file The file
+     * @param partial If only the first and the last blocks must be hashed
+     * @return String The hash of the file, in hexadecimal
+     * @throws IOException If the file can't be read
+     */
+    private String hash(File file, boolean partial) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        byte[] buffer = this.mBuffers.get();
+        if (partial) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+            try {
+                raf.readFully(buffer, 0, PARTIAL_BLOCK);
+                digest.update(buffer, 0, PARTIAL_BLOCK);
+                raf.seek(raf.length() - PARTIAL_BLOCK);
+                raf.readFully(buffer, 0, PARTIAL_BLOCK);
+                digest.update(buffer, 0, PARTIAL_BLOCK);
+            } finally {
+                raf.close();
+            }
+        } else {
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = fis.read(buffer)) != -1) {
+                    if (this.mCancelled || isAborted()) {
+                        throw new InterruptedIOException();
+                    }
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                fis.close();
+            }
+        }
+        return HashCache.toHex(digest.digest());
+    }
+
+    /**
+     * Method that logs a file that couldn't be hashed. The file is not compared.
+     *
+     * @param candidate The file
+     * @param e The cause
+     */
+    private static void logReadError(Candidate candidate, IOException e) {
+        if (!(e instanceof InterruptedIOException)) {
+            Log.w(TAG, String.format("Failed to hash %s", candidate.mFile), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that saves the hashes computed in the cache. The files of the cache that
+     * weren't found are removed, but only if the walk completed.
+     */
+    private void saveCache() {
+        if (!this.mUseCache) {
+            return;
+        }
+        List<HashCache.Entry> changed;
+        List<String> removed;
+        synchronized (this.mLock) {
+            changed = new ArrayList<HashCache.Entry>(this.mChanged);
+            removed = this.mCancelled || isAborted()
+                    ? new ArrayList<String>()
+                    : new ArrayList<String>(this.mUnseen);
+            this.mChanged.clear();
+        }
+        HashCache.save(changed, removed);
+    }
+}
@@ -139,6 +139,23 @@ public final class ExceptionUtil {
         }
     }
 
+    /**
+     * Method that returns the message that describes an exception to the user.
+     *
+     * @param ex The exception
+     * @return int The resource identifier of the message
+     */
+    public static int getExceptionMessage(Throwable ex) {
+        int cc = KNOWN_EXCEPTIONS.length;
+        for (int i = 0; i < cc; i++) {
+            if (KNOWN_EXCEPTIONS[i].getCanonicalName().compareTo(
+                    ex.getClass().getCanonicalName()) == 0) {
+                return KNOWN_EXCEPTIONS_IDS[i];
+            }
+        }
+        return R.string.msgs_unknown;
+    }
+
     /**
      * Method that captures and translate an exception, showing a
      * toast or a alert, according to the importance.
@@ -247,19 +264,8 @@ public final class ExceptionUtil {
             final boolean quiet,
             final OnRelaunchCommandResult listener) {
 
-        //Is privileged?
-        boolean isPrivileged = false;
-        try {
-            isPrivileged = ConsoleBuilder.getConsole(context).isPrivileged();
-        } catch (Throwable ex) {
-            /**NON BLOCK**/
-        }
-
-        // If console is privileged there is not need to change
-        // If we are in a ChRooted environment, resolve the error without doing anymore
-        if (relaunchable instanceof InsufficientPermissionsException &&
-                (isPrivileged ||
-                 FileManagerApplication.getAccessMode().compareTo(AccessMode.SAFE) == 0)) {
+        // If the failure can't be resolved, translate the error without doing anymore
+        if (!canRelaunch(context, relaunchable)) {
             translateException(
                     context, relaunchable, quiet, false, null);
 
@@ -327,6 +333,57 @@ public final class ExceptionUtil {
         DialogHelper.delegateDialogShow(context, alert);
     }
 
+    /**
+     * Method that returns if the command of an exception can be relaunched after
+     * resolving its failure (changing to a privileged console).
+     *
+     * @param context The current context
+     * @param ex The exception
+     * @return boolean If the command of the exception can be relaunched
+     */
+    public static boolean canRelaunch(Context context, Throwable ex) {
+        if (!(ex instanceof RelaunchableException)) {
+            return false;
+        }
+
+        //Is privileged?
+        boolean isPrivileged = false;
+        try {
+            isPrivileged = ConsoleBuilder.getConsole(context).isPrivileged();
+        } catch (Throwable e) {
+            /**NON BLOCK**/
+        }
+
+        // If console is privileged there is not need to change
+        // If we are in a ChRooted environment, the failure can't be resolved
+        return !(ex instanceof InsufficientPermissionsException &&
+                (isPrivileged ||
+                 FileManagerApplication.getAccessMode().compareTo(AccessMode.SAFE) == 0));
+    }
+
+    /**
+     * Method that prepares the system and re-executes the pending commands of an
+     * exception, without asking the user (the user already accepted the relaunch).
+     * The caller relaunches the failed command then.
+     *
+     * @param context The current context
+     * @param relaunchable The {@link RelaunchableException} reference
+     * @throws Throwable If a command fails again
+     */
+    public static void relaunch(
+            final Context context, final RelaunchableException relaunchable)
+            throws Throwable {
+        //Prepare the system before re-launch the command
+        prepare(context, relaunchable);
+
+        //Re-execute the pending commands
+        List<SyncResultExecutable> executables = relaunchable.getExecutables();
+        int cc = executables.size();
+        for (int i = 0; i < cc; i++) {
+            CommandHelper.reexecute(context, executables.get(i), null);
+        }
+    }
+
     /**
      * Method that prepares the system for re-execute the command.
      *
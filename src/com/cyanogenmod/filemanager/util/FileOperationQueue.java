@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.model.FileOperation;
+import com.cyanogenmod.filemanager.preferences.CompressionMode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The persistent queue of the file operations that run in background.<br/>
+ * <br/>
+ * An operation is stored when it is queued, and removed when it ends (successfully or
+ * not), so the operations stored when the application starts are the operations
+ * interrupted by the death of the process, that must be run again. A copy or move
+ * operation is resumed from its {@link TransferJournal}.
+ */
+public final class FileOperationQueue {
+
+    private static final String TAG = "FileOperationQueue"; //$NON-NLS-1$
+
+    private static final String DATABASE_NAME = "file_operations.db"; //$NON-NLS-1$
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE = "file_operations"; //$NON-NLS-1$
+    private static final String COLUMN_ID = "_id"; //$NON-NLS-1$
+    private static final String COLUMN_TYPE = "type"; //$NON-NLS-1$
+    private static final String COLUMN_SOURCES = "sources"; //$NON-NLS-1$
+    private static final String COLUMN_DESTINATIONS = "destinations"; //$NON-NLS-1$
+    private static final String COLUMN_MODE = "mode"; //$NON-NLS-1$
+    private static final String COLUMN_JOURNAL = "journal"; //$NON-NLS-1$
+
+    // The separator of the paths of a column (as the records of the transfer journals)
+    private static final String PATH_SEPARATOR = "\n"; //$NON-NLS-1$
+
+    /**
+     * The helper of the queue database.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        /**
+         * Constructor of <code>DatabaseHelper</code>
+         *
+         * @param context The current context
+         */
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                       COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," + //$NON-NLS-1$
+                       COLUMN_TYPE + " TEXT," + //$NON-NLS-1$
+                       COLUMN_SOURCES + " TEXT," + //$NON-NLS-1$
+                       COLUMN_DESTINATIONS + " TEXT," + //$NON-NLS-1$
+                       COLUMN_MODE + " TEXT," + //$NON-NLS-1$
+                       COLUMN_JOURNAL + " TEXT);"); //$NON-NLS-1$
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int currentVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE); //$NON-NLS-1$
+            onCreate(db);
+        }
+    }
+
+    private static DatabaseHelper sHelper;
+
+    /**
+     * Constructor of <code>FileOperationQueue</code>.
+     */
+    private FileOperationQueue() {
+        super();
+    }
+
+    /**
+     * Method that returns the database of the queue.
+     *
+     * @return SQLiteDatabase The database of the queue
+     */
+    private static synchronized SQLiteDatabase getDatabase() {
+        if (sHelper == null) {
+            sHelper = new DatabaseHelper(FileManagerApplication.getInstance());
+        }
+        return sHelper.getWritableDatabase();
+    }
+
+    /**
+     * Method that stores an operation, and sets its identifier.
+     *
+     * @param operation The operation
+     * @return boolean If the operation was stored
+     */
+    public static boolean add(FileOperation operation) {
+        try {
+            ContentValues values = new ContentValues(5);
+            values.put(COLUMN_TYPE, operation.getType().name());
+            values.put(COLUMN_SOURCES, join(operation.getSources()));
+            values.put(COLUMN_DESTINATIONS, join(operation.getDestinations()));
+            values.put(COLUMN_MODE,
+                    operation.getMode() != null ? operation.getMode().name() : null);
+            values.put(COLUMN_JOURNAL, operation.getJournal());
+            long id = getDatabase().insert(TABLE, null, values);
+            if (id != -1) {
+                operation.setId(id);
+                return true;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to store %s", operation), e); //$NON-NLS-1$
+        }
+        return false;
+    }
+
+    /**
+     * Method that records the transfer journal of a stored copy or move operation.
+     *
+     * @param operation The operation, with its journal
+     */
+    public static void updateJournal(FileOperation operation) {
+        try {
+            ContentValues values = new ContentValues(1);
+            values.put(COLUMN_JOURNAL, operation.getJournal());
+            getDatabase().update(
+                    TABLE, values, COLUMN_ID + " = ?", //$NON-NLS-1$
+                    new String[]{String.valueOf(operation.getId())});
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to update %s", operation), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that removes an ended operation.
+     *
+     * @param operation The operation
+     */
+    public static void remove(FileOperation operation) {
+        try {
+            getDatabase().delete(
+                    TABLE, COLUMN_ID + " = ?", //$NON-NLS-1$
+                    new String[]{String.valueOf(operation.getId())});
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to remove %s", operation), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that loads the stored operations, in the order they were queued.
+     *
+     * @return List<FileOperation> The stored operations
+     */
+    public static List<FileOperation> load() {
+        List<FileOperation> operations = new ArrayList<FileOperation>();
+        Cursor c = null;
+        try {
+            c = getDatabase().query(TABLE, null, null, null, null, null, COLUMN_ID);
+            while (c.moveToNext()) {
+                FileOperation operation = fromCursor(c);
+                if (operation != null) {
+                    operations.add(operation);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load the queued operations", e); //$NON-NLS-1$
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Method that returns the transfer journals of the stored operations, that are
+     * resumed with their operations.
+     *
+     * @return Set<String> The names of the journals
+     */
+    public static Set<String> getJournals() {
+        Set<String> journals = new HashSet<String>();
+        Cursor c = null;
+        try {
+            c = getDatabase().query(
+                    TABLE, new String[]{COLUMN_JOURNAL},
+                    COLUMN_JOURNAL + " IS NOT NULL", //$NON-NLS-1$
+                    null, null, null, null);
+            while (c.moveToNext()) {
+                journals.add(c.getString(0));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load the journals of the queue", e); //$NON-NLS-1$
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Method that creates an operation from the current row of a cursor.
+     *
+     * @param c The cursor
+     * @return FileOperation The operation, or null if the row is invalid
+     */
+    private static FileOperation fromCursor(Cursor c) {
+        FileOperation.TYPE type;
+        CompressionMode mode = null;
+        try {
+            type = FileOperation.TYPE.valueOf(
+                    c.getString(c.getColumnIndexOrThrow(COLUMN_TYPE)));
+            String m = c.getString(c.getColumnIndexOrThrow(COLUMN_MODE));
+            if (m != null) {
+                mode = CompressionMode.valueOf(m);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid queued operation", e); //$NON-NLS-1$
+            return null;
+        }
+        FileOperation operation = new FileOperation(type);
+        operation.setId(c.getLong(c.getColumnIndexOrThrow(COLUMN_ID)));
+        operation.getSources().addAll(
+                split(c.getString(c.getColumnIndexOrThrow(COLUMN_SOURCES))));
+        operation.getDestinations().addAll(
+                split(c.getString(c.getColumnIndexOrThrow(COLUMN_DESTINATIONS))));
+        operation.setMode(mode);
+        operation.setJournal(c.getString(c.getColumnIndexOrThrow(COLUMN_JOURNAL)));
+        return operation;
+    }
+
+    /**
+     * Method that joins a list of paths in a column value.
+     *
+     * @param paths The paths
+     * @return String The column value
+     */
+    private static String join(List<String> paths) {
+        StringBuilder sb = new StringBuilder();
+        int cc = paths.size();
+        for (int i = 0; i < cc; i++) {
+            if (i > 0) {
+                sb.append(PATH_SEPARATOR);
+            }
+            sb.append(paths.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that splits a column value in a list of paths.
+     *
+     * @param value The column value
+     * @return List<String> The paths
+     */
+    private static List<String> split(String value) {
+        List<String> paths = new ArrayList<String>();
+        if (value == null || value.length() == 0) {
+            return paths;
+        }
+        String[] data = value.split(PATH_SEPARATOR);
+        for (int i = 0; i < data.length; i++) {
+            paths.add(data[i]);
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.model.FolderUsage;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A persistent cache of the usage of the folders.<br/>
+ * <br/>
+ * Every folder is stored with the usage of its own entries (not recursive), the names
+ * of its subfolders and its modification time. The modification time of a folder changes
+ * when an entry is added, removed or renamed, so the usage of a tree can be computed
+ * again stat'ing only its folders and listing only the folders that changed.<br/>
+ * <br/>
+ * Changes in the content of a file don't change the modification time of its folder,
+ * so the size of a file modified in place is not updated until its folder changes.
+ */
+public final class FolderUsageCache {
+
+    private static final String TAG = "FolderUsageCache"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    private static final String DATABASE_NAME = "folder_usage.db"; //$NON-NLS-1$
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE = "folder_usage"; //$NON-NLS-1$
+    private static final String COLUMN_PATH = "path"; //$NON-NLS-1$
+    private static final String COLUMN_MODIFIED = "modified"; //$NON-NLS-1$
+    private static final String COLUMN_FOLDERS = "folders"; //$NON-NLS-1$
+    private static final String COLUMN_FILES = "files"; //$NON-NLS-1$
+    private static final String COLUMN_SIZE = "size"; //$NON-NLS-1$
+    private static final String COLUMN_CATEGORIES = "categories"; //$NON-NLS-1$
+    private static final String COLUMN_CHILDREN = "children"; //$NON-NLS-1$
+
+    // The separator of the names of the subfolders (names can't contain it)
+    private static final String CHILDREN_SEPARATOR = File.separator;
+    private static final String CATEGORIES_SEPARATOR = ","; //$NON-NLS-1$
+
+    /**
+     * The usage of the own entries of a folder.
+     */
+    public static class DirectoryUsage {
+        final String mPath;
+        final long mModified;
+        final FolderUsage mUsage;
+        final String[] mChildren;
+
+        /**
+         * Constructor of <code>DirectoryUsage</code>.
+         *
+         * @param path The absolute path of the folder
+         * @param modified The modification time of the folder
+         * @param usage The usage of the own entries of the folder
+         * @param children The names of the subfolders
+         */
+        public DirectoryUsage(String path, long modified, FolderUsage usage, String[] children) {
+            super();
+            this.mPath = path;
+            this.mModified = modified;
+            this.mUsage = usage;
+            this.mChildren = children;
+        }
+
+        /**
+         * Method that returns the absolute path of the folder.
+         *
+         * @return String The absolute path of the folder
+         */
+        public String getPath() {
+            return this.mPath;
+        }
+
+        /**
+         * Method that returns the modification time of the folder when it was listed.
+         *
+         * @return long The modification time of the folder
+         */
+        public long getModified() {
+            return this.mModified;
+        }
+
+        /**
+         * Method that returns the usage of the own entries of the folder.
+         *
+         * @return FolderUsage The usage of the own entries of the folder
+         */
+        public FolderUsage getUsage() {
+            return this.mUsage;
+        }
+
+        /**
+         * Method that returns the names of the subfolders.
+         *
+         * @return String[] The names of the subfolders
+         */
+        public String[] getChildren() {
+            return this.mChildren;
+        }
+    }
+
+    /**
+     * The helper of the cache database.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        /**
+         * Constructor of <code>DatabaseHelper</code>
+         *
+         * @param context The current context
+         */
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                       COLUMN_PATH + " TEXT PRIMARY KEY," + //$NON-NLS-1$
+                       COLUMN_MODIFIED + " INTEGER," + //$NON-NLS-1$
+                       COLUMN_FOLDERS + " INTEGER," + //$NON-NLS-1$
+                       COLUMN_FILES + " INTEGER," + //$NON-NLS-1$
+                       COLUMN_SIZE + " INTEGER," + //$NON-NLS-1$
+                       COLUMN_CATEGORIES + " TEXT," + //$NON-NLS-1$
+                       COLUMN_CHILDREN + " TEXT);"); //$NON-NLS-1$
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int currentVersion) {
+            // Is a cache. Just drop the data
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE); //$NON-NLS-1$
+            onCreate(db);
+        }
+    }
+
+    private static DatabaseHelper sHelper;
+
+    /**
+     * Constructor of <code>FolderUsageCache</code>.
+     */
+    private FolderUsageCache() {
+        super();
+    }
+
+    /**
+     * Method that returns the database of the cache.
+     *
+     * @return SQLiteDatabase The database of the cache
+     */
+    private static synchronized SQLiteDatabase getDatabase() {
+        if (sHelper == null) {
+            sHelper = new DatabaseHelper(FileManagerApplication.getInstance());
+        }
+        return sHelper.getWritableDatabase();
+    }
+
+    /**
+     * Method that loads the cached usage of all the folders of a tree.
+     *
+     * @param root The absolute path of the root folder of the tree
+     * @return Map<String, DirectoryUsage> The cached folders by absolute path
+     */
+    public static Map<String, DirectoryUsage> load(String root) {
+        Map<String, DirectoryUsage> folders = new HashMap<String, DirectoryUsage>();
+        Cursor c = null;
+        try {
+            // The folder and its descendants ("/" + 1 == "0", so the range of the
+            // primary key includes all the paths that start with root + "/")
+            String prefix = FileHelper.addTrailingSlash(root);
+            String end = prefix.substring(0, prefix.length() - 1) + '0';
+            c = getDatabase().query(
+                    TABLE, null,
+                    COLUMN_PATH + " = ? OR (" + //$NON-NLS-1$
+                    COLUMN_PATH + " >= ? AND " + COLUMN_PATH + " < ?)", //$NON-NLS-1$ //$NON-NLS-2$
+                    new String[]{root, prefix, end}, null, null, null);
+            while (c.moveToNext()) {
+                DirectoryUsage du = fromCursor(c);
+                folders.put(du.mPath, du);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to load the usage of %s", root), e); //$NON-NLS-1$
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format("Loaded %d folders of %s", //$NON-NLS-1$
+                    Integer.valueOf(folders.size()), root));
+        }
+        return folders;
+    }
+
+    /**
+     * Method that saves the folders that changed since they were loaded and removes
+     * the folders that no longer exist.
+     *
+     * @param changed The folders listed again
+     * @param removed The absolute paths of the folders that no longer exist
+     */
+    public static void save(Collection<DirectoryUsage> changed, Collection<String> removed) {
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = getDatabase();
+            db.beginTransaction();
+            try {
+                Iterator<String> it = removed.iterator();
+                while (it.hasNext()) {
+                    db.delete(TABLE, COLUMN_PATH + " = ?", new String[]{it.next()}); //$NON-NLS-1$
+                }
+                Iterator<DirectoryUsage> it2 = changed.iterator();
+                while (it2.hasNext()) {
+                    db.replace(TABLE, null, toContentValues(it2.next()));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to save the usage of the folders", e); //$NON-NLS-1$
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format("Saved %d folders, removed %d folders", //$NON-NLS-1$
+                    Integer.valueOf(changed.size()), Integer.valueOf(removed.size())));
+        }
+    }
+
+    /**
+     * Method that removes all the cached usages.
+     */
+    public static void clear() {
+        try {
+            getDatabase().delete(TABLE, null, null);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to clear the usage of the folders", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that lists a folder and computes the usage of its own entries.
+     *
+     * @param folder The folder
+     * @param modified The modification time of the folder before being listed
+     * @return DirectoryUsage The usage of the own entries of the folder
+     */
+    public static DirectoryUsage scan(File folder, long modified) {
+        FolderUsage usage = new FolderUsage(folder.getAbsolutePath());
+        String[] children = null;
+        File[] files = folder.listFiles();
+        if (files != null) {
+            int cc = files.length;
+            String[] names = new String[cc];
+            int folders = 0;
+            for (int i = 0; i < cc; i++) {
+                File f = files[i];
+                if (f.isDirectory()) {
+                    usage.addFolder();
+                    names[folders++] = f.getName();
+                } else {
+                    // The category only depends on the extension (f is not a folder)
+                    usage.addFile();
+                    usage.addFileToCategory(
+                            MimeTypeHelper.getCategoryFromExt(
+                                    null, FileHelper.getExtension(f.getName())));
+                    usage.addSize(f.length());
+                }
+            }
+            children = new String[folders];
+            System.arraycopy(names, 0, children, 0, folders);
+        } else {
+            children = new String[0];
+        }
+        return new DirectoryUsage(folder.getAbsolutePath(), modified, usage, children);
+    }
+
+    /**
+     * Method that creates a folder usage from the current row of a cursor.
+     *
+     * @param c The cursor
+     * @return DirectoryUsage The folder usage
+     */
+    private static DirectoryUsage fromCursor(Cursor c) {
+        String path = c.getString(c.getColumnIndexOrThrow(COLUMN_PATH));
+        FolderUsage usage = new FolderUsage(path);
+        usage.setNumberOfFolders(c.getInt(c.getColumnIndexOrThrow(COLUMN_FOLDERS)));
+        usage.setNumberOfFiles(c.getInt(c.getColumnIndexOrThrow(COLUMN_FILES)));
+        usage.setTotalSize(c.getLong(c.getColumnIndexOrThrow(COLUMN_SIZE)));
+        String categories = c.getString(c.getColumnIndexOrThrow(COLUMN_CATEGORIES));
+        if (!TextUtils.isEmpty(categories)) {
+            MimeTypeCategory[] values = MimeTypeCategory.values();
+            String[] counts = categories.split(CATEGORIES_SEPARATOR);
+            int cc = Math.min(values.length, counts.length);
+            for (int i = 0; i < cc; i++) {
+                long count = Long.parseLong(counts[i]);
+                if (count > 0) {
+                    usage.addFilesToCategory(values[i], count);
+                }
+            }
+        }
+        String children = c.getString(c.getColumnIndexOrThrow(COLUMN_CHILDREN));
+        return new DirectoryUsage(
+                path,
+                c.getLong(c.getColumnIndexOrThrow(COLUMN_MODIFIED)),
+                usage,
+                TextUtils.isEmpty(children)
+                    ? new String[0]
+                    : children.split(CHILDREN_SEPARATOR));
+    }
+
+    /**
+     * Method that creates the values of a row from a folder usage.
+     *
+     * @param du The folder usage
+     * @return ContentValues The values of the row
+     */
+    private static ContentValues toContentValues(DirectoryUsage du) {
+        ContentValues values = new ContentValues(7);
+        values.put(COLUMN_PATH, du.mPath);
+        values.put(COLUMN_MODIFIED, Long.valueOf(du.mModified));
+        values.put(COLUMN_FOLDERS, Integer.valueOf(du.mUsage.getNumberOfFolders()));
+        values.put(COLUMN_FILES, Integer.valueOf(du.mUsage.getNumberOfFiles()));
+        values.put(COLUMN_SIZE, Long.valueOf(du.mUsage.getTotalSize()));
+        MimeTypeCategory[] categories = MimeTypeCategory.values();
+        StringBuilder sb = new StringBuilder();
+        int cc = categories.length;
+        for (int i = 0; i < cc; i++) {
+            if (i > 0) {
+                sb.append(CATEGORIES_SEPARATOR);
+            }
+            sb.append(du.mUsage.getStatisticsForCategory(categories[i]));
+        }
+        values.put(COLUMN_CATEGORIES, sb.toString());
+        values.put(COLUMN_CHILDREN, TextUtils.join(CHILDREN_SEPARATOR, du.mChildren));
+        return values;
+    }
+}
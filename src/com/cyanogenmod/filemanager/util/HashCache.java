@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A persistent cache of the hashes of the files.<br/>
+ * <br/>
+ * Every file is stored with its size and its modification time when it was hashed, and
+ * the hashes are only valid while both don't change. The whole cache of a tree is loaded
+ * at once, and the hashes computed are saved together in a single transaction. The
+ * checksums of a single file can be read and saved with {@link #get(String)} and
+ * {@link #put(Entry)}.
+ */
+public final class HashCache {
+
+    private static final String TAG = "HashCache"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    private static final String DATABASE_NAME = "file_hashes.db"; //$NON-NLS-1$
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE = "file_hashes"; //$NON-NLS-1$
+    private static final String COLUMN_PATH = "path"; //$NON-NLS-1$
+    private static final String COLUMN_SIZE = "size"; //$NON-NLS-1$
+    private static final String COLUMN_MODIFIED = "modified"; //$NON-NLS-1$
+    private static final String COLUMN_PARTIAL = "partial"; //$NON-NLS-1$
+    private static final String COLUMN_MD5 = "md5"; //$NON-NLS-1$
+    private static final String COLUMN_SHA1 = "sha1"; //$NON-NLS-1$
+    private static final String COLUMN_SHA256 = "sha256"; //$NON-NLS-1$
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+    /**
+     * The hashes of a file.
+     */
+    public static class Entry {
+        final String mPath;
+        final long mSize;
+        final long mModified;
+        String mPartial;
+        String mMd5;
+        String mSha1;
+        String mSha256;
+
+        /**
+         * Constructor of <code>Entry</code>.
+         *
+         * @param path The absolute path of the file
+         * @param size The size of the file
+         * @param modified The modification time of the file
+         */
+        public Entry(String path, long size, long modified) {
+            super();
+            this.mPath = path;
+            this.mSize = size;
+            this.mModified = modified;
+        }
+
+        /**
+         * Method that returns the absolute path of the file.
+         *
+         * @return String The absolute path of the file
+         */
+        public String getPath() {
+            return this.mPath;
+        }
+
+        /**
+         * Method that returns if the hashes are valid for the file.
+         *
+         * @param size The current size of the file
+         * @param modified The current modification time of the file
+         * @return boolean If the hashes are valid
+         */
+        public boolean isValid(long size, long modified) {
+            return this.mSize == size && this.mModified == modified;
+        }
+
+        /**
+         * Method that returns the hash of the first and the last blocks of the file.
+         *
+         * @return String The partial hash, or null if unknown
+         */
+        public String getPartial() {
+            return this.mPartial;
+        }
+
+        /**
+         * Method that sets the hash of the first and the last blocks of the file.
+         *
+         * @param partial The partial hash
+         */
+        public void setPartial(String partial) {
+            this.mPartial = partial;
+        }
+
+        /**
+         * Method that returns the MD5 of the whole file.
+         *
+         * @return String The MD5 of the file, or null if unknown
+         */
+        public String getMd5() {
+            return this.mMd5;
+        }
+
+        /**
+         * Method that sets the MD5 of the whole file.
+         *
+         * @param md5 The MD5 of the file
+         */
+        public void setMd5(String md5) {
+            this.mMd5 = md5;
+        }
+
+        /**
+         * Method that returns the SHA-1 of the whole file.
+         *
+         * @return String The SHA-1 of the file, or null if unknown
+         */
+        public String getSha1() {
+            return this.mSha1;
+        }
+
+        /**
+         * Method that sets the SHA-1 of the whole file.
+         *
+         * @param sha1 The SHA-1 of the file
+         */
+        public void setSha1(String sha1) {
+            this.mSha1 = sha1;
+        }
+
+        /**
+         * Method that returns the SHA-256 of the whole file.
+         *
+         * @return String The SHA-256 of the file, or null if unknown
+         */
+        public String getSha256() {
+            return this.mSha256;
+        }
+
+        /**
+         * Method that sets the SHA-256 of the whole file.
+         *
+         * @param sha256 The SHA-256 of the file
+         */
+        public void setSha256(String sha256) {
+            this.mSha256 = sha256;
+        }
+    }
+
+    /**
+     * The helper of the cache database.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        /**
+         * Constructor of <code>DatabaseHelper</code>
+         *
+         * @param context The current context
+         */
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                       COLUMN_PATH + " TEXT PRIMARY KEY," + //$NON-NLS-1$
+                       COLUMN_SIZE + " INTEGER," + //$NON-NLS-1$
+                       COLUMN_MODIFIED + " INTEGER," + //$NON-NLS-1$
+                       COLUMN_PARTIAL + " TEXT," + //$NON-NLS-1$
+                       COLUMN_MD5 + " TEXT," + //$NON-NLS-1$
+                       COLUMN_SHA1 + " TEXT," + //$NON-NLS-1$
+                       COLUMN_SHA256 + " TEXT);"); //$NON-NLS-1$
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int currentVersion) {
+            // Is a cache. Just drop the data
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE); //$NON-NLS-1$
+            onCreate(db);
+        }
+    }
+
+    private static DatabaseHelper sHelper;
+
+    /**
+     * Constructor of <code>HashCache</code>.
+     */
+    private HashCache() {
+        super();
+    }
+
+    /**
+     * Method that returns the database of the cache.
+     *
+     * @return SQLiteDatabase The database of the cache
+     */
+    private static synchronized SQLiteDatabase getDatabase() {
+        if (sHelper == null) {
+            sHelper = new DatabaseHelper(FileManagerApplication.getInstance());
+        }
+        return sHelper.getWritableDatabase();
+    }
+
+    /**
+     * Method that loads the cached hashes of all the files of a tree.
+     *
+     * @param root The absolute path of the root folder of the tree
+     * @return Map<String, Entry> The cached files by absolute path
+     */
+    public static Map<String, Entry> load(String root) {
+        Map<String, Entry> files = new HashMap<String, Entry>();
+        Cursor c = null;
+        try {
+            // The descendants of the folder ("/" + 1 == "0", so the range of the
+            // primary key includes all the paths that start with root + "/")
+            String prefix = FileHelper.addTrailingSlash(root);
+            String end = prefix.substring(0, prefix.length() - 1) + '0';
+            c = getDatabase().query(
+                    TABLE, null,
+                    COLUMN_PATH + " >= ? AND " + COLUMN_PATH + " < ?", //$NON-NLS-1$ //$NON-NLS-2$
+                    new String[]{prefix, end}, null, null, null);
+            while (c.moveToNext()) {
+                Entry entry = fromCursor(c);
+                files.put(entry.mPath, entry);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to load the hashes of %s", root), e); //$NON-NLS-1$
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format("Loaded %d files of %s", //$NON-NLS-1$
+                    Integer.valueOf(files.size()), root));
+        }
+        return files;
+    }
+
+    /**
+     * Method that loads the cached hashes of a file.
+     *
+     * @param path The absolute path of the file
+     * @return Entry The cached file, or null if the file is not in the cache
+     */
+    public static Entry get(String path) {
+        Cursor c = null;
+        try {
+            c = getDatabase().query(
+                    TABLE, null, COLUMN_PATH + " = ?", //$NON-NLS-1$
+                    new String[]{path}, null, null, null);
+            if (c.moveToFirst()) {
+                return fromCursor(c);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, String.format("Failed to load the hashes of %s", path), e); //$NON-NLS-1$
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that saves the hashes of a file.
+     *
+     * @param entry The file hashed
+     */
+    public static void put(Entry entry) {
+        try {
+            getDatabase().replace(TABLE, null, toContentValues(entry));
+        } catch (Exception e) {
+            Log.w(TAG,
+                    String.format("Failed to save the hashes of %s", entry.mPath), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that saves the hashes computed since they were loaded and removes the
+     * files that no longer exist.
+     *
+     * @param changed The files hashed
+     * @param removed The absolute paths of the files that no longer exist
+     */
+    public static void save(Collection<Entry> changed, Collection<String> removed) {
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = getDatabase();
+            db.beginTransaction();
+            try {
+                Iterator<String> it = removed.iterator();
+                while (it.hasNext()) {
+                    db.delete(TABLE, COLUMN_PATH + " = ?", new String[]{it.next()}); //$NON-NLS-1$
+                }
+                Iterator<Entry> it2 = changed.iterator();
+                while (it2.hasNext()) {
+                    db.replace(TABLE, null, toContentValues(it2.next()));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to save the hashes of the files", e); //$NON-NLS-1$
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format("Saved %d files, removed %d files", //$NON-NLS-1$
+                    Integer.valueOf(changed.size()), Integer.valueOf(removed.size())));
+        }
+    }
+
+    /**
+     * Method that removes all the cached hashes.
+     */
+    public static void clear() {
+        try {
+            getDatabase().delete(TABLE, null, null);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to clear the hashes of the files", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that creates an entry from the current row of a cursor.
+     *
+     * @param c The cursor
+     * @return Entry The entry
+     */
+    private static Entry fromCursor(Cursor c) {
+        Entry entry = new Entry(
+                c.getString(c.getColumnIndexOrThrow(COLUMN_PATH)),
+                c.getLong(c.getColumnIndexOrThrow(COLUMN_SIZE)),
+                c.getLong(c.getColumnIndexOrThrow(COLUMN_MODIFIED)));
+        entry.mPartial = c.getString(c.getColumnIndexOrThrow(COLUMN_PARTIAL));
+        entry.mMd5 = c.getString(c.getColumnIndexOrThrow(COLUMN_MD5));
+        entry.mSha1 = c.getString(c.getColumnIndexOrThrow(COLUMN_SHA1));
+        entry.mSha256 = c.getString(c.getColumnIndexOrThrow(COLUMN_SHA256));
+        return entry;
+    }
+
+    /**
+     * Method that creates the values of a row from an entry.
+     *
+     * @param entry The entry
+     * @return ContentValues The values of the row
+     */
+    private static ContentValues toContentValues(Entry entry) {
+        ContentValues values = new ContentValues(7);
+        values.put(COLUMN_PATH, entry.mPath);
+        values.put(COLUMN_SIZE, Long.valueOf(entry.mSize));
+        values.put(COLUMN_MODIFIED, Long.valueOf(entry.mModified));
+        values.put(COLUMN_PARTIAL, entry.mPartial);
+        values.put(COLUMN_MD5, entry.mMd5);
+        values.put(COLUMN_SHA1, entry.mSha1);
+        values.put(COLUMN_SHA256, entry.mSha256);
+        return values;
+    }
+
+    /**
+     * Method that converts a digest to hexadecimal.
+     *
+     * @param digest The digest
+     * @return String The digest in hexadecimal
+     */
+    public static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+}
@@ -32,8 +32,10 @@ import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.model.SystemFile;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -463,6 +465,31 @@ public final class MimeTypeHelper {
         return MimeTypeCategory.NONE;
     }
 
+    /**
+     * Method that returns the extensions of the files of a category.
+     *
+     * @param context The current context
+     * @param category The category
+     * @return List<String> The extensions (lowercase) of the category
+     */
+    public static final List<String> getExtensions(Context context, MimeTypeCategory category) {
+        List<String> extensions = new ArrayList<String>();
+        // Ensure that have a context
+        if (context == null && sMimeTypes == null) {
+            return extensions;
+        }
+        //Ensure that mime types are loaded
+        if (sMimeTypes == null) {
+            loadMimeTypes(context);
+        }
+        for (Map.Entry<String, MimeTypeInfo> e : sMimeTypes.entrySet()) {
+            if (e.getValue().mCategory.compareTo(category) == 0) {
+                extensions.add(e.getKey());
+            }
+        }
+        return extensions;
+    }
+
     /**
      * Method that returns the description of the category
      *
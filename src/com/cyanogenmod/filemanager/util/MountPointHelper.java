@@ -18,16 +18,24 @@ package com.cyanogenmod.filemanager.util;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.commands.MountExecutable;
 import com.cyanogenmod.filemanager.console.Console;
 import com.cyanogenmod.filemanager.model.DiskUsage;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.MountPoint;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
  * A helper class with useful methods for deal with mount points.
@@ -47,7 +55,18 @@ public final class MountPointHelper {
 
     private static final long MAX_CACHED_TIME = 60000L * 5;
 
-    private static List<MountPoint> sMountPoints;
+    /**
+     * A node of the mount points index. Every node is a component of a path.
+     */
+    private static class Node {
+        Map<String, Node> mChildren;
+        MountPoint mMountPoint;
+    }
+
+    // The index of the mount points (a trie of path components)
+    private static Node sIndex;
+    // The checksum of the mounts table from which the index was built
+    private static long sMountsChecksum;
     private static long sLastCachedTime;
 
     /**
@@ -83,7 +102,13 @@ public final class MountPointHelper {
     }
 
     /**
-     * Method that retrieve the mount point information for a directory.
+     * Method that retrieve the mount point information for a directory.<br/>
+     * <br/>
+     * The mount points are indexed in a trie of path components, that is rebuilt only
+     * when the content of the mounts table changes. The mounts table is readable
+     * without privileges, so no console command is needed. If the mounts table can't
+     * be read, the mount points are retrieved through the console and cached for
+     * some time.
      *
      * @param console The console in which realize the operation
      * @param dir The directory of which recovers his mount point information
@@ -91,37 +116,52 @@ public final class MountPointHelper {
      */
     public synchronized static MountPoint getMountPointFromDirectory(Console console, String dir) {
         try {
-            // For non-rooted devices, which console is java and runs under a chrooted
-            // device, mount point info mustn't be a main objective. Caching the status
-            // should be enough and operation runs smoothly.
-            // Refresh mount points after some time (5 minutes should be enough)
-            long now = System.currentTimeMillis();
-            if (sMountPoints == null || (now - sLastCachedTime) > MAX_CACHED_TIME ||
-                FileManagerApplication.isDeviceRooted()) {
-                //Retrieve the mount points
-                List<MountPoint> mps =
-                        CommandHelper.getMountPoints(null, console);
-                sMountPoints = mps;
-                sLastCachedTime = now;
+            String mounts = readMountsTable();
+            if (mounts != null) {
+                // Rebuild the index if the mounts table changed
+                CRC32 crc = new CRC32();
+                crc.update(mounts.getBytes());
+                long checksum = crc.getValue();
+                if (sIndex == null || sMountsChecksum != checksum) {
+                    sIndex = createIndex(parseMountsTable(mounts));
+                    sMountsChecksum = checksum;
+                    sLastCachedTime = 0;
+                }
+            } else {
+                // Refresh mount points after some time (5 minutes should be enough)
+                long now = System.currentTimeMillis();
+                if (sIndex == null || (now - sLastCachedTime) > MAX_CACHED_TIME) {
+                    //Retrieve the mount points
+                    List<MountPoint> mps =
+                            CommandHelper.getMountPoints(null, console);
+                    sIndex = createIndex(mps);
+                    sLastCachedTime = now;
+                }
             }
 
-            //Sort mount points in reverse order, needed for avoid
-            //found an incorrect mount point that matches the name
-            Collections.sort(sMountPoints, new Comparator<MountPoint>() {
-                @Override
-                public int compare(MountPoint lhs, MountPoint rhs) {
-                    return lhs.compareTo(rhs) * -1;
+            //Search for the mount point information (the deepest mount point
+            //that contains the directory)
+            Node node = sIndex;
+            MountPoint mp = node.mMountPoint;
+            int len = dir.length();
+            int start = 0;
+            while (start < len && node.mChildren != null) {
+                int end = dir.indexOf(File.separatorChar, start);
+                if (end == -1) {
+                    end = len;
                 }
-            });
-
-            //Search for the mount point information
-            int cc = sMountPoints.size();
-            for (int i = 0; i < cc; i++) {
-                MountPoint mp = sMountPoints.get(i);
-                if (dir.startsWith(mp.getMountPoint())) {
-                    return mp;
+                if (end > start) {
+                    node = node.mChildren.get(dir.substring(start, end));
+                    if (node == null) {
+                        break;
+                    }
+                    if (node.mMountPoint != null) {
+                        mp = node.mMountPoint;
+                    }
                 }
+                start = end + 1;
             }
+            return mp;
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to retrieve the mount point information", e); //$NON-NLS-1$
@@ -131,6 +171,92 @@ public final class MountPointHelper {
         return null;
     }
 
+    /**
+     * Method that reads the mounts table of the system.
+     *
+     * @return String The content of the mounts table, or null if it can't be read
+     */
+    private static String readMountsTable() {
+        Reader reader = null;
+        try {
+            String mountsFile =
+                    FileManagerApplication.getInstance().getString(R.string.mounts_file);
+            reader = new InputStreamReader(new FileInputStream(mountsFile));
+            StringBuilder sb = new StringBuilder(4096);
+            char[] data = new char[4096];
+            int read = 0;
+            while ((read = reader.read(data)) != -1) {
+                sb.append(data, 0, read);
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to read the mounts table", e); //$NON-NLS-1$
+            return null;
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (Throwable _throw) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that parses the mounts table of the system.
+     *
+     * @param mounts The content of the mounts table
+     * @return List<MountPoint> The mount points
+     */
+    private static List<MountPoint> parseMountsTable(String mounts) {
+        List<MountPoint> mps = new ArrayList<MountPoint>();
+        String[] lines = mounts.split("\n"); //$NON-NLS-1$
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().length() == 0) {
+                continue;
+            }
+            try {
+                mps.add(ParseHelper.toMountPoint(lines[i]));
+            } catch (ParseException e) {
+                Log.w(TAG, String.format(
+                        "Failed to parse mount point: %s", lines[i]), e); //$NON-NLS-1$
+            }
+        }
+        return mps;
+    }
+
+    /**
+     * Method that creates the index of the mount points. When several filesystems are
+     * mounted in the same directory, the last one (the visible one) is indexed.
+     *
+     * @param mps The mount points
+     * @return Node The root node of the index
+     */
+    private static Node createIndex(List<MountPoint> mps) {
+        Node root = new Node();
+        int cc = mps.size();
+        for (int i = 0; i < cc; i++) {
+            MountPoint mp = mps.get(i);
+            Node node = root;
+            String[] components = mp.getMountPoint().split(File.separator);
+            for (int j = 0; j < components.length; j++) {
+                if (components[j].length() == 0) {
+                    continue;
+                }
+                if (node.mChildren == null) {
+                    node.mChildren = new HashMap<String, Node>();
+                }
+                Node child = node.mChildren.get(components[j]);
+                if (child == null) {
+                    child = new Node();
+                    node.mChildren.put(components[j], child);
+                }
+                node = child;
+            }
+            node.mMountPoint = mp;
+        }
+        return root;
+    }
+
     /**
      * Method that retrieve information about the disk usage of the mount point.
      *
@@ -197,6 +323,25 @@ public final class MountPointHelper {
         return false;
     }
 
+    /**
+     * Method that returns if two paths are in the same mount point, so a file can be
+     * renamed from one to the other. The paths don't need to exist.
+     *
+     * @param path1 The first path
+     * @param path2 The second path
+     * @return boolean If the paths are in the same mount point. If the mount points
+     * can't be retrieved, the paths are considered in the same mount point (a rename
+     * between them is cheap to try)
+     */
+    public static boolean isSameMountPoint(String path1, String path2) {
+        MountPoint mp1 = getMountPointFromDirectory(path1);
+        MountPoint mp2 = getMountPointFromDirectory(path2);
+        if (mp1 == null || mp2 == null) {
+            return true;
+        }
+        return mp1.getMountPoint().compareTo(mp2.getMountPoint()) == 0;
+    }
+
     /**
      * Method that returns if a filesystem is allowed to be mounted/unmounted (rw/ro).
      *
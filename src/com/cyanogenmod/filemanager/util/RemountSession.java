@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.commands.MountExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleAllocException;
+import com.cyanogenmod.filemanager.console.ConsoleBuilder;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.OperationTimeoutException;
+import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.model.MountPoint;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The read-write sessions of the read-only mount points.<br/>
+ * <br/>
+ * A writable command over a read-only mount point acquires a session of the mount
+ * point (see {@link #acquire(Console, MountPoint)}), that remounts it read-write only
+ * if it isn't read-write by another session, and releases the session when it ends
+ * (see {@link #release(Console, MountPoint)}). The sessions are reference-counted, so
+ * the commands that run at the same time share the remount, and the mount point is
+ * remounted read-only only when it has been idle for {@link #IDLE_TIME} milliseconds,
+ * so a batch of commands (the deletion of many files, for example) remounts the mount
+ * point once. A command joins the session of a mount point even when the mount point
+ * reads as read-write (see {@link #hasSession(MountPoint)}), so the pending restore is
+ * cancelled while the command runs.<br/>
+ * <br/>
+ * The remounts run outside the lock of the sessions, so a remount only blocks the
+ * commands over the same mount point, that wait for it.
+ */
+public final class RemountSession {
+
+    private static final String TAG = "RemountSession"; //$NON-NLS-1$
+
+    private static boolean DEBUG = false;
+
+    /**
+     * The time that a released mount point is kept read-write, waiting for other
+     * commands.
+     */
+    public static final long IDLE_TIME = 3000L;
+
+    /**
+     * The session of a mount point.
+     */
+    private static class Session {
+        final MountPoint mMountPoint;
+        int mUsers;
+        Console mConsole;
+        Runnable mRestore;
+        // A remount (read-write or read-only) of the mount point is running
+        boolean mRemounting;
+
+        /**
+         * Constructor of <code>Session</code>.
+         *
+         * @param mp The mount point remounted read-write
+         */
+        Session(MountPoint mp) {
+            super();
+            this.mMountPoint = mp;
+        }
+    }
+
+    // The sessions by mount point
+    private static final Map<String, Session> SESSIONS = new HashMap<String, Session>();
+
+    private static Handler sHandler;
+
+    /**
+     * Constructor of <code>RemountSession</code>.
+     */
+    private RemountSession() {
+        super();
+    }
+
+    /**
+     * Method that returns if a mount point has a read-write session (the mount point
+     * may read as read-write, but it will be restored when the session is idle).
+     *
+     * @param mp The mount point
+     * @return boolean If the mount point has a session
+     */
+    public static boolean hasSession(MountPoint mp) {
+        synchronized (SESSIONS) {
+            return SESSIONS.containsKey(mp.getMountPoint());
+        }
+    }
+
+    /**
+     * Method that acquires a read-write session of a read-only mount point, remounting
+     * it read-write if there is no session of the mount point. If the mount point is
+     * being remounted, the method waits for the remount.
+     *
+     * @param console The console in which remount the mount point
+     * @param mp The mount point
+     * @return boolean If a session was acquired (and must be released). false if the
+     * mount point is read-write by itself
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws NoSuchFileOrDirectory If the mount point was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws CommandNotFoundException If the command was not found
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the mount point can't be remounted
+     */
+    public static boolean acquire(Console console, MountPoint mp)
+            throws ConsoleAllocException, InsufficientPermissionsException, NoSuchFileOrDirectory,
+            OperationTimeoutException, ExecutionException, CommandNotFoundException,
+            ReadOnlyFilesystemException {
+        final String key = mp.getMountPoint();
+        Session session;
+        synchronized (SESSIONS) {
+            session = SESSIONS.get(key);
+            while (session != null && session.mRemounting) {
+                // Wait for the remount of other command
+                try {
+                    SESSIONS.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ExecutionException(
+                            String.format("Interrupted remount of %s", key), e); //$NON-NLS-1$
+                }
+                session = SESSIONS.get(key);
+            }
+            if (session != null) {
+                // Join the session. Don't restore the mount point while it's used
+                if (session.mRestore != null) {
+                    getHandler().removeCallbacks(session.mRestore);
+                    session.mRestore = null;
+                }
+                session.mUsers++;
+                return true;
+            }
+            if (MountPointHelper.isReadWrite(mp)) {
+                // Nothing to remount
+                return false;
+            }
+            session = new Session(mp);
+            session.mRemounting = true;
+            SESSIONS.put(key, session);
+        }
+
+        // Remount the mount point read-write
+        boolean mounted = false;
+        try {
+            MountExecutable mountExecutable =
+                    console.getExecutableFactory().newCreator().
+                        createMountExecutable(mp, true);
+            console.execute(mountExecutable);
+            mounted = true;
+            if (DEBUG) {
+                Log.v(TAG, String.format("Remounted rw: %s", mp)); //$NON-NLS-1$
+            }
+        } finally {
+            synchronized (SESSIONS) {
+                session.mRemounting = false;
+                if (mounted) {
+                    session.mUsers++;
+                } else {
+                    // The waiting commands try the remount by themselves
+                    SESSIONS.remove(key);
+                }
+                SESSIONS.notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that releases a read-write session of a mount point. The mount point is
+     * remounted read-only when the last session is released and has been idle for
+     * {@link #IDLE_TIME} milliseconds.
+     *
+     * @param console The console in which remount the mount point (if it is still
+     * active when the mount point is restored)
+     * @param mp The mount point
+     */
+    public static void release(Console console, MountPoint mp) {
+        synchronized (SESSIONS) {
+            final Session session = SESSIONS.get(mp.getMountPoint());
+            if (session == null || session.mUsers <= 0) {
+                return;
+            }
+            session.mConsole = console;
+            session.mUsers--;
+            if (session.mUsers > 0) {
+                return;
+            }
+
+            // Restore the mount point when it has been idle for a while
+            session.mRestore = new Runnable() {
+                @Override
+                public void run() {
+                    // Don't remount in the main thread
+                    new Thread(TAG) {
+                        @Override
+                        public void run() {
+                            restore(session);
+                        }
+                    }.start();
+                }
+            };
+            getHandler().postDelayed(session.mRestore, IDLE_TIME);
+        }
+    }
+
+    /**
+     * Method that remounts read-only a mount point whose sessions were released, if it
+     * wasn't acquired again meanwhile. The commands that acquire the mount point while
+     * it's remounted wait for the remount, and then remount it read-write again.
+     *
+     * @param session The session of the mount point
+     * @hide
+     */
+    static void restore(Session session) {
+        final String key = session.mMountPoint.getMountPoint();
+        Console console;
+        synchronized (SESSIONS) {
+            if (session.mUsers > 0 || session.mRemounting || SESSIONS.get(key) != session) {
+                return;
+            }
+            session.mRestore = null;
+            session.mRemounting = true;
+            console = session.mConsole;
+            session.mConsole = null;
+        }
+
+        try {
+            // The console of the last command can be already destroyed
+            if (console == null || !console.isActive()) {
+                console = ConsoleBuilder.getConsole(FileManagerApplication.getInstance());
+            }
+            MountExecutable unmountExecutable =
+                    console.getExecutableFactory().newCreator().
+                        createMountExecutable(session.mMountPoint, false);
+            console.execute(unmountExecutable);
+            if (DEBUG) {
+                Log.v(TAG, String.format(
+                        "Remounted ro: %s", session.mMountPoint)); //$NON-NLS-1$
+            }
+        } catch (Exception e) {
+            // Capture the exception but not show to the user
+            ExceptionUtil.translateException(
+                    FileManagerApplication.getInstance(), e, true, false);
+        } finally {
+            synchronized (SESSIONS) {
+                session.mRemounting = false;
+                SESSIONS.remove(key);
+                SESSIONS.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Method that returns the handler of the delayed restores.
+     *
+     * @return Handler The handler (in the main thread)
+     */
+    private static Handler getHandler() {
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        return sHandler;
+    }
+}
@@ -22,14 +22,24 @@ import android.text.SpannableString;
 import android.text.style.BackgroundColorSpan;
 import android.text.style.StyleSpan;
 
+import com.cyanogenmod.filemanager.model.CompiledQuery;
+import com.cyanogenmod.filemanager.model.ContentMatch;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.SearchResult;
+import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
+import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
+import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
+import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
+import com.cyanogenmod.filemanager.preferences.Preferences;
+import com.cyanogenmod.filemanager.preferences.SearchSortResultMode;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 
 /**
@@ -48,28 +58,22 @@ public final class SearchHelper {
     }
 
     /**
-     * Method that create a regular expression from a user query.
+     * Method that create a regular expression (as used by <code>find -name</code>)
+     * from a user query.
      *
      * @param query The query requested by the user
-     * @param javaRegExp If returns a java regexp
      * @return String The regular expressions of the query to match an ignore case search
      */
     @SuppressWarnings("boxing")
-    public static String toIgnoreCaseRegExp(final String query, boolean javaRegExp) {
+    public static String toIgnoreCaseRegExp(final String query) {
         //Check that all is correct
         if (query == null || query.trim().length() == 0) {
             return "";  //$NON-NLS-1$
         }
 
-        // If the regexp for java, then prepare the query
-        String q = query;
-        if (javaRegExp) {
-            q = prepareQuery(q);
-        }
-
         //Convert the string to lower and upper
-        final String lowerCase = q.toLowerCase();
-        final String upperCase = q.toUpperCase();
+        final String lowerCase = query.toLowerCase();
+        final String upperCase = query.toUpperCase();
 
         //Create the regular expression filter
         StringBuffer sb = new StringBuffer();
@@ -87,59 +91,103 @@ public final class SearchHelper {
         }
         return String.format(
                     "%s%s%s",  //$NON-NLS-1$;
-                    javaRegExp ? REGEXP_WILCARD_JAVA : REGEXP_WILCARD,
-                    sb.toString(), javaRegExp ? REGEXP_WILCARD_JAVA : REGEXP_WILCARD);
+                    REGEXP_WILCARD, sb.toString(), REGEXP_WILCARD);
     }
 
     /**
-     * Method that cleans and prepares the query of the user to conform with a valid regexp.
+     * Method that create a basic regular expression (as used by <code>grep</code>) from
+     * a user query. Special characters are escaped, and the <code>*</code> wildcard is
+     * converted to a regexp wildcard. The expression matches any part of a line.
      *
      * @param query The query requested by the user
-     * @return String The prepared the query
+     * @return String The basic regular expressions of the query
      */
-    private static String prepareQuery(String query) {
-        StringBuilder sb = new StringBuilder(query.length());
-        for (int i = 0; i < query.length(); ++i) {
+    public static String toGrepRegExp(final String query) {
+        StringBuilder sb = new StringBuilder(query.length() + 8);
+        int cc = query.length();
+        for (int i = 0; i < cc; i++) {
             char ch = query.charAt(i);
-            if (Character.isLetterOrDigit(ch) ||
-                    ch == ' ' ||
-                    ch == '\'') {
+            if (ch == '*') {
+                sb.append(REGEXP_WILCARD_JAVA);
+            } else {
+                if (ch == '\\' || ch == '.' || ch == '[' || ch == ']' ||
+                    ch == '^' || ch == '$') {
+                    sb.append('\\');
+                }
                 sb.append(ch);
-            } else if (ch == '*') {
-                sb.append(".*"); //$NON-NLS-1$
             }
         }
         return sb.toString();
     }
 
+    /**
+     * Method that returns the terms of a query for a content search. Both consoles
+     * search the same terms: a term matches any part of a line, so the wildcards at the
+     * start and the end of the term are removed, and a term made only of wildcards (as
+     * the term of a query with only filters) matches any line and replaces the rest of
+     * the terms. Duplicated terms are removed.
+     *
+     * @param query The query of the search
+     * @return List<String> The terms of the content search. The term <code>*</code>
+     * matches any line
+     */
+    public static List<String> getContentTerms(Query query) {
+        List<String> terms = new ArrayList<String>();
+        List<String> queries = query.getQueries();
+        int cc = queries.size();
+        for (int i = 0; i < cc; i++) {
+            String term = queries.get(i).trim();
+            if (term.length() == 0) {
+                continue;
+            }
+
+            // Collapse the consecutive wildcards, and remove the leading and trailing ones
+            StringBuilder sb = new StringBuilder(term.length());
+            int len = term.length();
+            for (int j = 0; j < len; j++) {
+                char ch = term.charAt(j);
+                if (ch != '*' || (sb.length() > 0 && sb.charAt(sb.length() - 1) != '*')) {
+                    sb.append(ch);
+                }
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) == '*') {
+                sb.setLength(sb.length() - 1);
+            }
+            if (sb.length() == 0) {
+                // Any line matches
+                terms.clear();
+                terms.add(REGEXP_WILCARD);
+                return terms;
+            }
+            if (!terms.contains(sb.toString())) {
+                terms.add(sb.toString());
+            }
+        }
+        return terms;
+    }
+
     /**
      * Method that returns the name string highlighted with the match query.
      *
      * @param result The result to highlight
-     * @param queries The list of queries that parameterized the search
+     * @param query The compiled query that parameterized the search
      * @param highlightedColor The highlight color
      * @return CharSequence The name string highlighted
      */
     public static CharSequence getHighlightedName(
-            SearchResult result, List<String> queries, int highlightedColor) {
+            SearchResult result, CompiledQuery query, int highlightedColor) {
         String name = result.getFso().getName();
-        int cc = queries.size();
+        int[] bounds = new int[2];
+        int cc = query.getTermsCount();
         for (int i = 0; i < cc; i++) {
-            //Get the query removing wildcards
-            String query =
-                    queries.get(i)
-                        .replace(".", "[.]") //$NON-NLS-1$//$NON-NLS-2$
-                        .replace("*", ".*"); //$NON-NLS-1$//$NON-NLS-2$
-            Pattern pattern = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(name);
-            Spannable span =  new SpannableString(name);
-            if (matcher.find()) {
+            if (query.getTerm(i).find(name, bounds)) {
                 //Highlight the match
+                Spannable span =  new SpannableString(name);
                 span.setSpan(
                         new BackgroundColorSpan(highlightedColor),
-                        matcher.start(), matcher.end(), 0);
+                        bounds[0], bounds[1], 0);
                 span.setSpan(
-                        new StyleSpan(Typeface.BOLD), matcher.start(), matcher.end(), 0);
+                        new StyleSpan(Typeface.BOLD), bounds[0], bounds[1], 0);
                 return span;
             }
         }
@@ -162,6 +210,230 @@ public final class SearchHelper {
         return span;
     }
 
+    /**
+     * Method that returns the sort mode of the search results selected by the user.
+     *
+     * @return SearchSortResultMode The sort mode of the search results
+     */
+    public static SearchSortResultMode getSortResultMode() {
+        String defaultValue = ((ObjectStringIdentifier)FileManagerSettings.
+                SETTINGS_SORT_SEARCH_RESULTS_MODE.getDefaultValue()).getId();
+        String value = Preferences.getSharedPreferences().getString(
+                            FileManagerSettings.SETTINGS_SORT_SEARCH_RESULTS_MODE.getId(),
+                            defaultValue);
+        return SearchSortResultMode.fromId(value);
+    }
+
+    /**
+     * Method that creates the display restrictions applied to the search results.
+     *
+     * @param query The query of the search
+     * @return Map<DisplayRestrictions, Object> The display restrictions
+     */
+    public static Map<DisplayRestrictions, Object> createDisplayRestrictions(Query query) {
+        Map<DisplayRestrictions, Object> restrictions =
+                new HashMap<DisplayRestrictions, Object>();
+        restrictions.put(
+                DisplayRestrictions.MIME_TYPE_RESTRICTION, MimeTypeHelper.ALL_MIME_TYPES);
+        if (query != null && query.getCategory() != null) {
+            // Categories without extensions (system files) can't be filtered by the commands
+            restrictions.put(DisplayRestrictions.CATEGORY_TYPE_RESTRICTION, query.getCategory());
+        }
+        return restrictions;
+    }
+
+    /**
+     * Method that creates a query from the text typed by the user. Words with the form
+     * <code>filter:value</code> are parsed as filters of the query; the rest of the
+     * text is the term of the query. The recognized filters are:
+     * <ul>
+     * <li><code>size:&gt;10M</code>, <code>size:&lt;500k</code> (units: b, k, m, g)</li>
+     * <li><code>modified:&lt;7d</code> (in the last 7 days), <code>modified:&gt;1w</code>
+     * (more than a week ago) (units: m, h, d, w)</li>
+     * <li><code>type:file</code>, <code>type:dir</code>, <code>type:link</code></li>
+     * <li><code>category:image</code> (or <code>cat:</code>), a {@link MimeTypeCategory}</li>
+     * </ul>
+     * Words that are not valid filters are part of the term. If there are filters but
+     * no term, the query matches any name.
+     *
+     * @param userQueries The queries typed by the user
+     * @return Query The query
+     */
+    public static Query createQuery(List<String> userQueries) {
+        Query query = new Query();
+        List<String> terms = new ArrayList<String>(userQueries.size());
+        int cc = userQueries.size();
+        for (int i = 0; i < cc; i++) {
+            StringBuilder term = new StringBuilder();
+            String[] words = userQueries.get(i).split(" "); //$NON-NLS-1$
+            for (int j = 0; j < words.length; j++) {
+                if (words[j].length() == 0 || parseFilter(query, words[j])) {
+                    continue;
+                }
+                if (term.length() > 0) {
+                    term.append(' ');
+                }
+                term.append(words[j]);
+            }
+            if (term.length() > 0) {
+                terms.add(term.toString());
+            }
+        }
+        if (terms.isEmpty() && query.hasFilters()) {
+            terms.add(REGEXP_WILCARD);
+        }
+        return query.fillSlots(terms);
+    }
+
+    /**
+     * Method that parses a filter typed by the user and sets it in the query.
+     *
+     * @param query The query
+     * @param word The word typed by the user
+     * @return boolean If the word is a valid filter
+     */
+    private static boolean parseFilter(Query query, String word) {
+        int pos = word.indexOf(':');
+        if (pos <= 0 || pos == word.length() - 1) {
+            return false;
+        }
+        String filter = word.substring(0, pos).toLowerCase();
+        String value = word.substring(pos + 1).toLowerCase();
+        try {
+            if (filter.compareTo("size") == 0) { //$NON-NLS-1$
+                char op = value.charAt(0);
+                long size = parseAmount(
+                        (op == '<' || op == '>') ? value.substring(1) : value,
+                        "bkmg", //$NON-NLS-1$
+                        new long[]{1L, 1024L, 1024L * 1024L, 1024L * 1024L * 1024L});
+                if (op == '<') {
+                    query.setSizeRange(query.getMinSize(), size);
+                } else {
+                    query.setSizeRange(size, query.getMaxSize());
+                }
+                return true;
+            }
+            if (filter.compareTo("modified") == 0) { //$NON-NLS-1$
+                char op = value.charAt(0);
+                if (op != '<' && op != '>') {
+                    return false;
+                }
+                final long minute = 60000L;
+                long age = parseAmount(
+                        value.substring(1), "mhdw", //$NON-NLS-1$
+                        new long[]{minute, 60 * minute, 24 * 60 * minute, 7 * 24 * 60 * minute});
+                long time = System.currentTimeMillis() - age;
+                if (op == '<') {
+                    query.setModifiedRange(time, query.getModifiedBefore());
+                } else {
+                    query.setModifiedRange(query.getModifiedAfter(), time);
+                }
+                return true;
+            }
+            if (filter.compareTo("type") == 0) { //$NON-NLS-1$
+                // f[ile], d[ir], l[ink]
+                switch (value.charAt(0)) {
+                    case 'f':
+                        query.setFileType(Query.FileType.FILE);
+                        return true;
+                    case 'd':
+                        query.setFileType(Query.FileType.DIRECTORY);
+                        return true;
+                    case 'l':
+                        query.setFileType(Query.FileType.SYMLINK);
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+            if (filter.compareTo("category") == 0 || //$NON-NLS-1$
+                filter.compareTo("cat") == 0) { //$NON-NLS-1$
+                query.setCategory(MimeTypeCategory.valueOf(value.toUpperCase()));
+                return true;
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a valid filter (NumberFormatException is an IllegalArgumentException)
+        }
+        return false;
+    }
+
+    /**
+     * Method that parses an amount with an optional unit suffix (the first unit is
+     * the default one).
+     *
+     * @param value The amount
+     * @param units The units (one character per unit)
+     * @param factors The factor of every unit
+     * @return long The amount
+     * @throws NumberFormatException If the amount is not valid
+     */
+    private static long parseAmount(String value, String units, long[] factors) {
+        int unit = 0;
+        String amount = value;
+        int pos = units.indexOf(value.charAt(value.length() - 1));
+        if (pos != -1) {
+            unit = pos;
+            amount = value.substring(0, value.length() - 1);
+        }
+        double n = Double.parseDouble(amount);
+        if (n < 0) {
+            throw new NumberFormatException(value);
+        }
+        return (long)(n * factors[unit]);
+    }
+
+    /**
+     * Method that creates a case insensitive glob (as used by <code>find -name</code>)
+     * that matches the names with an extension.
+     *
+     * @param extension The extension
+     * @return String The glob
+     */
+    public static String toIgnoreCaseExtensionGlob(String extension) {
+        StringBuilder sb = new StringBuilder("*."); //$NON-NLS-1$
+        String lowerCase = extension.toLowerCase();
+        String upperCase = extension.toUpperCase();
+        int cc = lowerCase.length();
+        for (int i = 0; i < cc; i++) {
+            char lower = lowerCase.charAt(i);
+            char upper = upperCase.charAt(i);
+            if (lower != upper) {
+                sb.append('[').append(lower).append(upper).append(']');
+            } else {
+                sb.append(lower);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that returns the comparator of search results for a sort mode.
+     *
+     * @param mode The sort mode of the search results
+     * @return Comparator<SearchResult> The comparator, or null if the results
+     * are not sorted
+     */
+    public static Comparator<SearchResult> getResultComparator(SearchSortResultMode mode) {
+        if (mode.compareTo(SearchSortResultMode.NAME) == 0) {
+            return new Comparator<SearchResult>() {
+                @Override
+                public int compare(SearchResult lhs, SearchResult rhs) {
+                    return FileHelper.doCompare(
+                            lhs.getFso(), rhs.getFso(), NavigationSortMode.NAME_ASC);
+                }
+            };
+        }
+        if (mode.compareTo(SearchSortResultMode.RELEVANCE) == 0) {
+            return new Comparator<SearchResult>() {
+                @Override
+                public int compare(SearchResult lhs, SearchResult rhs) {
+                    return lhs.compareTo(rhs);
+                }
+            };
+        }
+        return null;
+    }
+
     /**
      * Method that converts the list of file system object to a search result.
      *
@@ -170,18 +442,70 @@ public final class SearchHelper {
      * @return List<SearchResult> The files converted
      */
     public static List<SearchResult> convertToResults(List<FileSystemObject> files, Query queries) {
+        return convertToResults(files, new CompiledQuery(queries));
+    }
+
+    /**
+     * Method that converts the list of file system object to a search result.
+     *
+     * @param files The files to convert
+     * @param query The compiled terms of the search
+     * @return List<SearchResult> The files converted
+     */
+    public static List<SearchResult> convertToResults(
+            List<FileSystemObject> files, CompiledQuery query) {
         //Converts the list of files in a list of search results
         List<SearchResult> results = new ArrayList<SearchResult>(files.size());
+        int[] bounds = new int[2];
         int cc = files.size();
         for (int i = 0; i < cc; i++) {
             FileSystemObject fso = files.get(i);
-            double relevance = calculateRelevance(fso, queries);
+            double relevance = calculateRelevance(fso, query, bounds);
             SearchResult result = new SearchResult(relevance, fso);
             results.add(result);
         }
         return results;
     }
 
+    /**
+     * Method that attaches the matches found inside the content of the files to their
+     * search results. Every match adds relevance to the result, up to the maximum.
+     * The relevance is only right if the matches of the whole search are known, so
+     * the final ranking must be calculated when the search ends.
+     *
+     * @param results The search results
+     * @param contentMatches The content matches by full path of the files. Can be null
+     */
+    public static void applyContentMatches(
+            List<SearchResult> results, Map<String, List<ContentMatch>> contentMatches) {
+        if (contentMatches == null || contentMatches.isEmpty()) {
+            return;
+        }
+        int cc = results.size();
+        for (int i = 0; i < cc; i++) {
+            SearchResult result = results.get(i);
+            List<ContentMatch> matches = contentMatches.get(result.getFso().getFullPath());
+            if (matches != null && matches.size() > 0) {
+                result.setContentMatch(matches.get(0));
+                result.setRelevance(Math.min(
+                        SearchResult.MAX_RELEVANCE, result.getRelevance() + matches.size()));
+            }
+        }
+    }
+
+    /**
+     * Method that calculates the relevance of a file system object for the terms
+     * of a query.
+     *
+     * @param fso The file system object
+     * @param queries The terms of the search
+     * @return double A value from 1 to 10 where 10 has more relevance
+     * @see #calculateRelevance(FileSystemObject, CompiledQuery)
+     */
+    public static double calculateRelevance(FileSystemObject fso, Query queries) {
+        return calculateRelevance(fso, new CompiledQuery(queries));
+    }
+
     /**
      * Method that calculates the relevance of a file system object for the terms
      * of a query.<br/>
@@ -206,27 +530,34 @@ public final class SearchHelper {
      * <code>Relevance = By Name * By Accuracy</code>
      *
      * @param fso The file system object
-     * @param queries The terms of the search
+     * @param query The compiled terms of the search
      * @return double A value from 1 to 10 where 10 has more relevance
      */
-    public static double calculateRelevance(FileSystemObject fso, Query queries) {
+    public static double calculateRelevance(FileSystemObject fso, CompiledQuery query) {
+        return calculateRelevance(fso, query, new int[2]);
+    }
+
+    /**
+     * Method that calculates the relevance of a file system object for the terms
+     * of a query, reusing the bounds buffer.
+     *
+     * @param fso The file system object
+     * @param query The compiled terms of the search
+     * @param bounds A buffer of 2 positions for the match bounds
+     * @return double A value from 1 to 10 where 10 has more relevance
+     */
+    private static double calculateRelevance(
+            FileSystemObject fso, CompiledQuery query, int[] bounds) {
         double relevance = 1.0;  //Minimum relevance (is in the result so has some relevance)
-        List<String> terms = queries.getQueries();
         String name = fso.getName();
-        int cc = terms.size();
+        int cc = query.getTermsCount();
         for (int i = 0; i < cc; i++) {
-            String query =
-                    terms.get(i)
-                        .replace(".", "[.]") //$NON-NLS-1$//$NON-NLS-2$
-                        .replace("*", ".*"); //$NON-NLS-1$//$NON-NLS-2$
-            Pattern pattern = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(name);
-            if (matcher.find()) {
+            if (query.getTerm(i).find(name, bounds)) {
                 //By name
                 double byNameRelevance = 1.0;
-                if (matcher.group().length() == name.length()) {
+                if ((bounds[1] - bounds[0]) == name.length()) {
                     byNameRelevance = 3.0;
-                } else if (name.startsWith(matcher.group()) || name.endsWith(matcher.group())) {
+                } else if (bounds[0] == 0 || bounds[1] == name.length()) {
                     byNameRelevance = 2.0;
                 }
 
@@ -234,7 +565,7 @@ public final class SearchHelper {
                 double byNameAccuracy = 1.0;
                 if (i == 0) {
                     byNameAccuracy = 3.0;
-                } else if (i != terms.size()) {
+                } else if (i != cc) {
                     byNameAccuracy = 2.0;
                 }
 
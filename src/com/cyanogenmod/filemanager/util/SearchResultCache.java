@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.CompiledQuery;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.preferences.AccessMode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A class that holds the results of the latest completed searches, so repeated
+ * searches, searches in a subfolder of a previous search and refined searches
+ * (<code>photo</code> &rarr; <code>photo_2013</code>) are answered by filtering
+ * the cached results in memory, instead of walking the filesystem again.<br/>
+ * <br/>
+ * An entry is dropped when the modification time of any folder that contains a result,
+ * or the folder of the search, has changed, or when it is older than {@link #TTL}.
+ * New files in folders without previous results can't be detected by the mtimes, so
+ * the cache is cleared when the application writes to the filesystem (see
+ * {@link #clear()}), and the searches are only reused inside the same search session
+ * (the cache is cleared when the search screen is destroyed).
+ */
+public final class SearchResultCache {
+
+    private static final String TAG = "SearchResultCache"; //$NON-NLS-1$
+
+    private static final boolean DEBUG = false;
+
+    // The maximum number of cached searches
+    private static final int MAX_ENTRIES = 4;
+    // The maximum number of results of a cached search
+    private static final int MAX_RESULTS = 5000;
+    /**
+     * The maximum age of a cached search in milliseconds.
+     */
+    public static final long TTL = 5 * 60 * 1000L;
+
+    /**
+     * A cached search.
+     */
+    private static class Entry {
+        String mDirectory;
+        List<String> mTerms;
+        Query mQuery;
+        AccessMode mAccessMode;
+        List<FileSystemObject> mResults;
+        Map<String, Long> mFolders;
+        long mTime;
+    }
+
+    // The cached searches (the most recently used first)
+    private static final LinkedList<Entry> sEntries = new LinkedList<Entry>();
+
+    /**
+     * Constructor of <code>SearchResultCache</code>.
+     */
+    private SearchResultCache() {
+        super();
+    }
+
+    /**
+     * Method that caches the results of a completed search.
+     *
+     * @param directory The directory of the search
+     * @param query The terms of the search
+     * @param mode The access mode of the search
+     * @param results The results of the search
+     */
+    public static void put(
+            String directory, Query query, AccessMode mode, List<FileSystemObject> results) {
+        if (results.size() > MAX_RESULTS) {
+            return;
+        }
+
+        Entry entry = new Entry();
+        entry.mDirectory = directory;
+        entry.mTerms = normalize(query);
+        entry.mQuery = query;
+        entry.mAccessMode = mode;
+        entry.mResults = new ArrayList<FileSystemObject>(results);
+        entry.mFolders = new HashMap<String, Long>();
+        entry.mFolders.put(directory, Long.valueOf(new File(directory).lastModified()));
+        int cc = results.size();
+        for (int i = 0; i < cc; i++) {
+            String parent = results.get(i).getParent();
+            if (parent != null && !entry.mFolders.containsKey(parent)) {
+                entry.mFolders.put(parent, Long.valueOf(new File(parent).lastModified()));
+            }
+        }
+        entry.mTime = SystemClock.elapsedRealtime();
+
+        synchronized (sEntries) {
+            // Replace the entry of the same search
+            Iterator<Entry> it = sEntries.iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (e.mDirectory.compareTo(directory) == 0
+                        && e.mTerms.equals(entry.mTerms) && e.mAccessMode.equals(mode)
+                        && e.mQuery.hasSameFilters(query)) {
+                    it.remove();
+                }
+            }
+            sEntries.addFirst(entry);
+            while (sEntries.size() > MAX_ENTRIES) {
+                sEntries.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Method that returns the results of a search from the cache, if a cached search
+     * covers it (same or broader terms and the same filters, in the same or a
+     * parent folder).
+     *
+     * @param directory The directory of the search
+     * @param query The terms of the search
+     * @param mode The access mode of the search
+     * @return List<FileSystemObject> The results of the search, or null if the
+     * search is not cached
+     */
+    public static List<FileSystemObject> get(String directory, Query query, AccessMode mode) {
+        List<String> terms = normalize(query);
+        Entry entry = null;
+        synchronized (sEntries) {
+            Iterator<Entry> it = sEntries.iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (!e.mAccessMode.equals(mode)
+                        || !e.mQuery.hasSameFilters(query)
+                        || !isInDirectory(directory, e.mDirectory)
+                        || !isNarrower(terms, e.mTerms)) {
+                    continue;
+                }
+                if (isStale(e)) {
+                    it.remove();
+                    continue;
+                }
+                entry = e;
+                it.remove();
+                break;
+            }
+            if (entry == null) {
+                return null;
+            }
+            sEntries.addFirst(entry);
+        }
+
+        // Filter the cached results
+        CompiledQuery compiled = new CompiledQuery(query);
+        boolean sameDirectory = entry.mDirectory.compareTo(directory) == 0;
+        boolean sameTerms = entry.mTerms.equals(terms);
+        List<FileSystemObject> results = new ArrayList<FileSystemObject>(entry.mResults.size());
+        int cc = entry.mResults.size();
+        for (int i = 0; i < cc; i++) {
+            FileSystemObject fso = entry.mResults.get(i);
+            if ((sameDirectory || isInDirectory(fso.getFullPath(), directory))
+                    && (sameTerms || compiled.matches(fso.getName()))) {
+                results.add(fso);
+            }
+        }
+        if (DEBUG) {
+            Log.v(TAG, String.format(
+                    "Search %s in %s answered from cache (%s in %s): %d results", //$NON-NLS-1$
+                    terms, directory, entry.mTerms, entry.mDirectory,
+                    Integer.valueOf(results.size())));
+        }
+        return results;
+    }
+
+    /**
+     * Method that removes all the cached searches. Invoked after every write to the
+     * filesystem, and at the end of a search session.
+     */
+    public static void clear() {
+        synchronized (sEntries) {
+            sEntries.clear();
+        }
+    }
+
+    /**
+     * Method that returns the normalized terms of a query (lowercase, without duplicates).
+     *
+     * @param query The query
+     * @return List<String> The normalized terms
+     */
+    private static List<String> normalize(Query query) {
+        List<String> queries = query.getQueries();
+        List<String> terms = new ArrayList<String>(queries.size());
+        int cc = queries.size();
+        for (int i = 0; i < cc; i++) {
+            String term = queries.get(i).toLowerCase(Locale.ROOT);
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+        Collections.sort(terms);
+        return terms;
+    }
+
+    /**
+     * Method that returns if a path is the directory or is inside the directory.
+     *
+     * @param path The path to check
+     * @param directory The directory
+     * @return boolean If the path is the directory or is inside the directory
+     */
+    private static boolean isInDirectory(String path, String directory) {
+        if (path.compareTo(directory) == 0
+                || directory.compareTo(FileHelper.ROOT_DIRECTORY) == 0) {
+            return true;
+        }
+        return path.startsWith(directory)
+                && path.length() > directory.length()
+                && path.charAt(directory.length()) == File.separatorChar;
+    }
+
+    /**
+     * Method that returns if every name matched by the terms is also matched by the
+     * cached terms. A term is narrower than a cached term if the cached term is
+     * literal and is contained in a literal part of the term, or if both are equal.
+     *
+     * @param terms The normalized terms of the search
+     * @param cached The normalized terms of the cached search
+     * @return boolean If the terms are the same or narrower than the cached terms
+     */
+    private static boolean isNarrower(List<String> terms, List<String> cached) {
+        if (terms.isEmpty()) {
+            return false;
+        }
+        int cc = terms.size();
+        for (int i = 0; i < cc; i++) {
+            String term = terms.get(i);
+            boolean covered = false;
+            int ccc = cached.size();
+            for (int j = 0; j < ccc && !covered; j++) {
+                String c = cached.get(j);
+                if (c.compareTo(term) == 0) {
+                    covered = true;
+                } else if (c.indexOf('*') == -1) {
+                    String[] parts = term.split("\\*"); //$NON-NLS-1$
+                    for (int k = 0; k < parts.length && !covered; k++) {
+                        covered = parts[k].indexOf(c) != -1;
+                    }
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that returns if a cached search is stale.
+     *
+     * @param entry The cached search
+     * @return boolean If the cached search is stale
+     */
+    private static boolean isStale(Entry entry) {
+        if (SystemClock.elapsedRealtime() - entry.mTime > TTL) {
+            return true;
+        }
+        Iterator<Map.Entry<String, Long>> it = entry.mFolders.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> folder = it.next();
+            if (new File(folder.getKey()).lastModified() != folder.getValue().longValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
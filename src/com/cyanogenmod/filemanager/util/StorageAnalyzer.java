@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.model.StorageAnalysis.Entry;
+import com.cyanogenmod.filemanager.model.StorageAnalysis.Node;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that accumulates the storage analysis of a folder while the folder is walked,
+ * and creates {@link StorageAnalysis} snapshots of it at any time.<br/>
+ * <br/>
+ * The memory used doesn't depend on the number of files:
+ * <ul>
+ * <li>The largest files and folders are kept in bounded min-heaps. The heap only
+ * is locked when an entry is bigger than the smallest entry kept.</li>
+ * <li>A folder is complete when its own files were added and all its subfolders are
+ * complete. When a folder completes, only its largest subfolders are kept in the
+ * tree (and none below {@link #MAX_DEPTH}), so the tree only holds the folders
+ * being walked and the largest complete ones.</li>
+ * </ul>
+ * The methods of this class can be called concurrently from several walker threads.
+ */
+public class StorageAnalyzer {
+
+    /**
+     * The default number of largest files and folders that are kept.
+     */
+    public static final int DEFAULT_TOP = 50;
+
+    /**
+     * The maximum depth of the size tree.
+     */
+    public static final int MAX_DEPTH = 6;
+
+    /**
+     * The maximum number of children of a folder of the size tree.
+     */
+    public static final int MAX_CHILDREN = 24;
+
+    /**
+     * A folder being analyzed.
+     */
+    public static final class Folder {
+        final String mPath;
+        final String mName;
+        final Folder mParent;
+        final int mDepth;
+        final AtomicLong mSize = new AtomicLong();
+        // The own listing plus the subfolders that are not complete
+        final AtomicInteger mPending = new AtomicInteger(1);
+        // Guarded by this
+        List<Folder> mChildren = new ArrayList<Folder>();
+        volatile boolean mComplete;
+
+        /**
+         * Constructor of <code>Folder</code>.
+         *
+         * @param path The absolute path of the folder
+         * @param name The name of the folder
+         * @param parent The parent folder (null for the analyzed folder)
+         */
+        Folder(String path, String name, Folder parent) {
+            super();
+            this.mPath = path;
+            this.mName = name;
+            this.mParent = parent;
+            this.mDepth = parent == null ? 0 : parent.mDepth + 1;
+            this.mComplete = false;
+        }
+
+        /**
+         * Method that returns the absolute path of the folder.
+         *
+         * @return String The absolute path of the folder
+         */
+        public String getPath() {
+            return this.mPath;
+        }
+    }
+
+    /**
+     * A bounded min-heap that keeps the largest entries offered.
+     */
+    private static final class Largest {
+        private final int mMax;
+        private final PriorityQueue<Entry> mHeap;
+        // The smallest size kept once the heap is full
+        private volatile long mThreshold;
+
+        /**
+         * Constructor of <code>Largest</code>.
+         *
+         * @param max The number of entries to keep
+         */
+        Largest(int max) {
+            super();
+            this.mMax = max;
+            this.mHeap = new PriorityQueue<Entry>(max + 1, ASCENDING);
+            this.mThreshold = -1;
+        }
+
+        /**
+         * Method that offers an entry to the heap.
+         *
+         * @param path The path of the entry
+         * @param size The size of the entry
+         */
+        void offer(String path, long size) {
+            if (size <= this.mThreshold) {
+                return;
+            }
+            synchronized (this.mHeap) {
+                if (this.mHeap.size() < this.mMax) {
+                    this.mHeap.add(new Entry(path, size));
+                } else if (size > this.mHeap.peek().getSize()) {
+                    this.mHeap.poll();
+                    this.mHeap.add(new Entry(path, size));
+                }
+                if (this.mHeap.size() >= this.mMax) {
+                    this.mThreshold = this.mHeap.peek().getSize();
+                }
+            }
+        }
+
+        /**
+         * Method that returns the entries kept, the largest first.
+         *
+         * @return List<Entry> The entries kept
+         */
+        List<Entry> sorted() {
+            List<Entry> entries;
+            synchronized (this.mHeap) {
+                entries = new ArrayList<Entry>(this.mHeap);
+            }
+            Collections.sort(entries, Collections.reverseOrder(ASCENDING));
+            return entries;
+        }
+    }
+
+    /**
+     * Orders the entries by size, the smallest first.
+     */
+    static final Comparator<Entry> ASCENDING = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            long l = lhs.getSize();
+            long r = rhs.getSize();
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    /**
+     * Orders the complete folders by size, the largest first.
+     */
+    static final Comparator<Folder> DESCENDING = new Comparator<Folder>() {
+        @Override
+        public int compare(Folder lhs, Folder rhs) {
+            long l = lhs.mSize.get();
+            long r = rhs.mSize.get();
+            return l > r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    private final Folder mRoot;
+    private final Largest mLargestFiles;
+    private final Largest mLargestFolders;
+    private final AtomicInteger mNumberOfFolders;
+    private final AtomicInteger mNumberOfFiles;
+
+    /**
+     * Constructor of <code>StorageAnalyzer</code>.
+     *
+     * @param folder The absolute path of the analyzed folder
+     * @param top The number of largest files and folders to keep
+     */
+    public StorageAnalyzer(String folder, int top) {
+        super();
+        this.mRoot = new Folder(folder, new File(folder).getName(), null);
+        this.mLargestFiles = new Largest(Math.max(1, top));
+        this.mLargestFolders = new Largest(Math.max(1, top));
+        this.mNumberOfFolders = new AtomicInteger();
+        this.mNumberOfFiles = new AtomicInteger();
+    }
+
+    /**
+     * Method that returns the analyzed folder.
+     *
+     * @return Folder The analyzed folder
+     */
+    public Folder getRoot() {
+        return this.mRoot;
+    }
+
+    /**
+     * Method that adds a subfolder to a folder. Must be called before the listing of the
+     * folder ends ({@link #endFolder(Folder)}).
+     *
+     * @param parent The folder
+     * @param name The name of the subfolder
+     * @return Folder The subfolder
+     */
+    public Folder addFolder(Folder parent, String name) {
+        String path = parent.mPath.compareTo(FileHelper.ROOT_DIRECTORY) == 0
+                ? parent.mPath + name
+                : parent.mPath + File.separator + name;
+        Folder folder = new Folder(path, name, parent);
+        parent.mPending.incrementAndGet();
+        synchronized (parent) {
+            parent.mChildren.add(folder);
+        }
+        this.mNumberOfFolders.incrementAndGet();
+        return folder;
+    }
+
+    /**
+     * Method that adds a file of a folder. The size of the file is not added to the
+     * folder; the caller adds the size of all the files of a folder at once
+     * with {@link #addSize(Folder, long)}.
+     *
+     * @param folder The folder
+     * @param name The name of the file
+     * @param size The size of the file
+     */
+    public void addFile(Folder folder, String name, long size) {
+        this.mNumberOfFiles.incrementAndGet();
+        if (size > 0) {
+            this.mLargestFiles.offer(
+                    folder.mPath.compareTo(FileHelper.ROOT_DIRECTORY) == 0
+                        ? folder.mPath + name
+                        : folder.mPath + File.separator + name,
+                    size);
+        }
+    }
+
+    /**
+     * Method that adds size to a folder and all its parent folders.
+     *
+     * @param folder The folder
+     * @param size The size to add
+     */
+    public void addSize(Folder folder, long size) {
+        if (size == 0) {
+            return;
+        }
+        Folder f = folder;
+        while (f != null) {
+            f.mSize.addAndGet(size);
+            f = f.mParent;
+        }
+    }
+
+    /**
+     * Method that notifies that the listing of a folder ended (all its files and
+     * subfolders were added). Completes the folder if all its subfolders are complete.
+     *
+     * @param folder The folder
+     */
+    public void endFolder(Folder folder) {
+        Folder f = folder;
+        while (f != null && f.mPending.decrementAndGet() == 0) {
+            complete(f);
+            f = f.mParent;
+        }
+    }
+
+    /**
+     * Method that returns a snapshot of the analysis.
+     *
+     * @return StorageAnalysis The snapshot of the analysis
+     */
+    public StorageAnalysis snapshot() {
+        return new StorageAnalysis(
+                this.mRoot.mPath,
+                this.mNumberOfFolders.get(),
+                this.mNumberOfFiles.get(),
+                this.mRoot.mComplete,
+                this.mLargestFiles.sorted(),
+                this.mLargestFolders.sorted(),
+                toNode(this.mRoot));
+    }
+
+    /**
+     * Method that completes a folder: offers it to the largest folders and
+     * prunes its children.
+     *
+     * @param folder The folder
+     */
+    private void complete(Folder folder) {
+        if (folder.mParent != null) {
+            this.mLargestFolders.offer(folder.mPath, folder.mSize.get());
+        }
+        synchronized (folder) {
+            List<Folder> children = folder.mChildren;
+            if (folder.mDepth >= MAX_DEPTH) {
+                folder.mChildren = new ArrayList<Folder>(0);
+            } else if (children.size() > MAX_CHILDREN) {
+                Collections.sort(children, DESCENDING);
+                folder.mChildren = new ArrayList<Folder>(children.subList(0, MAX_CHILDREN));
+            }
+        }
+        folder.mComplete = true;
+    }
+
+    /**
+     * Method that creates a snapshot of a folder of the tree.
+     *
+     * @param folder The folder
+     * @return Node The snapshot of the folder
+     */
+    private static Node toNode(Folder folder) {
+        List<Folder> children;
+        synchronized (folder) {
+            children = new ArrayList<Folder>(folder.mChildren);
+        }
+        boolean complete = folder.mComplete;
+        long size = folder.mSize.get();
+        List<Node> nodes = new ArrayList<Node>();
+        if (folder.mDepth < MAX_DEPTH) {
+            // The sizes of the folders being walked change while sorting, so sort
+            // the snapshot of the sizes
+            int cc = children.size();
+            final long[] sizes = new long[cc];
+            Integer[] order = new Integer[cc];
+            for (int i = 0; i < cc; i++) {
+                sizes[i] = children.get(i).mSize.get();
+                order[i] = Integer.valueOf(i);
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    long l = sizes[lhs.intValue()];
+                    long r = sizes[rhs.intValue()];
+                    return l > r ? -1 : (l == r ? 0 : 1);
+                }
+            });
+            cc = Math.min(MAX_CHILDREN, cc);
+            for (int i = 0; i < cc; i++) {
+                nodes.add(toNode(children.get(order[i].intValue())));
+            }
+        }
+        return new Node(folder.mName, size, complete, nodes);
+    }
+}
@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A class that records the state of a copy or move operation in a file of the
+ * application, so the operation can be resumed if the application or the shell dies
+ * before the operation ends.<br/>
+ * <br/>
+ * The journal is a text file with a record per line, that is only appended:
+ * <ul>
+ * <li><code>M &lt;0|1&gt;</code>: If the operation is a move.</li>
+ * <li><code>T &lt;src&gt;\t&lt;dst&gt;</code>: A transfer of the operation.</li>
+ * <li><code>D &lt;index&gt;</code>: The transfer <code>index</code> has ended.</li>
+ * <li><code>C &lt;path&gt;</code>: The source file <code>path</code> was copied.</li>
+ * <li><code>O &lt;offset&gt;\t&lt;path&gt;</code>: The bytes of the source file
+ * <code>path</code> copied (the file in flight).</li>
+ * </ul>
+ * A resumed operation skips the copied files, and continues the file in flight from
+ * its offset, if the destination files are verified by size (and the end of the
+ * partial file by checksum).
+ */
+public final class TransferJournal {
+
+    private static final String TAG = "TransferJournal"; //$NON-NLS-1$
+
+    // The folder of the journals, in the files folder of the application
+    private static final String JOURNALS_DIR = "transfers"; //$NON-NLS-1$
+    private static final String JOURNAL_EXT = ".journal"; //$NON-NLS-1$
+
+    // The minimum time between records of the offset of the file in flight
+    private static final long OFFSET_DELAY = 1000L;
+
+    // The bytes at the end of a partial file that are verified by checksum
+    private static final int VERIFY_SIZE = 1024 * 1024;
+
+    // The journals of the operations running in this process
+    private static final Set<String> ACTIVE = new HashSet<String>();
+
+    /**
+     * A transfer of the operation.
+     */
+    public static final class Entry {
+        final int mIndex;
+        final File mSrc;
+        final File mDst;
+        boolean mDone;
+
+        /**
+         * Constructor of <code>Entry</code>.
+         *
+         * @param index The index of the transfer in the journal
+         * @param src The source file or folder
+         * @param dst The destination file or folder
+         */
+        Entry(int index, File src, File dst) {
+            super();
+            this.mIndex = index;
+            this.mSrc = src;
+            this.mDst = dst;
+            this.mDone = false;
+        }
+
+        /**
+         * Method that returns the index of the transfer in the journal.
+         *
+         * @return int The index of the transfer
+         */
+        public int getIndex() {
+            return this.mIndex;
+        }
+
+        /**
+         * Method that returns the source file or folder.
+         *
+         * @return File The source file or folder
+         */
+        public File getSource() {
+            return this.mSrc;
+        }
+
+        /**
+         * Method that returns the destination file or folder.
+         *
+         * @return File The destination file or folder
+         */
+        public File getDestination() {
+            return this.mDst;
+        }
+
+        /**
+         * Method that returns if the transfer has ended.
+         *
+         * @return boolean If the transfer has ended
+         */
+        public boolean isDone() {
+            return this.mDone;
+        }
+    }
+
+    private final File mFile;
+    private final boolean mMove;
+    private final boolean mResumed;
+    private final List<Entry> mEntries;
+    private final Set<String> mCopied;
+    private final Map<String, Long> mOffsets;
+    private FileOutputStream mOut;
+    private Writer mWriter;
+    private long mLastOffsetTime;
+
+    /**
+     * Constructor of <code>TransferJournal</code>.
+     *
+     * @param file The file of the journal
+     * @param move If the operation is a move
+     * @param resumed If the operation is resumed
+     */
+    private TransferJournal(File file, boolean move, boolean resumed) {
+        super();
+        this.mFile = file;
+        this.mMove = move;
+        this.mResumed = resumed;
+        this.mEntries = new ArrayList<Entry>();
+        this.mCopied = new HashSet<String>();
+        this.mOffsets = new HashMap<String, Long>();
+    }
+
+    /**
+     * Method that creates the journal of a new operation.
+     *
+     * @param ctx The current context
+     * @param move If the operation is a move
+     * @param sources The source files and folders
+     * @param destinations The destination files and folders
+     * @return TransferJournal The journal
+     * @throws IOException If the journal can't be created
+     */
+    public static TransferJournal create(
+            Context ctx, boolean move, List<File> sources, List<File> destinations)
+            throws IOException {
+        File dir = getJournalsDir(ctx);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir); //$NON-NLS-1$
+        }
+        File file = new File(dir, System.currentTimeMillis() + JOURNAL_EXT);
+        TransferJournal journal = new TransferJournal(file, move, false);
+        journal.open();
+        journal.write("M " + (move ? "1" : "0")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        int cc = sources.size();
+        for (int i = 0; i < cc; i++) {
+            File src = sources.get(i);
+            File dst = destinations.get(i);
+            journal.mEntries.add(new Entry(i, src, dst));
+            journal.write("T " + src.getAbsolutePath() //$NON-NLS-1$
+                    + "\t" + dst.getAbsolutePath()); //$NON-NLS-1$
+        }
+        journal.sync();
+        return journal;
+    }
+
+    /**
+     * Method that returns the journals of the operations that were interrupted (the
+     * journals that aren't used by an operation of this process).
+     *
+     * @param ctx The current context
+     * @return List<TransferJournal> The journals of the interrupted operations
+     */
+    public static List<TransferJournal> loadInterrupted(Context ctx) {
+        List<TransferJournal> journals = new ArrayList<TransferJournal>();
+        File[] files = getJournalsDir(ctx).listFiles();
+        if (files == null) {
+            return journals;
+        }
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            synchronized (ACTIVE) {
+                if (ACTIVE.contains(file.getAbsolutePath())) {
+                    continue;
+                }
+            }
+            if (!file.getName().endsWith(JOURNAL_EXT)) {
+                continue;
+            }
+            try {
+                TransferJournal journal = load(file);
+                if (journal.getPendingEntries().isEmpty()) {
+                    journal.delete();
+                } else {
+                    journals.add(journal);
+                }
+            } catch (IOException ex) {
+                Log.w(TAG, String.format("Invalid journal: %s", file), ex); //$NON-NLS-1$
+                if (!file.delete()) {
+                    Log.w(TAG, String.format("Failed to delete %s", file)); //$NON-NLS-1$
+                }
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Method that reads the journal of an interrupted operation by its name.
+     *
+     * @param ctx The current context
+     * @param name The name of the journal (see {@link #getName()})
+     * @return TransferJournal The journal, or null if the journal doesn't exist (the
+     * operation has ended) or is invalid
+     */
+    public static TransferJournal load(Context ctx, String name) {
+        File file = new File(getJournalsDir(ctx), name);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return load(file);
+        } catch (IOException ex) {
+            Log.w(TAG, String.format("Invalid journal: %s", file), ex); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Method that reads a journal.
+     *
+     * @param file The file of the journal
+     * @return TransferJournal The journal
+     * @throws IOException If the journal can't be read
+     */
+    private static TransferJournal load(File file) throws IOException {
+        // Only the complete lines are records (the last line may be incomplete)
+        String content = read(file);
+        content = content.substring(0, content.lastIndexOf('\n') + 1);
+        String[] lines = content.split("\n"); //$NON-NLS-1$
+        if (lines.length == 0 || !lines[0].startsWith("M ")) { //$NON-NLS-1$
+            throw new IOException("invalid header"); //$NON-NLS-1$
+        }
+        TransferJournal journal =
+                new TransferJournal(file, lines[0].endsWith("1"), true); //$NON-NLS-1$
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.length() < 2) {
+                continue;
+            }
+            String data = line.substring(2);
+            int tab = data.indexOf('\t');
+            switch (line.charAt(0)) {
+                case 'T':
+                    if (tab != -1) {
+                        journal.mEntries.add(new Entry(journal.mEntries.size(),
+                                new File(data.substring(0, tab)),
+                                new File(data.substring(tab + 1))));
+                    }
+                    break;
+                case 'D':
+                    try {
+                        journal.mEntries.get(Integer.parseInt(data)).mDone = true;
+                    } catch (RuntimeException ex) {/**NON BLOCK**/}
+                    break;
+                case 'C':
+                    journal.mCopied.add(data);
+                    journal.mOffsets.remove(data);
+                    break;
+                case 'O':
+                    if (tab != -1) {
+                        try {
+                            journal.mOffsets.put(data.substring(tab + 1),
+                                    Long.valueOf(data.substring(0, tab)));
+                        } catch (NumberFormatException ex) {/**NON BLOCK**/}
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Method that reads the content of a journal.
+     *
+     * @param file The file of the journal
+     * @return String The content of the journal
+     * @throws IOException If the journal can't be read
+     */
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8"); //$NON-NLS-1$
+        try {
+            StringBuilder sb = new StringBuilder((int)file.length());
+            char[] data = new char[8192];
+            int read;
+            while ((read = reader.read(data)) != -1) {
+                sb.append(data, 0, read);
+            }
+            return sb.toString();
+        } finally {
+            try {
+                reader.close();
+            } catch (Throwable ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that returns the folder of the journals.
+     *
+     * @param ctx The current context
+     * @return File The folder of the journals
+     */
+    private static File getJournalsDir(Context ctx) {
+        return new File(ctx.getFilesDir(), JOURNALS_DIR);
+    }
+
+    /**
+     * Method that returns the name of the journal, that identifies the operation.
+     *
+     * @return String The name of the journal
+     */
+    public String getName() {
+        return this.mFile.getName();
+    }
+
+    /**
+     * Method that returns if the operation is a move.
+     *
+     * @return boolean If the operation is a move
+     */
+    public boolean isMove() {
+        return this.mMove;
+    }
+
+    /**
+     * Method that returns if the operation is resumed, so the files already copied
+     * must be skipped.
+     *
+     * @return boolean If the operation is resumed
+     */
+    public boolean isResumed() {
+        return this.mResumed;
+    }
+
+    /**
+     * Method that returns the transfers that hasn't ended.
+     *
+     * @return List<Entry> The transfers that hasn't ended
+     */
+    public synchronized List<Entry> getPendingEntries() {
+        List<Entry> pending = new ArrayList<Entry>();
+        int cc = this.mEntries.size();
+        for (int i = 0; i < cc; i++) {
+            if (!this.mEntries.get(i).mDone) {
+                pending.add(this.mEntries.get(i));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Method that opens the journal for append the records of the operation.
+     *
+     * @throws IOException If the journal can't be opened
+     */
+    public synchronized void open() throws IOException {
+        if (this.mWriter != null) {
+            return;
+        }
+        this.mOut = new FileOutputStream(this.mFile, true);
+        this.mWriter = new OutputStreamWriter(this.mOut, "UTF-8"); //$NON-NLS-1$
+        synchronized (ACTIVE) {
+            ACTIVE.add(this.mFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Method that records that a transfer has ended.
+     *
+     * @param index The index of the transfer
+     */
+    public synchronized void transferEnded(int index) {
+        if (index >= 0 && index < this.mEntries.size()) {
+            this.mEntries.get(index).mDone = true;
+        }
+        write("D " + index); //$NON-NLS-1$
+        sync();
+    }
+
+    /**
+     * Method that records that a file was copied.
+     *
+     * @param src The source file
+     */
+    public synchronized void fileCopied(String src) {
+        this.mCopied.add(src);
+        this.mOffsets.remove(src);
+        write("C " + src); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that records the bytes copied of the file in flight. The offset is
+     * only recorded from time to time.
+     *
+     * @param src The source file
+     * @param offset The bytes of the file copied
+     */
+    public synchronized void fileProgress(String src, long offset) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - this.mLastOffsetTime < OFFSET_DELAY) {
+            return;
+        }
+        this.mLastOffsetTime = now;
+        write("O " + offset + "\t" + src); //$NON-NLS-1$ //$NON-NLS-2$
+        sync();
+    }
+
+    /**
+     * Method that returns the offset from which the copy of a file can be resumed.
+     * The offset is verified with the destination file: by size for the copied
+     * files, and by size and checksum of the end of the partial file for the file
+     * in flight.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @return long The offset from which resume the copy (the size of the source if
+     * the file was copied, 0 if the file must be copied from the start)
+     */
+    public long getResumeOffset(File src, File dst) {
+        if (!this.mResumed || !dst.isFile()) {
+            return 0;
+        }
+        String path = src.getAbsolutePath();
+        long size = src.length();
+        long length = dst.length();
+        boolean copied;
+        Long offset;
+        synchronized (this) {
+            copied = this.mCopied.contains(path);
+            offset = this.mOffsets.get(path);
+        }
+        if (copied || (length == size && dst.lastModified() == src.lastModified())) {
+            // A copied file (or copied with its modification time before the last record)
+            return length == size ? size : 0;
+        }
+        if (offset == null) {
+            return 0;
+        }
+        long o = Math.min(offset.longValue(), length);
+        if (o <= 0 || o > size || !verify(src, dst, o)) {
+            return 0;
+        }
+        return o;
+    }
+
+    /**
+     * Method that verifies that the end of a partial file is equal to the source.
+     *
+     * @param src The source file
+     * @param dst The partial destination file
+     * @param offset The end of the partial file
+     * @return boolean If the partial file is valid
+     */
+    private static boolean verify(File src, File dst, long offset) {
+        try {
+            long start = Math.max(0, offset - VERIFY_SIZE);
+            return checksum(src, start, offset) == checksum(dst, start, offset);
+        } catch (IOException ex) {
+            Log.w(TAG, String.format("Failed to verify %s", dst), ex); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    /**
+     * Method that computes the checksum of a region of a file.
+     *
+     * @param file The file
+     * @param start The start of the region
+     * @param end The end of the region
+     * @return long The CRC32 of the region
+     * @throws IOException If the file can't be read
+     */
+    private static long checksum(File file, long start, long end) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        try {
+            CRC32 crc = new CRC32();
+            byte[] data = new byte[64 * 1024];
+            raf.seek(start);
+            long remaining = end - start;
+            while (remaining > 0) {
+                int read = raf.read(data, 0, (int)Math.min(data.length, remaining));
+                if (read == -1) {
+                    throw new IOException("unexpected end of file"); //$NON-NLS-1$
+                }
+                crc.update(data, 0, read);
+                remaining -= read;
+            }
+            return crc.getValue();
+        } finally {
+            try {
+                raf.close();
+            } catch (Throwable ex) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that closes the journal, and keeps it to resume the operation later.
+     */
+    public synchronized void close() {
+        try {
+            if (this.mWriter != null) {
+                this.mWriter.close();
+            }
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+        this.mWriter = null;
+        this.mOut = null;
+        synchronized (ACTIVE) {
+            ACTIVE.remove(this.mFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Method that closes and deletes the journal (the operation has ended or was
+     * cancelled).
+     */
+    public synchronized void delete() {
+        close();
+        if (this.mFile.exists() && !this.mFile.delete()) {
+            Log.w(TAG, String.format("Failed to delete %s", this.mFile)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that appends a record to the journal.
+     *
+     * @param record The record
+     */
+    private void write(String record) {
+        if (this.mWriter == null) {
+            return;
+        }
+        try {
+            this.mWriter.write(record);
+            this.mWriter.write('\n');
+            this.mWriter.flush();
+        } catch (IOException ex) {
+            Log.w(TAG, String.format("Failed to write %s", this.mFile), ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that ensures that the records are written to disk.
+     */
+    private void sync() {
+        if (this.mOut == null) {
+            return;
+        }
+        try {
+            this.mOut.getFD().sync();
+        } catch (IOException ex) {
+            Log.w(TAG, String.format("Failed to sync %s", this.mFile), ex); //$NON-NLS-1$
+        }
+    }
+}
@@ -0,0 +1,977 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.TransferExecutable;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleBuilder;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.model.MountPoint;
+import com.cyanogenmod.filemanager.model.TransferProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class that copies or moves several files and folders concurrently.<br/>
+ * <br/>
+ * Every transfer runs as an asynchronous copy or move command (see
+ * {@link CommandHelper#copy(Context, String, String, AsyncResultListener, Console)}) in
+ * a worker with its own console, because a console only runs a command at a time.
+ * The scheduler follows these rules:
+ * <ul>
+ * <li>The number of workers that read or write a mount point is limited by the kind
+ * of storage of the mount point: removable and emulated storages ({@link #SLOW_LIMIT})
+ * have less concurrency than the internal storage ({@link #FAST_LIMIT}), and a read-only
+ * mount point, that every transfer remounts, is written by one worker only.</li>
+ * <li>Files smaller than {@link #SMALL_FILE_SIZE} are grouped in batches that a worker
+ * transfers one after another, so small files don't take all the workers.</li>
+ * <li>Big files and folders are transferred by a worker alone (the command streams its
+ * content), and are launched first.</li>
+ * </ul>
+ * The listener is invoked in the thread that executes the scheduler, that is blocked
+ * until all the transfers end.<br/>
+ * <br/>
+ * The operation is recorded in a {@link TransferJournal}. If the operation fails, or
+ * the application dies, the journal is kept, and the operation can be resumed with
+ * {@link #TransferScheduler(Context, TransferJournal)}.
+ */
+public class TransferScheduler {
+
+    private static final String TAG = "TransferScheduler"; //$NON-NLS-1$
+
+    /**
+     * The maximum number of concurrent transfers.
+     */
+    public static final int MAX_WORKERS = 4;
+
+    /**
+     * The maximum number of concurrent transfers of a fast storage.
+     */
+    public static final int FAST_LIMIT = 4;
+
+    /**
+     * The maximum number of concurrent transfers of a slow storage (sdcards, usb
+     * storages and emulated storages).
+     */
+    public static final int SLOW_LIMIT = 2;
+
+    /**
+     * The size below which a file is transferred in a batch.
+     */
+    public static final long SMALL_FILE_SIZE = 1024 * 1024L;
+
+    /**
+     * The maximum number of files of a batch.
+     */
+    public static final int MAX_BATCH_FILES = 64;
+
+    /**
+     * The maximum number of bytes of a batch.
+     */
+    public static final long MAX_BATCH_SIZE = 8 * 1024 * 1024L;
+
+    // The filesystems of the slow storages
+    private static final String[] SLOW_FILESYSTEMS = {
+        "vfat", "exfat", "texfat", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        "ntfs", "fuse", "sdcardfs" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    };
+
+    // The time between checks of the transfers (and progress notifications)
+    private static final long POLL_DELAY = 250L;
+
+    /**
+     * An interface to communicate the events of the scheduler.
+     */
+    public interface OnTransferListener {
+        /**
+         * Method invoked periodically while the transfers are running.
+         */
+        void onTransferProgress();
+
+        /**
+         * Method invoked when a transfer ends successfully.
+         *
+         * @param transfer The transfer
+         * @throws Throwable If the transfer must be considered as failed. The
+         * scheduler is aborted
+         */
+        void onTransferEnd(Transfer transfer) throws Throwable;
+
+        /**
+         * Method invoked when a transfer fails. A listener that asks the user to resolve
+         * the failure must abort the scheduler (throw the cause) if the user declines.
+         *
+         * @param transfer The transfer
+         * @param cause The cause of the failure
+         * @return boolean If the transfer must be relaunched (only once)
+         * @throws Throwable If the scheduler must be aborted
+         */
+        boolean onTransferFailed(Transfer transfer, Throwable cause) throws Throwable;
+    }
+
+    /**
+     * A transfer of a file or folder.
+     */
+    public static final class Transfer implements AsyncResultListener {
+        final int mIndex;
+        final File mSrc;
+        final File mDst;
+        final boolean mFolder;
+        final long mSize;
+        boolean mRelaunched;
+        TransferExecutable mCmd;
+        volatile TransferProgress mProgress;
+        volatile boolean mEnd;
+        volatile Throwable mCause;
+        Object mSync;
+
+        /**
+         * Constructor of <code>Transfer</code>.
+         *
+         * @param index The index of the transfer in the journal
+         * @param src The source file or folder
+         * @param dst The destination file or folder
+         */
+        Transfer(int index, File src, File dst) {
+            super();
+            this.mIndex = index;
+            this.mSrc = src;
+            this.mDst = dst;
+            this.mFolder = src.isDirectory();
+            this.mSize = this.mFolder ? 0 : src.length();
+        }
+
+        /**
+         * Method that returns the source file or folder.
+         *
+         * @return File The source file or folder
+         */
+        public File getSource() {
+            return this.mSrc;
+        }
+
+        /**
+         * Method that returns the destination file or folder.
+         *
+         * @return File The destination file or folder
+         */
+        public File getDestination() {
+            return this.mDst;
+        }
+
+        /**
+         * Method that returns if the transfer was relaunched (it can't be relaunched
+         * again).
+         *
+         * @return boolean If the transfer was relaunched
+         */
+        public boolean isRelaunched() {
+            return this.mRelaunched;
+        }
+
+        /**
+         * Method that returns if the transfer is a small file.
+         *
+         * @return boolean If the transfer is a small file
+         */
+        boolean isSmall() {
+            return !this.mFolder && this.mSize < SMALL_FILE_SIZE;
+        }
+
+        /**
+         * Method that prepares the transfer for a launch.
+         */
+        void reset() {
+            this.mCmd = null;
+            this.mProgress = null;
+            this.mEnd = false;
+            this.mCause = null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAsyncStart() {/**NON BLOCK**/}
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAsyncEnd(boolean cancelled) {/**NON BLOCK**/}
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAsyncExitCode(int exitCode) {
+            synchronized (this.mSync) {
+                this.mEnd = true;
+                this.mSync.notify();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onException(Exception cause) {
+            this.mCause = cause;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onPartialResult(Object result) {
+            this.mProgress = (TransferProgress)result;
+        }
+    }
+
+    /**
+     * A worker that runs a batch of transfers, one after another, in its own console.
+     */
+    private static final class Worker {
+        final LinkedList<Transfer> mBatch;
+        final String mSrcKey;
+        final String mDstKey;
+        Console mConsole;
+        int mGeneration;
+        Transfer mCurrent;
+
+        /**
+         * Constructor of <code>Worker</code>.
+         *
+         * @param batch The transfers of the worker
+         * @param srcKey The source mount point of the transfers
+         * @param dstKey The destination mount point of the transfers
+         */
+        Worker(LinkedList<Transfer> batch, String srcKey, String dstKey) {
+            super();
+            this.mBatch = batch;
+            this.mSrcKey = srcKey;
+            this.mDstKey = dstKey;
+        }
+    }
+
+    private final Context mCtx;
+    private final boolean mMove;
+    private TransferJournal mJournal;
+    private final List<Transfer> mTransfers;
+    private final Map<String, Integer> mLimits;
+    private final Map<String, Integer> mUsage;
+    private final List<Worker> mPending;
+    private final List<Worker> mRunning;
+    private final List<Console> mIdleConsoles;
+    private final List<TransferProgress> mDone;
+    private TransferProgress mBase;
+    private Transfer mCurrent;
+    private int mMaxWorkers;
+    // Incremented when the consoles must be recreated
+    private int mGeneration;
+    private final Object mSync = new Object();
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>TransferScheduler</code>.
+     *
+     * @param ctx The current context
+     * @param move If the files must be moved (otherwise they are copied)
+     */
+    public TransferScheduler(Context ctx, boolean move) {
+        super();
+        this.mCtx = ctx;
+        this.mMove = move;
+        this.mTransfers = new ArrayList<Transfer>();
+        this.mLimits = new HashMap<String, Integer>();
+        this.mUsage = new HashMap<String, Integer>();
+        this.mPending = new ArrayList<Worker>();
+        this.mRunning = new ArrayList<Worker>();
+        this.mIdleConsoles = new ArrayList<Console>();
+        this.mDone = new ArrayList<TransferProgress>();
+        this.mMaxWorkers = MAX_WORKERS;
+        this.mCancelled = false;
+    }
+
+    /**
+     * Constructor of <code>TransferScheduler</code>. Creates a scheduler that resumes
+     * an interrupted operation.
+     *
+     * @param ctx The current context
+     * @param journal The journal of the interrupted operation
+     */
+    public TransferScheduler(Context ctx, TransferJournal journal) {
+        this(ctx, journal.isMove());
+        this.mJournal = journal;
+        List<TransferJournal.Entry> entries = journal.getPendingEntries();
+        int cc = entries.size();
+        for (int i = 0; i < cc; i++) {
+            TransferJournal.Entry entry = entries.get(i);
+            add(new Transfer(entry.getIndex(), entry.getSource(), entry.getDestination()));
+        }
+    }
+
+    /**
+     * Method that adds a file or folder to transfer.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     */
+    public void add(File src, File dst) {
+        add(new Transfer(this.mTransfers.size(), src, dst));
+    }
+
+    /**
+     * Method that adds a transfer.
+     *
+     * @param transfer The transfer
+     */
+    private void add(Transfer transfer) {
+        transfer.mSync = this.mSync;
+        this.mTransfers.add(transfer);
+    }
+
+    /**
+     * Method that returns the last launched transfer.
+     *
+     * @return Transfer The last launched transfer, the first transfer if no transfer
+     * was launched, or null if there are no transfers
+     */
+    public synchronized Transfer getCurrent() {
+        if (this.mCurrent == null && !this.mTransfers.isEmpty()) {
+            return this.mTransfers.get(0);
+        }
+        return this.mCurrent;
+    }
+
+    /**
+     * Method that returns the aggregated progress of all the transfers. The total
+     * of the folders not launched is unknown until they are launched.
+     *
+     * @return TransferProgress The aggregated progress, or null if the scheduler
+     * wasn't executed
+     */
+    public synchronized TransferProgress getProgress() {
+        if (this.mBase == null) {
+            return null;
+        }
+        TransferProgress progress = this.mBase.clone();
+        int cc = this.mDone.size();
+        for (int i = 0; i < cc; i++) {
+            progress.merge(this.mDone.get(i));
+        }
+        cc = this.mRunning.size();
+        for (int i = 0; i < cc; i++) {
+            Worker worker = this.mRunning.get(i);
+            addProgress(progress, worker.mCurrent);
+            addTotals(progress, worker.mBatch);
+        }
+        cc = this.mPending.size();
+        for (int i = 0; i < cc; i++) {
+            addTotals(progress, this.mPending.get(i).mBatch);
+        }
+        return progress;
+    }
+
+    /**
+     * Method that cancels the transfers. The transfers running are cancelled by the
+     * thread that executes the scheduler.
+     */
+    public void cancel() {
+        synchronized (this.mSync) {
+            this.mCancelled = true;
+            this.mSync.notify();
+        }
+    }
+
+    /**
+     * Method that executes all the transfers, and blocks until all of them end.
+     *
+     * @param listener The listener of the transfers (required)
+     * @throws Throwable If a transfer fails and the listener aborts the scheduler
+     */
+    public void execute(OnTransferListener listener) throws Throwable {
+        synchronized (this) {
+            this.mBase = new TransferProgress(null, null);
+            createWorkers();
+        }
+        openJournal();
+        boolean failed = false;
+        try {
+            while (!this.mCancelled) {
+                launchWorkers(listener);
+                synchronized (this) {
+                    if (this.mPending.isEmpty() && this.mRunning.isEmpty()) {
+                        break;
+                    }
+                }
+
+                // Wait for the end of a transfer
+                synchronized (this.mSync) {
+                    if (!this.mCancelled && !isAnyEnded()) {
+                        this.mSync.wait(POLL_DELAY);
+                    }
+                }
+                checkWorkers(listener);
+                listener.onTransferProgress();
+            }
+        } catch (InterruptedException ie) {
+            // Cancelled
+            throw ie;
+        } catch (Throwable ex) {
+            failed = true;
+            throw ex;
+        } finally {
+            // Cancel the transfers still running and free the consoles
+            List<Worker> running;
+            synchronized (this) {
+                running = new ArrayList<Worker>(this.mRunning);
+                this.mRunning.clear();
+                this.mPending.clear();
+            }
+            int cc = running.size();
+            for (int i = 0; i < cc; i++) {
+                Worker worker = running.get(i);
+                cancel(worker.mCurrent);
+                releaseConsole(worker);
+            }
+            destroyConsoles();
+
+            // Keep the journal of a failed operation, to resume it later
+            if (this.mJournal != null) {
+                if (failed && !this.mCancelled) {
+                    this.mJournal.close();
+                } else {
+                    this.mJournal.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that creates the journal of the operation, or opens the journal of a
+     * resumed operation. The operation continues without journal if it can't be
+     * created.
+     */
+    private void openJournal() {
+        try {
+            if (this.mJournal != null) {
+                this.mJournal.open();
+                return;
+            }
+            List<File> sources = new ArrayList<File>();
+            List<File> destinations = new ArrayList<File>();
+            int cc = this.mTransfers.size();
+            for (int i = 0; i < cc; i++) {
+                sources.add(this.mTransfers.get(i).mSrc);
+                destinations.add(this.mTransfers.get(i).mDst);
+            }
+            this.mJournal = TransferJournal.create(this.mCtx, this.mMove, sources, destinations);
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to create the journal of the operation", ex); //$NON-NLS-1$
+            this.mJournal = null;
+        }
+    }
+
+    /**
+     * Method that groups the transfers in the workers that will run them. Big files
+     * and folders are launched first, the biggest first.
+     */
+    private void createWorkers() {
+        List<Transfer> transfers = new ArrayList<Transfer>(this.mTransfers);
+        Collections.sort(transfers, new Comparator<Transfer>() {
+            @Override
+            public int compare(Transfer lhs, Transfer rhs) {
+                if (lhs.mFolder != rhs.mFolder) {
+                    return lhs.mFolder ? -1 : 1;
+                }
+                return lhs.mSize < rhs.mSize ? 1 : (lhs.mSize == rhs.mSize ? 0 : -1);
+            }
+        });
+
+        // The open batch of small files of every pair of mount points
+        Map<String, Worker> batches = new HashMap<String, Worker>();
+        Map<String, Long> batchSizes = new HashMap<String, Long>();
+        int cc = transfers.size();
+        for (int i = 0; i < cc; i++) {
+            Transfer transfer = transfers.get(i);
+            String srcKey = getMountPointKey(transfer.mSrc);
+            String dstKey = getMountPointKey(transfer.mDst);
+            if (!transfer.isSmall()) {
+                LinkedList<Transfer> batch = new LinkedList<Transfer>();
+                batch.add(transfer);
+                this.mPending.add(new Worker(batch, srcKey, dstKey));
+                continue;
+            }
+
+            String key = srcKey + File.pathSeparator + dstKey;
+            Worker worker = batches.get(key);
+            long size = worker != null ? batchSizes.get(key).longValue() : 0;
+            if (worker == null || worker.mBatch.size() >= MAX_BATCH_FILES ||
+                    size + transfer.mSize > MAX_BATCH_SIZE) {
+                worker = new Worker(new LinkedList<Transfer>(), srcKey, dstKey);
+                batches.put(key, worker);
+                this.mPending.add(worker);
+                size = 0;
+            }
+            worker.mBatch.add(transfer);
+            batchSizes.put(key, Long.valueOf(size + transfer.mSize));
+        }
+    }
+
+    /**
+     * Method that launches the pending workers allowed by the limits of their
+     * mount points.
+     *
+     * @param listener The listener of the transfers
+     * @throws Throwable If a transfer fails and the listener aborts the scheduler
+     */
+    private void launchWorkers(OnTransferListener listener) throws Throwable {
+        int i = 0;
+        while (!this.mCancelled) {
+            Worker worker;
+            synchronized (this) {
+                if (i >= this.mPending.size() || this.mRunning.size() >= this.mMaxWorkers) {
+                    return;
+                }
+                worker = this.mPending.get(i);
+                if (!acquire(worker)) {
+                    i++;
+                    continue;
+                }
+                this.mPending.remove(i);
+                this.mRunning.add(worker);
+            }
+            obtainConsole(worker);
+            launchNext(worker, listener);
+        }
+    }
+
+    /**
+     * Method that checks the ended transfers, and launches the next transfer of
+     * their workers.
+     *
+     * @param listener The listener of the transfers
+     * @throws Throwable If a transfer fails and the listener aborts the scheduler
+     */
+    private void checkWorkers(OnTransferListener listener) throws Throwable {
+        List<Worker> running;
+        synchronized (this) {
+            running = new ArrayList<Worker>(this.mRunning);
+        }
+        int cc = running.size();
+        for (int i = 0; i < cc; i++) {
+            Worker worker = running.get(i);
+            Transfer transfer = worker.mCurrent;
+            if (transfer == null || !transfer.mEnd) {
+                continue;
+            }
+            checkResult(transfer);
+            boolean relaunch = false;
+            if (transfer.mCause != null) {
+                relaunch = relaunch(transfer, transfer.mCause, listener);
+            } else {
+                listener.onTransferEnd(transfer);
+                if (this.mJournal != null) {
+                    this.mJournal.transferEnded(transfer.mIndex);
+                }
+            }
+            synchronized (this) {
+                worker.mCurrent = null;
+                if (relaunch) {
+                    worker.mBatch.addFirst(transfer);
+                } else {
+                    this.mDone.add(getFinalProgress(transfer));
+                }
+            }
+            if (relaunch) {
+                renewConsoles(worker);
+            }
+            launchNext(worker, listener);
+        }
+    }
+
+    /**
+     * Method that launches the next transfer of a worker, or finishes the worker
+     * if there are no more transfers.
+     *
+     * @param worker The worker
+     * @param listener The listener of the transfers
+     * @throws Throwable If a transfer fails and the listener aborts the scheduler
+     */
+    private void launchNext(Worker worker, OnTransferListener listener) throws Throwable {
+        while (!this.mCancelled) {
+            Transfer transfer;
+            synchronized (this) {
+                transfer = worker.mBatch.poll();
+                if (transfer == null) {
+                    // The worker has finished
+                    this.mRunning.remove(worker);
+                    release(worker);
+                    releaseConsole(worker);
+                    return;
+                }
+            }
+            try {
+                transfer.reset();
+                transfer.mCmd = this.mMove
+                        ? CommandHelper.move(this.mCtx,
+                                transfer.mSrc.getAbsolutePath(),
+                                transfer.mDst.getAbsolutePath(),
+                                this.mJournal, transfer, worker.mConsole)
+                        : CommandHelper.copy(this.mCtx,
+                                transfer.mSrc.getAbsolutePath(),
+                                transfer.mDst.getAbsolutePath(),
+                                this.mJournal, transfer, worker.mConsole);
+                synchronized (this) {
+                    worker.mCurrent = transfer;
+                    this.mCurrent = transfer;
+                }
+                return;
+            } catch (Exception e) {
+                if (relaunch(transfer, e, listener)) {
+                    synchronized (this) {
+                        worker.mBatch.addFirst(transfer);
+                    }
+                    renewConsoles(worker);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that recreates the consoles of the workers after a relaunch. The default
+     * console may have changed (relaunched with privileges), so the idle consoles are
+     * destroyed, and the running workers destroy theirs when they end.
+     *
+     * @param worker The worker that relaunches a transfer
+     */
+    private void renewConsoles(Worker worker) {
+        synchronized (this) {
+            this.mGeneration++;
+        }
+        destroyConsoles();
+        releaseConsole(worker);
+        obtainConsole(worker);
+    }
+
+    /**
+     * Method that checks the result of an ended transfer. The transfer commands notify
+     * the exit code after their result or exception, so an ended transfer without any
+     * of them didn't complete (it was cancelled or killed).
+     *
+     * @param transfer The ended transfer
+     */
+    private static void checkResult(Transfer transfer) {
+        if (transfer.mCause == null && !Boolean.TRUE.equals(transfer.mCmd.getResult())) {
+            transfer.mCause = new ExecutionException("transfer failed"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that asks the listener about a failed transfer.
+     *
+     * @param transfer The failed transfer
+     * @param cause The cause of the failure
+     * @param listener The listener of the transfers
+     * @return boolean If the transfer must be relaunched
+     * @throws Throwable If the listener aborts the scheduler
+     */
+    private boolean relaunch(
+            Transfer transfer, Throwable cause, OnTransferListener listener) throws Throwable {
+        boolean relaunch = listener.onTransferFailed(transfer, cause);
+        if (relaunch && (transfer.mRelaunched || this.mCancelled)) {
+            // Only once, and never if the operation was cancelled meanwhile
+            throw cause;
+        }
+        transfer.mRelaunched = relaunch;
+        return relaunch;
+    }
+
+    /**
+     * Method that returns if some of the running transfers has ended.
+     *
+     * @return boolean If some of the running transfers has ended
+     */
+    private synchronized boolean isAnyEnded() {
+        int cc = this.mRunning.size();
+        for (int i = 0; i < cc; i++) {
+            Transfer transfer = this.mRunning.get(i).mCurrent;
+            if (transfer == null || transfer.mEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that takes a slot of the mount points of a worker, if their limits
+     * allow it.
+     *
+     * @param worker The worker
+     * @return boolean If the slot was taken
+     */
+    private boolean acquire(Worker worker) {
+        if (worker.mSrcKey.equals(worker.mDstKey)) {
+            if (getUsage(worker.mSrcKey) >= getLimit(worker.mSrcKey)) {
+                return false;
+            }
+        } else if (getUsage(worker.mSrcKey) >= getLimit(worker.mSrcKey) ||
+                getUsage(worker.mDstKey) >= getLimit(worker.mDstKey)) {
+            return false;
+        }
+        this.mUsage.put(worker.mSrcKey, Integer.valueOf(getUsage(worker.mSrcKey) + 1));
+        if (!worker.mSrcKey.equals(worker.mDstKey)) {
+            this.mUsage.put(worker.mDstKey, Integer.valueOf(getUsage(worker.mDstKey) + 1));
+        }
+        return true;
+    }
+
+    /**
+     * Method that frees the slot of the mount points of a worker.
+     *
+     * @param worker The worker
+     */
+    private void release(Worker worker) {
+        this.mUsage.put(worker.mSrcKey, Integer.valueOf(getUsage(worker.mSrcKey) - 1));
+        if (!worker.mSrcKey.equals(worker.mDstKey)) {
+            this.mUsage.put(worker.mDstKey, Integer.valueOf(getUsage(worker.mDstKey) - 1));
+        }
+    }
+
+    /**
+     * Method that returns the number of workers that use a mount point.
+     *
+     * @param key The mount point
+     * @return int The number of workers
+     */
+    private int getUsage(String key) {
+        Integer usage = this.mUsage.get(key);
+        return usage == null ? 0 : usage.intValue();
+    }
+
+    /**
+     * Method that returns the maximum number of workers of a mount point.
+     *
+     * @param key The mount point
+     * @return int The maximum number of workers
+     */
+    private int getLimit(String key) {
+        Integer limit = this.mLimits.get(key);
+        return limit == null ? SLOW_LIMIT : limit.intValue();
+    }
+
+    /**
+     * Method that returns the mount point of a file, and computes the limit of
+     * concurrent transfers of the mount point the first time.
+     *
+     * @param file The file
+     * @return String The mount point of the file ("" if unknown)
+     */
+    private String getMountPointKey(File file) {
+        String parent = file.getParent();
+        MountPoint mp = parent == null
+                ? null
+                : MountPointHelper.getMountPointFromDirectory(parent);
+        String key = mp == null ? "" : mp.getMountPoint(); //$NON-NLS-1$
+        if (!this.mLimits.containsKey(key)) {
+            this.mLimits.put(key, Integer.valueOf(computeLimit(mp)));
+        }
+        return key;
+    }
+
+    /**
+     * Method that computes the maximum number of concurrent transfers of a mount point.
+     *
+     * @param mp The mount point
+     * @return int The maximum number of concurrent transfers
+     */
+    private static int computeLimit(MountPoint mp) {
+        if (mp == null) {
+            return SLOW_LIMIT;
+        }
+        if (MountPointHelper.isReadOnly(mp)) {
+            // Every transfer remounts and unmounts it
+            return 1;
+        }
+        String type = mp.getType();
+        for (int i = 0; i < SLOW_FILESYSTEMS.length; i++) {
+            if (SLOW_FILESYSTEMS[i].equals(type)) {
+                return SLOW_LIMIT;
+            }
+        }
+        return FAST_LIMIT;
+    }
+
+    /**
+     * Method that obtains a console for a worker. If a console can't be created, the
+     * default console is used, and no more workers are launched.
+     *
+     * @param worker The worker
+     */
+    private void obtainConsole(Worker worker) {
+        synchronized (this) {
+            worker.mGeneration = this.mGeneration;
+            if (!this.mIdleConsoles.isEmpty()) {
+                worker.mConsole = this.mIdleConsoles.remove(this.mIdleConsoles.size() - 1);
+                return;
+            }
+        }
+        try {
+            worker.mConsole = ConsoleBuilder.isPrivileged()
+                    ? ConsoleBuilder.createPrivilegedConsole(
+                            this.mCtx, FileHelper.ROOT_DIRECTORY)
+                    : ConsoleBuilder.createNonPrivilegedConsole(
+                            this.mCtx, FileHelper.ROOT_DIRECTORY);
+        } catch (Throwable ex) {
+            Log.w(TAG, "Failed to create a worker console", ex); //$NON-NLS-1$
+            synchronized (this) {
+                this.mMaxWorkers = Math.max(1, this.mRunning.size());
+            }
+            worker.mConsole = null;
+        }
+    }
+
+    /**
+     * Method that returns the console of a worker to the idle consoles, or destroys
+     * it if the consoles must be recreated.
+     *
+     * @param worker The worker
+     */
+    private void releaseConsole(Worker worker) {
+        Console console = worker.mConsole;
+        worker.mConsole = null;
+        if (console == null) {
+            return;
+        }
+        synchronized (this) {
+            if (worker.mGeneration == this.mGeneration) {
+                this.mIdleConsoles.add(console);
+                return;
+            }
+        }
+        try {
+            console.dealloc();
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+    }
+
+    /**
+     * Method that destroys the idle consoles.
+     */
+    private void destroyConsoles() {
+        List<Console> consoles;
+        synchronized (this) {
+            consoles = new ArrayList<Console>(this.mIdleConsoles);
+            this.mIdleConsoles.clear();
+        }
+        int cc = consoles.size();
+        for (int i = 0; i < cc; i++) {
+            try {
+                consoles.get(i).dealloc();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+    /**
+     * Method that cancels a running transfer.
+     *
+     * @param transfer The transfer (may be null)
+     */
+    private static void cancel(Transfer transfer) {
+        try {
+            if (transfer != null && transfer.mCmd != null && !transfer.mEnd &&
+                    transfer.mCmd.isCancellable() && !transfer.mCmd.isCancelled()) {
+                transfer.mCmd.cancel();
+            }
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+    }
+
+    /**
+     * Method that returns the progress of an ended transfer.
+     *
+     * @param transfer The transfer
+     * @return TransferProgress The progress of the transfer
+     */
+    private static TransferProgress getFinalProgress(Transfer transfer) {
+        TransferProgress progress = transfer.mCmd != null ? transfer.mCmd.getProgress() : null;
+        if (progress == null) {
+            progress = new TransferProgress(
+                    transfer.mSrc.getAbsolutePath(), transfer.mDst.getAbsolutePath());
+        }
+        if (progress.getTotalFiles() == 0 && !transfer.mFolder) {
+            // A renamed file isn't sized
+            progress.addTotal(transfer.mSize);
+            if (transfer.mCause == null) {
+                progress.complete();
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * Method that adds the progress of a running transfer.
+     *
+     * @param progress The aggregated progress
+     * @param transfer The transfer (may be null)
+     */
+    private static void addProgress(TransferProgress progress, Transfer transfer) {
+        if (transfer == null) {
+            return;
+        }
+        TransferProgress current = transfer.mProgress;
+        if (current != null && current.getTotalFiles() > 0) {
+            progress.merge(current);
+        } else if (!transfer.mFolder) {
+            // Not sized yet
+            progress.addTotal(transfer.mSize);
+        }
+    }
+
+    /**
+     * Method that adds the totals of the transfers not launched.
+     *
+     * @param progress The aggregated progress
+     * @param batch The transfers
+     */
+    private static void addTotals(TransferProgress progress, List<Transfer> batch) {
+        int cc = batch.size();
+        for (int i = 0; i < cc; i++) {
+            Transfer transfer = batch.get(i);
+            if (!transfer.mFolder) {
+                progress.addTotal(transfer.mSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.preferences.UncompressionMode;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+/**
+ * A class for testing the {@link ArchiveEngine} class.
+ *
+ * @see ArchiveEngine
+ */
+public class ArchiveEngineTest extends android.test.AndroidTestCase {
+
+    private static final File PATH =
+            new File(Environment.getExternalStorageDirectory(), "archiveenginetest"); //$NON-NLS-1$
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileHelper.deleteFolder(PATH);
+        assertTrue("mkdirs", PATH.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(PATH);
+        super.tearDown();
+    }
+
+    /**
+     * Method that performs a test to archive and extract a folder as a tar.gz file.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testArchiveGzip() throws Exception {
+        testArchive(CompressionMode.AC_GZIP, "tar.gz"); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test to archive and extract a folder as a tar.bz2 file.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testArchiveBzip() throws Exception {
+        testArchive(CompressionMode.AC_BZIP, "tar.bz2"); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test to compress and uncompress a file bigger than a
+     * block of the parallel gzip compressor.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCompressGzip() throws Exception {
+        File src = new File(PATH, "a.bin"); //$NON-NLS-1$
+        File ref = new File(PATH, "ref.bin"); //$NON-NLS-1$
+        File dst = new File(PATH, "a.bin.gz"); //$NON-NLS-1$
+        createFile(src, 2 * ParallelGzipOutputStream.BLOCK_SIZE + 17);
+        createFile(ref, 2 * ParallelGzipOutputStream.BLOCK_SIZE + 17);
+
+        ArchiveEngine engine = new ArchiveEngine();
+        assertTrue("compress", engine.compress(CompressionMode.C_GZIP, src, dst)); //$NON-NLS-1$
+        assertFalse("src exists", src.exists()); //$NON-NLS-1$
+        assertEquals("mode", UncompressionMode.C_GUNZIP, //$NON-NLS-1$
+                ArchiveEngine.getUncompressionMode(dst.getAbsolutePath()));
+
+        assertTrue("uncompress", //$NON-NLS-1$
+                engine.uncompress(UncompressionMode.C_GUNZIP, dst, src));
+        assertFalse("dst exists", dst.exists()); //$NON-NLS-1$
+        assertContentEquals(ref, src);
+    }
+
+    /**
+     * Method that archives a folder and extracts it in other folder.
+     *
+     * @param mode The compression mode
+     * @param extension The extension of the archive
+     * @throws Exception If test failed
+     */
+    private static void testArchive(CompressionMode mode, String extension) throws Exception {
+        File src = new File(PATH, "src"); //$NON-NLS-1$
+        File sub = new File(src, "sub"); //$NON-NLS-1$
+        assertTrue("mkdirs", sub.mkdirs()); //$NON-NLS-1$
+        assertTrue("mkdir", new File(src, "empty").mkdir()); //$NON-NLS-1$ //$NON-NLS-2$
+        createFile(new File(src, "a.bin"), 300 * 1024 + 3); //$NON-NLS-1$
+        createFile(new File(sub, "b.bin"), 0); //$NON-NLS-1$
+
+        File archive = new File(PATH, "src." + extension); //$NON-NLS-1$
+        assertTrue("archive", //$NON-NLS-1$
+                new ArchiveEngine().archive(mode, archive, new File[]{src}));
+        assertTrue("src exists", src.exists()); //$NON-NLS-1$
+
+        UncompressionMode umode = ArchiveEngine.getUncompressionMode(archive.getAbsolutePath());
+        assertNotNull("mode", umode); //$NON-NLS-1$
+        File dst = new File(PATH, "dst"); //$NON-NLS-1$
+        assertTrue("uncompress", //$NON-NLS-1$
+                new ArchiveEngine().uncompress(umode, archive, dst));
+
+        File out = new File(dst, "src"); //$NON-NLS-1$
+        assertContentEquals(new File(src, "a.bin"), //$NON-NLS-1$
+                new File(out, "a.bin")); //$NON-NLS-1$
+        assertContentEquals(new File(sub, "b.bin"), //$NON-NLS-1$
+                new File(new File(out, "sub"), "b.bin")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue("empty", new File(out, "empty").isDirectory()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that creates a file with a known content.
+     *
+     * @param file The file to create
+     * @param size The size of the file
+     * @throws Exception If the file can't be created
+     */
+    private static void createFile(File file, long size) throws Exception {
+        byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 31 + i / 257);
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int count = (int)Math.min(data.length, remaining);
+                fos.write(data, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Method that asserts that two files have the same content.
+     *
+     * @param expected The expected file
+     * @param actual The actual file
+     * @throws Exception If the files can't be read
+     */
+    private static void assertContentEquals(File expected, File actual) throws Exception {
+        assertEquals("length", expected.length(), actual.length()); //$NON-NLS-1$
+        FileInputStream e = new FileInputStream(expected);
+        FileInputStream a = new FileInputStream(actual);
+        try {
+            byte[] eb = new byte[8192];
+            byte[] ab = new byte[8192];
+            int read;
+            while ((read = e.read(eb)) != -1) {
+                int pos = 0;
+                while (pos < read) {
+                    int r = a.read(ab, pos, read - pos);
+                    assertTrue("eof", r != -1); //$NON-NLS-1$
+                    pos += r;
+                }
+                assertTrue("content", Arrays.equals(eb, ab)); //$NON-NLS-1$
+            }
+        } finally {
+            e.close();
+            a.close();
+        }
+    }
+}
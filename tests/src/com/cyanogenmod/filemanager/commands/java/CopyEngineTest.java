@@ -0,0 +1,538 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.os.Environment;
+import android.os.StatFs;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.TransferJournal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * A class for testing the {@link CopyEngine} class.
+ *
+ * @see CopyEngine
+ */
+public class CopyEngineTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "CopyEngineTest"; //$NON-NLS-1$
+
+    private static final File PATH =
+            new File(Environment.getExternalStorageDirectory(), "copyenginetest"); //$NON-NLS-1$
+
+    // The size of the big file of the benchmark (1 GB)
+    private static final long BIG_FILE_SIZE = 1024 * 1024 * 1024L;
+    // The number of small files of the benchmark
+    private static final int SMALL_FILES = 10000;
+    private static final int SMALL_FILE_SIZE = 4096;
+    // The buffer size of the legacy copy (R.integer.buffer_size)
+    private static final int LEGACY_BUFFER_SIZE = 4096;
+    // The size of the file of the resume tests
+    private static final long RESUME_FILE_SIZE = 3 * CopyEngine.MIN_CHUNK + 17;
+    // The folder of the journals (see TransferJournal)
+    private static final String JOURNALS_DIR = "transfers"; //$NON-NLS-1$
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileHelper.deleteFolder(PATH);
+        assertTrue("mkdirs", PATH.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(PATH);
+        super.tearDown();
+    }
+
+    /**
+     * Method that performs a test to copy a folder.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCopyFolder() throws Exception {
+        File src = new File(PATH, "src"); //$NON-NLS-1$
+        File dst = new File(PATH, "dst"); //$NON-NLS-1$
+        File sub = new File(src, "sub"); //$NON-NLS-1$
+        assertTrue("mkdirs", sub.mkdirs()); //$NON-NLS-1$
+        createFile(new File(src, "a.bin"), 3 * CopyEngine.MIN_CHUNK + 17); //$NON-NLS-1$
+        createFile(new File(sub, "b.bin"), 0); //$NON-NLS-1$
+        long modified = (System.currentTimeMillis() / 1000L - 86400L) * 1000L;
+        assertTrue("setLastModified", //$NON-NLS-1$
+                new File(src, "a.bin").setLastModified(modified)); //$NON-NLS-1$
+
+        assertTrue("copy", new CopyEngine().copy(src, dst)); //$NON-NLS-1$
+
+        assertContentEquals(new File(src, "a.bin"), //$NON-NLS-1$
+                new File(dst, "a.bin")); //$NON-NLS-1$
+        assertContentEquals(new File(sub, "b.bin"), //$NON-NLS-1$
+                new File(new File(dst, "sub"), "b.bin")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("lastModified", modified, //$NON-NLS-1$
+                new File(dst, "a.bin").lastModified()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test to move a folder file by file (between mount points)
+     * and merging it with a rename (in the same mount point).
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testMoveFolder() throws Exception {
+        File src = new File(PATH, "src"); //$NON-NLS-1$
+        File copy = new File(PATH, "copy"); //$NON-NLS-1$
+        File dst = new File(PATH, "dst"); //$NON-NLS-1$
+        File sub = new File(src, "sub"); //$NON-NLS-1$
+        assertTrue("mkdirs", sub.mkdirs()); //$NON-NLS-1$
+        createFile(new File(src, "a.bin"), 2 * CopyEngine.MIN_CHUNK + 5); //$NON-NLS-1$
+        createFile(new File(sub, "b.bin"), 100); //$NON-NLS-1$
+        assertTrue("copy", new CopyEngine().copy(src, copy)); //$NON-NLS-1$
+
+        // Streamed
+        final int[] renamed = new int[1];
+        CopyEngine engine = new CopyEngine() {
+            @Override
+            protected void onRenamed(File s, File d) {
+                renamed[0]++;
+            }
+        };
+        assertTrue("move", engine.move(src, dst, false)); //$NON-NLS-1$
+        assertFalse("src exists", src.exists()); //$NON-NLS-1$
+        assertEquals("renamed", 0, renamed[0]); //$NON-NLS-1$
+        assertContentEquals(new File(copy, "a.bin"), //$NON-NLS-1$
+                new File(dst, "a.bin")); //$NON-NLS-1$
+        assertContentEquals(new File(new File(copy, "sub"), "b.bin"), //$NON-NLS-1$ //$NON-NLS-2$
+                new File(new File(dst, "sub"), "b.bin")); //$NON-NLS-1$ //$NON-NLS-2$
+
+        // Merged with renames
+        createFile(new File(new File(dst, "sub"), "b.bin"), 1); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue("move", engine.move(copy, dst, true)); //$NON-NLS-1$
+        assertFalse("copy exists", copy.exists()); //$NON-NLS-1$
+        assertEquals("renamed", 2, renamed[0]); //$NON-NLS-1$
+        assertEquals("length", 100, //$NON-NLS-1$
+                new File(new File(dst, "sub"), "b.bin").length()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that performs a test to resume the copy of a file that was copied before
+     * the interruption.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResumeCopiedFile() throws Exception {
+        File src = new File(PATH, "a.bin"); //$NON-NLS-1$
+        File dst = new File(PATH, "b.bin"); //$NON-NLS-1$
+        createFile(src, RESUME_FILE_SIZE);
+        createPartialFile(src, dst, RESUME_FILE_SIZE);
+
+        TransferJournal journal = createJournal(src, dst);
+        try {
+            journal.fileCopied(src.getAbsolutePath());
+            journal = reloadJournal(journal);
+
+            assertEquals("offset", RESUME_FILE_SIZE, //$NON-NLS-1$
+                    journal.getResumeOffset(src, dst));
+            CopyEngine engine = new ResumeCopyEngine(journal) {
+                @Override
+                protected long transfer(FileChannel in, FileChannel out, long position)
+                        throws IOException {
+                    fail("copied file transferred"); //$NON-NLS-1$
+                    return 0;
+                }
+            };
+            assertTrue("copyFile", engine.copyFile(src, dst)); //$NON-NLS-1$
+            assertContentEquals(src, dst);
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Method that performs a test to resume the copy of a file whose destination is
+     * shorter than the recorded offset (the last written bytes weren't flushed).
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResumeTruncatedDestination() throws Exception {
+        File src = new File(PATH, "a.bin"); //$NON-NLS-1$
+        File dst = new File(PATH, "b.bin"); //$NON-NLS-1$
+        createFile(src, RESUME_FILE_SIZE);
+        long length = CopyEngine.MIN_CHUNK + 100;
+        createPartialFile(src, dst, length);
+
+        TransferJournal journal = createJournal(src, dst);
+        try {
+            journal.fileProgress(src.getAbsolutePath(), 2 * CopyEngine.MIN_CHUNK);
+            journal = reloadJournal(journal);
+
+            // The offset is clamped to the length of the destination
+            assertEquals("offset", length, //$NON-NLS-1$
+                    journal.getResumeOffset(src, dst));
+            ResumeCopyEngine engine = new ResumeCopyEngine(journal);
+            assertTrue("copyFile", engine.copyFile(src, dst)); //$NON-NLS-1$
+            assertEquals("transferred", RESUME_FILE_SIZE, engine.mTransferred); //$NON-NLS-1$
+            assertContentEquals(src, dst);
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Method that performs a test to resume the copy of a file whose destination has
+     * bytes after the recorded offset (written after the last record).
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResumeDiscardsBytesAfterOffset() throws Exception {
+        File src = new File(PATH, "a.bin"); //$NON-NLS-1$
+        File dst = new File(PATH, "b.bin"); //$NON-NLS-1$
+        createFile(src, RESUME_FILE_SIZE);
+        createPartialFile(src, dst, 2 * CopyEngine.MIN_CHUNK);
+        // Bytes written after the last record can be anything
+        corrupt(dst, 2 * CopyEngine.MIN_CHUNK - 10);
+
+        TransferJournal journal = createJournal(src, dst);
+        try {
+            journal.fileProgress(src.getAbsolutePath(), CopyEngine.MIN_CHUNK);
+            journal = reloadJournal(journal);
+
+            assertEquals("offset", CopyEngine.MIN_CHUNK, //$NON-NLS-1$
+                    journal.getResumeOffset(src, dst));
+            assertTrue("copyFile", //$NON-NLS-1$
+                    new ResumeCopyEngine(journal).copyFile(src, dst));
+            assertContentEquals(src, dst);
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Method that performs a test to resume the copy of a file whose destination was
+     * corrupted before the recorded offset. The file must be copied from the start.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResumeCorruptedTail() throws Exception {
+        File src = new File(PATH, "a.bin"); //$NON-NLS-1$
+        File dst = new File(PATH, "b.bin"); //$NON-NLS-1$
+        createFile(src, RESUME_FILE_SIZE);
+        long length = 2 * CopyEngine.MIN_CHUNK;
+        createPartialFile(src, dst, length);
+        corrupt(dst, length - 10);
+
+        TransferJournal journal = createJournal(src, dst);
+        try {
+            journal.fileProgress(src.getAbsolutePath(), length);
+            journal = reloadJournal(journal);
+
+            // The checksum of the end of the partial file doesn't match
+            assertEquals("offset", 0, journal.getResumeOffset(src, dst)); //$NON-NLS-1$
+            ResumeCopyEngine engine = new ResumeCopyEngine(journal);
+            assertTrue("copyFile", engine.copyFile(src, dst)); //$NON-NLS-1$
+            assertEquals("transferred", RESUME_FILE_SIZE, engine.mTransferred); //$NON-NLS-1$
+            assertContentEquals(src, dst);
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Method that performs a test to resume the copy of a file from a journal whose
+     * last record was torn by the interruption. The torn record must be ignored.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResumeTornJournalRecord() throws Exception {
+        File src = new File(PATH, "a.bin"); //$NON-NLS-1$
+        File dst = new File(PATH, "b.bin"); //$NON-NLS-1$
+        createFile(src, RESUME_FILE_SIZE);
+        createPartialFile(src, dst, CopyEngine.MIN_CHUNK);
+
+        TransferJournal journal = createJournal(src, dst);
+        try {
+            journal.fileProgress(src.getAbsolutePath(), CopyEngine.MIN_CHUNK);
+            journal.close();
+            // A record without its line end
+            File file = new File(
+                    new File(getContext().getFilesDir(), JOURNALS_DIR), journal.getName());
+            FileOutputStream fos = new FileOutputStream(file, true);
+            try {
+                String record = "C " + src.getAbsolutePath(); //$NON-NLS-1$
+                fos.write(record.getBytes("UTF-8")); //$NON-NLS-1$
+            } finally {
+                fos.close();
+            }
+            journal = reloadJournal(journal);
+
+            assertEquals("offset", CopyEngine.MIN_CHUNK, //$NON-NLS-1$
+                    journal.getResumeOffset(src, dst));
+            assertTrue("copyFile", //$NON-NLS-1$
+                    new ResumeCopyEngine(journal).copyFile(src, dst));
+            assertContentEquals(src, dst);
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Method that compares the copy of a big file with the legacy copy.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testCopyBigFileBenchmark() throws Exception {
+        StatFs stat = new StatFs(PATH.getAbsolutePath());
+        if ((long)stat.getAvailableBlocks() * stat.getBlockSize() < BIG_FILE_SIZE * 3) {
+            Log.w(TAG, "Not enough space for the benchmark"); //$NON-NLS-1$
+            return;
+        }
+        File src = new File(PATH, "big.bin"); //$NON-NLS-1$
+        createFile(src, BIG_FILE_SIZE);
+
+        File legacy = new File(PATH, "big-legacy.bin"); //$NON-NLS-1$
+        long start = System.currentTimeMillis();
+        assertTrue("legacy copy", //$NON-NLS-1$
+                FileHelper.copyRecursive(src, legacy, LEGACY_BUFFER_SIZE));
+        long legacyTime = System.currentTimeMillis() - start;
+
+        File dst = new File(PATH, "big-copy.bin"); //$NON-NLS-1$
+        start = System.currentTimeMillis();
+        assertTrue("copy", new CopyEngine().copy(src, dst)); //$NON-NLS-1$
+        long time = System.currentTimeMillis() - start;
+
+        Log.i(TAG, String.format(
+                "copy of %d bytes: %d ms (legacy: %d ms)", //$NON-NLS-1$
+                Long.valueOf(BIG_FILE_SIZE), Long.valueOf(time), Long.valueOf(legacyTime)));
+        assertEquals("length", BIG_FILE_SIZE, dst.length()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that compares the copy of many small files with the legacy copy.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testCopySmallFilesBenchmark() throws Exception {
+        File src = new File(PATH, "small"); //$NON-NLS-1$
+        assertTrue("mkdir", src.mkdir()); //$NON-NLS-1$
+        for (int i = 0; i < SMALL_FILES; i++) {
+            createFile(new File(src, String.valueOf(i)), SMALL_FILE_SIZE);
+        }
+
+        File legacy = new File(PATH, "small-legacy"); //$NON-NLS-1$
+        long start = System.currentTimeMillis();
+        assertTrue("legacy copy", //$NON-NLS-1$
+                FileHelper.copyRecursive(src, legacy, LEGACY_BUFFER_SIZE));
+        long legacyTime = System.currentTimeMillis() - start;
+
+        File dst = new File(PATH, "small-copy"); //$NON-NLS-1$
+        start = System.currentTimeMillis();
+        assertTrue("copy", new CopyEngine().copy(src, dst)); //$NON-NLS-1$
+        long time = System.currentTimeMillis() - start;
+
+        Log.i(TAG, String.format(
+                "copy of %d files: %d ms (legacy: %d ms)", //$NON-NLS-1$
+                Integer.valueOf(SMALL_FILES), Long.valueOf(time), Long.valueOf(legacyTime)));
+        assertEquals("files", SMALL_FILES, dst.list().length); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that creates the journal of the copy of a file.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @return TransferJournal The journal
+     * @throws Exception If the journal can't be created
+     */
+    private TransferJournal createJournal(File src, File dst) throws Exception {
+        return TransferJournal.create(getContext(), false,
+                Collections.singletonList(src), Collections.singletonList(dst));
+    }
+
+    /**
+     * Method that closes a journal and reads it again, as an interrupted operation.
+     *
+     * @param journal The journal
+     * @return TransferJournal The read journal
+     */
+    private TransferJournal reloadJournal(TransferJournal journal) {
+        journal.close();
+        TransferJournal resumed = TransferJournal.load(getContext(), journal.getName());
+        assertNotNull("journal", resumed); //$NON-NLS-1$
+        assertTrue("resumed", resumed.isResumed()); //$NON-NLS-1$
+        return resumed;
+    }
+
+    /**
+     * Method that creates a file with the start of the content of other file.
+     *
+     * @param src The source file
+     * @param dst The file to create
+     * @param length The number of bytes to copy
+     * @throws Exception If the file can't be created
+     */
+    private static void createPartialFile(File src, File dst, long length)
+            throws Exception {
+        FileInputStream fis = new FileInputStream(src);
+        FileOutputStream fos = new FileOutputStream(dst);
+        try {
+            byte[] data = new byte[8192];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = fis.read(data, 0, (int)Math.min(data.length, remaining));
+                assertTrue("eof", read != -1); //$NON-NLS-1$
+                fos.write(data, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            fis.close();
+            fos.close();
+        }
+    }
+
+    /**
+     * Method that changes a byte of a file.
+     *
+     * @param file The file
+     * @param position The position of the byte
+     * @throws Exception If the file can't be written
+     */
+    private static void corrupt(File file, long position) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+        try {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(~b);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Method that creates a file with a known content.
+     *
+     * @param file The file to create
+     * @param size The size of the file
+     * @throws Exception If the file can't be created
+     */
+    private static void createFile(File file, long size) throws Exception {
+        byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 31);
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int count = (int)Math.min(data.length, remaining);
+                fos.write(data, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Method that asserts that two files have the same content.
+     *
+     * @param expected The expected file
+     * @param actual The actual file
+     * @throws Exception If the files can't be read
+     */
+    private static void assertContentEquals(File expected, File actual) throws Exception {
+        assertEquals("length", expected.length(), actual.length()); //$NON-NLS-1$
+        FileInputStream e = new FileInputStream(expected);
+        FileInputStream a = new FileInputStream(actual);
+        try {
+            byte[] eb = new byte[8192];
+            byte[] ab = new byte[8192];
+            int read;
+            while ((read = e.read(eb)) != -1) {
+                int pos = 0;
+                while (pos < read) {
+                    int r = a.read(ab, pos, read - pos);
+                    assertTrue("eof", r != -1); //$NON-NLS-1$
+                    pos += r;
+                }
+                assertTrue("content", Arrays.equals(eb, ab)); //$NON-NLS-1$
+            }
+        } finally {
+            e.close();
+            a.close();
+        }
+    }
+    /**
+     * A copy engine that resumes the copies from a journal.
+     */
+    private static class ResumeCopyEngine extends CopyEngine {
+        private final TransferJournal mJournal;
+        long mTransferred;
+
+        /**
+         * Constructor of <code>ResumeCopyEngine</code>.
+         *
+         * @param journal The journal of the interrupted copy
+         */
+        ResumeCopyEngine(TransferJournal journal) {
+            super();
+            this.mJournal = journal;
+            this.mTransferred = 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long getResumeOffset(File src, File dst) {
+            return this.mJournal.getResumeOffset(src, dst);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onTransferred(long bytes) {
+            this.mTransferred += bytes;
+        }
+    }
+}
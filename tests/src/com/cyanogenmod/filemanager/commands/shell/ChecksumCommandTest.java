@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
+import com.cyanogenmod.filemanager.model.Checksum;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+/**
+ * A class for testing the {@link ChecksumCommand} command.
+ *
+ * @see ChecksumCommand
+ */
+public class ChecksumCommandTest extends AbstractConsoleTest {
+
+    private static final String TAG = "ChecksumCommandTest"; //$NON-NLS-1$
+
+    private static final String PATH_FILE =
+            Environment.getDataDirectory().getAbsolutePath() + "/checksumtest.txt"; //$NON-NLS-1$
+
+    // The checksums of an empty file
+    private static final String EMPTY_MD5 =
+            "d41d8cd98f00b204e9800998ecf8427e"; //$NON-NLS-1$
+    private static final String EMPTY_SHA1 =
+            "da39a3ee5e6b4b0d3255bfef95601890afd80709"; //$NON-NLS-1$
+    private static final String EMPTY_SHA256 =
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"; //$NON-NLS-1$
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test over an empty file (that only root can read).
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testChecksumsOfEmptyFile() throws Exception {
+        try {
+            CommandHelper.createFile(getContext(), PATH_FILE, getConsole());
+
+            this.mNormalEnd = false;
+            ChecksumExecutable cmd =
+                    CommandHelper.computeChecksums(
+                            getContext(), PATH_FILE, new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {
+                            synchronized (ChecksumCommandTest.this.mSync) {
+                                ChecksumCommandTest.this.mNormalEnd = true;
+                                ChecksumCommandTest.this.mSync.notify();
+                            }
+                        }
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        public void onPartialResult(Object result) {
+                            Log.d(TAG, String.valueOf(result));
+                        }
+                    }, getConsole());
+            synchronized (this.mSync) {
+                if (!this.mNormalEnd) {
+                    this.mSync.wait(15000L);
+                }
+            }
+            assertTrue("the command didn't end", this.mNormalEnd); //$NON-NLS-1$
+
+            Checksum checksum = cmd.getChecksum();
+            assertTrue("checksums not complete", checksum.isComplete()); //$NON-NLS-1$
+            assertEquals("md5", EMPTY_MD5, checksum.getMd5()); //$NON-NLS-1$
+            assertEquals("sha1", EMPTY_SHA1, checksum.getSha1()); //$NON-NLS-1$
+            assertEquals("sha256", EMPTY_SHA256, checksum.getSha256()); //$NON-NLS-1$
+        } finally {
+            try {
+                CommandHelper.deleteFile(getContext(), PATH_FILE, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+}
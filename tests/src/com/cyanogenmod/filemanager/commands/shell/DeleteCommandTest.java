@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.DeleteExecutable;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing the {@link DeleteCommand} command.
+ *
+ * @see DeleteCommand
+ */
+public class DeleteCommandTest extends AbstractConsoleTest {
+
+    private static final String PATH_DIR =
+            Environment.getDataDirectory().getAbsolutePath() + "/deletetest"; //$NON-NLS-1$
+    private static final String PATH_FILE =
+            Environment.getDataDirectory().getAbsolutePath() + "/deletetest.txt"; //$NON-NLS-1$
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+    /**
+     * @hide
+     */
+    final List<String> mDeleted = new ArrayList<String>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test to delete a batch of files and directories.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testDeleteBatch() throws Exception {
+        try {
+            CommandHelper.createDirectory(getContext(), PATH_DIR, getConsole());
+            CommandHelper.createFile(getContext(), PATH_DIR + "/file.txt", //$NON-NLS-1$
+                    getConsole());
+            CommandHelper.createFile(getContext(), PATH_FILE, getConsole());
+
+            DeleteExecutable cmd = CommandHelper.delete(
+                    getContext(), new String[]{PATH_DIR, PATH_FILE},
+                    createListener(), getConsole());
+            synchronized (this.mSync) {
+                if (!this.mNormalEnd) {
+                    this.mSync.wait(15000L);
+                }
+            }
+            assertTrue("the command didn't end", this.mNormalEnd); //$NON-NLS-1$
+            assertTrue("failed items", cmd.getFailed().isEmpty()); //$NON-NLS-1$
+            assertEquals("deleted items", 2, this.mDeleted.size()); //$NON-NLS-1$
+            assertTrue("deleted dir", this.mDeleted.contains(PATH_DIR)); //$NON-NLS-1$
+        } finally {
+            try {
+                CommandHelper.deleteDirectory(getContext(), PATH_DIR, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+            try {
+                CommandHelper.deleteFile(getContext(), PATH_FILE, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+    /**
+     * Method that creates a listener that holds the deleted items.
+     *
+     * @return AsyncResultListener The listener
+     */
+    private AsyncResultListener createListener() {
+        this.mNormalEnd = false;
+        this.mDeleted.clear();
+        return new AsyncResultListener() {
+            @Override
+            public void onAsyncStart() {
+                /**NON BLOCK**/
+            }
+            @Override
+            public void onAsyncEnd(boolean cancelled) {
+                /**NON BLOCK**/
+            }
+            @Override
+            public void onAsyncExitCode(int exitCode) {
+                synchronized (DeleteCommandTest.this.mSync) {
+                    DeleteCommandTest.this.mNormalEnd = true;
+                    DeleteCommandTest.this.mSync.notify();
+                }
+            }
+            @Override
+            public void onException(Exception cause) {
+                fail(String.valueOf(cause));
+            }
+            @Override
+            public void onPartialResult(Object result) {
+                DeleteCommandTest.this.mDeleted.add((String)result);
+            }
+        };
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.DuplicatesExecutable;
+import com.cyanogenmod.filemanager.model.DuplicateGroup;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+/**
+ * A class for testing duplicates command.
+ *
+ * @see DuplicatesCommand
+ */
+public class DuplicatesCommandTest extends AbstractConsoleTest {
+
+    private static final String TAG = "DuplicatesCommandTest"; //$NON-NLS-1$
+
+    // The files are hashed by the app, so they must be readable without privileges
+    private static final String PATH =
+            Environment.getExternalStorageDirectory().getAbsolutePath() +
+            "/duplicatestest"; //$NON-NLS-1$
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNewPartialData;
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test over a folder with two equal files and a file
+     * with the same size but other content.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testDuplicatesWithPartialResult() throws Exception {
+        File folder = new File(PATH);
+        try {
+            assertTrue("mkdirs failed", folder.mkdirs()); //$NON-NLS-1$
+            writeFile(new File(folder, "a.txt"), 'a'); //$NON-NLS-1$
+            writeFile(new File(folder, "b.txt"), 'a'); //$NON-NLS-1$
+            writeFile(new File(folder, "c.txt"), 'c'); //$NON-NLS-1$
+
+            this.mNewPartialData = false;
+            this.mNormalEnd = false;
+            DuplicatesExecutable cmd =
+                    CommandHelper.findDuplicates(getContext(), PATH, new AsyncResultListener() {
+                            @Override
+                            public void onAsyncStart() {
+                                /**NON BLOCK**/
+                            }
+                            @Override
+                            public void onAsyncEnd(boolean cancelled) {
+                                synchronized (DuplicatesCommandTest.this.mSync) {
+                                    DuplicatesCommandTest.this.mNormalEnd = true;
+                                    DuplicatesCommandTest.this.mSync.notify();
+                                }
+                            }
+                            @Override
+                            public void onAsyncExitCode(int exitCode) {
+                                /**NON BLOCK**/
+                            }
+                            @Override
+                            public void onException(Exception cause) {
+                                fail(String.valueOf(cause));
+                            }
+                            @Override
+                            public void onPartialResult(Object result) {
+                                DuplicatesCommandTest.this.mNewPartialData = true;
+                                Log.d(TAG, String.valueOf(result));
+                            }
+                       }, getConsole());
+            synchronized (DuplicatesCommandTest.this.mSync) {
+                if (!this.mNormalEnd) {
+                    DuplicatesCommandTest.this.mSync.wait(15000L);
+                }
+            }
+            assertTrue("no normal end", this.mNormalEnd); //$NON-NLS-1$
+            assertTrue("no new partial data", this.mNewPartialData); //$NON-NLS-1$
+
+            // Only the files with the same content are duplicates
+            List<DuplicateGroup> groups = cmd.getDuplicates();
+            assertEquals("groups", 1, groups.size()); //$NON-NLS-1$
+            DuplicateGroup group = groups.get(0);
+            assertEquals("files", 2, group.getFiles().size()); //$NON-NLS-1$
+            assertEquals("wasted space", group.getSize(), group.getWastedSpace()); //$NON-NLS-1$
+            for (int i = 0; i < group.getFiles().size(); i++) {
+                String name = group.getFiles().get(i).getName();
+                assertFalse("different file in group", //$NON-NLS-1$
+                        name.compareTo("c.txt") == 0); //$NON-NLS-1$
+            }
+        } finally {
+            try {
+                CommandHelper.deleteDirectory(getContext(), PATH, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+    /**
+     * Method that writes a file filled with a character.
+     *
+     * @param file The file to write
+     * @param c The character of the content
+     * @throws Exception If the file can't be written
+     */
+    private static void writeFile(File file, char c) throws Exception {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            byte[] data = new byte[1024];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte)c;
+            }
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+
+}
@@ -18,11 +18,13 @@ package com.cyanogenmod.filemanager.commands.shell;
 
 import android.os.Environment;
 import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.model.RegularFile;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 
 import java.io.File;
@@ -36,6 +38,8 @@ import java.util.List;
  */
 public class FindCommandTest extends AbstractConsoleTest {
 
+    private static final String TAG = "FindCommandTest"; //$NON-NLS-1$
+
     private static final String FIND_PATH =
                 Environment.getRootDirectory().getAbsolutePath();
     private static final String FIND_TERM_PARTIAL = "build"; //$NON-NLS-1$
@@ -44,6 +48,11 @@ public class FindCommandTest extends AbstractConsoleTest {
             new File (Environment.getRootDirectory(),
                     "build.prop"); //$NON-NLS-1$
 
+    private static final String SYNTHETIC_TREE_NAME = "findtest"; //$NON-NLS-1$
+    private static final String SYNTHETIC_TERM = "match"; //$NON-NLS-1$
+    private static final int SYNTHETIC_FOLDERS = 20;
+    private static final int SYNTHETIC_FILES_PER_FOLDER = 100;
+
     /**
      * @hide
      */
@@ -127,4 +136,151 @@ public class FindCommandTest extends AbstractConsoleTest {
         assertTrue(String.format("test file %s not found", TEST_FILE), found); //$NON-NLS-1$
     }
 
+    /**
+     * Method that measures the results per second of the find command over a
+     * synthetic tree where every file matches the query.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testFindSyntheticTreeThroughput() throws Exception {
+        File root = new File(getContext().getCacheDir(), SYNTHETIC_TREE_NAME);
+        try {
+            // Create the synthetic tree
+            for (int i = 0; i < SYNTHETIC_FOLDERS; i++) {
+                File folder = new File(root, String.valueOf(i));
+                assertTrue("mkdirs failed", folder.mkdirs()); //$NON-NLS-1$
+                for (int j = 0; j < SYNTHETIC_FILES_PER_FOLDER; j++) {
+                    File f = new File(folder, SYNTHETIC_TERM + "_" + j); //$NON-NLS-1$
+                    assertTrue("createNewFile failed", f.createNewFile()); //$NON-NLS-1$
+                }
+            }
+
+            this.mNormalEnd = false;
+            Query query = new Query().setSlot(SYNTHETIC_TERM, 0);
+            final List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+            long start = System.currentTimeMillis();
+            AsyncResultExecutable cmd =
+                    CommandHelper.findFiles(
+                        getContext(), root.getAbsolutePath(), query, new AsyncResultListener() {
+                            @Override
+                            public void onAsyncStart() {
+                                /**NON BLOCK**/
+                            }
+                            @Override
+                            public void onAsyncEnd(boolean cancelled) {
+                                synchronized (FindCommandTest.this.mSync) {
+                                    FindCommandTest.this.mNormalEnd = true;
+                                    FindCommandTest.this.mSync.notify();
+                                }
+                            }
+                            @Override
+                            public void onAsyncExitCode(int exitCode) {
+                                /**NON BLOCK**/
+                            }
+                            @Override
+                            public void onException(Exception cause) {
+                                fail(String.valueOf(cause));
+                            }
+                            @Override
+                            @SuppressWarnings("unchecked")
+                            public void onPartialResult(Object results) {
+                                files.addAll((List<FileSystemObject>)results);
+                            }
+                       }, getConsole());
+            synchronized (FindCommandTest.this.mSync) {
+                if (!this.mNormalEnd) {
+                    FindCommandTest.this.mSync.wait(60000L);
+                }
+            }
+            long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+            try {
+                if (!this.mNormalEnd && cmd != null && cmd.isCancellable() && !cmd.isCancelled()) {
+                    cmd.cancel();
+                }
+            } catch (Exception e) {/**NON BLOCK**/}
+
+            int expected = SYNTHETIC_FOLDERS * SYNTHETIC_FILES_PER_FOLDER;
+            Log.i(TAG, String.format(
+                    "find: %d results in %d ms (%d results/s)", //$NON-NLS-1$
+                    Integer.valueOf(files.size()), Long.valueOf(elapsed),
+                    Long.valueOf((files.size() * 1000L) / elapsed)));
+            assertTrue("find didn't end", this.mNormalEnd); //$NON-NLS-1$
+            assertEquals("results mismatch", expected, files.size()); //$NON-NLS-1$
+
+        } finally {
+            try {
+                CommandHelper.deleteDirectory(
+                        getContext(), root.getAbsolutePath(), getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+    /**
+     * Method that performs a search with filters, checking that the filters
+     * are applied by the command.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testFindWithFilters() throws Exception {
+        this.mNormalEnd = false;
+        Query query =
+                new Query().setSlot(FIND_TERM_PARTIAL, 0)
+                    .setFileType(Query.FileType.FILE)
+                    .setSizeRange(1, Query.NO_FILTER);
+        final List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        AsyncResultExecutable cmd =
+                CommandHelper.findFiles(getContext(), FIND_PATH, query, new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {
+                            synchronized (FindCommandTest.this.mSync) {
+                                FindCommandTest.this.mNormalEnd = true;
+                                FindCommandTest.this.mSync.notify();
+                            }
+                        }
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public void onPartialResult(Object results) {
+                            files.addAll((List<FileSystemObject>)results);
+                        }
+                   }, getConsole());
+        synchronized (FindCommandTest.this.mSync) {
+            if (!this.mNormalEnd) {
+                FindCommandTest.this.mSync.wait(15000L);
+            }
+        }
+        try {
+            if (!this.mNormalEnd && cmd != null && cmd.isCancellable() && !cmd.isCancelled()) {
+                cmd.cancel();
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        boolean found = false;
+        int cc = files.size();
+        for (int i = 0; i < cc; i++) {
+            FileSystemObject fso = files.get(i);
+            assertTrue(String.format("%s is not a file", fso), //$NON-NLS-1$
+                    fso instanceof RegularFile);
+            assertTrue(String.format("%s is empty", fso), fso.getSize() > 0); //$NON-NLS-1$
+            if (fso.getFullPath().compareTo(TEST_FILE.getAbsolutePath()) == 0) {
+                found = true;
+            }
+        }
+        assertTrue(String.format("test file %s not found", TEST_FILE), found); //$NON-NLS-1$
+    }
+
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.model.ContentMatch;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing find content command.
+ *
+ * @see FindContentCommand
+ */
+public class FindContentCommandTest extends AbstractConsoleTest {
+
+    private static final String FIND_PATH =
+                Environment.getRootDirectory().getAbsolutePath();
+    private static final String FIND_TERM = "ro.build"; //$NON-NLS-1$
+
+    private static final File TEST_FILE =
+            new File (Environment.getRootDirectory(),
+                    "build.prop"); //$NON-NLS-1$
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNewPartialData;
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test over a known content of a file.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testFindContentWithPartialResult() throws Exception {
+        this.mNewPartialData = false;
+        this.mNormalEnd = false;
+        Query query = new Query().setSlot(FIND_TERM, 0);
+        final List<ContentMatch> matches = new ArrayList<ContentMatch>();
+        AsyncResultExecutable cmd =
+                CommandHelper.findContent(getContext(), FIND_PATH, query,
+                        new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {
+                            synchronized (FindContentCommandTest.this.mSync) {
+                                FindContentCommandTest.this.mNormalEnd = true;
+                                FindContentCommandTest.this.mSync.notify();
+                            }
+                        }
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public void onPartialResult(Object results) {
+                            FindContentCommandTest.this.mNewPartialData = true;
+                            matches.addAll((List<ContentMatch>)results);
+                        }
+                   }, getConsole());
+        synchronized (FindContentCommandTest.this.mSync) {
+            FindContentCommandTest.this.mSync.wait(30000L);
+        }
+        try {
+            if (!this.mNormalEnd && cmd != null && cmd.isCancellable() && !cmd.isCancelled()) {
+                cmd.cancel();
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        assertTrue("no new partial data", this.mNewPartialData); //$NON-NLS-1$
+        assertTrue("no matches returned", matches.size() > 0); //$NON-NLS-1$
+        boolean found = false;
+        int cc = matches.size();
+        for (int i = 0; i < cc; i++) {
+            ContentMatch match = matches.get(i);
+            FileSystemObject fso = match.getFso();
+            if (fso.getParent().compareTo(TEST_FILE.getParent()) == 0 &&
+                fso.getName().compareTo(TEST_FILE.getName()) == 0) {
+                assertTrue("bad line number", match.getLineNumber() > 0); //$NON-NLS-1$
+                assertTrue("bad line", //$NON-NLS-1$
+                        match.getLine().toLowerCase().indexOf(FIND_TERM) != -1);
+                found = true;
+            }
+        }
+        assertTrue(String.format("test file %s not found", TEST_FILE), found); //$NON-NLS-1$
+    }
+
+}
@@ -18,14 +18,22 @@ package com.cyanogenmod.filemanager.commands.shell;
 
 import android.os.Environment;
 import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.model.FolderUsage;
 import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A class for testing folder usage command.
  *
@@ -38,6 +46,32 @@ public class FolderUsageCommandTest extends AbstractConsoleTest {
     private static final String PATH =
             Environment.getDataDirectory().getAbsolutePath() + "/app"; //$NON-NLS-1$
 
+    // A recorded output of "ls -alR /sdcard/DCIM"
+    private static final String LS_OUTPUT =
+            "/sdcard/DCIM:\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-10 18:22 .\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-01-02 10:12 ..\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-10 18:22 .thumbnails\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-09 12:40 Camera\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw      512 2013-02-10 18:22 .nomedia\n" + //$NON-NLS-1$
+            "\n" + //$NON-NLS-1$
+            "/sdcard/DCIM/.thumbnails:\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-10 18:22 .\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-10 18:22 ..\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw    14123 2013-02-09 12:41 1360410061.jpg\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw   241764 2013-02-10 18:22 .thumbdata3--19672\n" + //$NON-NLS-1$
+            "\n" + //$NON-NLS-1$
+            "/sdcard/DCIM/Camera:\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-09 12:40 .\n" + //$NON-NLS-1$
+            "drwxrwxr-x root sdcard_rw          2013-02-10 18:22 ..\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw  1988421 2013-02-09 12:40 IMG_124015.jpg\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw  2103377 2013-02-09 12:40 IMG_124022.jpg\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw 18231007 2013-02-09 12:41 VID_124101.mp4\n" + //$NON-NLS-1$
+            "-rw-rw-r-- root sdcard_rw      911 2013-02-09 12:42 notes on trip.txt\n" + //$NON-NLS-1$
+            "lrwxrwxrwx root root           2013-02-09 12:43 last -> IMG_124022.jpg\n"; //$NON-NLS-1$
+    // The times the recorded output is repeated (~200k lines)
+    private static final int BENCHMARK_REPEAT = 10000;
+
     /**
      * @hide
      */
@@ -120,4 +154,123 @@ public class FolderUsageCommandTest extends AbstractConsoleTest {
                 this.mUsage.getStatisticsForCategory(MimeTypeCategory.APP) > 0);
     }
 
+    /**
+     * Method that checks the parse of a recorded output.
+     */
+    @SmallTest
+    public void testParse() {
+        FolderUsage usage = new FolderUsage("/sdcard/DCIM"); //$NON-NLS-1$
+        int parsed = FolderUsageCommand.parse(LS_OUTPUT, usage);
+        assertEquals("parsed lines", 16, parsed); //$NON-NLS-1$
+        assertEquals("folders", 8, usage.getNumberOfFolders()); //$NON-NLS-1$
+        assertEquals("files", 8, usage.getNumberOfFiles()); //$NON-NLS-1$
+        assertEquals("size", //$NON-NLS-1$
+                512L + 14123L + 241764L + 1988421L + 2103377L + 18231007L + 911L,
+                usage.getTotalSize());
+        assertUsageEquals(parseLegacy(LS_OUTPUT, null), usage);
+    }
+
+    /**
+     * Method that benchmarks the parse of a large recorded output against the legacy
+     * (line buffer + regexp + split) parse.
+     */
+    @LargeTest
+    public void testParseBenchmark() {
+        StringBuilder sb = new StringBuilder(LS_OUTPUT.length() * BENCHMARK_REPEAT);
+        for (int i = 0; i < BENCHMARK_REPEAT; i++) {
+            sb.append(LS_OUTPUT);
+        }
+        String output = sb.toString();
+
+        FolderUsage legacy = new FolderUsage(PATH);
+        long start = System.currentTimeMillis();
+        parseLegacy(output, legacy);
+        long legacyTime = System.currentTimeMillis() - start;
+
+        FolderUsage usage = new FolderUsage(PATH);
+        start = System.currentTimeMillis();
+        FolderUsageCommand.parse(output, usage);
+        long time = System.currentTimeMillis() - start;
+
+        Log.i(TAG, String.format(
+                "parse of %d chars: %d ms (legacy: %d ms)", //$NON-NLS-1$
+                Integer.valueOf(output.length()), Long.valueOf(time), Long.valueOf(legacyTime)));
+        assertUsageEquals(legacy, usage);
+        assertEquals("files", 8 * BENCHMARK_REPEAT, usage.getNumberOfFiles()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that asserts that two folder usages have the same statistics.
+     *
+     * @param expected The expected folder usage
+     * @param actual The actual folder usage
+     */
+    private static void assertUsageEquals(FolderUsage expected, FolderUsage actual) {
+        assertEquals("folders", //$NON-NLS-1$
+                expected.getNumberOfFolders(), actual.getNumberOfFolders());
+        assertEquals("files", //$NON-NLS-1$
+                expected.getNumberOfFiles(), actual.getNumberOfFiles());
+        assertEquals("size", expected.getTotalSize(), actual.getTotalSize()); //$NON-NLS-1$
+        MimeTypeCategory[] categories = MimeTypeCategory.values();
+        for (int i = 0; i < categories.length; i++) {
+            assertEquals(categories[i].name(),
+                    expected.getStatisticsForCategory(categories[i]),
+                    actual.getStatisticsForCategory(categories[i]));
+        }
+    }
+
+    /**
+     * The parse of the output used before the single-pass tokenizer.
+     *
+     * @param in The output to parse
+     * @param usage The folder usage where to add the results (or null to create one)
+     * @return FolderUsage The folder usage
+     */
+    private static FolderUsage parseLegacy(String in, FolderUsage usage) {
+        FolderUsage result = usage;
+        if (result == null) {
+            result = new FolderUsage("/sdcard/DCIM"); //$NON-NLS-1$
+        }
+        try {
+            BufferedReader br = new BufferedReader(new StringReader(in));
+            List<String> lines = new ArrayList<String>();
+            String line = null;
+            while ((line = br.readLine()) != null) {
+                if (line.length() == 0 ||
+                    line.startsWith(FileHelper.ROOT_DIRECTORY) ||
+                    line.startsWith(FileHelper.CURRENT_DIRECTORY) ||
+                    line.startsWith(FileHelper.PARENT_DIRECTORY)) {
+                    continue;
+                }
+                lines.add(line);
+            }
+            while (lines.size() > 0) {
+                String szLine = lines.remove(0).trim();
+                while (szLine.indexOf("  ") != -1) { //$NON-NLS-1$
+                    szLine = szLine.replaceAll("  ", " "); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                char type = szLine.charAt(0);
+                if (type == 'l') {
+                    result.addFile();
+                    result.addFileToCategory(MimeTypeCategory.NONE);
+                } else if (type == 'd') {
+                    result.addFolder();
+                } else {
+                    String[] fields = szLine.split(" "); //$NON-NLS-1$
+                    if (fields.length < 7) {
+                        continue;
+                    }
+                    long size = Long.parseLong(fields[3]);
+                    String ext = FileHelper.getExtension(fields[fields.length-1]);
+                    result.addFile();
+                    result.addFileToCategory(MimeTypeHelper.getCategoryFromExt(null, ext));
+                    result.addSize(size);
+                }
+            }
+        } catch (Exception e) {
+            fail(String.valueOf(e));
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.model.StorageAnalysis;
+import com.cyanogenmod.filemanager.model.StorageAnalysis.Entry;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+import java.util.List;
+
+/**
+ * A class for testing storage analysis command.
+ *
+ * @see StorageAnalysisCommand
+ */
+public class StorageAnalysisCommandTest extends AbstractConsoleTest {
+
+    private static final String TAG = "StorageAnalysisCommandTest"; //$NON-NLS-1$
+
+    private static final String PATH =
+            Environment.getRootDirectory().getAbsolutePath();
+    private static final int TOP = 10;
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNewPartialData;
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+    /**
+     * @hide
+     */
+    StorageAnalysis mAnalysis;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test over a known folder.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testStorageAnalysisWithPartialResult() throws Exception {
+        this.mNewPartialData = false;
+        this.mNormalEnd = false;
+        this.mAnalysis = null;
+        AsyncResultExecutable cmd =
+                CommandHelper.analyzeStorage(getContext(), PATH, TOP, new AsyncResultListener() {
+                        @Override
+                        public void onAsyncStart() {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onAsyncEnd(boolean cancelled) {
+                            synchronized (StorageAnalysisCommandTest.this.mSync) {
+                                StorageAnalysisCommandTest.this.mNormalEnd = true;
+                                StorageAnalysisCommandTest.this.mSync.notify();
+                            }
+                        }
+                        @Override
+                        public void onAsyncExitCode(int exitCode) {
+                            /**NON BLOCK**/
+                        }
+                        @Override
+                        public void onException(Exception cause) {
+                            fail(String.valueOf(cause));
+                        }
+                        @Override
+                        public void onPartialResult(Object result) {
+                            StorageAnalysisCommandTest.this.mNewPartialData = true;
+                            StorageAnalysisCommandTest.this.mAnalysis = (StorageAnalysis)result;
+                            Log.d(TAG, StorageAnalysisCommandTest.this.mAnalysis.toString());
+                        }
+                   }, getConsole());
+        synchronized (StorageAnalysisCommandTest.this.mSync) {
+            StorageAnalysisCommandTest.this.mSync.wait(30000L);
+        }
+        try {
+            if (!this.mNormalEnd && cmd != null && cmd.isCancellable() && !cmd.isCancelled()) {
+                cmd.cancel();
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        assertTrue("no new partial data", this.mNewPartialData); //$NON-NLS-1$
+        assertNotNull("analysis==null", this.mAnalysis); //$NON-NLS-1$
+        assertTrue("no files returned", this.mAnalysis.getNumberOfFiles() > 0); //$NON-NLS-1$
+        assertTrue("no size returned", this.mAnalysis.getTotalSize() > 0); //$NON-NLS-1$
+
+        // The largest files are sorted and bounded
+        List<Entry> files = this.mAnalysis.getLargestFiles();
+        assertTrue("no largest files", files.size() > 0); //$NON-NLS-1$
+        assertTrue("too many largest files", files.size() <= TOP); //$NON-NLS-1$
+        for (int i = 1; i < files.size(); i++) {
+            assertTrue("largest files not sorted", //$NON-NLS-1$
+                    files.get(i - 1).getSize() >= files.get(i).getSize());
+        }
+        assertTrue("largest file bigger than total", //$NON-NLS-1$
+                files.get(0).getSize() <= this.mAnalysis.getTotalSize());
+
+        // The children of the size tree are within the size of the parent
+        StorageAnalysis.Node root = this.mAnalysis.getRoot();
+        assertTrue("no children in the size tree", root.getChildren().size() > 0); //$NON-NLS-1$
+        long children = 0;
+        for (int i = 0; i < root.getChildren().size(); i++) {
+            children += root.getChildren().get(i).getSize();
+        }
+        assertTrue("children bigger than the folder", //$NON-NLS-1$
+                children + root.getOthersSize() == root.getSize());
+    }
+
+}
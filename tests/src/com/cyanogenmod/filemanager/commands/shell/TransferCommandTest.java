@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.TransferExecutable;
+import com.cyanogenmod.filemanager.model.TransferProgress;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+/**
+ * A class for testing the {@link TransferCommand} command.
+ *
+ * @see TransferCommand
+ */
+public class TransferCommandTest extends AbstractConsoleTest {
+
+    private static final String TAG = "TransferCommandTest"; //$NON-NLS-1$
+
+    private static final String PATH_SRC =
+            Environment.getDataDirectory().getAbsolutePath() + "/transfertest"; //$NON-NLS-1$
+    private static final String PATH_DST =
+            Environment.getDataDirectory().getAbsolutePath() + "/transfertest2"; //$NON-NLS-1$
+    private static final String PATH_MOVED =
+            Environment.getDataDirectory().getAbsolutePath() + "/transfertest3"; //$NON-NLS-1$
+    private static final String FILE = "/file.txt"; //$NON-NLS-1$
+
+    /**
+     * @hide
+     */
+    final Object mSync = new Object();
+    /**
+     * @hide
+     */
+    boolean mNormalEnd;
+    /**
+     * @hide
+     */
+    TransferProgress mProgress;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test to copy and move a folder with progress.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testCopyAndMoveWithProgress() throws Exception {
+        try {
+            CommandHelper.createDirectory(getContext(), PATH_SRC, getConsole());
+            CommandHelper.createFile(getContext(), PATH_SRC + FILE, getConsole());
+
+            // Copy
+            TransferExecutable cmd = CommandHelper.copy(
+                    getContext(), PATH_SRC, PATH_DST, createListener(), getConsole());
+            waitForEnd(cmd);
+            assertTrue("response==false", cmd.getResult().booleanValue()); //$NON-NLS-1$
+            assertNotNull("progress==null", this.mProgress); //$NON-NLS-1$
+            assertEquals("files", 1, this.mProgress.getTotalFiles()); //$NON-NLS-1$
+            assertEquals("copied files", 1, this.mProgress.getFiles()); //$NON-NLS-1$
+            assertEquals("copied bytes", //$NON-NLS-1$
+                    this.mProgress.getTotalBytes(), this.mProgress.getBytes());
+            assertNotNull("copied file", //$NON-NLS-1$
+                    CommandHelper.getFileInfo(getContext(), PATH_DST + FILE, getConsole()));
+
+            // Move (a rename in the same filesystem)
+            cmd = CommandHelper.move(
+                    getContext(), PATH_DST, PATH_MOVED, createListener(), getConsole());
+            waitForEnd(cmd);
+            assertTrue("response==false", cmd.getResult().booleanValue()); //$NON-NLS-1$
+            assertNotNull("moved file", //$NON-NLS-1$
+                    CommandHelper.getFileInfo(getContext(), PATH_MOVED + FILE, getConsole()));
+        } finally {
+            try {
+                CommandHelper.deleteDirectory(getContext(), PATH_SRC, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+            try {
+                CommandHelper.deleteDirectory(getContext(), PATH_DST, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+            try {
+                CommandHelper.deleteDirectory(getContext(), PATH_MOVED, getConsole());
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+    /**
+     * Method that creates a listener that holds the last progress.
+     *
+     * @return AsyncResultListener The listener
+     */
+    private AsyncResultListener createListener() {
+        this.mNormalEnd = false;
+        this.mProgress = null;
+        return new AsyncResultListener() {
+            @Override
+            public void onAsyncStart() {
+                /**NON BLOCK**/
+            }
+            @Override
+            public void onAsyncEnd(boolean cancelled) {
+                /**NON BLOCK**/
+            }
+            @Override
+            public void onAsyncExitCode(int exitCode) {
+                synchronized (TransferCommandTest.this.mSync) {
+                    TransferCommandTest.this.mNormalEnd = true;
+                    TransferCommandTest.this.mSync.notify();
+                }
+            }
+            @Override
+            public void onException(Exception cause) {
+                fail(String.valueOf(cause));
+            }
+            @Override
+            public void onPartialResult(Object result) {
+                TransferCommandTest.this.mProgress = (TransferProgress)result;
+                Log.d(TAG, TransferCommandTest.this.mProgress.toString());
+            }
+        };
+    }
+
+    /**
+     * Method that waits for the end of a command.
+     *
+     * @param cmd The command
+     * @throws Exception If the wait was interrupted
+     */
+    private void waitForEnd(TransferExecutable cmd) throws Exception {
+        synchronized (this.mSync) {
+            if (!this.mNormalEnd) {
+                this.mSync.wait(15000L);
+            }
+        }
+        assertTrue("the command didn't end", this.mNormalEnd); //$NON-NLS-1$
+        // The result is set before the exit code is notified
+        this.mProgress = cmd.getProgress();
+    }
+}